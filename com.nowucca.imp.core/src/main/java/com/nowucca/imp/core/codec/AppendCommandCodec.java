@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.ImapDateTime;
+import com.nowucca.imp.core.message.ImapFlags;
+import com.nowucca.imp.core.message.SpooledLiteral;
+import com.nowucca.imp.core.message.command.AppendCommand;
+import com.nowucca.imp.core.message.command.ImapCommand;
+import io.netty.buffer.ByteBuf;
+import java.io.IOException;
+import static com.nowucca.imp.core.codec.ImapCharacterConstants.CR;
+import static com.nowucca.imp.core.codec.ImapCharacterConstants.LF;
+import static com.nowucca.imp.core.codec.ImapCharacterConstants.SP;
+import static java.lang.String.format;
+
+/**
+ * <pre>
+ * append          = "APPEND" SP mailbox [SP flag-list] [SP date-time] SP literal
+ * </pre>
+ * <p>
+ *     The message literal may be streamed or spooled by the decoder, and gathered or written as a file region by the
+ *     encoder; either way, only its header is read or written here.
+ * </p>
+ */
+final class AppendCommandCodec implements CommandCodec<AppendCommand> {
+
+    @Override
+    public ImapCommand.Kind getKind() {
+        return ImapCommand.Kind.APPEND;
+    }
+
+    @Override
+    public String getCommandName() {
+        return "APPEND";
+    }
+
+    @Override
+    public boolean hasArguments() {
+        return true;
+    }
+
+    @Override
+    public AppendCommand decodeArguments(ArgumentDecoder decoder, ByteBuf in) throws IOException {
+        for (;;) {
+            switch (decoder.getArgumentIndex()) {
+                case 0:
+                case 2:
+                case 4:
+                case 6:
+                    if (!decoder.readSpace(in)) {
+                        return null;
+                    }
+                    decoder.setArgumentIndex(decoder.getArgumentIndex() + 1);
+                    break;
+                case 1: {
+                    final CharSequence mailboxName = decoder.readMailboxName(in);
+                    if (mailboxName == null) {
+                        return null;
+                    }
+                    decoder.setArgument(0, mailboxName);
+                    decoder.setArgumentIndex(2);
+                    break;
+                }
+                case 3: {
+                    if (!decoder.isReadable(in, 1)) {
+                        return null;
+                    }
+                    if (decoder.peek(in, 0) != '(') {
+                        decoder.setArgumentIndex(5);
+                        break;
+                    }
+                    final ImapFlags flags = decoder.readFlags(in);
+                    if (flags == null) {
+                        return null;
+                    }
+                    decoder.setArgument(1, flags);
+                    decoder.setArgumentIndex(4);
+                    break;
+                }
+                case 5: {
+                    if (!decoder.isReadable(in, 1)) {
+                        return null;
+                    }
+                    if (decoder.peek(in, 0) != '"') {
+                        decoder.setArgumentIndex(7);
+                        break;
+                    }
+                    if (!decoder.readDateTime(in)) {
+                        return null;
+                    }
+                    decoder.setArgumentIndex(6);
+                    break;
+                }
+                case 7: {
+                    if (!decoder.readMessageLiteral(in)) {
+                        return null;
+                    }
+                    return newCommand(decoder, in);
+                }
+                default:
+                    throw new IllegalStateException(format("Unexpected APPEND argument %d",
+                            decoder.getArgumentIndex()));
+            }
+        }
+    }
+
+    private static AppendCommand newCommand(ArgumentDecoder decoder, ByteBuf in) {
+        final CharSequence mailboxName = (CharSequence) decoder.getArgument(0);
+        final ImapFlags flags = (ImapFlags) decoder.getArgument(1);
+        if (decoder.isMessageLiteralStreamed()) {
+            return AppendCommand.newInstance(mailboxName, flags, decoder.getDateTime(),
+                    decoder.getMessageLiteralSize());
+        }
+        final SpooledLiteral spooledLiteral = decoder.takeSpooledLiteral();
+        if (spooledLiteral != null) {
+            return AppendCommand.newInstance(mailboxName, flags, decoder.getDateTime(), spooledLiteral);
+        }
+        return AppendCommand.newInstance(mailboxName, flags, decoder.getDateTime(), decoder.takeMessageLiteral(in));
+    }
+
+    @Override
+    public int argumentsLength(AppendCommand command, ArgumentEncoder encoder) {
+        int length = encoder.mailboxNameLength(command.getMailboxName());
+        if (command.getFlags() != null) {
+            length += 1 + encoder.flagsLength(command.getFlags());
+        }
+        if (command.getPackedDateTime() != ImapDateTime.NONE) {
+            length += 1 + encoder.dateTimeLength();
+        }
+        if (command.isStreamed() || command.isSpooled()) {
+            length += 1 + encoder.literalHeaderLength(command.getMessageLiteralSize());
+        } else if (isGathered(command)) {
+            length += 1 + encoder.literalHeaderLength(command.getMessageLiteral().readableBytes());
+        } else {
+            final int size = command.getMessageLiteral().readableBytes();
+            length += 1 + encoder.literalHeaderLength(size) + size + 2;
+        }
+        return length;
+    }
+
+    @Override
+    public void encodeArguments(AppendCommand command, ArgumentEncoder encoder, ByteBuf out) {
+        encoder.encodeMailboxName(command.getMailboxName(), out);
+        if (command.getFlags() != null) {
+            out.writeByte(SP);
+            encoder.encodeFlags(command.getFlags(), out);
+        }
+        if (command.getPackedDateTime() != ImapDateTime.NONE) {
+            out.writeByte(SP);
+            encoder.encodeDateTime(command.getPackedDateTime(), out);
+        }
+        out.writeByte(SP);
+        if (command.isStreamed() || command.isSpooled()) {
+            // the literal and final CRLF follow as chunks or as a file region
+            encoder.encodeLiteralHeader(command.getMessageLiteralSize(), out);
+        } else if (isGathered(command)) {
+            // the literal and final CRLF are gathered after the encoded bytes
+            encoder.encodeLiteralHeader(command.getMessageLiteral().readableBytes(), out);
+        } else {
+            encoder.encodeLiteral(command.getMessageLiteral(), out);
+            out.writeByte(CR);
+            out.writeByte(LF);
+        }
+    }
+
+    /**
+     * @return whether the message literal is written after the encoded request rather than copied into it
+     */
+    static boolean isGathered(AppendCommand command) {
+        return !command.isStreamed() && !command.isSpooled()
+                && command.getMessageLiteral().readableBytes() >= ImapRequestEncoder.GATHERED_LITERAL_THRESHOLD;
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.FetchAttributes;
+import com.nowucca.imp.core.message.ImapFlags;
+import com.nowucca.imp.core.message.SequenceSet;
+import com.nowucca.imp.core.message.SpooledLiteral;
+import com.nowucca.imp.core.message.command.DecodeError;
+import com.nowucca.imp.core.message.command.ImapCommand;
+import io.netty.buffer.ByteBuf;
+import java.io.IOException;
+
+/**
+ * <p>
+ *     What a {@link CommandCodec} reads the arguments of a request with.
+ * </p>
+ * <p>
+ *     Each read starts at the decoder's parse position and moves it past whatever was read.  A read that runs out of
+ *     bytes returns null, or false, and leaves the position where it was, so the codec can stop and be called again
+ *     when more bytes arrive.  The argument index, arguments and subcommand are kept by the decoder for exactly that,
+ *     and are cleared at the start of each request.
+ * </p>
+ */
+public interface ArgumentDecoder {
+
+    int getArgumentIndex();
+
+    void setArgumentIndex(int argumentIndex);
+
+    /**
+     * @return an argument kept while the rest of the command arrives
+     */
+    Object getArgument(int index);
+
+    /**
+     * Keeps an argument while the rest of the command arrives.  There is room for four.
+     */
+    void setArgument(int index, Object argument);
+
+    /**
+     * @return the subcommand read, as the FETCH of a UID FETCH, or null if none has been read
+     */
+    ImapCommand.Kind getSubcommand();
+
+    /**
+     * Notes the subcommand read, which is kept while the rest of the command arrives.
+     */
+    void setSubcommand(ImapCommand.Kind subcommand);
+
+    /**
+     * @return whether at least <code>length</code> bytes have arrived beyond the parse position
+     */
+    boolean isReadable(ByteBuf in, int length);
+
+    /**
+     * @return the byte <code>offset</code> bytes beyond the parse position, which must have arrived
+     */
+    char peek(ByteBuf in, int offset);
+
+    /**
+     * Moves the parse position past bytes already examined with {@link #peek(ByteBuf, int)}.
+     */
+    void skip(int length);
+
+    /**
+     * @return whether the space was read, or false if more bytes are needed
+     */
+    boolean readSpace(ByteBuf in);
+
+    /**
+     * @return the astring, or null if more bytes are needed
+     */
+    CharSequence readAString(ByteBuf in);
+
+    /**
+     * @return the mailbox name, decoded from modified UTF-7, or null if more bytes are needed
+     */
+    CharSequence readMailboxName(ByteBuf in);
+
+    /**
+     * @return the parenthesized flag list, or null if more bytes are needed
+     */
+    ImapFlags readFlags(ByteBuf in);
+
+    /**
+     * @return the sequence-set, or null if more bytes are needed
+     */
+    SequenceSet readSequenceSet(ByteBuf in);
+
+    /**
+     * @return the attributes of a FETCH, which run to the end of the line, or null if more bytes are needed
+     */
+    FetchAttributes readFetchAttributes(ByteBuf in);
+
+    /**
+     * @return whether the quoted date-time was read, or false if more bytes are needed
+     * @see #getDateTime()
+     */
+    boolean readDateTime(ByteBuf in);
+
+    /**
+     * @return the date-time last read, packed as by {@link com.nowucca.imp.core.message.ImapDateTime}
+     */
+    long getDateTime();
+
+    /**
+     * @return the SASL mechanism name, or null if more bytes are needed
+     */
+    CharSequence readAuthenticationMechanismName(ByteBuf in);
+
+    /**
+     * Reads the literal holding a message, which may be streamed as chunks or spooled to a file if it is large.
+     * Once the literal has been read, exactly one of {@link #isMessageLiteralStreamed()},
+     * {@link #takeSpooledLiteral()} and {@link #takeMessageLiteral(ByteBuf)} gives its content.
+     *
+     * @return whether the literal was read, or only its header if it is streamed; false if more bytes are needed
+     */
+    boolean readMessageLiteral(ByteBuf in) throws IOException;
+
+    /**
+     * @return the size of the message literal last read
+     */
+    long getMessageLiteralSize();
+
+    /**
+     * @return whether the message literal last read follows the request as chunks
+     */
+    boolean isMessageLiteralStreamed();
+
+    /**
+     * @return the file the message literal last read was spooled to, which the caller now owns, or null if it was not
+     *         spooled
+     */
+    SpooledLiteral takeSpooledLiteral();
+
+    /**
+     * @return a retained slice of the message literal last read, which the caller now owns
+     */
+    ByteBuf takeMessageLiteral(ByteBuf in);
+
+    /**
+     * Notes the detail of an error, to be formatted only if asked for.
+     *
+     * @return the error's preallocated exception, for the caller to throw
+     */
+    RuntimeException error(DecodeError error, Object detail);
+}
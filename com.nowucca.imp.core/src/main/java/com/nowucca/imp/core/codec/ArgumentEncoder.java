@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.FetchAttributes;
+import com.nowucca.imp.core.message.ImapFlags;
+import com.nowucca.imp.core.message.SequenceSet;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * <p>
+ *     What a {@link CommandCodec} writes the arguments of a request with.
+ * </p>
+ * <p>
+ *     The request is written into a buffer allocated at exactly its encoded length, so each way of writing an
+ *     argument comes with a way of measuring it first, and the two must agree.
+ * </p>
+ */
+public interface ArgumentEncoder {
+
+    int astringLength(CharSequence value);
+
+    /**
+     * Writes an astring in the cheapest form that can carry it: atom, then quoted string, then literal.
+     */
+    void encodeAString(CharSequence value, ByteBuf out);
+
+    int mailboxNameLength(CharSequence mailboxName);
+
+    /**
+     * Writes a mailbox name as an astring, in modified UTF-7.
+     */
+    void encodeMailboxName(CharSequence mailboxName, ByteBuf out);
+
+    int flagsLength(ImapFlags flags);
+
+    /**
+     * Writes a parenthesized flag list.
+     */
+    void encodeFlags(ImapFlags flags, ByteBuf out);
+
+    int sequenceSetLength(SequenceSet sequenceSet);
+
+    /**
+     * Writes a sequence-set in its canonical form: ascending ranges, each written as a single number if it has one.
+     */
+    void encodeSequenceSet(SequenceSet sequenceSet, ByteBuf out);
+
+    int fetchAttributesLength(FetchAttributes attributes);
+
+    /**
+     * Writes the attributes of a FETCH: a macro, a single attribute, or a parenthesized list.
+     */
+    void encodeFetchAttributes(FetchAttributes attributes, ByteBuf out);
+
+    int dateTimeLength();
+
+    /**
+     * Writes a quoted date-time, packed as by {@link com.nowucca.imp.core.message.ImapDateTime}.
+     */
+    void encodeDateTime(long dateTime, ByteBuf out);
+
+    int literalHeaderLength(long size);
+
+    /**
+     * Writes a literal header, non-synchronizing if the server allows it, for a literal whose bytes follow.
+     */
+    void encodeLiteralHeader(long size, ByteBuf out);
+
+    /**
+     * Writes a literal header followed by the literal's readable bytes.
+     */
+    void encodeLiteral(ByteBuf literal, ByteBuf out);
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.command.AuthenticateCommand;
+import com.nowucca.imp.core.message.command.ImapCommand;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import static com.nowucca.imp.core.codec.ImapCharacterConstants.CR;
+import static com.nowucca.imp.core.codec.ImapCharacterConstants.LF;
+
+/**
+ * <pre>
+ * authenticate    = "AUTHENTICATE" SP auth-type *(CRLF base64)
+ * </pre>
+ */
+final class AuthenticateCommandCodec implements CommandCodec<AuthenticateCommand> {
+
+    @Override
+    public ImapCommand.Kind getKind() {
+        return ImapCommand.Kind.AUTHENTICATE;
+    }
+
+    @Override
+    public String getCommandName() {
+        return "AUTHENTICATE";
+    }
+
+    @Override
+    public boolean hasArguments() {
+        return true;
+    }
+
+    @Override
+    public AuthenticateCommand decodeArguments(ArgumentDecoder decoder, ByteBuf in) {
+        if (decoder.getArgumentIndex() == 0) {
+            if (!decoder.readSpace(in)) {
+                return null;
+            }
+            decoder.setArgumentIndex(1);
+        }
+        final CharSequence authenticationMechanism = decoder.readAuthenticationMechanismName(in);
+        if (authenticationMechanism == null) {
+            return null;
+        }
+        return AuthenticateCommand.newInstance(authenticationMechanism);
+    }
+
+    @Override
+    public int argumentsLength(AuthenticateCommand command, ArgumentEncoder encoder) {
+        return command.getAuthenticationMechanismName().length() + 2;
+    }
+
+    @Override
+    public void encodeArguments(AuthenticateCommand command, ArgumentEncoder encoder, ByteBuf out) {
+        ByteBufUtil.writeAscii(out, command.getAuthenticationMechanismName());
+        out.writeByte(CR);
+        out.writeByte(LF);
+    }
+}
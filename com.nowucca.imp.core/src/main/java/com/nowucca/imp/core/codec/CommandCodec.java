@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.command.ImapCommand;
+import io.netty.buffer.ByteBuf;
+import java.io.IOException;
+
+/**
+ * <p>
+ *     Reads and writes the arguments of one kind of command.
+ * </p>
+ * <p>
+ *     {@link ImapRequestDecoder} and {@link ImapRequestEncoder} deal with tags, command names and line ends, and hand
+ *     everything in between to the codec registered for the command's kind in their {@link CommandCodecs}.  Each
+ *     codec is a small class of its own, so supporting another command means registering another codec rather than
+ *     growing a switch in both the decoder and the encoder.
+ * </p>
+ * <p>
+ *     A codec holds no state of its own, since one instance is shared by every decoder and encoder.
+ * </p>
+ *
+ * @param <C> the type of command the codec reads and writes
+ */
+public interface CommandCodec<C extends ImapCommand> {
+
+    ImapCommand.Kind getKind();
+
+    /**
+     * @return the name of the command, in letters only, as written after the tag
+     */
+    String getCommandName();
+
+    /**
+     * @return whether the command name is followed by arguments, or is the whole command
+     */
+    boolean hasArguments();
+
+    /**
+     * Reads the arguments that follow the command name, up to but not including the final CRLF.  If the bytes run
+     * out, the codec returns null and is called again once more have arrived, with everything read so far still in
+     * the decoder's argument index and arguments.
+     *
+     * @return the command, or null if more bytes are needed
+     */
+    C decodeArguments(ArgumentDecoder decoder, ByteBuf in) throws IOException;
+
+    /**
+     * @return the number of bytes <code>encodeArguments</code> writes for the command
+     */
+    int argumentsLength(C command, ArgumentEncoder encoder);
+
+    /**
+     * Writes the arguments that follow the command name and the space after it, along with the final CRLF.  A
+     * command without arguments writes nothing.
+     */
+    void encodeArguments(C command, ArgumentEncoder encoder, ByteBuf out);
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.command.ImapCommand;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.ServiceLoader;
+import static java.lang.String.format;
+
+/**
+ * <p>
+ *     The {@link CommandCodec} for each kind of command, looked up by the kind's ordinal.
+ * </p>
+ * <p>
+ *     {@link #standard()} holds a codec for every command this library supports.  Further codecs, whether for kinds
+ *     the standard set does not cover or in place of a standard codec, can be registered directly, or found at
+ *     runtime by {@link #loadExtensions(ClassLoader)} as services named
+ *     <code>META-INF/services/com.nowucca.imp.core.codec.CommandCodec</code>.
+ * </p>
+ * <p>
+ *     Register every codec before handing the registry to a decoder or encoder; a registry is not thread-safe while
+ *     it is being changed, but may be shared by any number of decoders and encoders once it is complete.
+ * </p>
+ */
+public final class CommandCodecs {
+
+    private static final ImapCommand.Kind[] KINDS = ImapCommand.Kind.values();
+
+    /**
+     * The standard codecs, for decoders and encoders that are not given a registry of their own.
+     */
+    static final CommandCodecs STANDARD = standard();
+
+    private final CommandCodec<?>[] codecs = new CommandCodec<?>[KINDS.length];
+    // what follows the tag of each kind of command: the whole of a command without arguments, or the command name
+    // and the space before the first argument
+    private final byte[][] prefixes = new byte[KINDS.length][];
+    private CommandNameTrie commandNames = new CommandNameTrie();
+
+    /**
+     * @return a new registry holding a codec for every command this library supports
+     */
+    public static CommandCodecs standard() {
+        return new CommandCodecs()
+                .register(new AppendCommandCodec())
+                .register(new AuthenticateCommandCodec())
+                .register(NoArgumentCommandCodec.CAPABILITY)
+                .register(new FetchCommandCodec())
+                .register(new LoginCommandCodec())
+                .register(NoArgumentCommandCodec.LOGOUT)
+                .register(NoArgumentCommandCodec.NOOP)
+                .register(new SelectCommandCodec())
+                .register(new UidCommandCodec())
+                .register(NoArgumentCommandCodec.STARTTLS);
+    }
+
+    /**
+     * Registers a codec, in place of any registered for the same kind.
+     *
+     * @return this registry
+     */
+    public CommandCodecs register(CommandCodec<?> codec) {
+        final int kind = codec.getKind().ordinal();
+        final String name = codec.getCommandName();
+        codecs[kind] = codec;
+        prefixes[kind] = (" " + name.toUpperCase(Locale.ROOT) + (codec.hasArguments() ? " " : "\r\n"))
+                .getBytes(StandardCharsets.US_ASCII);
+
+        // rebuild the names, since a replaced codec may have renamed its command
+        final CommandNameTrie names = new CommandNameTrie();
+        for (CommandCodec<?> registered : codecs) {
+            if (registered != null) {
+                names.add(registered.getCommandName(), registered.getKind());
+            }
+        }
+        commandNames = names;
+        return this;
+    }
+
+    /**
+     * Registers every codec the class loader provides as a service, in place of any registered for the same kinds.
+     *
+     * @return this registry
+     */
+    @SuppressWarnings("rawtypes")
+    public CommandCodecs loadExtensions(ClassLoader classLoader) {
+        for (CommandCodec codec : ServiceLoader.load(CommandCodec.class, classLoader)) {
+            register(codec);
+        }
+        return this;
+    }
+
+    /**
+     * @return the codec registered for the kind of command, or null if there is none
+     */
+    public CommandCodec<?> get(ImapCommand.Kind kind) {
+        return codecs[kind.ordinal()];
+    }
+
+    /**
+     * @return the codec registered for the command's kind, typed to write it
+     * @throws UnsupportedOperationException if there is none
+     */
+    @SuppressWarnings("unchecked")
+    <C extends ImapCommand> CommandCodec<C> codecFor(C command) {
+        final CommandCodec<?> codec = codecs[command.getKind().ordinal()];
+        if (codec == null) {
+            throw new UnsupportedOperationException(format("No support for %s command.", command.getKind()));
+        }
+        return (CommandCodec<C>) codec;
+    }
+
+    /**
+     * @return the pre-encoded bytes that follow the tag of the kind of command, which must have a codec
+     */
+    byte[] prefix(ImapCommand.Kind kind) {
+        return prefixes[kind.ordinal()];
+    }
+
+    CommandNameTrie commandNames() {
+        return commandNames;
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.command.ImapCommand;
+import io.netty.buffer.ByteBuf;
+import java.util.Arrays;
+import static java.lang.String.format;
+
+/**
+ * <p>
+ *     A case-insensitive trie over command names, matched directly against received bytes.
+ * </p>
+ * <p>
+ *     Each node is a row of 26 transitions, one per letter, held in a single flat array.  Matching folds each byte
+ *     to lower case with one bitwise OR and follows at most one array entry per byte, so a command name is
+ *     recognized without allocating.  The result packs the kind and the length of the matched name into an int.
+ * </p>
+ */
+final class CommandNameTrie {
+
+    /**
+     * The bytes ran out before a command name could be recognized.
+     */
+    static final int NEED_MORE = -1;
+
+    /**
+     * The bytes do not start with a known command name.
+     */
+    static final int NO_MATCH = -2;
+
+    private static final int ALPHABET_SIZE = 26;
+    private static final int KIND_BITS = 8;
+    private static final int KIND_MASK = (1 << KIND_BITS) - 1;
+
+    private static final ImapCommand.Kind[] KINDS = ImapCommand.Kind.values();
+
+    // child node for each (node, letter); 0 means no child, since the root is never a child
+    private int[] transitions = new int[ALPHABET_SIZE];
+    // ordinal + 1 of the kind whose name ends at each node; 0 means none
+    private int[] accepted = new int[1];
+    private boolean[] leaf = {true};
+    private int nodes = 1;
+
+    CommandNameTrie add(String name, ImapCommand.Kind kind) {
+        int node = 0;
+        for (int i = 0; i < name.length(); i++) {
+            final int letter = letter((byte) name.charAt(i));
+            if (letter < 0) {
+                throw new IllegalArgumentException(format("Command names must be letters: %s", name));
+            }
+            int next = transitions[node * ALPHABET_SIZE + letter];
+            if (next == 0) {
+                next = newNode();
+                transitions[node * ALPHABET_SIZE + letter] = next;
+                leaf[node] = false;
+            }
+            node = next;
+        }
+        accepted[node] = kind.ordinal() + 1;
+        return this;
+    }
+
+    private int newNode() {
+        if (nodes == accepted.length) {
+            transitions = Arrays.copyOf(transitions, nodes * 2 * ALPHABET_SIZE);
+            accepted = Arrays.copyOf(accepted, nodes * 2);
+            leaf = Arrays.copyOf(leaf, nodes * 2);
+        }
+        leaf[nodes] = true;
+        return nodes++;
+    }
+
+    /**
+     * Matches the longest command name starting at <code>index</code>.
+     *
+     * @return a packed result for {@link #kind(int)} and {@link #length(int)}, or {@link #NEED_MORE} or
+     *         {@link #NO_MATCH}
+     */
+    int match(ByteBuf in, int index, int limit) {
+        int node = 0;
+        for (int i = index; i < limit; i++) {
+            final int letter = letter(in.getByte(i));
+            final int next = letter < 0 ? 0 : transitions[node * ALPHABET_SIZE + letter];
+            if (next == 0) {
+                return accept(node, i - index);
+            }
+            node = next;
+            if (leaf[node]) {
+                return accept(node, i + 1 - index);
+            }
+        }
+        return NEED_MORE;
+    }
+
+    private int accept(int node, int length) {
+        final int kind = accepted[node];
+        return kind == 0 ? NO_MATCH : (length << KIND_BITS) | (kind - 1);
+    }
+
+    static ImapCommand.Kind kind(int match) {
+        return KINDS[match & KIND_MASK];
+    }
+
+    static int length(int match) {
+        return match >>> KIND_BITS;
+    }
+
+    /**
+     * @return the index of an ASCII letter in the alphabet, ignoring case, or -1 for any other byte
+     */
+    private static int letter(byte b) {
+        final int letter = (b | 0x20) - 'a';
+        return letter >= 0 && letter < ALPHABET_SIZE ? letter : -1;
+    }
+}
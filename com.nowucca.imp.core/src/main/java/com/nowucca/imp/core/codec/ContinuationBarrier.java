@@ -0,0 +1,43 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+/**
+ * <p>
+ *     Written by {@link ImapRequestEncoder} after the header of a synchronizing literal.  Nothing written after
+ *     the barrier may be sent until the server answers with a continuation; {@link SynchronizingLiteralHandler}
+ *     holds it back until then.
+ * </p>
+ */
+public final class ContinuationBarrier {
+
+    private final String tag;
+    private final long remainingBytes;
+
+    /**
+     * @param tag the tag of the request whose literal is waiting
+     * @param remainingBytes how many bytes of that request follow the barrier, including those after any later
+     *                       barriers of the same request
+     */
+    public ContinuationBarrier(String tag, long remainingBytes) {
+        this.tag = tag;
+        this.remainingBytes = remainingBytes;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public long getRemainingBytes() {
+        return remainingBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "ContinuationBarrier{" +
+                "tag='" + tag + '\'' +
+                ", remainingBytes=" + remainingBytes +
+                '}';
+    }
+}
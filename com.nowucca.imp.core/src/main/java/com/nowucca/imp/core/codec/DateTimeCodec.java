@@ -0,0 +1,197 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.ImapDateTime;
+import com.nowucca.imp.core.message.command.DecodeError;
+import io.netty.buffer.ByteBuf;
+import java.nio.charset.StandardCharsets;
+import static com.nowucca.imp.core.codec.DecoderUtils.decodeFixedDay;
+import static com.nowucca.imp.core.codec.DecoderUtils.decodeMonth;
+import static com.nowucca.imp.core.codec.DecoderUtils.decodeNumber;
+import static com.nowucca.imp.core.codec.DecoderUtils.decodeYear;
+import static com.nowucca.imp.core.codec.DecoderUtils.decodeZone;
+import static java.lang.String.format;
+
+/**
+ * Reads and writes quoted RFC 3501 date-times between buffers and {@link ImapDateTime} longs, remembering the bytes
+ * of the date-times it wrote most recently.
+ */
+final class DateTimeCodec {
+
+    /**
+     * The length of a date-time, including its quotes.
+     */
+    static final int LENGTH = 28;
+
+    private static final int CACHE_BITS = 6;
+    private static final int CACHE_SIZE = 1 << CACHE_BITS;
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+    private static final int MAXIMUM_OFFSET_MINUTES = 18 * 60;
+
+    // days from 0000-03-01 to 1970-01-01
+    private static final int DAYS_0000_TO_1970 = 719468;
+
+    private static final int DAYS_PER_ERA = 146097;
+
+    private static final byte[][] MONTH_NAMES = {
+        ascii("Jan"), ascii("Feb"), ascii("Mar"), ascii("Apr"), ascii("May"), ascii("Jun"),
+        ascii("Jul"), ascii("Aug"), ascii("Sep"), ascii("Oct"), ascii("Nov"), ascii("Dec")
+    };
+
+    private final long[] cachedDateTimes = new long[CACHE_SIZE];
+    private final byte[][] cachedBytes = new byte[CACHE_SIZE][];
+
+    DateTimeCodec() {
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            cachedDateTimes[i] = ImapDateTime.NONE;
+            cachedBytes[i] = new byte[LENGTH];
+        }
+    }
+
+    /**
+     * Reads the {@link #LENGTH} bytes of a quoted date-time.
+     *
+     * @param index the index of the opening quote
+     * @return the date-time packed as an {@link ImapDateTime}
+     */
+    static long decode(ByteBuf in, int index) {
+        expect(in, index, '"');
+        final int day = decodeFixedDay(charAt(in, index + 1), charAt(in, index + 2));
+        expect(in, index + 3, '-');
+        final int month = decodeMonth(charAt(in, index + 4), charAt(in, index + 5), charAt(in, index + 6)).getValue();
+        expect(in, index + 7, '-');
+        final int year = decodeYear(charAt(in, index + 8), charAt(in, index + 9), charAt(in, index + 10),
+                charAt(in, index + 11));
+        expect(in, index + 12, ' ');
+        final int hour = decodeNumber(charAt(in, index + 13), charAt(in, index + 14));
+        expect(in, index + 15, ':');
+        final int minute = decodeNumber(charAt(in, index + 16), charAt(in, index + 17));
+        expect(in, index + 18, ':');
+        final int second = decodeNumber(charAt(in, index + 19), charAt(in, index + 20));
+        expect(in, index + 21, ' ');
+        final int zone = decodeZone(charAt(in, index + 22), charAt(in, index + 23), charAt(in, index + 24),
+                charAt(in, index + 25), charAt(in, index + 26));
+        expect(in, index + 27, '"');
+
+        if (day < 1 || day > daysInMonth(year, month)) {
+            throw DecodeError.INVALID_DATE_TIME.exception();
+        }
+        if (hour > 23 || minute > 59 || second > 59) {
+            throw DecodeError.INVALID_DATE_TIME.exception();
+        }
+        // no further from UTC than a ZoneOffset allows, so that every date-time read can be a ZonedDateTime
+        final int offsetMinutes = zone / 100 * 60 + zone % 100;
+        if (Math.abs(zone % 100) > 59 || Math.abs(offsetMinutes) > MAXIMUM_OFFSET_MINUTES) {
+            throw DecodeError.INVALID_DATE_TIME.exception();
+        }
+        final long epochSecond = epochDay(year, month, day) * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second
+                - offsetMinutes * 60;
+        return ImapDateTime.pack(epochSecond, offsetMinutes);
+    }
+
+    /**
+     * Writes a quoted date-time, in the zone offset it was read or created with.
+     */
+    void encode(long dateTime, ByteBuf out) {
+        // Fibonacci hashing, so that date-times a few seconds apart land in different slots
+        final int slot = (int) ((dateTime * GOLDEN_RATIO) >>> (Long.SIZE - CACHE_BITS));
+        final byte[] bytes = cachedBytes[slot];
+        if (cachedDateTimes[slot] != dateTime) {
+            write(dateTime, bytes);
+            cachedDateTimes[slot] = dateTime;
+        }
+        out.writeBytes(bytes);
+    }
+
+    private static void write(long dateTime, byte[] bytes) {
+        final int offsetMinutes = ImapDateTime.offsetMinutes(dateTime);
+        final long local = ImapDateTime.epochSecond(dateTime) + offsetMinutes * 60;
+        final long epochDay = Math.floorDiv(local, SECONDS_PER_DAY);
+        final int secondOfDay = (int) Math.floorMod(local, SECONDS_PER_DAY);
+
+        // civil date from days, after Howard Hinnant's civil_from_days
+        final long days = epochDay + DAYS_0000_TO_1970;
+        final long era = Math.floorDiv(days, DAYS_PER_ERA);
+        final long dayOfEra = days - era * DAYS_PER_ERA;
+        final long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        final long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final long monthIndex = (5 * dayOfYear + 2) / 153;
+        final int day = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+        final int month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+        final long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            throw new IllegalArgumentException(format("Year %d cannot be written as a date-time", year));
+        }
+
+        bytes[0] = '"';
+        writeDigits(bytes, 1, day, 2);
+        bytes[3] = '-';
+        System.arraycopy(MONTH_NAMES[month - 1], 0, bytes, 4, 3);
+        bytes[7] = '-';
+        writeDigits(bytes, 8, (int) year, 4);
+        bytes[12] = ' ';
+        writeDigits(bytes, 13, secondOfDay / 3600, 2);
+        bytes[15] = ':';
+        writeDigits(bytes, 16, secondOfDay / 60 % 60, 2);
+        bytes[18] = ':';
+        writeDigits(bytes, 19, secondOfDay % 60, 2);
+        bytes[21] = ' ';
+        bytes[22] = (byte) (offsetMinutes < 0 ? '-' : '+');
+        final int offset = Math.abs(offsetMinutes);
+        writeDigits(bytes, 23, offset / 60, 2);
+        writeDigits(bytes, 25, offset % 60, 2);
+        bytes[27] = '"';
+    }
+
+    private static void writeDigits(byte[] bytes, int index, int value, int digits) {
+        for (int i = index + digits - 1; i >= index; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * @return the days since 1970-01-01 of a date in the proleptic Gregorian calendar
+     */
+    static long epochDay(int year, int month, int day) {
+        final int y = month <= 2 ? year - 1 : year;
+        final long era = Math.floorDiv(y, 400);
+        final long yearOfEra = y - era * 400;
+        final long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        final long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * DAYS_PER_ERA + dayOfEra - DAYS_0000_TO_1970;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static char charAt(ByteBuf in, int index) {
+        return (char) in.getByte(index);
+    }
+
+    private static void expect(ByteBuf in, int index, char expected) {
+        if (charAt(in, index) != expected) {
+            throw DecodeError.INVALID_DATE_TIME.exception();
+        }
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
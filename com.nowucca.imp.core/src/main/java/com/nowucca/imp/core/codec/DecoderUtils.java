@@ -3,22 +3,19 @@
  */
 package com.nowucca.imp.core.codec;
 
+import com.nowucca.imp.core.message.SequenceSet;
+import com.nowucca.imp.core.message.command.DecodeError;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.ByteBufProcessor;
-import io.netty.buffer.Unpooled;
-import io.netty.channel.ChannelHandlerContext;
 import io.netty.util.internal.AppendableCharSequence;
-import java.nio.charset.Charset;
+import java.nio.ByteOrder;
 import java.time.Month;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
+import java.util.Arrays;
 import static java.lang.String.format;
 
 /**
  */
 public final class DecoderUtils {
 
-    private static final Charset US_ASCII = Charset.forName("US-ASCII");
     static final byte[] CONTINUATION_BYTES = new byte[]{'+', '\r', '\n'};
 
     private DecoderUtils() {
@@ -32,16 +29,6 @@ public final class DecoderUtils {
         return (char) in.getByte(in.readerIndex() + readerIndexOffset);
     }
 
-    public static String readAtom(ByteBuf in) {
-        final StringBuilder atom = new StringBuilder();
-        char next = peekNextChar(in);
-        while (isATOM_CHAR(next) && !isWhitespace(next)) {
-            atom.append((char) in.readByte());
-            next = peekNextChar(in);
-        }
-        return atom.toString();
-    }
-
     public static CharSequence readQuoted(ByteBuf in) {
         final AppendableCharSequence result = new AppendableCharSequence(128);
         readExpectedByte(in, '"');
@@ -72,74 +59,6 @@ public final class DecoderUtils {
         return result;
     }
 
-    /**
-     * astring =  1*ASTRING-CHAR / quoted / literal
-     *
-     * @param in
-     * @return
-     */
-    public static CharSequence readAString(ChannelHandlerContext ctx, ByteBuf in) {
-        CharSequence aString;
-
-        final char next = peekNextChar(in);
-        switch(next) {
-            case '"':
-                aString = readQuoted(in);
-                break;
-            case '{':
-                aString = readLiteral(ctx, in).toString(US_ASCII);
-                break;
-            default:
-                aString = readAstringRaw(in);
-        }
-        return aString;
-    }
-
-    private static CharSequence readAstringRaw(ByteBuf in) {
-        final AppendableCharSequence aString = new AppendableCharSequence(128);
-        char next = peekNextChar(in);
-        while (isASTRING_CHAR(next) && !isWhitespace(next)) {
-            aString.append((char) in.readByte());
-            next = peekNextChar(in);
-        }
-        return aString;
-    }
-
-    public static ByteBuf readLiteral(ChannelHandlerContext ctx, ByteBuf in) {
-        ByteBuf result;
-
-        readExpectedByte(in, '{');
-        final long size = readNumber(in);
-        readExpectedByte(in, '}');
-        readCRLF(in);
-
-        // send continuation command back to client
-        ctx.channel().writeAndFlush(Unpooled.wrappedBuffer(CONTINUATION_BYTES));
-
-        if (size > Integer.MAX_VALUE) {
-            //TODO use countdown and composite byte buffers to read large buffers
-            throw new UnsupportedOperationException(format("Large literals not supported."));
-        } else {
-            result = readBytes(in, (int) size);
-        }
-        result.forEachByte(char8Validator);
-        return result;
-    }
-
-
-
-    private static final Char8Validator char8Validator = new Char8Validator();
-    private static final class Char8Validator implements ByteBufProcessor {
-        @Override
-        public boolean process(byte value) throws Exception {
-            if (!isCHAR8((char) value)) {
-                throw new IllegalArgumentException(format("Expected a CHAR8 character, found '%s'", value));
-            }
-            return true;
-        }
-    }
-
-
     public static CharSequence readBase64(ByteBuf in) {
         if (isBase64Char(peekNextChar(in))) {
             final AppendableCharSequence result = new AppendableCharSequence(128);
@@ -166,10 +85,6 @@ public final class DecoderUtils {
         }
     }
 
-    private static boolean isBase64Char(char c) {
-        return isAlphaChar(c) || isDigit(c) || c == '+' || c == '/';
-    }
-
     public static void readExpectedByte(ByteBuf in, char expected) {
         final char c = (char) in.readByte();
         if (c != expected) {
@@ -177,187 +92,335 @@ public final class DecoderUtils {
         }
     }
 
-    public static void readExpectedSpace(ByteBuf in) {
-        readExpectedByte(in, ' ');
-    }
-
-    public static  void readCaseInsensitiveExpectedBytes(ByteBuf in, String expectedBytes) {
-        final int expectedLength = expectedBytes.length();
-        final String actual = in.readBytes(expectedLength).toString(US_ASCII);
-        if (!expectedBytes.equalsIgnoreCase(actual)) {
-            throw new IllegalArgumentException(format("Expected '%s' but read '%s'", expectedBytes, actual));
+    /*
+     * Character classes, as bits in a 256-entry table indexed by byte value.
+     */
+    static final int CHAR = 1;
+    static final int CHAR8 = 1 << 1;
+    static final int TEXT_CHAR = 1 << 2;
+    static final int QUOTED_CHAR = 1 << 3;
+    static final int QUOTED_SPECIAL = 1 << 4;
+    static final int ATOM_SPECIAL = 1 << 5;
+    static final int ATOM_CHAR = 1 << 6;
+    static final int ASTRING_CHAR = 1 << 7;
+    static final int TAG_CHAR = 1 << 8;
+    static final int LIST_WILDCARD = 1 << 9;
+    static final int RESP_SPECIAL = 1 << 10;
+    static final int DIGIT = 1 << 11;
+    static final int NON_ZERO_DIGIT = 1 << 12;
+    static final int ALPHA = 1 << 13;
+    static final int UPPER_ALPHA = 1 << 14;
+    static final int BASE64_CHAR = 1 << 15;
+    static final int SASL_MECHANISM_CHAR = 1 << 16;
+    static final int WHITESPACE = 1 << 17;
+    static final int SEQUENCE_SET_CHAR = 1 << 18;
+
+    private static final int[] CHARACTER_CLASSES = new int[256];
+
+    static {
+        for (int c = 0; c < 256; c++) {
+            int classes = 0;
+            final boolean isChar = c >= 0x01 && c <= 0x7f;
+            final boolean isCtl = c <= 0x1f || c == 0x7f;
+            final boolean isDigit = c >= '0' && c <= '9';
+            final boolean isUpperAlpha = c >= 'A' && c <= 'Z';
+            final boolean isAlpha = isUpperAlpha || (c >= 'a' && c <= 'z');
+            final boolean isQuotedSpecial = c == '"' || c == '\\';
+            final boolean isListWildcard = c == '*' || c == '%';
+            final boolean isRespSpecial = c == ']';
+            final boolean isAtomSpecial = c == '(' || c == ')' || c == '{' || c == ' ' || isCtl ||
+                    isListWildcard || isQuotedSpecial || isRespSpecial;
+            final boolean isTextChar = isChar && c != '\r' && c != '\n';
+            final boolean isAtomChar = isChar && !isAtomSpecial;
+            final boolean isAStringChar = isAtomChar || isRespSpecial;
+
+            classes |= isChar ? CHAR : 0;
+            classes |= c >= 0x01 ? CHAR8 : 0;
+            classes |= isTextChar ? TEXT_CHAR : 0;
+            classes |= isTextChar && !isQuotedSpecial ? QUOTED_CHAR : 0;
+            classes |= isQuotedSpecial ? QUOTED_SPECIAL : 0;
+            classes |= isAtomSpecial ? ATOM_SPECIAL : 0;
+            classes |= isAtomChar ? ATOM_CHAR : 0;
+            classes |= isAStringChar ? ASTRING_CHAR : 0;
+            classes |= isAStringChar && c != '+' ? TAG_CHAR : 0;
+            classes |= isListWildcard ? LIST_WILDCARD : 0;
+            classes |= isRespSpecial ? RESP_SPECIAL : 0;
+            classes |= isDigit ? DIGIT : 0;
+            classes |= isDigit && c != '0' ? NON_ZERO_DIGIT : 0;
+            classes |= isAlpha ? ALPHA : 0;
+            classes |= isUpperAlpha ? UPPER_ALPHA : 0;
+            classes |= isAlpha || isDigit || c == '+' || c == '/' ? BASE64_CHAR : 0;
+            classes |= isUpperAlpha || isDigit || c == '-' || c == '_' ? SASL_MECHANISM_CHAR : 0;
+            classes |= c == ' ' || c == '\n' || c == '\r' || c == '\t' ? WHITESPACE : 0;
+            classes |= isDigit || c == '*' || c == ':' || c == ',' ? SEQUENCE_SET_CHAR : 0;
+            CHARACTER_CLASSES[c] = classes;
         }
     }
 
-
-    public static long readNumber(ByteBuf in) {
-        final StringBuilder digits = new StringBuilder();
-        char c = peekNextChar(in);
-        while (isDigit(c)) {
-            digits.append((char) in.readByte());
-            c = peekNextChar(in);
-        }
-        return Long.parseLong(digits.toString());
+    /**
+     * @return whether the byte belongs to any of the given character classes
+     */
+    static boolean is(byte b, int characterClasses) {
+        return (CHARACTER_CLASSES[b & 0xff] & characterClasses) != 0;
     }
 
-    public static ByteBuf readBytes(ByteBuf in, int size) {
-        return in.readBytes(size);
+    private static boolean is(char c, int characterClasses) {
+        return c < CHARACTER_CLASSES.length && (CHARACTER_CLASSES[c] & characterClasses) != 0;
     }
 
-
-    public static void readCRLF(ByteBuf in) {
-        readExpectedByte(in, '\r');
-        readExpectedByte(in, '\n');
+    private static boolean isBase64Char(char c) {
+        return is(c, BASE64_CHAR);
     }
 
-
     public static boolean isSASLMechanismChar(char c) {
-        return isUpperAlphaChar(c) || isDigit(c) || c == '-' || c == '_';
-    }
-
-    private static boolean isUpperAlphaChar(char c) {
-        return c >= 0x41 && c <= 0x5A;
-    }
-
-    private static boolean isAlphaChar(char c) {
-        return (c >= 0x41 && c <= 0x5A) ||
-               (c >= 0x61 && c <= 0x7A);
+        return is(c, SASL_MECHANISM_CHAR);
     }
 
     public static boolean isDigit(char c) {
-        return c >= 0x30 && c <= 0x39;
+        return is(c, DIGIT);
     }
 
     public static boolean isNonZeroDigit(char c) {
-        return c >= 0x31 && c <= 0x39;
+        return is(c, NON_ZERO_DIGIT);
     }
 
     public static boolean isQuotedChar(char c) {
-        return isTextChar(c) && !isQuotedSpecial(c);
+        return is(c, QUOTED_CHAR);
     }
 
     public static boolean isTextChar(char c) {
-        return isCHAR(c) && c != '\r' && c != '\n';
+        return is(c, TEXT_CHAR);
     }
 
-
     public static boolean isTagChar(char c) {
-        return isASTRING_CHAR(c) && c != '+';
+        return is(c, TAG_CHAR);
     }
 
     public static boolean isATOM_CHAR(char c) {
-        return isCHAR(c) && !isAtomSpecial(c);
+        return is(c, ATOM_CHAR);
     }
 
     public static boolean isASTRING_CHAR(char c) {
-        return isATOM_CHAR(c) || isRespSpecial(c);
+        return is(c, ASTRING_CHAR);
     }
 
     public static boolean isCHAR(char c) {
-        return c >= 0x01 && c <= 0x7f;
+        return is(c, CHAR);
     }
 
     public static boolean isCHAR8(char c) {
-        return c >= 0x01 && c <= 0xff;
+        return is(c, CHAR8);
     }
 
     public static boolean isAtomSpecial(char c) {
-        return c == '(' || c == ')' || c == '{' || c == ' ' || c == Character.CONTROL ||
-                isListWildcard(c) || isQuotedSpecial(c) || isRespSpecial(c);
+        return is(c, ATOM_SPECIAL);
     }
 
     public static boolean isListWildcard(char c) {
-        return c == '*' || c == '%';
+        return is(c, LIST_WILDCARD);
     }
 
     public static boolean isQuotedSpecial(char c) {
-        return c == '"' || c == '\\';
+        return is(c, QUOTED_SPECIAL);
     }
 
     public static boolean isRespSpecial(char c) {
-        return c == ']';
+        return is(c, RESP_SPECIAL);
     }
 
     public static boolean isWhitespace(char c) {
-        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+        return is(c, WHITESPACE);
     }
 
+    /*
+     * Word-at-a-time scanning.  Each helper below computes, for the eight bytes of a word, a mask whose high bit is
+     * set in exactly those bytes that match.  No carry crosses a byte boundary, so the first set bit marks the first
+     * matching byte.
+     */
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW_BITS = 0x7f7f7f7f7f7f7f7fL;
+    private static final long HIGH_BITS = 0x8080808080808080L;
 
-    public static ZonedDateTime readOptionalDateTime(ByteBuf in) {
-        if (peekNextChar(in) != '"') {
-            return null;
-        }
-
-        final CharSequence chars = readQuoted(in);
-        /*
-        date-time       = DQUOTE date-day-fixed "-" date-month "-" date-year
-                  SP time SP zone DQUOTE
-
-        date-day        = 1*2DIGIT
-                    ; Day of month
-
-        date-day-fixed  = (SP DIGIT) / 2DIGIT
-                            ; Fixed-format version of date-day
-
-        date-month      = "Jan" / "Feb" / "Mar" / "Apr" / "May" / "Jun" /
-                          "Jul" / "Aug" / "Sep" / "Oct" / "Nov" / "Dec"
+    private static long zeroBytes(long word) {
+        return ~(((word & LOW_BITS) + LOW_BITS) | word | LOW_BITS);
+    }
 
-        date-text       = date-day "-" date-month "-" date-year
+    private static long bytesEqualTo(long word, int b) {
+        return zeroBytes(word ^ (ONES * b));
+    }
 
-        date-year       = 4DIGIT
+    /**
+     * @param n at most 0x80
+     */
+    private static long bytesBelow(long word, int n) {
+        return ~(((word & LOW_BITS) + ONES * (0x80 - n)) | word | LOW_BITS);
+    }
 
-        time            = 2DIGIT ":" 2DIGIT ":" 2DIGIT
-                    ; Hours minutes seconds
+    private static int firstMatch(long mask, ByteOrder order) {
+        return (order == ByteOrder.BIG_ENDIAN ? Long.numberOfLeadingZeros(mask) : Long.numberOfTrailingZeros(mask))
+                >>> 3;
+    }
 
-        zone            = ("+" / "-") 4DIGIT
-                    ; Signed four-digit value of hhmm representing
-                    ; hours and minutes east of Greenwich (that is,
-                    ; the amount that the given time differs from
-                    ; Universal Time).  Subtracting the timezone
-                    ; from the given time will give the UT form.
-                    ; The Universal Time zone is "+0000".
-         */
-        if (chars.toString().length() != 26) {
-            throw new IllegalArgumentException(format("Expected valid date-time, found %s", chars));
+    /**
+     * Finds the first byte that cannot continue an astring atom or, if <code>tag</code>, a tag.
+     *
+     * @return the index of that byte, or -1 if every byte from <code>from</code> up to <code>to</code> can
+     */
+    static int indexOfAtomEnd(ByteBuf in, int from, int to, boolean tag) {
+        final ByteOrder order = in.order();
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            final long word = in.getLong(i);
+            long mask = (word & HIGH_BITS) | bytesBelow(word, 0x21) | bytesEqualTo(word, 0x7f) |
+                    bytesEqualTo(word, '(') | bytesEqualTo(word, ')') | bytesEqualTo(word, '{') |
+                    bytesEqualTo(word, '%') | bytesEqualTo(word, '*') |
+                    bytesEqualTo(word, '"') | bytesEqualTo(word, '\\');
+            if (tag) {
+                mask |= bytesEqualTo(word, '+');
+            }
+            if (mask != 0) {
+                return i + firstMatch(mask, order);
+            }
         }
+        final int characterClass = tag ? TAG_CHAR : ASTRING_CHAR;
+        for (; i < to; i++) {
+            if (!is(in.getByte(i), characterClass)) {
+                return i;
+            }
+        }
+        return -1;
+    }
 
-        final char day1 = chars.charAt(0);
-        final char day2 = chars.charAt(1);
-        final int day = decodeFixedDay(day1, day2);
-
-        final char month1 = chars.charAt(3);
-        final char month2 = chars.charAt(4);
-        final char month3 = chars.charAt(5);
-        final Month month = decodeMonth(month1, month2, month3);
-
-        final char year1 = chars.charAt(7);
-        final char year2 = chars.charAt(8);
-        final char year3 = chars.charAt(9);
-        final char year4 = chars.charAt(10);
-        final int year = decodeYear(year1, year2, year3, year4);
-
+    /**
+     * Finds the first byte that is not CHAR8, which is to say the first NUL.
+     *
+     * @return the index of that byte, or -1 if every byte from <code>from</code> up to <code>to</code> is CHAR8
+     */
+    static int indexOfNonChar8(ByteBuf in, int from, int to) {
+        final ByteOrder order = in.order();
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            final long mask = zeroBytes(in.getLong(i));
+            if (mask != 0) {
+                return i + firstMatch(mask, order);
+            }
+        }
+        for (; i < to; i++) {
+            if (in.getByte(i) == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
 
-        final char sign = chars.charAt(21);
-        final char zonehour1 = chars.charAt(22);
-        final char zonehour2 = chars.charAt(23);
-        final char zoneminute1 = chars.charAt(24);
-        final char zoneminute2 = chars.charAt(25);
-        final int offset = decodeZone(sign, zonehour1, zonehour2, zoneminute1, zoneminute2);
+    /**
+     * @return the index of the first byte from <code>from</code> up to <code>to</code> equal to <code>a</code> or
+     *         <code>b</code>, or -1 if there is none
+     */
+    static int indexOfEither(ByteBuf in, int from, int to, byte a, byte b) {
+        final ByteOrder order = in.order();
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            final long word = in.getLong(i);
+            final long mask = bytesEqualTo(word, a & 0xff) | bytesEqualTo(word, b & 0xff);
+            if (mask != 0) {
+                return i + firstMatch(mask, order);
+            }
+        }
+        for (; i < to; i++) {
+            final byte c = in.getByte(i);
+            if (c == a || c == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
 
 
-        final char hour1 = chars.charAt(12);
-        final char hour2 = chars.charAt(13);
-        final int hour = applyHourOffset(offset, decodeNumber(hour1, hour2));
+    /**
+     * Finds the first byte that cannot continue a sequence-set: anything but a digit, '*', ':' or ','.
+     *
+     * @return the index of that byte, or -1 if every byte from <code>from</code> up to <code>to</code> can
+     */
+    static int indexOfSequenceSetEnd(ByteBuf in, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!is(in.getByte(i), SEQUENCE_SET_CHAR)) {
+                return i;
+            }
+        }
+        return -1;
+    }
 
-        final char minute1 = chars.charAt(15);
-        final char minute2 = chars.charAt(16);
-        final int minute = applyMinuteOffset(offset, decodeNumber(minute1, minute2));
+    /**
+     * Parses the sequence-set held from <code>from</code> up to <code>to</code>, straight into the ranges of a
+     * {@link SequenceSet}.
+     *
+     * <pre>
+     * sequence-set    = (seq-number / seq-range) ["," sequence-set]
+     * seq-range       = seq-number ":" seq-number
+     * seq-number      = nz-number / "*"
+     * </pre>
+     */
+    static SequenceSet parseSequenceSet(ByteBuf in, int from, int to) {
+        int[] ranges = new int[8];
+        int count = 0;
+        int i = from;
+        while (true) {
+            final long start = parseSequenceNumber(in, i, to);
+            i = sequenceNumberEnd(in, i, to);
+            long end = start;
+            if (i < to && in.getByte(i) == ':') {
+                end = parseSequenceNumber(in, ++i, to);
+                i = sequenceNumberEnd(in, i, to);
+            }
+            if (2 * count == ranges.length) {
+                ranges = Arrays.copyOf(ranges, 2 * ranges.length);
+            }
+            ranges[2 * count] = SequenceSet.stored(Math.min(start, end));
+            ranges[2 * count + 1] = SequenceSet.stored(Math.max(start, end));
+            count++;
+            if (i == to) {
+                return SequenceSet.valueOf(ranges, count);
+            }
+            if (in.getByte(i++) != ',') {
+                throw DecodeError.INVALID_SEQUENCE_SET.exception();
+            }
+        }
+    }
 
-        final char second1 = chars.charAt(18);
-        final char second2 = chars.charAt(19);
-        final int second = decodeNumber(second1, second2);
+    private static long parseSequenceNumber(ByteBuf in, int from, int to) {
+        if (from == to) {
+            throw DecodeError.INVALID_SEQUENCE_SET.exception();
+        }
+        final byte first = in.getByte(from);
+        if (first == '*') {
+            return SequenceSet.STAR;
+        }
+        if (!is(first, NON_ZERO_DIGIT)) {
+            throw DecodeError.INVALID_SEQUENCE_SET.exception();
+        }
+        long value = first - '0';
+        for (int i = from + 1; i < to && is(in.getByte(i), DIGIT); i++) {
+            value = value * 10 + in.getByte(i) - '0';
+            if (value > SequenceSet.MAXIMUM_NUMBER) {
+                throw DecodeError.INVALID_SEQUENCE_SET.exception();
+            }
+        }
+        return value;
+    }
 
-        return ZonedDateTime.of(year, month.getValue(), day, hour, minute, second, 0, ZoneId.of("GMT"));
+    /**
+     * @return the index of the byte after the sequence number parsed at <code>from</code>
+     */
+    private static int sequenceNumberEnd(ByteBuf in, int from, int to) {
+        if (in.getByte(from) == '*') {
+            return from + 1;
+        }
+        int i = from + 1;
+        while (i < to && is(in.getByte(i), DIGIT)) {
+            i++;
+        }
+        return i;
     }
 
     public static int decodeFixedDay(final char dayHigh, final char dayLow) throws IllegalArgumentException {
@@ -374,7 +437,7 @@ public final class DecoderUtils {
             case ' ':
                 return result;
         }
-        throw new IllegalArgumentException(format("Expected SP, 0, 1, 2, or 3 but was %s", dayHigh));
+        throw DecodeError.INVALID_DATE_TIME.exception();
     }
 
     private static final int ASCII_ZERO = '0';
@@ -382,7 +445,7 @@ public final class DecoderUtils {
     public static int decodeDigit(char c) {
         final int result = c - ASCII_ZERO;
         if (result < 0 || result > 9) {
-            throw new IllegalArgumentException(format("Expected a digit but was '%s'", c));
+            throw DecodeError.INVALID_DATE_TIME.exception();
         }
         return result;
     }
@@ -557,8 +620,7 @@ public final class DecoderUtils {
                 result = Month.DECEMBER;
                 break;
             default:
-                throw new IllegalArgumentException(format("Expected month name but was %s",
-                        monthFirstChar + monthSecondChar + monthThirdChar));
+                throw DecodeError.INVALID_DATE_TIME.exception();
         }
         return result;
     }
@@ -569,16 +631,6 @@ public final class DecoderUtils {
                 (decodeDigit(decadeChar) * 10) + decodeDigit(yearChar);
     }
 
-    private static int applyMinuteOffset(final int offset, final int minutes) {
-        final int result = minutes - ((Math.abs(offset) % 100) * (offset == 0 ? 0 : offset > 0 ? 1 : -1));
-        return result;
-    }
-
-    private static int applyHourOffset(final int offset, final int hours) {
-        final int result = hours - (offset / 100);
-        return result;
-    }
-
     public static int decodeNumber(final char high, final char low)  {
         return (10 * decodeDigit(high)) + decodeDigit(low);
     }
@@ -586,7 +638,7 @@ public final class DecoderUtils {
     public static int decodeZone(char zoneDeterminent, char zoneDigitOne, char zoneDigitTwo,
                                  char zoneDigitThree, char zoneDigitFour)  {
         if (isInvalidZone(zoneDeterminent, zoneDigitOne, zoneDigitTwo, zoneDigitThree, zoneDigitFour)) {
-            throw createTimeZoneException(zoneDeterminent, zoneDigitOne, zoneDigitTwo, zoneDigitThree, zoneDigitFour);
+            throw DecodeError.INVALID_DATE_TIME.exception();
         }
         final int sign;
         if (zoneDeterminent == '+') {
@@ -594,22 +646,13 @@ public final class DecoderUtils {
         } else if (zoneDeterminent == '-') {
             sign = -1;
         } else {
-            throw createTimeZoneException(zoneDeterminent, zoneDigitOne, zoneDigitTwo, zoneDigitThree, zoneDigitFour);
+            throw DecodeError.INVALID_DATE_TIME.exception();
         }
         final int result = sign * ((1000 * decodeDigit(zoneDigitOne)) + (100 * decodeDigit(zoneDigitTwo)) +
                 (10 * decodeDigit(zoneDigitThree)) + decodeDigit(zoneDigitFour));
         return result;
     }
 
-    private static RuntimeException createTimeZoneException(char zoneDeterminent,
-                                                            char zoneDigitOne,
-                                                            char zoneDigitTwo,
-                                                            char zoneDigitThree,
-                                                            char zoneDigitFour) {
-        return new IllegalArgumentException(format("Expected time-zone but was %s",
-                zoneDeterminent + zoneDigitOne + zoneDigitTwo + zoneDigitThree + zoneDigitFour));
-    }
-
     private static boolean isInvalidZone(char zoneDeterminent, char zoneDigitOne, char zoneDigitTwo,
                                          char zoneDigitThree, char zoneDigitFour) {
         final boolean result;
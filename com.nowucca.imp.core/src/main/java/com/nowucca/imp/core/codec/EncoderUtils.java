@@ -3,7 +3,34 @@
  */
 package com.nowucca.imp.core.codec;
 
+import io.netty.buffer.ByteBuf;
+
 /**
  */
-public class EncoderUtils {
+public final class EncoderUtils {
+
+    private EncoderUtils() {
+    }
+
+    /**
+     * @return the number of digits <code>writeDecimal</code> writes for a non-negative value
+     */
+    static int decimalLength(long value) {
+        int length = 1;
+        while (value >= 10) {
+            value /= 10;
+            length++;
+        }
+        return length;
+    }
+
+    static void writeDecimal(long value, ByteBuf out) {
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.writeByte((int) ('0' + value / divisor % 10));
+        }
+    }
 }
@@ -0,0 +1,402 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.FetchAttributes;
+import com.nowucca.imp.core.message.command.DecodeError;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.AsciiString;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import static com.nowucca.imp.core.codec.DecoderUtils.ALPHA;
+import static com.nowucca.imp.core.codec.DecoderUtils.ASTRING_CHAR;
+import static com.nowucca.imp.core.codec.DecoderUtils.DIGIT;
+import static com.nowucca.imp.core.codec.DecoderUtils.NON_ZERO_DIGIT;
+import static com.nowucca.imp.core.codec.DecoderUtils.QUOTED_CHAR;
+import static com.nowucca.imp.core.codec.DecoderUtils.QUOTED_SPECIAL;
+import static com.nowucca.imp.core.codec.DecoderUtils.is;
+import static com.nowucca.imp.core.codec.EncoderUtils.decimalLength;
+import static com.nowucca.imp.core.codec.EncoderUtils.writeDecimal;
+import static com.nowucca.imp.core.codec.ImapCharacterConstants.SP;
+import static com.nowucca.imp.core.message.FetchAttributes.*;
+
+/**
+ * Reads and writes the attributes of a FETCH between buffers and {@link FetchAttributes}, noting body sections as
+ * offsets into a single string.
+ */
+final class FetchAttributesCodec {
+
+    // the name of each simple attribute, by bit
+    static final byte[][] ATTRIBUTE_NAMES = {
+        ascii("ENVELOPE"), ascii("FLAGS"), ascii("INTERNALDATE"), ascii("RFC822"),
+        ascii("RFC822.HEADER"), ascii("RFC822.SIZE"), ascii("RFC822.TEXT"), ascii("BODY"),
+        ascii("BODYSTRUCTURE"), ascii("UID")
+    };
+
+    private static final byte[] BODY_PEEK = ascii("BODY.PEEK");
+    private static final byte[] ALL_NAME = ascii("ALL");
+    private static final byte[] FAST_NAME = ascii("FAST");
+    private static final byte[] FULL_NAME = ascii("FULL");
+
+    // the name of each section type, by type
+    private static final byte[][] SECTION_TYPE_NAMES = {
+        null, ascii("HEADER"), ascii("HEADER.FIELDS"), ascii("HEADER.FIELDS.NOT"), ascii("TEXT"),
+        ascii("MIME")
+    };
+
+    private static final int SECTION_STRIDE = 5;
+
+    // the sections read so far, with their specs' indexes in the buffer
+    private int[] sections = new int[4 * SECTION_STRIDE];
+    private int sectionCount;
+    // the index just past the last token read
+    private int index;
+
+    /**
+     * Reads the attributes that follow the sequence set of a FETCH.
+     *
+     * @param from the index of the first byte of the attributes
+     * @param to the index just past their last byte
+     */
+    FetchAttributes decode(ByteBuf in, int from, int to) {
+        sectionCount = 0;
+        index = from;
+        int attributes = 0;
+        if (from < to && in.getByte(from) == '(') {
+            index++;
+            do {
+                attributes |= readAttribute(in, to);
+                if (index == to) {
+                    throw DecodeError.INVALID_FETCH_ATTRIBUTE.exception();
+                }
+            } while (in.getByte(index++) == SP);
+            if (in.getByte(index - 1) != ')') {
+                throw DecodeError.INVALID_FETCH_ATTRIBUTE.exception();
+            }
+        } else {
+            final int end = nameEnd(in, from, to);
+            if (matches(in, from, end, ALL_NAME)) {
+                attributes = ALL;
+                index = end;
+            } else if (matches(in, from, end, FAST_NAME)) {
+                attributes = FAST;
+                index = end;
+            } else if (matches(in, from, end, FULL_NAME)) {
+                attributes = FULL;
+                index = end;
+            } else {
+                attributes = readAttribute(in, to);
+            }
+        }
+        if (index != to) {
+            throw DecodeError.INVALID_FETCH_ATTRIBUTE.exception();
+        }
+        return sectionCount == 0 ? FetchAttributes.valueOf(attributes) : newFetchAttributes(in, attributes);
+    }
+
+    /**
+     * Reads a fetch-att at the index, noting a body section if it is one.
+     *
+     * @return the attribute's bit, or 0 for a body section
+     */
+    private int readAttribute(ByteBuf in, int to) {
+        final int start = index;
+        final int end = nameEnd(in, start, to);
+        index = end;
+        final boolean section = end < to && in.getByte(end) == '[';
+        if (section) {
+            final boolean peek = matches(in, start, end, BODY_PEEK);
+            if (!peek && !matches(in, start, end, ATTRIBUTE_NAMES[7])) {
+                throw DecodeError.INVALID_FETCH_ATTRIBUTE.exception();
+            }
+            readSection(in, to, peek);
+            return 0;
+        }
+        for (int bit = 0; bit < ATTRIBUTE_NAMES.length; bit++) {
+            if (matches(in, start, end, ATTRIBUTE_NAMES[bit])) {
+                return 1 << bit;
+            }
+        }
+        throw DecodeError.INVALID_FETCH_ATTRIBUTE.exception();
+    }
+
+    /**
+     * Reads a section, starting at its opening bracket, and any partial range after it.
+     */
+    private void readSection(ByteBuf in, int to, boolean peek) {
+        final int specStart = ++index;
+        int flags = peek ? SECTION_PEEK : 0;
+        if (index < to && is(in.getByte(index), DIGIT)) {
+            flags |= SECTION_PART;
+            readNumber(in, to, true);
+            while (index + 1 < to && in.getByte(index) == '.' && is(in.getByte(index + 1), DIGIT)) {
+                index++;
+                readNumber(in, to, true);
+            }
+            if (index < to && in.getByte(index) == '.') {
+                index++;
+                flags |= readSectionText(in, to, true);
+            }
+        } else if (index < to && in.getByte(index) != ']') {
+            flags |= readSectionText(in, to, false);
+        }
+        if (index == to || in.getByte(index) != ']') {
+            throw DecodeError.INVALID_SECTION.exception();
+        }
+        final int specEnd = index++;
+
+        long offset = 0;
+        long length = 0;
+        if (index < to && in.getByte(index) == '<') {
+            flags |= SECTION_PARTIAL;
+            index++;
+            offset = readNumber(in, to, false);
+            if (index == to || in.getByte(index++) != '.') {
+                throw DecodeError.INVALID_FETCH_ATTRIBUTE.exception();
+            }
+            length = readNumber(in, to, true);
+            if (index == to || in.getByte(index++) != '>') {
+                throw DecodeError.INVALID_FETCH_ATTRIBUTE.exception();
+            }
+        }
+
+        if ((sectionCount + 1) * SECTION_STRIDE > sections.length) {
+            sections = Arrays.copyOf(sections, sections.length * 2);
+        }
+        final int row = sectionCount++ * SECTION_STRIDE;
+        sections[row] = flags;
+        sections[row + 1] = specStart;
+        sections[row + 2] = specEnd;
+        sections[row + 3] = (int) offset;
+        sections[row + 4] = (int) length;
+    }
+
+    /**
+     * @return the type of the section-text, or section-msgtext if there is no part
+     */
+    private int readSectionText(ByteBuf in, int to, boolean part) {
+        final int start = index;
+        final int end = nameEnd(in, start, to);
+        int type = SECTION_HEADER;
+        while (type < SECTION_TYPE_NAMES.length && !matches(in, start, end, SECTION_TYPE_NAMES[type])) {
+            type++;
+        }
+        if (type == SECTION_TYPE_NAMES.length || type == SECTION_MIME && !part) {
+            throw DecodeError.INVALID_SECTION.exception();
+        }
+        index = end;
+        if (type == SECTION_HEADER_FIELDS || type == SECTION_HEADER_FIELDS_NOT) {
+            readHeaderList(in, to);
+        }
+        return type;
+    }
+
+    /**
+     * Reads the space and parenthesized header field names after HEADER.FIELDS.
+     */
+    private void readHeaderList(ByteBuf in, int to) {
+        if (index + 1 >= to || in.getByte(index) != SP || in.getByte(index + 1) != '(') {
+            throw DecodeError.INVALID_SECTION.exception();
+        }
+        index += 2;
+        do {
+            readHeaderFieldName(in, to);
+            if (index == to) {
+                throw DecodeError.INVALID_SECTION.exception();
+            }
+        } while (in.getByte(index++) == SP);
+        if (in.getByte(index - 1) != ')') {
+            throw DecodeError.INVALID_SECTION.exception();
+        }
+    }
+
+    private void readHeaderFieldName(ByteBuf in, int to) {
+        final int start = index;
+        if (index < to && in.getByte(index) == '"') {
+            index++;
+            while (index < to && in.getByte(index) != '"') {
+                final byte b = in.getByte(index++);
+                if (is(b, QUOTED_SPECIAL)) {
+                    if (index == to || !is(in.getByte(index++), QUOTED_SPECIAL)) {
+                        throw DecodeError.INVALID_QUOTED_ESCAPE.exception();
+                    }
+                } else if (!is(b, QUOTED_CHAR)) {
+                    throw DecodeError.INVALID_QUOTED_CHARACTER.exception();
+                }
+            }
+            if (index++ == to) {
+                throw DecodeError.INVALID_SECTION.exception();
+            }
+            return;
+        }
+        // ']' may end an astring, but not within a section
+        while (index < to && is(in.getByte(index), ASTRING_CHAR) && in.getByte(index) != ']') {
+            index++;
+        }
+        if (index == start) {
+            throw DecodeError.INVALID_SECTION.exception();
+        }
+    }
+
+    /**
+     * Reads a number, or an nz-number if <code>nonZero</code>, of up to 32 bits.
+     */
+    private long readNumber(ByteBuf in, int to, boolean nonZero) {
+        if (index == to || !is(in.getByte(index), nonZero ? NON_ZERO_DIGIT : DIGIT)) {
+            throw DecodeError.INVALID_FETCH_ATTRIBUTE.exception();
+        }
+        long value = 0;
+        for (; index < to && is(in.getByte(index), DIGIT); index++) {
+            value = value * 10 + in.getByte(index) - '0';
+            if (value > 0xffffffffL) {
+                throw DecodeError.INVALID_FETCH_ATTRIBUTE.exception();
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Copies the specs of the sections read into one string, and the sections into an array of their own.
+     */
+    private FetchAttributes newFetchAttributes(ByteBuf in, int attributes) {
+        int specsLength = 0;
+        for (int row = 0; row < sectionCount * SECTION_STRIDE; row += SECTION_STRIDE) {
+            specsLength += sections[row + 2] - sections[row + 1];
+        }
+        final byte[] specs = new byte[specsLength];
+        final int[] result = Arrays.copyOf(sections, sectionCount * SECTION_STRIDE);
+        int offset = 0;
+        for (int row = 0; row < result.length; row += SECTION_STRIDE) {
+            final int length = result[row + 2] - result[row + 1];
+            in.getBytes(result[row + 1], specs, offset, length);
+            result[row + 1] = offset;
+            result[row + 2] = offset + length;
+            offset += length;
+        }
+        return new FetchAttributes(attributes, new AsciiString(specs, false), result);
+    }
+
+    /**
+     * @return the number of bytes <code>encode</code> writes for the attributes
+     */
+    static int length(FetchAttributes attributes) {
+        final byte[] macro = macroName(attributes);
+        if (macro != null) {
+            return macro.length;
+        }
+        final int simple = attributes.getAttributes();
+        final int count = Integer.bitCount(simple) + attributes.getSectionCount();
+        int length = count == 1 ? 0 : count + 1;
+        for (int bit = 0; bit < ATTRIBUTE_NAMES.length; bit++) {
+            if ((simple & 1 << bit) != 0) {
+                length += ATTRIBUTE_NAMES[bit].length;
+            }
+        }
+        for (int i = 0; i < attributes.getSectionCount(); i++) {
+            length += (attributes.isPeek(i) ? BODY_PEEK.length : 4) + 2;
+            length += attributes.getSectionSpecEnd(i) - attributes.getSectionSpecStart(i);
+            if (attributes.hasPartial(i)) {
+                length += decimalLength(attributes.getPartialOffset(i))
+                        + decimalLength(attributes.getPartialLength(i)) + 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Writes the attributes as a macro if they are exactly one, as a single attribute, or as a parenthesized list of
+     * the simple attributes followed by the sections in the order they were read.
+     */
+    static void encode(FetchAttributes attributes, ByteBuf out) {
+        final byte[] macro = macroName(attributes);
+        if (macro != null) {
+            out.writeBytes(macro);
+            return;
+        }
+        final int simple = attributes.getAttributes();
+        final boolean list = Integer.bitCount(simple) + attributes.getSectionCount() != 1;
+        if (list) {
+            out.writeByte('(');
+        }
+        boolean prependSpace = false;
+        for (int bit = 0; bit < ATTRIBUTE_NAMES.length; bit++) {
+            if ((simple & 1 << bit) != 0) {
+                if (prependSpace) {
+                    out.writeByte(SP);
+                }
+                out.writeBytes(ATTRIBUTE_NAMES[bit]);
+                prependSpace = true;
+            }
+        }
+        final AsciiString specs = attributes.getSectionSpecs();
+        for (int i = 0; i < attributes.getSectionCount(); i++) {
+            if (prependSpace) {
+                out.writeByte(SP);
+            }
+            out.writeBytes(attributes.isPeek(i) ? BODY_PEEK : ATTRIBUTE_NAMES[7]);
+            out.writeByte('[');
+            final int start = attributes.getSectionSpecStart(i);
+            out.writeBytes(specs.array(), specs.arrayOffset() + start, attributes.getSectionSpecEnd(i) - start);
+            out.writeByte(']');
+            if (attributes.hasPartial(i)) {
+                out.writeByte('<');
+                writeDecimal(attributes.getPartialOffset(i), out);
+                out.writeByte('.');
+                writeDecimal(attributes.getPartialLength(i), out);
+                out.writeByte('>');
+            }
+            prependSpace = true;
+        }
+        if (list) {
+            out.writeByte(')');
+        }
+    }
+
+    private static byte[] macroName(FetchAttributes attributes) {
+        if (attributes.getSectionCount() > 0) {
+            return null;
+        }
+        switch (attributes.getAttributes()) {
+            case ALL:
+                return ALL_NAME;
+            case FAST:
+                return FAST_NAME;
+            case FULL:
+                return FULL_NAME;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the index of the first byte from <code>from</code> that cannot be part of an attribute or section
+     *         name, or <code>to</code>
+     */
+    private static int nameEnd(ByteBuf in, int from, int to) {
+        int i = from;
+        while (i < to && (is(in.getByte(i), ALPHA | DIGIT) || in.getByte(i) == '.')) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return whether the bytes from <code>from</code> to <code>to</code> are the upper case name, ignoring case
+     */
+    static boolean matches(ByteBuf in, int from, int to, byte[] name) {
+        if (to - from != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if ((in.getByte(from + i) | 0x20) != (name[i] | 0x20)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
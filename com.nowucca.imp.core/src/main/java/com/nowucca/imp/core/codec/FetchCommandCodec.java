@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.FetchAttributes;
+import com.nowucca.imp.core.message.SequenceSet;
+import com.nowucca.imp.core.message.command.FetchCommand;
+import com.nowucca.imp.core.message.command.ImapCommand;
+import io.netty.buffer.ByteBuf;
+import static com.nowucca.imp.core.codec.ImapCharacterConstants.CR;
+import static com.nowucca.imp.core.codec.ImapCharacterConstants.LF;
+import static com.nowucca.imp.core.codec.ImapCharacterConstants.SP;
+import static java.lang.String.format;
+
+/**
+ * <pre>
+ * fetch           = "FETCH" SP sequence-set SP ("ALL" / "FULL" / "FAST" /
+ *                   fetch-att / "(" fetch-att *(SP fetch-att) ")")
+ * </pre>
+ */
+final class FetchCommandCodec implements CommandCodec<FetchCommand> {
+
+    @Override
+    public ImapCommand.Kind getKind() {
+        return ImapCommand.Kind.FETCH;
+    }
+
+    @Override
+    public String getCommandName() {
+        return "FETCH";
+    }
+
+    @Override
+    public boolean hasArguments() {
+        return true;
+    }
+
+    @Override
+    public FetchCommand decodeArguments(ArgumentDecoder decoder, ByteBuf in) {
+        return decodeArguments(decoder, in, false);
+    }
+
+    /**
+     * Reads the arguments of a FETCH, or of a UID FETCH after its FETCH.
+     */
+    FetchCommand decodeArguments(ArgumentDecoder decoder, ByteBuf in, boolean uid) {
+        for (;;) {
+            switch (decoder.getArgumentIndex()) {
+                case 0:
+                case 2:
+                    if (!decoder.readSpace(in)) {
+                        return null;
+                    }
+                    decoder.setArgumentIndex(decoder.getArgumentIndex() + 1);
+                    break;
+                case 1: {
+                    final SequenceSet sequenceSet = decoder.readSequenceSet(in);
+                    if (sequenceSet == null) {
+                        return null;
+                    }
+                    decoder.setArgument(0, sequenceSet);
+                    decoder.setArgumentIndex(2);
+                    break;
+                }
+                case 3: {
+                    final FetchAttributes attributes = decoder.readFetchAttributes(in);
+                    if (attributes == null) {
+                        return null;
+                    }
+                    return FetchCommand.newInstance(uid, (SequenceSet) decoder.getArgument(0), attributes);
+                }
+                default:
+                    throw new IllegalStateException(format("Unexpected FETCH argument %d",
+                            decoder.getArgumentIndex()));
+            }
+        }
+    }
+
+    @Override
+    public int argumentsLength(FetchCommand command, ArgumentEncoder encoder) {
+        return encoder.sequenceSetLength(command.getSequenceSet()) + 1
+                + encoder.fetchAttributesLength(command.getAttributes()) + 2;
+    }
+
+    @Override
+    public void encodeArguments(FetchCommand command, ArgumentEncoder encoder, ByteBuf out) {
+        encoder.encodeSequenceSet(command.getSequenceSet(), out);
+        out.writeByte(SP);
+        encoder.encodeFetchAttributes(command.getAttributes(), out);
+        out.writeByte(CR);
+        out.writeByte(LF);
+    }
+}
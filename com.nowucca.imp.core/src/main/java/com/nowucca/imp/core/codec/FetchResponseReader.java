@@ -0,0 +1,434 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.FetchAttributes;
+import com.nowucca.imp.core.message.ImapDateTime;
+import com.nowucca.imp.core.message.ImapFlags;
+import com.nowucca.imp.core.message.KeywordDictionary;
+import com.nowucca.imp.core.message.command.DecodeError;
+import com.nowucca.imp.core.message.response.DecodedImapResponse;
+import com.nowucca.imp.core.message.response.ImapResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.AsciiString;
+import java.util.Arrays;
+import static com.nowucca.imp.core.codec.DecoderUtils.ATOM_CHAR;
+import static com.nowucca.imp.core.codec.DecoderUtils.DIGIT;
+import static com.nowucca.imp.core.codec.DecoderUtils.indexOfEither;
+import static com.nowucca.imp.core.codec.DecoderUtils.is;
+import static com.nowucca.imp.core.codec.FetchAttributesCodec.ATTRIBUTE_NAMES;
+import static com.nowucca.imp.core.codec.FetchAttributesCodec.matches;
+import static com.nowucca.imp.core.codec.ImapCharacterConstants.SP;
+import static java.lang.String.format;
+
+/**
+ * Reads the attributes of a decoded FETCH response, indexing them in one scan and parsing each only when asked for.
+ * A reader is reused from one response to the next, and what it returns is only good while the response is.
+ */
+public final class FetchResponseReader {
+
+    private static final AsciiString FETCH = new AsciiString("FETCH");
+
+    // name start, name end, value start and value end of each attribute, and its bit, or 0 for any other attribute
+    private static final int STRIDE = 5;
+
+    private final FlagListCodec flagListCodec;
+
+    private ByteBuf in;
+    private boolean complete;
+    private int[] attributes = new int[8 * STRIDE];
+    private int count;
+    // whether the last attribute's value is the header of a streamed literal
+    private boolean streamed;
+    // the bits of the simple attributes present, and of those parsed so far
+    private int present;
+    private int parsed;
+
+    private long uid;
+    private long rfc822Size;
+    private long internalDate;
+    private ImapFlags flags;
+
+    public FetchResponseReader() {
+        this(new KeywordDictionary());
+    }
+
+    /**
+     * @param keywordDictionary the dictionary to intern the keywords of FLAGS in
+     */
+    public FetchResponseReader(KeywordDictionary keywordDictionary) {
+        this.flagListCodec = new FlagListCodec(keywordDictionary);
+    }
+
+    /**
+     * Finds the attributes of an untagged FETCH response, forgetting those of the last response read.
+     *
+     * @throws IllegalArgumentException if the response is not a FETCH response, or its attributes are malformed
+     */
+    public void read(DecodedImapResponse response) {
+        if (response.getType() != ImapResponse.Type.UNTAGGED
+                || !AsciiString.equalsIgnoreCase(FETCH, response.getName())) {
+            throw new IllegalArgumentException(format("Not a FETCH response: %s", response));
+        }
+        in = response.getRawBytes();
+        complete = response.isComplete();
+        count = 0;
+        streamed = false;
+        present = 0;
+        parsed = 0;
+        flags = null;
+
+        final int to = in.writerIndex() - (complete ? 2 : 0);
+        int index = in.readerIndex() + response.getTextOffset();
+        if (index == to || in.getByte(index++) != '(') {
+            throw DecodeError.INVALID_FETCH_RESPONSE.exception();
+        }
+        for (;;) {
+            index = readAttribute(in, index, to);
+            if (streamed) {
+                return;
+            }
+            if (index == to) {
+                throw DecodeError.INVALID_FETCH_RESPONSE.exception();
+            }
+            final byte b = in.getByte(index++);
+            if (b == ')') {
+                break;
+            } else if (b != SP) {
+                throw DecodeError.INVALID_FETCH_RESPONSE.exception();
+            }
+        }
+        if (index != to) {
+            throw DecodeError.INVALID_FETCH_RESPONSE.exception();
+        }
+    }
+
+    /**
+     * Notes the name and value of the attribute at the index.
+     *
+     * @return the index just past its value
+     */
+    private int readAttribute(ByteBuf in, int from, int to) {
+        final int plainEnd = nameEnd(in, from, to);
+        int index = plainEnd;
+        if (index < to && in.getByte(index) == '[') {
+            index = sectionEnd(in, index, to);
+            if (index < to && in.getByte(index) == '<') {
+                final int close = indexOfEither(in, index, to, (byte) '>', (byte) '>');
+                if (close < 0) {
+                    throw DecodeError.INVALID_FETCH_RESPONSE.exception();
+                }
+                index = close + 1;
+            }
+        }
+        if (index == from || index >= to || in.getByte(index) != SP) {
+            throw DecodeError.INVALID_FETCH_RESPONSE.exception();
+        }
+        final int nameEnd = index;
+        final int valueEnd = valueEnd(in, index + 1, to);
+
+        int bit = 0;
+        if (nameEnd == plainEnd) {
+            for (int i = 0; i < ATTRIBUTE_NAMES.length; i++) {
+                if (matches(in, from, nameEnd, ATTRIBUTE_NAMES[i])) {
+                    bit = 1 << i;
+                    break;
+                }
+            }
+        }
+        present |= bit;
+        if ((count + 1) * STRIDE > attributes.length) {
+            attributes = Arrays.copyOf(attributes, attributes.length * 2);
+        }
+        final int row = count++ * STRIDE;
+        attributes[row] = from;
+        attributes[row + 1] = nameEnd;
+        attributes[row + 2] = nameEnd + 1;
+        attributes[row + 3] = valueEnd;
+        attributes[row + 4] = bit;
+        return valueEnd;
+    }
+
+    /**
+     * @return the index just past the section that starts with the bracket at the index
+     */
+    private static int sectionEnd(ByteBuf in, int from, int to) {
+        int index = from + 1;
+        while (index < to) {
+            final byte b = in.getByte(index++);
+            if (b == ']') {
+                return index;
+            } else if (b == '"') {
+                index = quotedEnd(in, index - 1, to);
+            }
+        }
+        throw DecodeError.INVALID_FETCH_RESPONSE.exception();
+    }
+
+    /**
+     * Steps over a value: an atom, number, NIL, quoted string, literal, or a parenthesized list of them.
+     *
+     * @return the index just past the value, or <code>to</code> if it ends with a streamed literal
+     */
+    private int valueEnd(ByteBuf in, int from, int to) {
+        int index = from;
+        int depth = 0;
+        for (;;) {
+            if (index == to) {
+                throw DecodeError.INVALID_FETCH_RESPONSE.exception();
+            }
+            final byte b = in.getByte(index);
+            if (b == '(') {
+                depth++;
+                index++;
+                continue;
+            }
+            if (b == ')' && depth > 0) {
+                depth--;
+                index++;
+            } else if (b == '"') {
+                index = quotedEnd(in, index, to);
+            } else if (b == '{') {
+                index = literalEnd(in, index, to);
+                if (streamed) {
+                    return to;
+                }
+            } else {
+                final int end = atomEnd(in, index, to);
+                if (end == index) {
+                    throw DecodeError.INVALID_FETCH_RESPONSE.exception();
+                }
+                index = end;
+            }
+            if (depth == 0) {
+                return index;
+            }
+            if (index < to && in.getByte(index) == SP) {
+                index++;
+            }
+        }
+    }
+
+    /**
+     * @return the index just past the literal whose header starts at the index, or <code>to</code> if the literal is
+     *         streamed
+     */
+    private int literalEnd(ByteBuf in, int from, int to) {
+        int index = from + 1;
+        long size = 0;
+        while (index < to && is(in.getByte(index), DIGIT)) {
+            size = size * 10 + in.getByte(index++) - '0';
+            if (size > Integer.MAX_VALUE) {
+                throw DecodeError.INVALID_FETCH_RESPONSE.exception();
+            }
+        }
+        if (index == from + 1 || index + 3 > to
+                || in.getByte(index) != '}' || in.getByte(index + 1) != '\r' || in.getByte(index + 2) != '\n') {
+            throw DecodeError.INVALID_FETCH_RESPONSE.exception();
+        }
+        index += 3;
+        if (!complete && index == to) {
+            streamed = true;
+            return to;
+        }
+        if (size > to - index) {
+            throw DecodeError.INVALID_FETCH_RESPONSE.exception();
+        }
+        return index + (int) size;
+    }
+
+    /**
+     * @return the index just past the quoted string that starts at the index
+     */
+    private static int quotedEnd(ByteBuf in, int from, int to) {
+        int index = from + 1;
+        for (;;) {
+            index = indexOfEither(in, index, to, (byte) '"', (byte) '\\');
+            if (index < 0) {
+                throw DecodeError.INVALID_FETCH_RESPONSE.exception();
+            }
+            if (in.getByte(index) == '"') {
+                return index + 1;
+            }
+            index += 2;
+        }
+    }
+
+    /**
+     * @return the index of the first byte from <code>from</code> that cannot be part of an attribute name before its
+     *         section, or <code>to</code>
+     */
+    private static int nameEnd(ByteBuf in, int from, int to) {
+        int index = from;
+        while (index < to && is(in.getByte(index), ATOM_CHAR) && in.getByte(index) != '[') {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * @return the index of the first byte from <code>from</code> that ends an atom, number or flag within a value, or
+     *         <code>to</code>
+     */
+    private static int atomEnd(ByteBuf in, int from, int to) {
+        int index = from;
+        while (index < to) {
+            final byte b = in.getByte(index);
+            if (b == SP || b == '(' || b == ')' || b == '"' || b == '{' || b < SP) {
+                break;
+            }
+            index++;
+        }
+        return index;
+    }
+
+    public int getAttributeCount() {
+        return count;
+    }
+
+    /**
+     * @return the bit in {@link FetchAttributes} of the attribute, or 0 for a body section or an attribute this
+     *         reader does not know
+     */
+    public int getAttribute(int attribute) {
+        return attributes[attribute * STRIDE + 4];
+    }
+
+    /**
+     * @return whether every one of the given {@link FetchAttributes} bits is present
+     */
+    public boolean has(int attributes) {
+        return (present & attributes) == attributes;
+    }
+
+    /**
+     * @return the position of the first attribute with the given {@link FetchAttributes} bit, or -1 if there is none
+     */
+    public int indexOf(int attribute) {
+        if ((present & attribute) == 0) {
+            return -1;
+        }
+        for (int i = 0; i < count; i++) {
+            if (attributes[i * STRIDE + 4] == attribute) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the name of the attribute, with any section and origin, as a slice of the response's raw bytes
+     */
+    public ByteBuf getName(int attribute) {
+        final int row = attribute * STRIDE;
+        return in.slice(attributes[row], attributes[row + 1] - attributes[row]);
+    }
+
+    /**
+     * @return the value of the attribute exactly as it was received, as a slice of the response's raw bytes
+     */
+    public ByteBuf getValue(int attribute) {
+        final int row = attribute * STRIDE;
+        return in.slice(attributes[row + 2], attributes[row + 3] - attributes[row + 2]);
+    }
+
+    /**
+     * @return whether the value of the attribute is a literal that is streamed after the response
+     */
+    public boolean isStreamed(int attribute) {
+        return streamed && attribute == count - 1;
+    }
+
+    /**
+     * @return the UID, or -1 if there is none
+     */
+    public long getUid() {
+        if ((parsed & FetchAttributes.UID) == 0) {
+            uid = readNumber(FetchAttributes.UID);
+            parsed |= FetchAttributes.UID;
+        }
+        return uid;
+    }
+
+    /**
+     * @return the RFC822.SIZE, or -1 if there is none
+     */
+    public long getRfc822Size() {
+        if ((parsed & FetchAttributes.RFC822_SIZE) == 0) {
+            rfc822Size = readNumber(FetchAttributes.RFC822_SIZE);
+            parsed |= FetchAttributes.RFC822_SIZE;
+        }
+        return rfc822Size;
+    }
+
+    /**
+     * @return the INTERNALDATE packed as an {@link ImapDateTime}, or {@link ImapDateTime#NONE} if there is none
+     */
+    public long getInternalDate() {
+        if ((parsed & FetchAttributes.INTERNALDATE) == 0) {
+            final int attribute = indexOf(FetchAttributes.INTERNALDATE);
+            internalDate = ImapDateTime.NONE;
+            if (attribute >= 0) {
+                final int row = attribute * STRIDE;
+                if (attributes[row + 3] - attributes[row + 2] != DateTimeCodec.LENGTH) {
+                    throw DecodeError.INVALID_DATE_TIME.exception();
+                }
+                internalDate = DateTimeCodec.decode(in, attributes[row + 2]);
+            }
+            parsed |= FetchAttributes.INTERNALDATE;
+        }
+        return internalDate;
+    }
+
+    /**
+     * Parses the FLAGS the first time they are asked for.  System flags, including \Recent, are recognized in the
+     * received bytes, and keywords are interned straight from them.
+     *
+     * @return the flags, or null if there are none
+     */
+    public ImapFlags getFlags() {
+        if ((parsed & FetchAttributes.FLAGS) == 0) {
+            final int attribute = indexOf(FetchAttributes.FLAGS);
+            flags = attribute < 0 ? null : readFlags(attribute * STRIDE);
+            parsed |= FetchAttributes.FLAGS;
+        }
+        return flags;
+    }
+
+    private ImapFlags readFlags(int row) {
+        final int start = attributes[row + 2] + 1;
+        final int end = attributes[row + 3] - 1;
+        if (end < start || in.getByte(start - 1) != '(' || in.getByte(end) != ')') {
+            throw DecodeError.INVALID_FETCH_RESPONSE.exception();
+        }
+        return flagListCodec.decode(in, start, end, true);
+    }
+
+    /**
+     * @return the number that is the value of the attribute, of up to 32 bits, or -1 if the attribute is not present
+     */
+    private long readNumber(int attribute) {
+        final int index = indexOf(attribute);
+        if (index < 0) {
+            return -1;
+        }
+        final int start = attributes[index * STRIDE + 2];
+        final int end = attributes[index * STRIDE + 3];
+        if (start == end) {
+            throw DecodeError.INVALID_FETCH_RESPONSE.exception();
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            final byte b = in.getByte(i);
+            if (!is(b, DIGIT)) {
+                throw DecodeError.INVALID_FETCH_RESPONSE.exception();
+            }
+            value = value * 10 + b - '0';
+            if (value > 0xffffffffL) {
+                throw DecodeError.INVALID_FETCH_RESPONSE.exception();
+            }
+        }
+        return value;
+    }
+}
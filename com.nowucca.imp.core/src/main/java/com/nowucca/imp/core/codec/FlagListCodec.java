@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.ImapFlags;
+import com.nowucca.imp.core.message.KeywordDictionary;
+import com.nowucca.imp.core.message.command.DecodeError;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.AsciiString;
+import java.util.Arrays;
+import static com.nowucca.imp.core.codec.DecoderUtils.ALPHA;
+import static com.nowucca.imp.core.codec.DecoderUtils.is;
+import static com.nowucca.imp.core.codec.ImapCharacterConstants.SP;
+import static com.nowucca.imp.core.codec.ImapCodecConstants.SYSTEM_FLAG_NAMES;
+
+/**
+ * Reads flag lists into {@link ImapFlags}, interning keywords straight from the received bytes, and holding a keyword
+ * in the flags themselves once the dictionary is full.
+ */
+final class FlagListCodec {
+
+    private static final AsciiString[] NO_KEYWORDS = new AsciiString[0];
+
+    private final KeywordDictionary keywordDictionary;
+
+    // the keywords of the flag list being read
+    private int[] keywords = new int[4];
+    private int keywordCount;
+    private AsciiString[] uninterned = new AsciiString[4];
+    private int uninternedCount;
+
+    FlagListCodec(KeywordDictionary keywordDictionary) {
+        this.keywordDictionary = keywordDictionary;
+    }
+
+    /**
+     * Reads the flags between the parentheses of a flag list.
+     *
+     * @param from the index just past the opening parenthesis
+     * @param to the index of the closing parenthesis
+     * @param recentAllowed whether \Recent may be among the flags, as in a response but not a request
+     */
+    ImapFlags decode(ByteBuf in, int from, int to, boolean recentAllowed) {
+        int systemFlags = 0;
+        keywordCount = 0;
+        uninternedCount = 0;
+        int flagStart = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || in.getByte(i) == SP) {
+                final int length = i - flagStart;
+                if (length == 0) {
+                    if (i == to && i == from) {
+                        break;
+                    }
+                    throw DecodeError.EXPECTED_FLAG.exception();
+                }
+                final int systemFlag = systemFlag(in, flagStart, length);
+                if (systemFlag == ImapFlags.RECENT && !recentAllowed) {
+                    throw DecodeError.RECENT_FLAG.exception();
+                } else if (systemFlag != 0) {
+                    systemFlags |= systemFlag;
+                } else {
+                    addKeyword(in, flagStart, length);
+                }
+                flagStart = i + 1;
+            }
+        }
+        if (keywordCount == 0 && uninternedCount == 0) {
+            return ImapFlags.valueOf(systemFlags);
+        }
+        return new ImapFlags(systemFlags, keywordDictionary, Arrays.copyOf(keywords, keywordCount),
+                uninternedCount == 0 ? NO_KEYWORDS : Arrays.copyOf(uninterned, uninternedCount));
+    }
+
+    private void addKeyword(ByteBuf in, int index, int length) {
+        final int id = keywordDictionary.intern(in, index, length);
+        if (id == KeywordDictionary.NOT_INTERNED) {
+            addUninterned(in, index, length);
+            return;
+        }
+        for (int i = 0; i < keywordCount; i++) {
+            if (keywords[i] == id) {
+                return;
+            }
+        }
+        if (keywordCount == keywords.length) {
+            keywords = Arrays.copyOf(keywords, keywordCount * 2);
+        }
+        keywords[keywordCount++] = id;
+    }
+
+    private void addUninterned(ByteBuf in, int index, int length) {
+        for (int i = 0; i < uninternedCount; i++) {
+            if (matches(uninterned[i], in, index, length)) {
+                return;
+            }
+        }
+        if (uninternedCount == uninterned.length) {
+            uninterned = Arrays.copyOf(uninterned, uninternedCount * 2);
+        }
+        final byte[] bytes = new byte[length];
+        in.getBytes(index, bytes);
+        uninterned[uninternedCount++] = new AsciiString(bytes, false);
+    }
+
+    private static boolean matches(AsciiString keyword, ByteBuf in, int index, int length) {
+        if (keyword.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (fold(keyword.byteAt(i)) != fold(in.getByte(index + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Folds ASCII upper case letters to lower case, as {@link KeywordDictionary} does.
+     */
+    private static int fold(int c) {
+        return c >= 'A' && c <= 'Z' ? c | 0x20 : c & 0xff;
+    }
+
+    /**
+     * @return the bit of the system flag held in <code>length</code> bytes at <code>index</code>, or 0 if they hold
+     *         a keyword or flag extension instead
+     */
+    private static int systemFlag(ByteBuf in, int index, int length) {
+        if (in.getByte(index) != '\\') {
+            return 0;
+        }
+        for (int i = 0; i < SYSTEM_FLAG_NAMES.length; i++) {
+            if (equalsIgnoreCase(SYSTEM_FLAG_NAMES[i], in, index, length)) {
+                return 1 << i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return whether the bytes match the upper case ASCII <code>expected</code>, ignoring case
+     */
+    private static boolean equalsIgnoreCase(byte[] expected, ByteBuf in, int index, int length) {
+        if (expected.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            final byte b = in.getByte(index + i);
+            if ((is(b, ALPHA) ? b & ~0x20 : b) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -3,6 +3,9 @@
  */
 package com.nowucca.imp.core.codec;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  */
 public final class ImapCodecConstants {
@@ -17,6 +20,44 @@ public final class ImapCodecConstants {
 
     public static final int DEFAULT_MAXIMUM_SIZE = 8192;
 
+    /**
+     * Literals at least this large are gathered from received buffers without merging them.
+     */
+    public static final int LITERAL_COMPOSITE_THRESHOLD = 65536;
+
+    /**
+     * The longest line of a server response decoded by default, not counting its literals.
+     */
+    public static final int DEFAULT_MAXIMUM_RESPONSE_LINE_LENGTH = 65536;
+
+    /**
+     * APPEND message literals at least this large are streamed as chunks by default.
+     */
+    public static final long DEFAULT_LITERAL_STREAMING_THRESHOLD = 1048576;
+
+    /**
+     * The largest chunk of a streamed literal emitted by default.
+     */
+    public static final int DEFAULT_LITERAL_CHUNK_SIZE = 8192;
+
+    /**
+     * APPEND message literals are not spooled to disk by default.
+     */
+    public static final long DEFAULT_LITERAL_SPOOL_THRESHOLD = Long.MAX_VALUE;
+
+    public static final String LITERAL_PLUS = "LITERAL+";
+    public static final String LITERAL_MINUS = "LITERAL-";
+
+    /**
+     * The largest literal that may be non-synchronizing under LITERAL-, per RFC 7888.
+     */
+    public static final int LITERAL_MINUS_MAXIMUM_SIZE = 4096;
+
+    /**
+     * The capabilities of the request decoder, to be advertised in CAPABILITY responses to the clients it reads.
+     */
+    public static final List<String> DECODER_CAPABILITIES = Collections.singletonList(LITERAL_PLUS);
+
     public static final String ANSWERED_ALL_CAPS = "\\ANSWERED";
 
     public static final byte[] ANSWERED_ALL_CAPS_BYTES = ANSWERED_ALL_CAPS.getBytes();
@@ -40,4 +81,17 @@ public final class ImapCodecConstants {
     public static final String RECENT_ALL_CAPS = "\\RECENT";
     public static final byte[] RECENT_ALL_CAPS_BYTES = RECENT_ALL_CAPS.getBytes();
 
+    /**
+     * The name of each system flag, indexed by the position of its bit in
+     * {@link com.nowucca.imp.core.message.ImapFlags}.
+     */
+    public static final byte[][] SYSTEM_FLAG_NAMES = {
+        ANSWERED_ALL_CAPS_BYTES,
+        FLAGGED_ALL_CAPS_BYTES,
+        DELETED_ALL_CAPS_BYTES,
+        SEEN_ALL_CAPS_BYTES,
+        DRAFT_ALL_CAPS_BYTES,
+        RECENT_ALL_CAPS_BYTES
+    };
+
 }
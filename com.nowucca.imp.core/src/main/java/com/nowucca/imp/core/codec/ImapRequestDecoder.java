@@ -3,213 +3,479 @@
  */
 package com.nowucca.imp.core.codec;
 
-import com.nowucca.imp.core.message.command.AppendCommand;
-import com.nowucca.imp.core.message.command.AuthenticateCommand;
-import com.nowucca.imp.core.message.command.CapabilityCommand;
+import com.nowucca.imp.core.message.FetchAttributes;
+import com.nowucca.imp.core.message.ImapDateTime;
+import com.nowucca.imp.core.message.ImapFlags;
+import com.nowucca.imp.core.message.ImapLiteralChunk;
+import com.nowucca.imp.core.message.KeywordDictionary;
+import com.nowucca.imp.core.message.LastImapLiteralChunk;
+import com.nowucca.imp.core.message.SequenceSet;
+import com.nowucca.imp.core.message.SpooledLiteral;
+import com.nowucca.imp.core.message.command.DecodeError;
+import com.nowucca.imp.core.message.command.DecodedImapRequest;
 import com.nowucca.imp.core.message.command.ImapCommand;
 import com.nowucca.imp.core.message.command.ImapRequest;
 import com.nowucca.imp.core.message.command.InvalidImapRequest;
-import com.nowucca.imp.core.message.command.LoginCommand;
-import com.nowucca.imp.core.message.command.LogoutCommand;
-import com.nowucca.imp.core.message.command.NoopCommand;
-import com.nowucca.imp.core.message.command.SelectCommand;
-import com.nowucca.imp.core.message.command.StartTlsCommand;
-import com.nowucca.imp.util.ModifiedUTF7;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.ByteBufProcessor;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.AsciiString;
+import io.netty.handler.codec.ByteToMessageDecoder;
 import io.netty.handler.codec.DecoderResult;
-import io.netty.handler.codec.ReplayingDecoder;
 import io.netty.handler.codec.TooLongFrameException;
-import io.netty.util.internal.AppendableCharSequence;
-import java.nio.charset.Charset;
-import java.time.ZonedDateTime;
-import java.util.Collections;
+import io.netty.util.ReferenceCountUtil;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
-import javax.mail.Flags;
 import static com.nowucca.imp.core.codec.DecoderUtils.*;
+import static com.nowucca.imp.core.codec.ImapCodecConstants.DEFAULT_LITERAL_CHUNK_SIZE;
+import static com.nowucca.imp.core.codec.ImapCodecConstants.DEFAULT_LITERAL_SPOOL_THRESHOLD;
+import static com.nowucca.imp.core.codec.ImapCodecConstants.DEFAULT_LITERAL_STREAMING_THRESHOLD;
 import static com.nowucca.imp.core.codec.ImapCodecConstants.DEFAULT_MAXIMUM_SIZE;
+import static com.nowucca.imp.core.codec.ImapCodecConstants.LITERAL_COMPOSITE_THRESHOLD;
 import static com.nowucca.imp.core.codec.ImapCodecConstants.MAXIMUM_TAG_LENGTH;
-import static com.nowucca.imp.core.codec.ImapRequestDecoder.State.READ_COMMAND_NAME;
-import static com.nowucca.imp.core.codec.ImapRequestDecoder.State.READ_CRLF;
 import static java.lang.String.format;
 
 /**
+ * <p>
+ *     Decodes client requests as a resumable state machine.
+ * </p>
+ * <p>
+ *     The reader index of the inbound buffer stays at the start of the request being decoded until the whole
+ *     request has been read.  The decoder remembers how far into that request it has parsed (tag, command,
+ *     argument index, literal bytes received), so when a request arrives split across reads, parsing carries on
+ *     from where it stopped rather than starting over.  Each synchronizing literal is answered with exactly one
+ *     continuation; non-synchronizing literals (<code>{n+}</code>, RFC 7888 LITERAL+) are read without one.
+ * </p>
+ * <p>
+ *     The decoder reads the tag, the command name and the final CRLF of each request.  The arguments in between are
+ *     read by the {@link CommandCodec} registered for the command in the decoder's {@link CommandCodecs}, using the
+ *     ways of reading astrings, flags, date-times and literals the decoder offers as an {@link ArgumentDecoder}.
+ * </p>
+ * <p>
+ *     APPEND message literals are never copied.  Their bytes are validated as they arrive and handed on as retained
+ *     slices of the received buffers.  While a large literal is arriving, received buffers are gathered into a
+ *     composite rather than merged, so the literal is not copied as it accumulates either.  Other arguments,
+ *     string literals among them, are copied out of the received bytes.
+ * </p>
+ * <p>
+ *     APPEND message literals at or above the streaming threshold, and any literal too large for a single buffer,
+ *     are not accumulated at all.  The APPEND request is emitted as soon as the literal header has been read,
+ *     followed by {@link ImapLiteralChunk}s of at most the chunk size as the bytes arrive, ending with a
+ *     {@link LastImapLiteralChunk}.  Memory held per connection then stays flat however large the message is.
+ *     Streamed chunks are not validated: they are forwarded as they are, and a stream the decoder cut short part
+ *     way through would leave whoever forwards it with half a literal sent, so the server judges their bytes.
+ * </p>
+ * <p>
+ *     Optionally, APPEND message literals at or above a spool threshold are instead written to a temporary file as
+ *     they arrive, and the APPEND request carries a {@link SpooledLiteral} once the literal is complete.  This keeps
+ *     large messages out of memory even when whoever consumes them cannot keep up.
+ * </p>
+ * <p>
+ *     A request that cannot be decoded is handed on as an {@link InvalidImapRequest} with the client's tag, so it can
+ *     be answered with a tagged BAD.  The rest of that request is skipped, up to the CRLF that ends it and along with
+ *     any literal the client will still send, and decoding carries on with the next request.
+ * </p>
+ * <p>
+ *     Optionally, each request keeps a retained slice of the bytes it was decoded from, so that
+ *     {@link ImapRequestEncoder} can forward an unmodified {@link DecodedImapRequest} without encoding it again.
+ * </p>
  */
-public class ImapRequestDecoder extends ReplayingDecoder<ImapRequestDecoder.State> {
+public class ImapRequestDecoder extends ByteToMessageDecoder {
 
-    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    private static final int MAXIMUM_ARGUMENTS = 4;
+
+    private static final int MAXIMUM_LITERAL_SIZE_DIGITS = 19;
+
+
+    private static final int MAXIMUM_AUTHENTICATION_MECHANISM_LENGTH = 20;
+
+    /**
+     * Gathers received buffers as components of an unbounded composite, so they are never consolidated.
+     */
+    static final Cumulator LITERAL_CUMULATOR = new Cumulator() {
+        @Override
+        public ByteBuf cumulate(ByteBufAllocator alloc, ByteBuf cumulation, ByteBuf in) {
+            final CompositeByteBuf composite;
+            if (cumulation instanceof CompositeByteBuf) {
+                composite = (CompositeByteBuf) cumulation;
+            } else {
+                composite = alloc.compositeBuffer(Integer.MAX_VALUE);
+                composite.addComponent(cumulation);
+                composite.writerIndex(cumulation.readableBytes());
+            }
+            composite.addComponent(in);
+            composite.writerIndex(composite.writerIndex() + in.readableBytes());
+            return composite;
+        }
+    };
 
     public enum State {
         READ_TAG,
         READ_COMMAND_NAME,
+        READ_ARGUMENTS,
+        READ_LITERAL,
+        STREAM_LITERAL,
         READ_CRLF,
         INVALID_REQUEST
     }
 
-    AppendableCharSequence tag;
-    ImapCommand imapCommand;
-    ImapRequest imapRequest;
+    private State state = State.READ_TAG;
+
+    // how far into the current request we have parsed, relative to the reader index
+    private int position;
+    // how far into the current token we have scanned, relative to position
+    private int tokenScanned;
 
-    private final AppendableCharSequence seq = new AppendableCharSequence(128);
-    private final TagParser tagParser = new TagParser(seq);
+    private AsciiString tag;
+    private CommandCodec<?> commandCodec;
+    private int argumentIndex;
+    private final Object[] arguments = new Object[MAXIMUM_ARGUMENTS];
+    private ImapCommand.Kind subcommand;
+    private ImapCommand imapCommand;
+    private long dateTime = ImapDateTime.NONE;
 
+    private long literalLength;
+    // where the data of the literal just read starts, relative to the reader index
+    private int literalOffset;
+    private long literalValidated;
+    private boolean streaming;
+    private boolean spooling;
+    private SpooledLiteral spooledLiteral;
 
+    // where the data of each synchronizing literal of the current request starts, relative to the request
+    private int[] continuationPoints = new int[2];
+    private int continuationCount;
+    private long largestNonSynchronizingLiteral = -1;
+    private ByteBuf rawBytes;
+    // the detail of the error about to be thrown, if there is any
+    private Object errorDetail;
+    // how many bytes of a literal in an invalid request are yet to be skipped
+    private long invalidLiteralRemaining;
+
+    private final long literalStreamingThreshold;
+    private final int literalChunkSize;
+    private long literalSpoolThreshold = DEFAULT_LITERAL_SPOOL_THRESHOLD;
+    private File spoolDirectory;
+    private boolean retainRawBytes;
+    private KeywordDictionary keywordDictionary;
+    private FlagListCodec flagListCodec;
+    private final MailboxNameCodec mailboxNameCodec = new MailboxNameCodec();
+    private final FetchAttributesCodec fetchAttributesCodec = new FetchAttributesCodec();
+
+    private final QuotedProcessor quotedProcessor = new QuotedProcessor();
+    private final FlagListProcessor flagListProcessor = new FlagListProcessor();
+    private final AuthenticationMechanismProcessor authenticationMechanismProcessor =
+            new AuthenticationMechanismProcessor();
+    private final LiteralSizeProcessor literalSizeProcessor = new LiteralSizeProcessor();
+    private final InvalidRequestProcessor invalidRequestProcessor = new InvalidRequestProcessor();
+
+    private CommandCodecs commandCodecs = CommandCodecs.STANDARD;
+    private final ArgumentDecoder argumentDecoder = new Arguments();
+    // the context of the call to decode, for the argument decoder to send continuations with
+    private ChannelHandlerContext ctx;
 
     public ImapRequestDecoder() {
-        super(State.READ_TAG);
+        this(DEFAULT_LITERAL_STREAMING_THRESHOLD, DEFAULT_LITERAL_CHUNK_SIZE);
+    }
+
+    /**
+     * @param literalStreamingThreshold APPEND message literals of at least this many bytes are streamed as chunks
+     * @param literalChunkSize the largest chunk of a streamed literal to emit
+     */
+    public ImapRequestDecoder(long literalStreamingThreshold, int literalChunkSize) {
+        if (literalChunkSize <= 0) {
+            throw new IllegalArgumentException(format("literalChunkSize must be positive: %d", literalChunkSize));
+        }
+        this.literalStreamingThreshold = literalStreamingThreshold;
+        this.literalChunkSize = literalChunkSize;
+        this.keywordDictionary = new KeywordDictionary();
+        this.flagListCodec = new FlagListCodec(keywordDictionary);
+    }
+
+    /**
+     * Spools APPEND message literals of at least the threshold to a file, in preference to streaming them.  Like the
+     * other settings, this is made before the decoder reads anything.
+     *
+     * @param spoolDirectory the directory to hold spooled literals, or null for the default temporary directory
+     */
+    public void setLiteralSpooling(long literalSpoolThreshold, File spoolDirectory) {
+        this.literalSpoolThreshold = literalSpoolThreshold;
+        this.spoolDirectory = spoolDirectory;
+    }
+
+    /**
+     * Sets whether each request keeps the bytes it was decoded from.
+     */
+    public void setRetainRawBytes(boolean retainRawBytes) {
+        this.retainRawBytes = retainRawBytes;
+    }
+
+    /**
+     * @return the dictionary that flag keywords are interned in
+     */
+    public KeywordDictionary getKeywordDictionary() {
+        return keywordDictionary;
+    }
+
+    /**
+     * Sets the dictionary to intern flag keywords in, whether for this session only or shared.
+     */
+    public void setKeywordDictionary(KeywordDictionary keywordDictionary) {
+        this.keywordDictionary = keywordDictionary;
+        this.flagListCodec = new FlagListCodec(keywordDictionary);
+    }
+
+    /**
+     * Sets the codec to read the arguments of each kind of command with; commands without one are not recognized.
+     */
+    public void setCommandCodecs(CommandCodecs commandCodecs) {
+        this.commandCodecs = commandCodecs;
     }
 
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
-        switch (state()) {
-            case READ_TAG:
-                try {
-                    tag = tagParser.parse(in);
-                    checkpoint(READ_COMMAND_NAME);
-
-                } catch (Exception e) {
-                    out.add(createInvalidRequest(e));
+        this.ctx = ctx;
+        try {
+            switch (state) {
+                case READ_TAG:
+                    if (!readTag(in)) {
+                        return;
+                    }
+                    state = State.READ_COMMAND_NAME;
+                    // fall through
+
+                case READ_COMMAND_NAME:
+                    if (!readCommandName(in)) {
+                        return;
+                    }
+                    state = State.READ_ARGUMENTS;
+                    // fall through
+
+                case READ_ARGUMENTS:
+                case READ_LITERAL:
+                    if (!readArguments(in)) {
+                        return;
+                    }
+                    if (streaming) {
+                        // emit the request now; its literal follows as chunks
+                        captureRawBytes(in);
+                        out.add(createRequest());
+                        in.skipBytes(position);
+                        position = 0;
+                        state = State.STREAM_LITERAL;
+                        if (literalLength == 0) {
+                            out.add(new LastImapLiteralChunk(Unpooled.EMPTY_BUFFER));
+                            state = State.READ_CRLF;
+                        }
+                        return;
+                    }
+                    state = State.READ_CRLF;
+                    // fall through
+
+                case READ_CRLF: {
+                    if (!isReadable(in, 2)) {
+                        return;
+                    }
+                    final byte b = in.getByte(in.readerIndex() + position);
+                    final byte c = in.getByte(in.readerIndex() + position + 1);
+                    if (b != '\r' || c != '\n') {
+                        throw error(DecodeError.EXPECTED_CRLF, b != '\r' ? (char) b : (char) c);
+                    }
+                    position += 2;
+                    if (!streaming) {
+                        captureRawBytes(in);
+                        out.add(createRequest());
+                    }
+                    in.skipBytes(position);
+                    reset(State.READ_TAG);
                     return;
                 }
 
-            case READ_COMMAND_NAME: {
-                try {
-                    final char c = peekNextChar(in);
-                    switch(c) {
-                        case 'A': {
-                            final char c2 = peekNextChar(in, 1);
-                            switch (c2) {
-                                case 'P': {
-
-                                    readCaseInsensitiveExpectedBytes(in, "APPEND");
-                                    readExpectedByte(in, ' ');
-                                    final String mailboxName = readMailboxName(ctx, in);
-                                    readExpectedByte(in, ' ');
-                                    final Flags flags = readOptionalAppendFlags(in);
-                                    if (flags != null) {
-                                        readExpectedByte(in, ' ');
-                                    }
-                                    final ZonedDateTime dateTime = readOptionalDateTime(in);
-                                    if (dateTime != null) {
-                                        readExpectedByte(in, ' ');
-                                    }
-                                    final ByteBuf data = readLiteral(ctx, in);
-
-                                    imapCommand = new AppendCommand(mailboxName, flags, dateTime, data);
-                                    checkpoint(READ_CRLF);
-                                    break;
-                                }
-                                case 'U': {
-                                    readCaseInsensitiveExpectedBytes(in, "AUTHENTICATE");
-                                    readExpectedSpace(in);
-                                    final CharSequence authenticationMechanism = readAuthenticationMechanismName(in);
-                                    imapCommand = new AuthenticateCommand(authenticationMechanism);
-                                    checkpoint(READ_CRLF);
-                                    break;
-                                }
-                            }
-                            break;
-                        }
-                        case 'C': {
-                            readCaseInsensitiveExpectedBytes(in, "CAPABILITY");
-                            imapCommand = new CapabilityCommand();
-                            checkpoint(State.READ_CRLF);
-                            break;
-                        }
-                        case 'L': {
-                            final char c4 = peekNextChar(in, 3);
-                            switch(c4) {
-                                case 'I': {
-                                    readCaseInsensitiveExpectedBytes(in, "LOGIN");
-                                    readExpectedSpace(in);
-                                    final CharSequence userId = readAString(ctx, in);
-                                    readExpectedSpace(in);
-                                    final CharSequence password = readAString(ctx, in);
-                                    imapCommand = new LoginCommand(userId, password);
-                                    checkpoint(State.READ_CRLF);
-                                    break;
-                                }
-                                case 'O': {
-                                    readCaseInsensitiveExpectedBytes(in, "LOGOUT");
-                                    imapCommand = new LogoutCommand();
-                                    checkpoint(State.READ_CRLF);
-                                    break;
-                                }
-                            }
-                            break;
-                        }
-                        case 'N': {
-                            readCaseInsensitiveExpectedBytes(in, "NOOP");
-                            imapCommand = new NoopCommand();
-                            checkpoint(State.READ_CRLF);
-                            break;
-                        }
-                        case 'S': {
-                            final char c2 = peekNextChar(in, 1);
-                            switch(c2) {
-                                case 'E': {
-                                    readCaseInsensitiveExpectedBytes(in, "SELECT");
-                                    readExpectedSpace(in);
-                                    imapCommand = new SelectCommand(readMailboxName(ctx, in));
-                                    checkpoint(State.READ_CRLF);
-                                    break;
-                                }
-                                case 'T': {
-                                    readCaseInsensitiveExpectedBytes(in, "STARTTLS");
-                                    imapCommand = new StartTlsCommand();
-                                    checkpoint(State.READ_CRLF);
-                                    break;
-                                }
-                            }
-                            break;
-                        }
-                        case 'X': {
-                            throw new UnsupportedOperationException(format("No extension commands are supported."));
-                        }
+                case STREAM_LITERAL: {
+                    readLiteralChunk(in, out);
+                    return;
+                }
+
+                case INVALID_REQUEST: {
+                    if (skipInvalidRequest(in)) {
+                        reset(State.READ_TAG);
                     }
-                } catch (Exception e) {
-                    out.add(createInvalidRequest(e));
                     return;
                 }
             }
+        } catch (Exception e) {
+            out.add(createInvalidRequest(in, e));
+            if (skipInvalidRequest(in)) {
+                reset(State.READ_TAG);
+            }
+        }
+    }
 
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx) throws Exception {
+        ReferenceCountUtil.release(imapCommand);
+        imapCommand = null;
+        releaseSpooledLiteral();
+        releaseRawBytes();
+    }
 
-            case READ_CRLF: {
-                try {
-                    final byte b = in.readByte();
-                    final byte c = in.readByte();
-                    if (b != '\r' || c != '\n') {
-                        throw new IllegalArgumentException(format("Expected CRLF, received %s.",
-                                new String(new byte[]{b, c})));
-                    }
-                    out.add(new ImapRequest() {
-                        @Override
-                        public ImapCommand getCommand() {
-                            return imapCommand;
-                        }
+    /**
+     * @return the request, which now owns the command and any raw bytes
+     */
+    private ImapRequest createRequest() {
+        final DecodedImapRequest request;
+        if (rawBytes == null) {
+            request = DecodedImapRequest.newInstance(tag, imapCommand);
+        } else {
+            request = DecodedImapRequest.newInstance(tag, imapCommand, rawBytes,
+                    Arrays.copyOf(continuationPoints, continuationCount), largestNonSynchronizingLiteral);
+            rawBytes = null;
+        }
+        imapCommand = null;
+        return request;
+    }
 
-                        @Override
-                        public String getTag() {
-                            return tag.toString();
-                        }
+    /**
+     * Keeps the bytes of the request parsed so far, unless they were already kept before a spooled literal.
+     */
+    private void captureRawBytes(ByteBuf in) {
+        if (retainRawBytes && rawBytes == null) {
+            rawBytes = in.slice(in.readerIndex(), position).retain();
+        }
+    }
 
-                    });
-                    checkpoint(State.READ_TAG);
-                    return;
-                } catch (RuntimeException e) {
-                    out.add(createInvalidRequest(e));
-                    return;
-                }
+    private void reset(State nextState) {
+        if (state == State.READ_LITERAL) {
+            setCumulator(MERGE_CUMULATOR);
+        }
+        state = nextState;
+        position = 0;
+        tokenScanned = 0;
+        tag = null;
+        commandCodec = null;
+        argumentIndex = 0;
+        Arrays.fill(arguments, null);
+        subcommand = null;
+        // a command not yet handed on in a request, such as an APPEND whose final CRLF was missing
+        ReferenceCountUtil.release(imapCommand);
+        imapCommand = null;
+        dateTime = ImapDateTime.NONE;
+        literalLength = 0;
+        literalValidated = 0;
+        streaming = false;
+        spooling = false;
+        continuationCount = 0;
+        largestNonSynchronizingLiteral = -1;
+        releaseSpooledLiteral();
+        releaseRawBytes();
+    }
+
+    private void releaseSpooledLiteral() {
+        if (spooledLiteral != null) {
+            spooledLiteral.release();
+            spooledLiteral = null;
+        }
+    }
+
+    private void releaseRawBytes() {
+        if (rawBytes != null) {
+            rawBytes.release();
+            rawBytes = null;
+        }
+    }
+
+    private boolean readTag(ByteBuf in) {
+        final int end = scanAtom(in, true, MAXIMUM_TAG_LENGTH);
+        if (end < 0) {
+            return false;
+        }
+        final int start = in.readerIndex() + position;
+        if (in.getByte(end) != ' ') {
+            throw error(DecodeError.INVALID_TAG_CHARACTER, (char) in.getByte(end));
+        }
+        if (end == start) {
+            throw error(DecodeError.EXPECTED_TAG, null);
+        }
+        tag = ascii(in, start, end - start);
+        position = end + 1 - in.readerIndex();
+        return true;
+    }
+
+    private boolean readCommandName(ByteBuf in) {
+        if (!isReadable(in, 1)) {
+            return false;
+        }
+        final int match = commandCodecs.commandNames().match(in, in.readerIndex() + position, in.writerIndex());
+        if (match == CommandNameTrie.NEED_MORE) {
+            return false;
+        }
+        if (match == CommandNameTrie.NO_MATCH) {
+            final char first = peek(in, 0);
+            if (first == 'X' || first == 'x') {
+                throw error(DecodeError.EXTENSION_COMMAND, null);
             }
+            throw error(DecodeError.UNRECOGNIZED_COMMAND, first);
+        }
+        commandCodec = commandCodecs.get(CommandNameTrie.kind(match));
+        position += CommandNameTrie.length(match);
+        return true;
+    }
+
+    /**
+     * Has the command's codec read its arguments, up to the final CRLF.
+     *
+     * @return whether the command was read, or false if more bytes are needed
+     */
+    private boolean readArguments(ByteBuf in) throws IOException {
+        imapCommand = commandCodec.decodeArguments(argumentDecoder, in);
+        return imapCommand != null;
+    }
 
-            case INVALID_REQUEST: {
-                // chew up any extra bytes after a bad request read has been attempted.
-                in.skipBytes(actualReadableBytes());
-                break;
+    /**
+     * Reads an APPEND message literal, which may be streamed or spooled, and notes where its data starts if it is
+     * neither.
+     *
+     * @return whether the literal was read, or only its header if it is streamed; false if more bytes are needed
+     */
+    private boolean readMessageLiteral(ChannelHandlerContext ctx, ByteBuf in) throws IOException {
+        if (state != State.READ_LITERAL) {
+            if (!isReadable(in, 1)) {
+                return false;
+            }
+            if (peek(in, 0) != '{') {
+                throw error(DecodeError.EXPECTED_LITERAL, peek(in, 0));
             }
+            if (!readLiteralHeader(ctx, in, true)) {
+                return false;
+            }
+        }
+        if (streaming) {
+            return true;
+        }
+        if (spooling) {
+            return readSpooledLiteralData(in);
+        }
+        final int offset = readLiteralData(in);
+        if (offset < 0) {
+            return false;
+        }
+        literalOffset = offset;
+        return true;
+    }
+
+    private boolean readDateTime(ByteBuf in) {
+        if (!isReadable(in, DateTimeCodec.LENGTH)) {
+            return false;
         }
+        dateTime = DateTimeCodec.decode(in, in.readerIndex() + position);
+        position += DateTimeCodec.LENGTH;
+        return true;
     }
 
     /**
@@ -226,187 +492,753 @@ public class ImapRequestDecoder extends ReplayingDecoder<ImapRequestDecoder.Stat
      * HYPHEN       = %x2D ; hyphen (-)
      * UNDERSCORE   = %x5F ; underscore (_)
      * </pre>
-     * @return a syntactically legal SASL mechanism name
+     * @return a syntactically legal SASL mechanism name, or null if more bytes are needed
      */
-    private AppendableCharSequence readAuthenticationMechanismName(ByteBuf in) {
-        final AppendableCharSequence result = new AppendableCharSequence(20);
+    private CharSequence readAuthenticationMechanismName(ByteBuf in) {
+        final int end = scan(in, 0, authenticationMechanismProcessor);
+        if (end < 0) {
+            return null;
+        }
+        final int start = in.readerIndex() + position;
+        if (end == start) {
+            throw error(DecodeError.EXPECTED_AUTHENTICATION_MECHANISM, null);
+        }
+        position = end - in.readerIndex();
+        return ascii(in, start, end - start);
+    }
 
-        char next = peekNextChar(in);
-        while (isSASLMechanismChar(next)) {
-            result.append((char) in.readByte());
-            next = peekNextChar(in);
+    /**
+     * Reads a sequence-set, parsing it straight into the ranges of a {@link SequenceSet}.
+     *
+     * @return the sequence set read, or null if more bytes are needed
+     */
+    private SequenceSet readSequenceSet(ByteBuf in) {
+        final int start = in.readerIndex() + position;
+        final int end = indexOfSequenceSetEnd(in, start + tokenScanned, in.writerIndex());
+        final int size = (end < 0 ? in.writerIndex() : end) - start;
+        if (size > DEFAULT_MAXIMUM_SIZE) {
+            throw error(DecodeError.TOKEN_TOO_LONG, DEFAULT_MAXIMUM_SIZE);
         }
-        if (result.length() > 20) {
-            throw new IllegalArgumentException(
-                    format("Authentication mechanism %s exceeds 20 characters in length.", result.toString()));
+        if (end < 0) {
+            tokenScanned = size;
+            return null;
         }
-        return result;
+        tokenScanned = 0;
+        if (end == start) {
+            throw error(DecodeError.INVALID_SEQUENCE_SET, null);
+        }
+        final SequenceSet sequenceSet = parseSequenceSet(in, start, end);
+        position = end - in.readerIndex();
+        return sequenceSet;
     }
 
+    /**
+     * Reads the attributes of a FETCH, which run to the end of the line.
+     *
+     * @return the attributes read, or null if more bytes are needed
+     */
+    private FetchAttributes readFetchAttributes(ByteBuf in) {
+        final int start = in.readerIndex() + position;
+        final int end = indexOfEither(in, start + tokenScanned, in.writerIndex(), (byte) '\r', (byte) '\n');
+        final int size = (end < 0 ? in.writerIndex() : end) - start;
+        if (size > DEFAULT_MAXIMUM_SIZE) {
+            throw error(DecodeError.TOKEN_TOO_LONG, DEFAULT_MAXIMUM_SIZE);
+        }
+        if (end < 0) {
+            tokenScanned = size;
+            return null;
+        }
+        tokenScanned = 0;
+        final FetchAttributes attributes = fetchAttributesCodec.decode(in, start, end);
+        position = end - in.readerIndex();
+        return attributes;
+    }
 
-    private Flags readOptionalAppendFlags(ByteBuf in) {
-        final char next = peekNextChar(in);
-        if (next == '(') {
-            return readFlags(in);
+    /**
+     * Reads a parenthesized flag list, as the decoder's {@link FlagListCodec} reads it.
+     *
+     * @return the flags read, or null if more bytes are needed
+     */
+    private ImapFlags readFlags(ByteBuf in) {
+        final int end = scan(in, 1, flagListProcessor);
+        if (end < 0) {
+            return null;
         }
-        return null;
+        final ImapFlags flags = flagListCodec.decode(in, in.readerIndex() + position + 1, end, false);
+        position = end + 1 - in.readerIndex();
+        return flags;
     }
 
-    public Flags readFlags(ByteBuf in) {
-        final Flags flags = new Flags();
-        readExpectedByte(in, '(');
+    /**
+     * Reads a mailbox name.  Only a name that actually uses the modified UTF-7 escape '&amp;' is decoded into a
+     * String, and one this decoder has seen recently is not decoded again; any other name is already its own decoding
+     * and is returned as read.
+     */
+    private CharSequence readMailboxName(ChannelHandlerContext ctx, ByteBuf in) {
+        final CharSequence mailboxName = readAString(ctx, in);
+        if (mailboxName == null) {
+            return null;
+        }
+        if (AsciiString.equalsIgnoreCase(ImapCodecConstants.INBOX, mailboxName)) {
+            return ImapCodecConstants.INBOX;
+        } else if (((AsciiString) mailboxName).indexOf('&') < 0) {
+            return mailboxName;
+        } else {
+            return mailboxNameCodec.decode((AsciiString) mailboxName);
+        }
+    }
 
-        char next = peekNextChar(in);
-        if (next == ')') {
-            readExpectedByte(in, ')');
-            return flags;
+    /**
+     * astring =  1*ASTRING-CHAR / quoted / literal
+     *
+     * @return the astring read, or null if more bytes are needed
+     */
+    private CharSequence readAString(ChannelHandlerContext ctx, ByteBuf in) {
+        if (state != State.READ_LITERAL) {
+            if (!isReadable(in, 1)) {
+                return null;
+            }
+            switch (peek(in, 0)) {
+                case '"':
+                    return readQuoted(in);
+                case '{':
+                    break;
+                default: {
+                    final int end = scanAtom(in, false, DEFAULT_MAXIMUM_SIZE);
+                    if (end < 0) {
+                        return null;
+                    }
+                    final int start = in.readerIndex() + position;
+                    if (end == start) {
+                        throw error(DecodeError.EXPECTED_ASTRING, peek(in, 0));
+                    }
+                    position = end - in.readerIndex();
+                    return ascii(in, start, end - start);
+                }
+            }
         }
+        final int offset = readLiteral(ctx, in);
+        if (offset < 0) {
+            return null;
+        }
+        return ascii(in, in.readerIndex() + offset, (int) literalLength);
+    }
 
-        do {
-            final String flag = readFlag(in);
-            setFlag(flag, flags);
-            if (peekNextChar(in) != ')') {
-                readExpectedByte(in, ' ');
+    /**
+     * Reads a quoted string.
+     *
+     * @return the unescaped content of the quoted string, or null if more bytes are needed
+     */
+    private AsciiString readQuoted(ByteBuf in) {
+        final int end = scan(in, 1, quotedProcessor);
+        if (end < 0) {
+            return null;
+        }
+        final int start = in.readerIndex() + position + 1;
+        position = end + 1 - in.readerIndex();
+        final int escapes = quotedProcessor.escapes;
+        if (escapes == 0) {
+            return ascii(in, start, end - start);
+        }
+        final byte[] bytes = new byte[end - start - escapes];
+        int j = 0;
+        for (int i = start; i < end; i++) {
+            byte b = in.getByte(i);
+            if (b == '\\') {
+                b = in.getByte(++i);
             }
-            next = peekNextChar(in);
-        } while (next != ')');
+            bytes[j++] = b;
+        }
+        return new AsciiString(bytes, false);
+    }
 
-        readExpectedByte(in, ')');
-        return flags;
+    /**
+     * Copies ASCII bytes into a string of one byte per character, with no charset decoding.  It becomes a
+     * {@link String} only if a consumer asks for one.
+     */
+    private static AsciiString ascii(ByteBuf in, int index, int length) {
+        final byte[] bytes = new byte[length];
+        in.getBytes(index, bytes);
+        return new AsciiString(bytes, false);
     }
 
-    private String readFlag(ByteBuf in) {
-        final char next = peekNextChar(in);
-        if (next == '\\') {
-            readExpectedByte(in, '\\');
-            return "\\" + readAtom(in);
-        } else {
-            // flag-keyword from RFC-2501
-            return readAtom(in);
-        }
-    }
-
-    public static void setFlag(final String flagString, final Flags flags) {
-        if (flagString.equalsIgnoreCase(ImapCodecConstants.ANSWERED_ALL_CAPS)) {
-            flags.add(Flags.Flag.ANSWERED);
-        } else if (flagString.equalsIgnoreCase(ImapCodecConstants.DELETED_ALL_CAPS)) {
-            flags.add(Flags.Flag.DELETED);
-        } else if (flagString.equalsIgnoreCase(ImapCodecConstants.DRAFT_ALL_CAPS)) {
-            flags.add(Flags.Flag.DRAFT);
-        } else if (flagString.equalsIgnoreCase(ImapCodecConstants.FLAGGED_ALL_CAPS)) {
-            flags.add(Flags.Flag.FLAGGED);
-        } else if (flagString.equalsIgnoreCase(ImapCodecConstants.SEEN_ALL_CAPS)) {
-            flags.add(Flags.Flag.SEEN);
-        } else {
-            if (flagString.equalsIgnoreCase(ImapCodecConstants.RECENT_ALL_CAPS)) {
-                throw new UnsupportedOperationException(format("Cannot set the \\RECENT flag per RFC 3501."));
-            } else {
-                // RFC3501 allows user flags
-                flags.add(flagString);
+    /**
+     * Reads a literal that is not streamed.
+     *
+     * @return the offset of the literal data relative to the reader index, or -1 if more bytes are needed
+     */
+    private int readLiteral(ChannelHandlerContext ctx, ByteBuf in) {
+        if (state != State.READ_LITERAL && !readLiteralHeader(ctx, in, false)) {
+            return -1;
+        }
+        return readLiteralData(in);
+    }
+
+    /**
+     * Reads a literal header and, unless the literal is non-synchronizing, sends the single continuation for it.
+     *
+     * <pre>
+     * literal  = "{" number64 ["+"] "}" CRLF *CHAR8
+     * </pre>
+     *
+     * @param streamable whether the literal may be streamed as chunks
+     * @return whether the header was read, or false if more bytes are needed
+     */
+    private boolean readLiteralHeader(ChannelHandlerContext ctx, ByteBuf in, boolean streamable) {
+        final int end = scan(in, 1, literalSizeProcessor);
+        if (end < 0) {
+            return false;
+        }
+        final int start = in.readerIndex() + position;
+        final boolean nonSynchronizing = in.getByte(end) == '+';
+        final int suffix = nonSynchronizing ? end + 1 : end;
+        if (in.writerIndex() - suffix < 3) {
+            // wait for the rest of the header without rescanning the size
+            tokenScanned = end - start - 1;
+            return false;
+        }
+        if (end == start + 1) {
+            throw error(DecodeError.EXPECTED_LITERAL_SIZE, null);
+        }
+        if (in.getByte(suffix) != '}' || in.getByte(suffix + 1) != '\r' || in.getByte(suffix + 2) != '\n') {
+            throw error(DecodeError.EXPECTED_LITERAL_HEADER_END, (char) in.getByte(suffix));
+        }
+        long size = 0;
+        for (int i = start + 1; i < end; i++) {
+            final int digit = in.getByte(i) - '0';
+            if (size > (Long.MAX_VALUE - digit) / 10) {
+                throw error(DecodeError.LITERAL_SIZE_TOO_LONG, null);
             }
+            size = size * 10 + digit;
+        }
+        spooling = streamable && size >= literalSpoolThreshold;
+        streaming = streamable && !spooling && (size >= literalStreamingThreshold || size > Integer.MAX_VALUE);
+        if (!streaming && !spooling && size > Integer.MAX_VALUE) {
+            throw error(DecodeError.LITERAL_TOO_LARGE, size);
         }
+        literalLength = size;
+        literalValidated = 0;
+        position = suffix + 3 - in.readerIndex();
+
+        state = State.READ_LITERAL;
+        if (!streaming && !spooling && literalLength >= LITERAL_COMPOSITE_THRESHOLD) {
+            setCumulator(LITERAL_CUMULATOR);
+        }
+
+        if (nonSynchronizing) {
+            largestNonSynchronizingLiteral = Math.max(largestNonSynchronizingLiteral, size);
+        } else {
+            addContinuationPoint(position);
+            // send continuation command back to client
+            ctx.channel().writeAndFlush(Unpooled.wrappedBuffer(CONTINUATION_BYTES));
+        }
+        return true;
     }
 
-    private String readMailboxName(ChannelHandlerContext ctx, ByteBuf in) {
-        return ModifiedUTF7.decode(readMailboxNameRaw(ctx, in));
+    private void addContinuationPoint(int point) {
+        if (continuationCount == continuationPoints.length) {
+            continuationPoints = Arrays.copyOf(continuationPoints, continuationCount * 2);
+        }
+        continuationPoints[continuationCount++] = point;
     }
 
-    private String readMailboxNameRaw(ChannelHandlerContext ctx, ByteBuf in) {
-        String mailboxName;
+    /**
+     * Waits for the data of a literal that is not streamed, validating bytes as they arrive.
+     *
+     * @return the offset of the literal data relative to the reader index, or -1 if more bytes are needed
+     */
+    private int readLiteralData(ByteBuf in) {
+        // validate only the bytes that have arrived since we last looked
+        final int dataStart = in.readerIndex() + position;
+        final long received = Math.min(in.writerIndex() - dataStart, literalLength);
+        if (received > literalValidated) {
+            validateChar8(in, dataStart + (int) literalValidated, (int) (received - literalValidated));
+            literalValidated = received;
+        }
+        if (literalValidated < literalLength) {
+            return -1;
+        }
+
+        state = State.READ_ARGUMENTS;
+        setCumulator(MERGE_CUMULATOR);
+        final int offset = position;
+        position += (int) literalLength;
+        return offset;
+    }
 
-        final char next = peekNextChar(in);
-        switch(next) {
-            case '"':
-                mailboxName = readQuoted(in).toString(); // quotedStringParser.parse(in).toString();
-                break;
-            case '{':
-                mailboxName = readLiteral(ctx, in).toString(US_ASCII);
-                break;
-            default:
-                mailboxName = readAtom(in);
+    /**
+     * Writes the bytes of a spooled literal to its file as they arrive, validating them on the way.  The bytes
+     * before the literal are discarded first, since nothing after the literal header refers back to them, though
+     * they are kept as the raw bytes of the request if asked.
+     *
+     * @return whether the whole literal has been spooled, or false if more bytes are needed
+     */
+    private boolean readSpooledLiteralData(ByteBuf in) throws IOException {
+        if (spooledLiteral == null) {
+            spooledLiteral = SpooledLiteral.create(spoolDirectory);
+            captureRawBytes(in);
+            in.skipBytes(position);
+            position = 0;
+        }
+        final int length = (int) Math.min(in.readableBytes(), literalLength - literalValidated);
+        if (length > 0) {
+            validateChar8(in, in.readerIndex(), length);
+            spooledLiteral.write(in, length);
+            literalValidated += length;
+        }
+        if (literalValidated < literalLength) {
+            return false;
         }
+        state = State.READ_ARGUMENTS;
+        return true;
+    }
 
-        if ("INBOX".equalsIgnoreCase(mailboxName)) {
-            return ImapCodecConstants.INBOX;
+    /**
+     * Emits the next chunk of a streamed literal from whatever bytes have arrived.  Its bytes are not validated, so
+     * that a stream once begun always runs to its last chunk.
+     */
+    private void readLiteralChunk(ByteBuf in, List<Object> out) {
+        final int length = (int) Math.min(Math.min(in.readableBytes(), literalLength - literalValidated),
+                literalChunkSize);
+        if (length == 0) {
+            return;
+        }
+        literalValidated += length;
+        final ByteBuf content = in.readSlice(length).retain();
+        if (literalValidated == literalLength) {
+            out.add(new LastImapLiteralChunk(content));
+            state = State.READ_CRLF;
         } else {
-            return mailboxName;
+            out.add(new ImapLiteralChunk(content));
         }
     }
 
+    private boolean readSpace(ByteBuf in) {
+        if (!isReadable(in, 1)) {
+            return false;
+        }
+        final char c = peek(in, 0);
+        if (c != ' ') {
+            throw error(DecodeError.EXPECTED_SPACE, c);
+        }
+        position++;
+        return true;
+    }
 
-    private ImapRequest createInvalidRequest(Exception cause) {
-        checkpoint(State.INVALID_REQUEST);
-        final InvalidImapRequest invalidImapRequest = new InvalidImapRequest(cause);
-        invalidImapRequest.setDecoderResult(DecoderResult.failure(cause));
-        final ImapRequest ret = invalidImapRequest;
-        imapRequest = null;
-        return ret;
+    private boolean isReadable(ByteBuf in, int length) {
+        return in.readableBytes() - position >= length;
     }
 
-    private abstract class BaseParser implements ByteBufProcessor {
-        protected final AppendableCharSequence seq;
-        protected int size;
+    private char peek(ByteBuf in, int offset) {
+        return (char) in.getByte(in.readerIndex() + position + offset);
+    }
+
+    private static void validateChar8(ByteBuf in, int index, int length) {
+        final int invalid = indexOfNonChar8(in, index, index + length);
+        if (invalid >= 0) {
+            throw DecodeError.INVALID_CHAR8.exception();
+        }
+    }
+
+    /**
+     * Scans an atom or tag at the parse position a word at a time, resuming where an earlier scan of the same token
+     * ran out of bytes.
+     *
+     * @return the index of the byte that terminated the token, or -1 if more bytes are needed
+     */
+    private int scanAtom(ByteBuf in, boolean tag, int maximumSize) {
+        final int start = in.readerIndex() + position;
+        final int end = indexOfAtomEnd(in, start + tokenScanned, in.writerIndex(), tag);
+        final int size = (end < 0 ? in.writerIndex() : end) - start;
+        if (size > maximumSize) {
+            throw error(DecodeError.TOKEN_TOO_LONG, maximumSize);
+        }
+        if (end < 0) {
+            tokenScanned = size;
+            return -1;
+        }
+        tokenScanned = 0;
+        return end;
+    }
+
+    /**
+     * Scans the current token, starting <code>offset</code> bytes after the parse position, resuming where an
+     * earlier scan of the same token ran out of bytes.
+     *
+     * @return the index of the byte that terminated the token, or -1 if more bytes are needed
+     */
+    private int scan(ByteBuf in, int offset, TokenProcessor processor) {
+        if (tokenScanned == 0) {
+            processor.reset();
+        }
+        final int from = in.readerIndex() + position + offset + tokenScanned;
+        final int length = in.writerIndex() - from;
+        final int end = length > 0 ? in.forEachByte(from, length, processor) : -1;
+        if (end < 0) {
+            tokenScanned += Math.max(length, 0);
+            return -1;
+        }
+        tokenScanned = 0;
+        return end;
+    }
+
+    /**
+     * Notes the detail of a decoding error, to be formatted only if the invalid request's message is asked for.
+     *
+     * @return the error's preallocated exception, for the caller to throw
+     */
+    private RuntimeException error(DecodeError error, Object detail) {
+        errorDetail = detail;
+        return error.exception();
+    }
+
+    /**
+     * Gives up on the request being decoded, and starts skipping the rest of it.  The bytes already parsed are
+     * dropped, and if the failure came part way through a literal the client was told to send, the rest of that
+     * literal will be skipped too.
+     */
+    private ImapRequest createInvalidRequest(ByteBuf in, Exception cause) {
+        final CharSequence invalidTag = tag != null ? tag : InvalidImapRequest.INVALID_TAG;
+        final long literalRemaining;
+        if (state == State.STREAM_LITERAL || state == State.READ_LITERAL && spooledLiteral != null) {
+            // the bytes validated so far have already been consumed
+            literalRemaining = literalLength - literalValidated;
+        } else if (state == State.READ_LITERAL) {
+            literalRemaining = literalLength;
+        } else {
+            literalRemaining = 0;
+        }
+        in.skipBytes(Math.min(position, in.readableBytes()));
+        reset(State.INVALID_REQUEST);
+        invalidLiteralRemaining = literalRemaining;
+        invalidRequestProcessor.reset();
+
+        final DecodeError error = DecodeError.of(cause);
+        final InvalidImapRequest invalidImapRequest;
+        if (error != null) {
+            invalidImapRequest = new InvalidImapRequest(invalidTag, error, errorDetail);
+            invalidImapRequest.setDecoderResult(error.decoderResult());
+        } else {
+            invalidImapRequest = new InvalidImapRequest(invalidTag, cause);
+            invalidImapRequest.setDecoderResult(DecoderResult.failure(cause));
+        }
+        errorDetail = null;
+        return invalidImapRequest;
+    }
 
-        protected BaseParser(AppendableCharSequence seq) {
-            this.seq = seq;
+    /**
+     * Skips the rest of an invalid request: up to and including the CRLF that ends it, along with any
+     * non-synchronizing literals on the way.  The client sends no synchronizing literal without a continuation, and
+     * none is sent once the request is known to be invalid, so a line ending in a synchronizing literal header ends
+     * the request.
+     *
+     * @return whether the whole request has been skipped, or false if more bytes are needed
+     */
+    private boolean skipInvalidRequest(ByteBuf in) {
+        for (;;) {
+            if (invalidLiteralRemaining > 0) {
+                final int length = (int) Math.min(in.readableBytes(), invalidLiteralRemaining);
+                in.skipBytes(length);
+                invalidLiteralRemaining -= length;
+                if (invalidLiteralRemaining > 0) {
+                    return false;
+                }
+            }
+            final int lineFeed = in.forEachByte(invalidRequestProcessor);
+            if (lineFeed < 0) {
+                in.skipBytes(in.readableBytes());
+                return false;
+            }
+            in.readerIndex(lineFeed + 1);
+            invalidLiteralRemaining = invalidRequestProcessor.literalSize();
+            if (invalidLiteralRemaining < 0) {
+                invalidLiteralRemaining = 0;
+                return true;
+            }
         }
+    }
+
+    /**
+     * A byte processor that may be suspended at the end of the readable bytes and resumed when more arrive.
+     */
+    private abstract static class TokenProcessor implements ByteBufProcessor {
+        protected int size;
 
-        public AppendableCharSequence parse(ByteBuf buffer) {
-            seq.reset();
+        void reset() {
             size = 0;
-            final int i = buffer.forEachByte(this);
-            buffer.readerIndex(i + 1);
-            return seq;
         }
 
-        protected Set<Character> terminatingCharacters() {
-            return Collections.singleton(' ');
+        protected void count() throws TooLongFrameException {
+            if (size >= DEFAULT_MAXIMUM_SIZE) {
+                throw DecodeError.TOKEN_TOO_LONG.exception();
+            }
+            size++;
+        }
+    }
+
+    private static final class AuthenticationMechanismProcessor extends TokenProcessor {
+        @Override
+        public boolean process(byte value) throws Exception {
+            if (!is(value, SASL_MECHANISM_CHAR)) {
+                return false;
+            }
+            if (size >= MAXIMUM_AUTHENTICATION_MECHANISM_LENGTH) {
+                throw DecodeError.AUTHENTICATION_MECHANISM_TOO_LONG.exception();
+            }
+            count();
+            return true;
         }
+    }
+
+    /**
+     * Scans the content of a quoted string, unescaping as it goes, and stops at the closing quote.
+     */
+    private static final class QuotedProcessor extends TokenProcessor {
+        private int escapes;
+        private boolean escapedMode;
 
-        protected int maximumSize() {
-            return DEFAULT_MAXIMUM_SIZE;
+        @Override
+        void reset() {
+            super.reset();
+            escapes = 0;
+            escapedMode = false;
         }
 
-        protected boolean isValidChar(char c) {
+        @Override
+        public boolean process(byte value) throws Exception {
+            final char c = (char) value;
+            count();
+            if (escapedMode) {
+                if (!is(value, QUOTED_SPECIAL)) {
+                    throw DecodeError.INVALID_QUOTED_ESCAPE.exception();
+                }
+                escapedMode = false;
+            } else if (c == '"') {
+                return false;
+            } else if (c == '\\') {
+                escapedMode = true;
+                escapes++;
+            } else if (!is(value, QUOTED_CHAR)) {
+                throw DecodeError.INVALID_QUOTED_CHARACTER.exception();
+            }
             return true;
         }
+    }
 
+    /**
+     * Scans the content of a parenthesized flag list and stops at the closing parenthesis.
+     */
+    private static final class FlagListProcessor extends TokenProcessor {
         @Override
         public boolean process(byte value) throws Exception {
-            final char nextByte = (char) value;
-            if (terminatingCharacters().contains(nextByte)) {
+            final char c = (char) value;
+            if (c == ')') {
                 return false;
-            } else {
-                if (size >= maximumSize()) {
-                    throw new TooLongFrameException(
-                            format("Exceeded maximum size of %d bytes", maximumSize()));
-                }
-                if (isValidChar(nextByte)) {
-                    size++;
-                    seq.append(nextByte);
-                } else {
-                    throw new IllegalArgumentException(format("Invalid character: %s", nextByte));
-                }
-                return true;
             }
+            count();
+            if (c != ' ' && c != '\\' && !is(value, ATOM_CHAR)) {
+                throw DecodeError.INVALID_FLAG_CHARACTER.exception();
+            }
+            return true;
         }
     }
 
-    private final class TagParser extends BaseParser implements ByteBufProcessor {
-        TagParser(AppendableCharSequence seq) {
-            super(seq);
+    /**
+     * Scans the rest of a line of an invalid request, noting whether it ends in a non-synchronizing literal header,
+     * and stops at the line feed.
+     */
+    private static final class InvalidRequestProcessor implements ByteBufProcessor {
+        private static final int NONE = 0;
+        private static final int SIZE = 1;
+        private static final int PLUS = 2;
+        private static final int BRACE = 3;
+        private static final int CR = 4;
+
+        private int header;
+        private int digits;
+        private long size;
+        private long literalSize = -1;
+
+        void reset() {
+            header = NONE;
+            literalSize = -1;
+        }
+
+        /**
+         * @return the size of the non-synchronizing literal that follows the line just scanned, or -1 if none does
+         */
+        long literalSize() {
+            return literalSize;
         }
+
         @Override
-        protected boolean isValidChar(char c) {
-            return isTagChar(c);
+        public boolean process(byte value) throws Exception {
+            if (value == '\n') {
+                literalSize = header == CR ? size : -1;
+                header = NONE;
+                return false;
+            }
+            if (value == '{') {
+                header = SIZE;
+                digits = 0;
+                size = 0;
+                return true;
+            }
+            if (header == SIZE && is(value, DIGIT) && digits < MAXIMUM_LITERAL_SIZE_DIGITS) {
+                size = size * 10 + value - '0';
+                digits++;
+            } else if (header == SIZE && value == '+' && digits > 0) {
+                header = PLUS;
+            } else if (header == PLUS && value == '}') {
+                header = BRACE;
+            } else if (header == BRACE && value == '\r') {
+                header = CR;
+            } else {
+                header = NONE;
+            }
+            return true;
         }
+    }
 
+    private static final class LiteralSizeProcessor extends TokenProcessor {
         @Override
-        protected int maximumSize() {
-            return MAXIMUM_TAG_LENGTH;
+        public boolean process(byte value) throws Exception {
+            if (!is(value, DIGIT)) {
+                return false;
+            }
+            if (size >= MAXIMUM_LITERAL_SIZE_DIGITS) {
+                throw DecodeError.LITERAL_SIZE_TOO_LONG.exception();
+            }
+            size++;
+            return true;
         }
     }
 
+    /**
+     * The decoder's ways of reading arguments, as offered to command codecs.
+     */
+    private final class Arguments implements ArgumentDecoder {
+
+        @Override
+        public int getArgumentIndex() {
+            return argumentIndex;
+        }
+
+        @Override
+        public void setArgumentIndex(int index) {
+            argumentIndex = index;
+        }
+
+        @Override
+        public Object getArgument(int index) {
+            return arguments[index];
+        }
+
+        @Override
+        public void setArgument(int index, Object argument) {
+            arguments[index] = argument;
+        }
+
+        @Override
+        public ImapCommand.Kind getSubcommand() {
+            return subcommand;
+        }
+
+        @Override
+        public void setSubcommand(ImapCommand.Kind kind) {
+            subcommand = kind;
+        }
+
+        @Override
+        public boolean isReadable(ByteBuf in, int length) {
+            return ImapRequestDecoder.this.isReadable(in, length);
+        }
 
+        @Override
+        public char peek(ByteBuf in, int offset) {
+            return ImapRequestDecoder.this.peek(in, offset);
+        }
 
+        @Override
+        public void skip(int length) {
+            position += length;
+        }
+
+        @Override
+        public boolean readSpace(ByteBuf in) {
+            return ImapRequestDecoder.this.readSpace(in);
+        }
+
+        @Override
+        public CharSequence readAString(ByteBuf in) {
+            return ImapRequestDecoder.this.readAString(ctx, in);
+        }
+
+        @Override
+        public CharSequence readMailboxName(ByteBuf in) {
+            return ImapRequestDecoder.this.readMailboxName(ctx, in);
+        }
+
+        @Override
+        public ImapFlags readFlags(ByteBuf in) {
+            return ImapRequestDecoder.this.readFlags(in);
+        }
+
+        @Override
+        public SequenceSet readSequenceSet(ByteBuf in) {
+            return ImapRequestDecoder.this.readSequenceSet(in);
+        }
+
+        @Override
+        public FetchAttributes readFetchAttributes(ByteBuf in) {
+            return ImapRequestDecoder.this.readFetchAttributes(in);
+        }
+
+        @Override
+        public boolean readDateTime(ByteBuf in) {
+            return ImapRequestDecoder.this.readDateTime(in);
+        }
+
+        @Override
+        public long getDateTime() {
+            return dateTime;
+        }
+
+        @Override
+        public CharSequence readAuthenticationMechanismName(ByteBuf in) {
+            return ImapRequestDecoder.this.readAuthenticationMechanismName(in);
+        }
+
+        @Override
+        public boolean readMessageLiteral(ByteBuf in) throws IOException {
+            return ImapRequestDecoder.this.readMessageLiteral(ctx, in);
+        }
+
+        @Override
+        public long getMessageLiteralSize() {
+            return literalLength;
+        }
+
+        @Override
+        public boolean isMessageLiteralStreamed() {
+            return streaming;
+        }
+
+        @Override
+        public SpooledLiteral takeSpooledLiteral() {
+            final SpooledLiteral literal = spooledLiteral;
+            spooledLiteral = null;
+            return literal;
+        }
+
+        @Override
+        public ByteBuf takeMessageLiteral(ByteBuf in) {
+            return in.slice(in.readerIndex() + literalOffset, (int) literalLength).retain();
+        }
+
+        @Override
+        public RuntimeException error(DecodeError error, Object detail) {
+            return ImapRequestDecoder.this.error(error, detail);
+        }
+    }
 }
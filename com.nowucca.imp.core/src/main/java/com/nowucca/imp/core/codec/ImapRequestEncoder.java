@@ -3,247 +3,600 @@
  */
 package com.nowucca.imp.core.codec;
 
-import com.beetstra.jutf7.CharsetProvider;
+import com.nowucca.imp.core.message.FetchAttributes;
+import com.nowucca.imp.core.message.ImapFlags;
+import com.nowucca.imp.core.message.ImapLiteralChunk;
+import com.nowucca.imp.core.message.SequenceSet;
 import com.nowucca.imp.core.message.command.AppendCommand;
-import com.nowucca.imp.core.message.command.AuthenticateCommand;
-import com.nowucca.imp.core.message.command.CapabilityCommand;
+import com.nowucca.imp.core.message.command.DecodedImapRequest;
 import com.nowucca.imp.core.message.command.ImapCommand;
 import com.nowucca.imp.core.message.command.ImapRequest;
-import com.nowucca.imp.core.message.command.LoginCommand;
-import com.nowucca.imp.core.message.command.LogoutCommand;
-import com.nowucca.imp.core.message.command.NoopCommand;
-import com.nowucca.imp.core.message.command.SelectCommand;
-import com.nowucca.imp.core.message.command.StartTlsCommand;
-import com.nowucca.imp.util.ModifiedUTF7;
-import com.nowucca.imp.util.UTF8;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
-import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToByteEncoder;
-import java.nio.CharBuffer;
-import java.nio.charset.Charset;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Locale;
-import javax.mail.Flags;
+import io.netty.handler.codec.AsciiString;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import java.util.Arrays;
+import java.util.List;
+import static com.nowucca.imp.core.codec.DecoderUtils.isASTRING_CHAR;
+import static com.nowucca.imp.core.codec.DecoderUtils.isQuotedSpecial;
+import static com.nowucca.imp.core.codec.DecoderUtils.isTextChar;
+import static com.nowucca.imp.core.codec.DecoderUtils.isWhitespace;
+import static com.nowucca.imp.core.codec.EncoderUtils.decimalLength;
+import static com.nowucca.imp.core.codec.EncoderUtils.writeDecimal;
 import static com.nowucca.imp.core.codec.ImapCharacterConstants.*;
-import static java.lang.String.format;
 
 /**
+ * <p>
+ *     Encodes client requests, and the chunks of any streamed literals that follow them.
+ * </p>
+ * <p>
+ *     A large APPEND literal is never copied: it follows the encoded request as a component of a
+ *     {@link CompositeByteBuf}.  A spooled APPEND literal is written as a {@link io.netty.channel.FileRegion}
+ *     following the encoded request, so its bytes go from the file to the socket without passing through the heap.
+ * </p>
+ * <p>
+ *     Each astring is written in the cheapest form that can carry it: atom, then quoted string, then literal.
+ *     Literals are written non-synchronizing (<code>{n+}</code>) wherever the server's advertised
+ *     {@link NonSynchronizingLiterals} allow, so they need not wait for a continuation.  After the header of a
+ *     synchronizing literal the encoder writes a {@link ContinuationBarrier}, so that a
+ *     {@link SynchronizingLiteralHandler} closer to the socket can hold the rest of the request back until the
+ *     server's continuation arrives.
+ * </p>
+ * <p>
+ *     The arguments of each kind of command are written by the {@link CommandCodec} registered for it in the
+ *     encoder's {@link CommandCodecs}, using the ways of writing strings, flags, date-times and literals the encoder
+ *     offers as an {@link ArgumentEncoder}.
+ * </p>
+ * <p>
+ *     Each request is written into a buffer allocated at exactly its encoded length.  Command names, and the whole of
+ *     any command without arguments, are written from pre-encoded bytes, and strings and numbers are written straight
+ *     into the buffer, so encoding a request produces no garbage beyond the buffer itself.
+ * </p>
+ * <p>
+ *     A {@link DecodedImapRequest} that still holds the bytes it was decoded from is written as those bytes, with
+ *     no encoding at all, unless they carry a non-synchronizing literal the server does not accept.
+ * </p>
  */
-public class ImapRequestEncoder extends MessageToByteEncoder<ImapRequest> {
+public class ImapRequestEncoder extends MessageToMessageEncoder<Object> {
 
-    private static final Charset US_ASCII = Charset.forName("US-ASCII");
-    private static final String X_MODIFIED_UTF_7 = "X-MODIFIED-UTF-7";
-    private static final Charset X_MODIFIED_UTF_7_CHARSET = new CharsetProvider().charsetForName(X_MODIFIED_UTF_7);
+    /**
+     * APPEND message literals of at least this many bytes are not copied into the encoded request, but follow it as
+     * a component of the same buffer, so that they reach the socket in one gathering write.
+     */
+    static final int GATHERED_LITERAL_THRESHOLD = 1024;
 
-    @Override
-    protected void encode(ChannelHandlerContext ctx, ImapRequest msg, ByteBuf out) throws Exception {
-        if (msg != null) {
-            // tag
-            out.writeBytes(msg.getTag().getBytes(US_ASCII));
-            out.writeByte(' ');
-
-            // command
-            final ImapCommand command = msg.getCommand();
-
-            switch(command.getKind()) {
-                case APPEND: {
-                    final AppendCommand appendCommand = (AppendCommand) command;
-                    encodeCommandName(out, appendCommand);
-                    encodeSpace(out);
-                    encodeMailboxName(appendCommand.getMailboxName(), out);
-                    if (appendCommand.getFlags() != null) {
-                        encodeSpace(out);
-                        encodeFlags(appendCommand.getFlags(), out);
-                    }
-                    if (appendCommand.getDateTime() != null) {
-                        encodeSpace(out);
-                        encodeDateTime(appendCommand.getDateTime(), out);
-                    }
-                    encodeSpace(out);
-                    encodeLiteral(appendCommand.getMessageLiteral(), out);
-                    encodeCRLF(out);
-                    break;
-                }
+    static final ByteBuf CRLF_BUFFER = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(new byte[]{CR, LF}));
 
-                case AUTHENTICATE: {
-                    final AuthenticateCommand authenticateCommand = (AuthenticateCommand) command;
-                    encodeCommandName(out, authenticateCommand);
-                    encodeSpace(out);
-                    encodeAuthenticationMechanismName(out, authenticateCommand);
-                    encodeCRLF(out);
-                    break;
-                }
+    private volatile NonSynchronizingLiterals nonSynchronizingLiterals;
+    // read once for the request being encoded, so that its length and its bytes agree
+    private NonSynchronizingLiterals requestLiterals;
 
-                case CAPABILITY: {
-                    final CapabilityCommand capabilityCommand = (CapabilityCommand) command;
-                    encodeCommandName(out, capabilityCommand);
-                    encodeCRLF(out);
-                    break;
-                }
+    // where each synchronizing literal of the request being encoded starts
+    private int[] continuationPoints = new int[2];
+    private int continuationCount;
 
-                case LOGIN: {
-                    final LoginCommand loginCommand = (LoginCommand) command;
-                    encodeCommandName(out, loginCommand);
-                    encodeSpace(out);
-                    encodeLiteral(string2bytebuf(loginCommand.getUserId()), out);
-                    encodeSpace(out);
-                    encodeLiteral(string2bytebuf(loginCommand.getPassword()), out);
-                    encodeCRLF(out);
-                    break;
-                }
+    private final DateTimeCodec dateTimeCodec = new DateTimeCodec();
+    private final MailboxNameCodec mailboxNameCodec = new MailboxNameCodec();
+    private final CommandCodecs commandCodecs;
+    private final ArgumentEncoder argumentEncoder = new Arguments();
 
-                case LOGOUT: {
-                    final LogoutCommand logoutCommand = (LogoutCommand) command;
-                    encodeCommandName(out, logoutCommand);
-                    encodeCRLF(out);
-                    break;
-                }
+    public ImapRequestEncoder() {
+        this(NonSynchronizingLiterals.NONE);
+    }
 
-                case NOOP: {
-                    final NoopCommand noopCommand = (NoopCommand) command;
-                    encodeCommandName(out, noopCommand);
-                    encodeCRLF(out);
-                    break;
-                }
+    public ImapRequestEncoder(NonSynchronizingLiterals nonSynchronizingLiterals) {
+        this(nonSynchronizingLiterals, CommandCodecs.STANDARD);
+    }
 
-                case SELECT: {
-                    final SelectCommand selectCommand = (SelectCommand) command;
-                    encodeCommandName(out, selectCommand);
-                    encodeSpace(out);
-                    encodeMailboxName(selectCommand.getMailboxName(), out);
-                    encodeCRLF(out);
-                    break;
-                }
+    /**
+     * @param nonSynchronizingLiterals the non-synchronizing literals the server accepts
+     * @param commandCodecs the codec to write the arguments of each kind of command with
+     */
+    public ImapRequestEncoder(NonSynchronizingLiterals nonSynchronizingLiterals, CommandCodecs commandCodecs) {
+        this.nonSynchronizingLiterals = nonSynchronizingLiterals;
+        this.commandCodecs = commandCodecs;
+    }
 
-                case STARTTLS: {
-                    final StartTlsCommand startTlsCommand = (StartTlsCommand) command;
-                    encodeCommandName(out, startTlsCommand);
-                    encodeCRLF(out);
-                    break;
-                }
+    public NonSynchronizingLiterals getNonSynchronizingLiterals() {
+        return nonSynchronizingLiterals;
+    }
 
-                default: {
-                    throw new UnsupportedOperationException(format("No support for %s command.", command.getKind()));
-                }
+    /**
+     * Sets the non-synchronizing literals the server accepts, typically once its capabilities are known.
+     */
+    public void setNonSynchronizingLiterals(NonSynchronizingLiterals nonSynchronizingLiterals) {
+        this.nonSynchronizingLiterals = nonSynchronizingLiterals;
+    }
+
+    @Override
+    public boolean acceptOutboundMessage(Object msg) throws Exception {
+        return msg instanceof ImapRequest || msg instanceof ImapLiteralChunk;
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, Object msg, List<Object> out) throws Exception {
+        if (msg instanceof ImapLiteralChunk) {
+            encodeLiteralChunk((ImapLiteralChunk) msg, out);
+            return;
+        }
+        // a reference-counted request, such as a DecodedImapRequest, is released once encoded
+        encodeRequest(ctx, (ImapRequest) msg, out);
+    }
 
+    private void encodeRequest(ChannelHandlerContext ctx, ImapRequest request, List<Object> out) {
+        requestLiterals = nonSynchronizingLiterals;
+        final ByteBuf rawBytes = takeRawBytes(request);
+        if (rawBytes != null) {
+            final int[] points = ((DecodedImapRequest) request).getContinuationPoints();
+            splitAtContinuations(request, rawBytes, points, points.length, out);
+            encodeSpooledLiteral(request, out);
+            return;
+        }
+        ByteBuf buf = ctx.alloc().ioBuffer(encodedLength(request));
+        boolean encoded = false;
+        try {
+            continuationCount = 0;
+            encode(request, buf);
+            buf = gatherMessageLiteral(ctx, request, buf);
+            splitAtContinuations(request, buf, continuationPoints, continuationCount, out);
+            encoded = true;
+            encodeSpooledLiteral(request, out);
+        } finally {
+            if (!encoded) {
+                buf.release();
             }
         }
     }
 
-    private ByteBuf string2bytebuf(CharSequence string) {
-        return ByteBufUtil.encodeString(PooledByteBufAllocator.DEFAULT, CharBuffer.wrap(string), UTF8.charset());
+    /**
+     * @return the encoded request followed by its message literal and final CRLF, if the literal is gathered rather
+     *         than copied, otherwise the encoded request itself
+     */
+    private ByteBuf gatherMessageLiteral(ChannelHandlerContext ctx, ImapRequest request, ByteBuf buf) {
+        final ImapCommand command = request.getCommand();
+        if (command.getKind() != ImapCommand.Kind.APPEND || !AppendCommandCodec.isGathered((AppendCommand) command)) {
+            return buf;
+        }
+        // the literal remains the command's to release, so the composite holds a reference of its own
+        final ByteBuf messageLiteral = ((AppendCommand) command).getMessageLiteral().duplicate().retain();
+        final CompositeByteBuf composite = ctx.alloc().compositeBuffer(3);
+        composite.addComponents(buf, messageLiteral, CRLF_BUFFER.duplicate());
+        composite.writerIndex(buf.readableBytes() + messageLiteral.readableBytes() + 2);
+        return composite;
     }
 
-    private void encodeAuthenticationMechanismName(ByteBuf out, AuthenticateCommand authenticateCommand) {
-        out.writeBytes(authenticateCommand.getAuthenticationMechanismName().toString().getBytes(US_ASCII));
+    /**
+     * @return the raw bytes of a decoded request if they can be written as they are, or null to encode it
+     */
+    private ByteBuf takeRawBytes(ImapRequest request) {
+        if (!(request instanceof DecodedImapRequest)) {
+            return null;
+        }
+        final DecodedImapRequest decodedRequest = (DecodedImapRequest) request;
+        final long largestNonSynchronizingLiteral = decodedRequest.getLargestNonSynchronizingLiteral();
+        if (largestNonSynchronizingLiteral >= 0 && !requestLiterals.allows(largestNonSynchronizingLiteral)) {
+            decodedRequest.discardRawBytes();
+            return null;
+        }
+        return decodedRequest.takeRawBytes();
     }
 
+    /**
+     * Writes the encoded request, separating each synchronizing literal from its header with a barrier.
+     *
+     * @param points the offset of each synchronizing literal from the start of <code>buf</code>
+     */
+    private void splitAtContinuations(ImapRequest request, ByteBuf buf, int[] points, int count, List<Object> out) {
+        if (count == 0) {
+            out.add(buf);
+            return;
+        }
+        final long trailingBytes = trailingLiteralSize(request.getCommand());
+        int start = buf.readerIndex();
+        for (int i = 0; i < count; i++) {
+            final int point = buf.readerIndex() + points[i];
+            out.add(buf.slice(start, point - start).retain());
+            out.add(new ContinuationBarrier(request.getTag().toString(), buf.writerIndex() - point + trailingBytes));
+            start = point;
+        }
+        if (buf.writerIndex() > start) {
+            out.add(buf.slice(start, buf.writerIndex() - start).retain());
+        }
+        buf.release();
+    }
 
-    private void encodeLiteral(ByteBuf messageLiteral, ByteBuf out) {
-        out.writeByte('{');
-        out.writeBytes(String.valueOf(messageLiteral.readableBytes()).getBytes());
-        out.writeByte('}');
-        out.writeByte(CR);
-        out.writeByte(LF);
-        out.writeBytes(messageLiteral);
+    /**
+     * @return the number of bytes of the request written after its encoded form, as chunks or a file region
+     */
+    private long trailingLiteralSize(ImapCommand command) {
+        if (command.getKind() == ImapCommand.Kind.APPEND) {
+            final AppendCommand appendCommand = (AppendCommand) command;
+            if (appendCommand.isStreamed() || appendCommand.isSpooled()) {
+                return appendCommand.getMessageLiteralSize() + 2;
+            }
+        }
+        return 0;
     }
 
-    private static final DateTimeFormatter RFC_3501_DATE_TIME =
-            DateTimeFormatter.ofPattern("\"dd-MMM-yyyy HH:mm:ss xxxx\"", Locale.US);
+    private void encodeSpooledLiteral(ImapRequest request, List<Object> out) {
+        final ImapCommand command = request.getCommand();
+        if (command.getKind() == ImapCommand.Kind.APPEND && ((AppendCommand) command).isSpooled()) {
+            out.add(((AppendCommand) command).getSpooledLiteral().newFileRegion());
+            out.add(CRLF_BUFFER.duplicate());
+        }
+    }
 
-    private void encodeDateTime(ZonedDateTime dateTime, ByteBuf out) {
-        out.writeBytes(dateTime.format(RFC_3501_DATE_TIME).getBytes(US_ASCII));
+    private void encodeLiteralChunk(ImapLiteralChunk chunk, List<Object> out) {
+        // the chunk is released once encoded, so keep its content alive for the write
+        out.add(chunk.content().retain());
+        if (chunk.isLast()) {
+            out.add(CRLF_BUFFER.duplicate());
+        }
     }
 
-    private void encodeFlags(Flags flags, ByteBuf out) {
-        out.writeByte('(');
+    /**
+     * @return the number of bytes <code>encode</code> writes for the request, so its buffer never has to grow
+     */
+    private int encodedLength(ImapRequest request) {
+        final ImapCommand command = request.getCommand();
+        final CommandCodec<ImapCommand> codec = commandCodecs.codecFor(command);
+        return request.getTag().length() + commandCodecs.prefix(command.getKind()).length
+                + codec.argumentsLength(command, argumentEncoder);
+    }
 
-        boolean prependSpace = false;
+    private void encode(ImapRequest msg, ByteBuf out) {
+        final ImapCommand command = msg.getCommand();
+        final CommandCodec<ImapCommand> codec = commandCodecs.codecFor(command);
+        ByteBufUtil.writeAscii(out, msg.getTag());
+        out.writeBytes(commandCodecs.prefix(command.getKind()));
+        codec.encodeArguments(command, argumentEncoder, out);
+    }
 
-        if (flags.contains(Flags.Flag.ANSWERED)) {
-            out.writeBytes(ImapCodecConstants.ANSWERED_ALL_CAPS_BYTES);
-            prependSpace = true;
+    /**
+     * astring =  1*ASTRING-CHAR / quoted / literal
+     */
+    private void encodeAString(CharSequence value, ByteBuf out) {
+        if (isAtom(value)) {
+            ByteBufUtil.writeAscii(out, value);
+        } else if (isQuotable(value)) {
+            encodeQuoted(value, out);
+        } else {
+            encodeLiteralHeader(utf8Length(value), out);
+            writeUtf8(value, out);
         }
-        if (flags.contains(Flags.Flag.SEEN)) {
-            if (prependSpace) {
-                out.writeByte(SP);
+    }
+
+    private int astringLength(CharSequence value) {
+        if (isAtom(value)) {
+            return value.length();
+        } else if (isQuotable(value)) {
+            int length = value.length() + 2;
+            for (int i = 0; i < value.length(); i++) {
+                if (isQuotedSpecial(value.charAt(i))) {
+                    length++;
+                }
             }
-            out.writeBytes(ImapCodecConstants.SEEN_ALL_CAPS_BYTES);
-            prependSpace = true;
+            return length;
+        } else {
+            final int size = utf8Length(value);
+            return literalHeaderLength(size) + size;
         }
-        if (flags.contains(Flags.Flag.DELETED)) {
-            if (prependSpace) {
-                out.writeByte(SP);
+    }
+
+    private static boolean isAtom(CharSequence value) {
+        final int length = value.length();
+        if (length == 0) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x20 || c == 0x7f || !isASTRING_CHAR(c) || isWhitespace(c)) {
+                return false;
             }
-            out.writeBytes(ImapCodecConstants.DELETED_ALL_CAPS_BYTES);
-            prependSpace = true;
         }
-        if (flags.contains(Flags.Flag.DRAFT)) {
-            if (prependSpace) {
-                out.writeByte(SP);
+        return true;
+    }
+
+    private static boolean isQuotable(CharSequence value) {
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if (!isTextChar(value.charAt(i))) {
+                return false;
             }
-            out.writeBytes(ImapCodecConstants.DRAFT_ALL_CAPS_BYTES);
-            prependSpace = true;
         }
-        if (flags.contains(Flags.Flag.RECENT)) {
-            if (prependSpace) {
-                out.writeByte(SP);
+        return true;
+    }
+
+    private void encodeQuoted(CharSequence value, ByteBuf out) {
+        out.writeByte('"');
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (isQuotedSpecial(c)) {
+                out.writeByte('\\');
             }
-            out.writeBytes(ImapCodecConstants.RECENT_ALL_CAPS_BYTES);
-            prependSpace = true;
+            out.writeByte(c);
         }
-        if (flags.contains(Flags.Flag.FLAGGED)) {
-            if (prependSpace) {
-                out.writeByte(SP);
+        out.writeByte('"');
+    }
+
+    private void encodeLiteral(ByteBuf messageLiteral, ByteBuf out) {
+        encodeLiteralHeader(messageLiteral.readableBytes(), out);
+        // leaving the literal's reader index alone, so the command can be encoded again
+        out.writeBytes(messageLiteral, messageLiteral.readerIndex(), messageLiteral.readableBytes());
+    }
+
+    private void encodeLiteralHeader(long size, ByteBuf out) {
+        out.writeByte('{');
+        writeDecimal(size, out);
+        final boolean nonSynchronizing = requestLiterals.allows(size);
+        if (nonSynchronizing) {
+            out.writeByte('+');
+        }
+        out.writeByte('}');
+        out.writeByte(CR);
+        out.writeByte(LF);
+        if (!nonSynchronizing) {
+            addContinuationPoint(out.writerIndex());
+        }
+    }
+
+    private int literalHeaderLength(long size) {
+        return decimalLength(size) + (requestLiterals.allows(size) ? 5 : 4);
+    }
+
+    private void addContinuationPoint(int index) {
+        if (continuationCount == continuationPoints.length) {
+            continuationPoints = Arrays.copyOf(continuationPoints, continuationCount * 2);
+        }
+        continuationPoints[continuationCount++] = index;
+    }
+
+    /**
+     * The space-separated names of every combination of system flags, indexed by the combination's bits.
+     */
+    private static final byte[][] SYSTEM_FLAG_COMBINATIONS = new byte[ImapFlags.SYSTEM_FLAGS + 1][];
+
+    static {
+        for (int systemFlags = 0; systemFlags <= ImapFlags.SYSTEM_FLAGS; systemFlags++) {
+            final ByteBuf combination = Unpooled.buffer();
+            for (int i = 0; i < ImapCodecConstants.SYSTEM_FLAG_NAMES.length; i++) {
+                if ((systemFlags & (1 << i)) != 0) {
+                    if (combination.isReadable()) {
+                        combination.writeByte(SP);
+                    }
+                    combination.writeBytes(ImapCodecConstants.SYSTEM_FLAG_NAMES[i]);
+                }
             }
-            out.writeBytes(ImapCodecConstants.FLAGGED_ALL_CAPS_BYTES);
-            prependSpace = true;
+            SYSTEM_FLAG_COMBINATIONS[systemFlags] = Arrays.copyOf(combination.array(), combination.readableBytes());
         }
+    }
 
-        final String[] userFlags = flags.getUserFlags();
+    private static int flagsLength(ImapFlags flags) {
+        final byte[] systemFlags = SYSTEM_FLAG_COMBINATIONS[flags.getSystemFlags()];
+        int length = systemFlags.length + 2;
+        for (int i = 0; i < flags.getKeywordCount(); i++) {
+            length += flags.getKeyword(i).length() + (i > 0 || systemFlags.length > 0 ? 1 : 0);
+        }
+        return length;
+    }
 
-        for (String userFlag: userFlags) {
+    private void encodeFlags(ImapFlags flags, ByteBuf out) {
+        out.writeByte('(');
+        final byte[] systemFlags = SYSTEM_FLAG_COMBINATIONS[flags.getSystemFlags()];
+        out.writeBytes(systemFlags);
+        boolean prependSpace = systemFlags.length > 0;
+        for (int i = 0; i < flags.getKeywordCount(); i++) {
             if (prependSpace) {
                 out.writeByte(SP);
             }
-            out.writeBytes(userFlag.getBytes(US_ASCII));
+            final AsciiString keyword = flags.getKeyword(i);
+            out.writeBytes(keyword.array(), keyword.arrayOffset(), keyword.length());
             prependSpace = true;
         }
-
         out.writeByte(')');
     }
 
 
-    //TODO: write this out quoted, literal or as an atom?
-    private void encodeMailboxName(String mailboxName, ByteBuf out) {
-        if (ImapCodecConstants.INBOX.equalsIgnoreCase(mailboxName)) {
-            out.writeBytes("INBOX".getBytes());
+    static int sequenceSetLength(SequenceSet sequenceSet) {
+        int length = Math.max(sequenceSet.getRangeCount() - 1, 0);
+        for (int i = 0; i < sequenceSet.getRangeCount(); i++) {
+            length += sequenceNumberLength(sequenceSet.getRangeStart(i));
+            if (sequenceSet.getRangeEnd(i) != sequenceSet.getRangeStart(i)) {
+                length += 1 + sequenceNumberLength(sequenceSet.getRangeEnd(i));
+            }
+        }
+        return length;
+    }
+
+    static void encodeSequenceSet(SequenceSet sequenceSet, ByteBuf out) {
+        for (int i = 0; i < sequenceSet.getRangeCount(); i++) {
+            if (i > 0) {
+                out.writeByte(',');
+            }
+            writeSequenceNumber(sequenceSet.getRangeStart(i), out);
+            if (sequenceSet.getRangeEnd(i) != sequenceSet.getRangeStart(i)) {
+                out.writeByte(':');
+                writeSequenceNumber(sequenceSet.getRangeEnd(i), out);
+            }
+        }
+    }
+
+    private static int sequenceNumberLength(long number) {
+        return number == SequenceSet.STAR ? 1 : decimalLength(number);
+    }
+
+    private static void writeSequenceNumber(long number, ByteBuf out) {
+        if (number == SequenceSet.STAR) {
+            out.writeByte('*');
         } else {
-            out.writeBytes(ModifiedUTF7.encode(mailboxName).getBytes(X_MODIFIED_UTF_7_CHARSET));
+            writeDecimal(number, out);
         }
     }
 
-    private void encodeSpace(ByteBuf out) {
-        out.writeByte(SP);
+    /**
+     * @return the mailbox name as it is to be written as an astring
+     */
+    private CharSequence mailboxNameForm(CharSequence mailboxName) {
+        if (AsciiString.equalsIgnoreCase(ImapCodecConstants.INBOX, mailboxName)) {
+            return ImapCodecConstants.INBOX;
+        } else if (isModifiedUTF7Invariant(mailboxName)) {
+            return mailboxName;
+        } else {
+            return mailboxNameCodec.encode(mailboxName);
+        }
     }
 
-    private void encodeCRLF(ByteBuf out) {
-        out.writeByte(CR);
-        out.writeByte(LF);
+    /**
+     * @return whether modified UTF-7 would leave the name as it is: printable US-ASCII other than '&amp;'
+     */
+    static boolean isModifiedUTF7Invariant(CharSequence name) {
+        final int length = name.length();
+        for (int i = 0; i < length; i++) {
+            final char c = name.charAt(i);
+            if (c < 0x20 || c > 0x7e || c == '&') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of bytes <code>writeUtf8</code> writes, an unpaired surrogate being written as '?' as
+     *         {@link String#getBytes} does
+     */
+    private static int utf8Length(CharSequence value) {
+        final int length = value.length();
+        int utf8Length = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                utf8Length++;
+            } else if (c < 0x800) {
+                utf8Length += 2;
+            } else if (isSurrogatePair(value, i)) {
+                utf8Length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                utf8Length++;
+            } else {
+                utf8Length += 3;
+            }
+        }
+        return utf8Length;
     }
 
-    private void encodeCommandName(ByteBuf out, ImapCommand command) {
-        writeAsciiBytes(out, command.getCommandName());
+    private static void writeUtf8(CharSequence value, ByteBuf out) {
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                out.writeByte(c);
+            } else if (c < 0x800) {
+                out.writeByte(0xc0 | c >> 6);
+                out.writeByte(0x80 | c & 0x3f);
+            } else if (isSurrogatePair(value, i)) {
+                final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                out.writeByte(0xf0 | codePoint >> 18);
+                out.writeByte(0x80 | codePoint >> 12 & 0x3f);
+                out.writeByte(0x80 | codePoint >> 6 & 0x3f);
+                out.writeByte(0x80 | codePoint & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                out.writeByte('?');
+            } else {
+                out.writeByte(0xe0 | c >> 12);
+                out.writeByte(0x80 | c >> 6 & 0x3f);
+                out.writeByte(0x80 | c & 0x3f);
+            }
+        }
     }
 
-    private void writeAsciiBytes(ByteBuf out, String s) {
-        out.writeBytes(s.getBytes(US_ASCII));
+    private static boolean isSurrogatePair(CharSequence value, int index) {
+        return Character.isHighSurrogate(value.charAt(index)) && index + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(index + 1));
     }
 
-    private void writeAsciiBytes(ByteBuf out, CharSequence s) {
-        out.writeBytes(s.toString().getBytes(US_ASCII));
+    /**
+     * The encoder's ways of writing arguments, as offered to command codecs.
+     */
+    private final class Arguments implements ArgumentEncoder {
+
+        @Override
+        public int astringLength(CharSequence value) {
+            return ImapRequestEncoder.this.astringLength(value);
+        }
+
+        @Override
+        public void encodeAString(CharSequence value, ByteBuf out) {
+            ImapRequestEncoder.this.encodeAString(value, out);
+        }
+
+        @Override
+        public int mailboxNameLength(CharSequence mailboxName) {
+            return ImapRequestEncoder.this.astringLength(mailboxNameForm(mailboxName));
+        }
+
+        @Override
+        public void encodeMailboxName(CharSequence mailboxName, ByteBuf out) {
+            ImapRequestEncoder.this.encodeAString(mailboxNameForm(mailboxName), out);
+        }
+
+        @Override
+        public int flagsLength(ImapFlags flags) {
+            return ImapRequestEncoder.flagsLength(flags);
+        }
+
+        @Override
+        public void encodeFlags(ImapFlags flags, ByteBuf out) {
+            ImapRequestEncoder.this.encodeFlags(flags, out);
+        }
+
+        @Override
+        public int sequenceSetLength(SequenceSet sequenceSet) {
+            return ImapRequestEncoder.sequenceSetLength(sequenceSet);
+        }
+
+        @Override
+        public void encodeSequenceSet(SequenceSet sequenceSet, ByteBuf out) {
+            ImapRequestEncoder.encodeSequenceSet(sequenceSet, out);
+        }
+
+        @Override
+        public int fetchAttributesLength(FetchAttributes attributes) {
+            return FetchAttributesCodec.length(attributes);
+        }
+
+        @Override
+        public void encodeFetchAttributes(FetchAttributes attributes, ByteBuf out) {
+            FetchAttributesCodec.encode(attributes, out);
+        }
+
+        @Override
+        public int dateTimeLength() {
+            return DateTimeCodec.LENGTH;
+        }
+
+        @Override
+        public void encodeDateTime(long dateTime, ByteBuf out) {
+            dateTimeCodec.encode(dateTime, out);
+        }
+
+        @Override
+        public int literalHeaderLength(long size) {
+            return ImapRequestEncoder.this.literalHeaderLength(size);
+        }
+
+        @Override
+        public void encodeLiteralHeader(long size, ByteBuf out) {
+            ImapRequestEncoder.this.encodeLiteralHeader(size, out);
+        }
+
+        @Override
+        public void encodeLiteral(ByteBuf literal, ByteBuf out) {
+            ImapRequestEncoder.this.encodeLiteral(literal, out);
+        }
     }
 }
@@ -0,0 +1,415 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.ImapLiteralChunk;
+import com.nowucca.imp.core.message.LastImapLiteralChunk;
+import com.nowucca.imp.core.message.command.DecodeError;
+import com.nowucca.imp.core.message.response.DecodedImapResponse;
+import com.nowucca.imp.core.message.response.ImapResponse;
+import com.nowucca.imp.core.message.response.ImapResponseSegment;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.AsciiString;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import java.util.List;
+import static com.nowucca.imp.core.codec.DecoderUtils.DIGIT;
+import static com.nowucca.imp.core.codec.DecoderUtils.indexOfAtomEnd;
+import static com.nowucca.imp.core.codec.DecoderUtils.indexOfEither;
+import static com.nowucca.imp.core.codec.DecoderUtils.is;
+import static com.nowucca.imp.core.codec.ImapCodecConstants.DEFAULT_LITERAL_CHUNK_SIZE;
+import static com.nowucca.imp.core.codec.ImapCodecConstants.DEFAULT_LITERAL_STREAMING_THRESHOLD;
+import static com.nowucca.imp.core.codec.ImapCodecConstants.DEFAULT_MAXIMUM_RESPONSE_LINE_LENGTH;
+import static com.nowucca.imp.core.codec.ImapCodecConstants.LITERAL_COMPOSITE_THRESHOLD;
+import static com.nowucca.imp.core.codec.ImapCodecConstants.MAXIMUM_TAG_LENGTH;
+import static java.lang.String.format;
+
+/**
+ * <p>
+ *     Decodes server responses: tagged status responses, untagged status and data responses, and continuation
+ *     requests, each as a {@link DecodedImapResponse} holding the bytes it was decoded from.
+ * </p>
+ * <pre>
+ * response        = *(continue-req / response-data) response-done
+ * continue-req    = "+" SP (resp-text / base64) CRLF
+ * response-data   = "*" SP (resp-cond-state / resp-cond-bye /
+ *                   mailbox-data / message-data / capability-data) CRLF
+ * response-tagged = tag SP resp-cond-state CRLF
+ * </pre>
+ * <p>
+ *     Only what identifies a response is parsed: its tag, status, number and name.  The rest is found by scanning
+ *     each line a word at a time for its LF, and by noting any literal header that ends it.  Literals are looked for
+ *     only in data responses, since the text of a status response may hold anything that looks like one.
+ * </p>
+ * <p>
+ *     Literals are never copied.  A literal is kept within its response as long as the response stays below the
+ *     streaming threshold, gathered from received buffers into a composite if it is large.  Otherwise, such as for
+ *     the BODY[] of a large message, the response is emitted as soon as the literal header has been read, followed
+ *     by {@link ImapLiteralChunk}s, retained slices of at most the chunk size as the bytes arrive, ending with a
+ *     {@link LastImapLiteralChunk}; then an {@link ImapResponseSegment} holds what follows the literal.  Memory held
+ *     per connection then stays bounded however large the message is.
+ * </p>
+ * <p>
+ *     A response that cannot be decoded is reported as an exception.  The decoder can no longer tell where the next
+ *     response starts, so it discards everything it receives afterwards.
+ * </p>
+ */
+public class ImapResponseDecoder extends ByteToMessageDecoder {
+
+    private static final int MAXIMUM_LITERAL_SIZE_DIGITS = 19;
+
+    private static final ImapResponse.Status[] STATUSES = ImapResponse.Status.values();
+
+    // names recognized without allocating, starting with the statuses in order
+    private static final AsciiString[] NAMES = {
+        new AsciiString("OK"), new AsciiString("NO"), new AsciiString("BAD"), new AsciiString("PREAUTH"),
+        new AsciiString("BYE"), new AsciiString("CAPABILITY"), new AsciiString("ENABLED"), new AsciiString("EXISTS"),
+        new AsciiString("EXPUNGE"), new AsciiString("FETCH"), new AsciiString("FLAGS"), new AsciiString("LIST"),
+        new AsciiString("LSUB"), new AsciiString("RECENT"), new AsciiString("SEARCH"), new AsciiString("STATUS")
+    };
+
+    public enum State {
+        READ_LINE,
+        READ_LITERAL,
+        STREAM_LITERAL,
+        BAD_RESPONSE
+    }
+
+    private State state = State.READ_LINE;
+
+    // how far into the current response we have parsed, relative to the reader index
+    private int position;
+    // where the current line starts, relative to the reader index
+    private int lineStart;
+    // how far into the current line we have scanned, relative to its start
+    private int lineScanned;
+    // whether the start of the response has been emitted, before a streamed literal
+    private boolean segment;
+
+    private ImapResponse.Type type;
+    private AsciiString tag;
+    private ImapResponse.Status status;
+    private long number;
+    private AsciiString name;
+    private int textOffset;
+
+    private long literalLength;
+
+    private final long literalStreamingThreshold;
+    private final int literalChunkSize;
+    private final int maximumLineLength;
+
+    public ImapResponseDecoder() {
+        this(DEFAULT_LITERAL_STREAMING_THRESHOLD, DEFAULT_LITERAL_CHUNK_SIZE, DEFAULT_MAXIMUM_RESPONSE_LINE_LENGTH);
+    }
+
+    /**
+     * @param literalStreamingThreshold a literal is streamed as chunks if its response would otherwise hold at least
+     *                                  this many bytes
+     * @param literalChunkSize the largest chunk of a streamed literal to emit
+     * @param maximumLineLength the longest line to accept, not counting its literals
+     */
+    public ImapResponseDecoder(long literalStreamingThreshold, int literalChunkSize, int maximumLineLength) {
+        if (literalChunkSize <= 0) {
+            throw new IllegalArgumentException(format("literalChunkSize must be positive: %d", literalChunkSize));
+        }
+        if (maximumLineLength <= 0) {
+            throw new IllegalArgumentException(format("maximumLineLength must be positive: %d", maximumLineLength));
+        }
+        this.literalStreamingThreshold = literalStreamingThreshold;
+        this.literalChunkSize = literalChunkSize;
+        this.maximumLineLength = maximumLineLength;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        try {
+            for (;;) {
+                switch (state) {
+                    case READ_LINE:
+                        if (!readLine(in, out)) {
+                            return;
+                        }
+                        break;
+
+                    case READ_LITERAL:
+                        if (in.readableBytes() - position < literalLength) {
+                            return;
+                        }
+                        position += (int) literalLength;
+                        lineStart = position;
+                        setCumulator(MERGE_CUMULATOR);
+                        state = State.READ_LINE;
+                        break;
+
+                    case STREAM_LITERAL:
+                        readLiteralChunk(in, out);
+                        return;
+
+                    case BAD_RESPONSE:
+                        in.skipBytes(in.readableBytes());
+                        return;
+
+                    default:
+                        throw new IllegalStateException(format("Unexpected state %s", state));
+                }
+            }
+        } catch (Exception e) {
+            setCumulator(MERGE_CUMULATOR);
+            state = State.BAD_RESPONSE;
+            in.skipBytes(in.readableBytes());
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the next line of the response, and emits the response if the line ends it or introduces a streamed
+     * literal.
+     *
+     * @return whether to carry on decoding, or false if more bytes are needed or something was emitted
+     */
+    private boolean readLine(ByteBuf in, List<Object> out) {
+        final int start = in.readerIndex() + lineStart;
+        final int lf = indexOfEither(in, start + lineScanned, in.writerIndex(), (byte) '\n', (byte) '\n');
+        final int length = (lf < 0 ? in.writerIndex() : lf) - start;
+        if (length > maximumLineLength) {
+            throw DecodeError.RESPONSE_LINE_TOO_LONG.exception();
+        }
+        if (lf < 0) {
+            lineScanned = length;
+            return false;
+        }
+        lineScanned = 0;
+        final int cr = lf - 1;
+        if (lf == start || in.getByte(cr) != '\r') {
+            throw DecodeError.EXPECTED_CRLF.exception();
+        }
+        if (!segment && lineStart == 0) {
+            readStart(in, start, cr);
+        }
+        position = lf + 1 - in.readerIndex();
+
+        final long literal = type == ImapResponse.Type.UNTAGGED && status == null ? literalSize(in, start, cr) : -1;
+        if (literal < 0) {
+            emit(in, out, true);
+            reset();
+            return false;
+        }
+        if (position + literal >= literalStreamingThreshold || position + literal > Integer.MAX_VALUE) {
+            emit(in, out, false);
+            segment = true;
+            position = 0;
+            lineStart = 0;
+            literalLength = literal;
+            if (literal == 0) {
+                out.add(new LastImapLiteralChunk(Unpooled.EMPTY_BUFFER));
+            } else {
+                state = State.STREAM_LITERAL;
+            }
+            return false;
+        }
+        literalLength = literal;
+        if (literal >= LITERAL_COMPOSITE_THRESHOLD) {
+            setCumulator(ImapRequestDecoder.LITERAL_CUMULATOR);
+        }
+        state = State.READ_LITERAL;
+        return true;
+    }
+
+    /**
+     * Reads what identifies the response from its first line.
+     *
+     * @param start the index of the first byte of the response
+     * @param cr the index of the CR that ends the line
+     */
+    private void readStart(ByteBuf in, int start, int cr) {
+        final byte first = in.getByte(start);
+        number = -1;
+        if (first == '+') {
+            type = ImapResponse.Type.CONTINUATION;
+            textOffset = start + 1 < cr && in.getByte(start + 1) == ' ' ? 2 : 1;
+            return;
+        }
+        int index;
+        if (first == '*') {
+            type = ImapResponse.Type.UNTAGGED;
+            index = expectSpace(in, start + 1, cr);
+            if (is(in.getByte(index), DIGIT)) {
+                final int end = numberEnd(in, index, cr);
+                number = readNumber(in, index, end);
+                index = expectSpace(in, end, cr);
+            }
+        } else {
+            type = ImapResponse.Type.TAGGED;
+            final int end = atomEnd(in, start, cr, true);
+            if (end == start) {
+                throw DecodeError.EXPECTED_TAG.exception();
+            }
+            if (end - start > MAXIMUM_TAG_LENGTH) {
+                throw DecodeError.TOKEN_TOO_LONG.exception();
+            }
+            tag = ascii(in, start, end - start);
+            index = expectSpace(in, end, cr);
+        }
+
+        final int end = atomEnd(in, index, cr, false);
+        if (end == index) {
+            throw DecodeError.INVALID_RESPONSE.exception();
+        }
+        name = name(in, index, end);
+        for (int i = 0; i < STATUSES.length; i++) {
+            if (name == NAMES[i]) {
+                status = STATUSES[i];
+            }
+        }
+        if (type == ImapResponse.Type.TAGGED
+                && status != ImapResponse.Status.OK && status != ImapResponse.Status.NO
+                && status != ImapResponse.Status.BAD) {
+            throw DecodeError.INVALID_RESPONSE.exception();
+        }
+        textOffset = (end < cr && in.getByte(end) == ' ' ? end + 1 : end) - start;
+    }
+
+    /**
+     * Emits the response, or the segment of it that follows a streamed literal, as far as the parse position.
+     *
+     * @param last whether the response ends there, rather than continuing after a streamed literal
+     */
+    private void emit(ByteBuf in, List<Object> out, boolean last) {
+        final ByteBuf rawBytes = in.slice(in.readerIndex(), position).retain();
+        in.skipBytes(position);
+        if (segment) {
+            out.add(new ImapResponseSegment(rawBytes, last));
+        } else {
+            out.add(DecodedImapResponse.newInstance(type, tag, status, number, name, rawBytes, textOffset, last));
+        }
+    }
+
+    /**
+     * Emits the next chunk of a streamed literal from whatever bytes have arrived.
+     */
+    private void readLiteralChunk(ByteBuf in, List<Object> out) {
+        final int length = (int) Math.min(Math.min(in.readableBytes(), literalLength), literalChunkSize);
+        if (length == 0) {
+            return;
+        }
+        literalLength -= length;
+        final ByteBuf content = in.readSlice(length).retain();
+        if (literalLength == 0) {
+            out.add(new LastImapLiteralChunk(content));
+            state = State.READ_LINE;
+        } else {
+            out.add(new ImapLiteralChunk(content));
+        }
+    }
+
+    private void reset() {
+        position = 0;
+        lineStart = 0;
+        segment = false;
+        type = null;
+        tag = null;
+        status = null;
+        number = -1;
+        name = null;
+        textOffset = 0;
+    }
+
+    /**
+     * @return the size of the literal whose header ends the line, or -1 if the line does not end with one
+     */
+    private static long literalSize(ByteBuf in, int start, int cr) {
+        int index = cr - 1;
+        if (index <= start || in.getByte(index) != '}') {
+            return -1;
+        }
+        index--;
+        if (in.getByte(index) == '+') {
+            index--;
+        }
+        final int end = index + 1;
+        while (index > start && is(in.getByte(index), DIGIT)) {
+            index--;
+        }
+        if (in.getByte(index) != '{' || index + 1 == end) {
+            return -1;
+        }
+        if (end - index - 1 > MAXIMUM_LITERAL_SIZE_DIGITS) {
+            throw DecodeError.LITERAL_SIZE_TOO_LONG.exception();
+        }
+        long size = 0;
+        for (int i = index + 1; i < end; i++) {
+            final int digit = in.getByte(i) - '0';
+            if (size > (Long.MAX_VALUE - digit) / 10) {
+                throw DecodeError.LITERAL_SIZE_TOO_LONG.exception();
+            }
+            size = size * 10 + digit;
+        }
+        return size;
+    }
+
+    private static int expectSpace(ByteBuf in, int index, int cr) {
+        if (index >= cr || in.getByte(index) != ' ') {
+            throw DecodeError.EXPECTED_SPACE.exception();
+        }
+        return index + 1;
+    }
+
+    /**
+     * @return the index of the first byte from <code>from</code> that cannot continue an atom or tag, or
+     *         <code>cr</code>
+     */
+    private static int atomEnd(ByteBuf in, int from, int cr, boolean tag) {
+        final int end = indexOfAtomEnd(in, from, cr, tag);
+        return end < 0 ? cr : end;
+    }
+
+    private static int numberEnd(ByteBuf in, int from, int cr) {
+        int index = from;
+        while (index < cr && is(in.getByte(index), DIGIT)) {
+            index++;
+        }
+        return index;
+    }
+
+    private static long readNumber(ByteBuf in, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = value * 10 + in.getByte(i) - '0';
+            if (value > 0xffffffffL) {
+                throw DecodeError.INVALID_RESPONSE.exception();
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return the shared name, if the bytes are a name recognized without allocating, ignoring case, or else a copy
+     */
+    private static AsciiString name(ByteBuf in, int from, int to) {
+        final int length = to - from;
+        for (AsciiString name : NAMES) {
+            if (name.length() == length && matches(in, from, name)) {
+                return name;
+            }
+        }
+        return ascii(in, from, length);
+    }
+
+    private static boolean matches(ByteBuf in, int from, AsciiString name) {
+        for (int i = 0; i < name.length(); i++) {
+            if ((in.getByte(from + i) | 0x20) != (name.byteAt(i) | 0x20)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static AsciiString ascii(ByteBuf in, int index, int length) {
+        final byte[] bytes = new byte[length];
+        in.getBytes(index, bytes);
+        return new AsciiString(bytes, false);
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.ImapLiteralChunk;
+import com.nowucca.imp.core.message.response.DecodedImapResponse;
+import com.nowucca.imp.core.message.response.ImapDataResponse;
+import com.nowucca.imp.core.message.response.ImapResponse;
+import com.nowucca.imp.core.message.response.ImapResponseSegment;
+import com.nowucca.imp.core.message.response.PreEncodedImapResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import java.util.List;
+import static com.nowucca.imp.core.codec.EncoderUtils.decimalLength;
+import static com.nowucca.imp.core.codec.EncoderUtils.writeDecimal;
+import static com.nowucca.imp.core.codec.ImapCharacterConstants.SP;
+import static com.nowucca.imp.core.codec.ImapRequestEncoder.CRLF_BUFFER;
+import static java.lang.String.format;
+
+/**
+ * <p>
+ *     Encodes server responses, and the parts of any response whose literals are streamed.
+ * </p>
+ * <p>
+ *     The replies a server sends most, such as the greeting, CAPABILITY, the OK of a NOOP, BAD and BYE, are
+ *     {@link PreEncodedImapResponse}s, whose bytes were encoded once into a shared direct buffer.  An untagged one is
+ *     written as a duplicate of that buffer, without allocating or copying anything; a tagged one is written as a
+ *     {@link CompositeByteBuf} of its tag and a duplicate of the shared body, so only the tag is copied.
+ * </p>
+ * <p>
+ *     An {@link ImapDataResponse} is written as its name and number, then its data.  Large data, such as a FETCH
+ *     carrying a message body, is never copied: it follows the encoded name as a component of a
+ *     {@link CompositeByteBuf}, and reaches the socket in the same gathering write.
+ * </p>
+ * <p>
+ *     A {@link DecodedImapResponse} is written as the bytes it was decoded from, with no encoding at all, followed by
+ *     the {@link ImapLiteralChunk}s and {@link ImapResponseSegment}s of any literal that was streamed.
+ * </p>
+ */
+public class ImapResponseEncoder extends MessageToMessageEncoder<Object> {
+
+    /**
+     * Data of at least this many bytes is not copied into the encoded response, but follows it as a component of the
+     * same buffer.
+     */
+    static final int GATHERED_DATA_THRESHOLD = 1024;
+
+    private static final byte[] UNTAGGED_PREFIX = {'*', SP};
+
+    @Override
+    public boolean acceptOutboundMessage(Object msg) throws Exception {
+        return msg instanceof ImapResponse || msg instanceof ImapResponseSegment || msg instanceof ImapLiteralChunk;
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, Object msg, List<Object> out) throws Exception {
+        // a reference-counted message is released once encoded, so keep what is written alive for the write
+        if (msg instanceof PreEncodedImapResponse) {
+            encodePreEncoded(ctx, (PreEncodedImapResponse) msg, out);
+        } else if (msg instanceof ImapDataResponse) {
+            encodeData(ctx, (ImapDataResponse) msg, out);
+        } else if (msg instanceof DecodedImapResponse) {
+            final ByteBuf rawBytes = ((DecodedImapResponse) msg).takeRawBytes();
+            if (rawBytes == null) {
+                throw new IllegalArgumentException(format("Response already written: %s", msg));
+            }
+            out.add(rawBytes);
+        } else if (msg instanceof ImapResponseSegment) {
+            out.add(((ImapResponseSegment) msg).content().retain());
+        } else if (msg instanceof ImapLiteralChunk) {
+            // a segment follows the last chunk, so no CRLF is written after it
+            out.add(((ImapLiteralChunk) msg).content().retain());
+        } else {
+            throw new IllegalArgumentException(format("Cannot encode %s", msg));
+        }
+    }
+
+    private static void encodePreEncoded(ChannelHandlerContext ctx, PreEncodedImapResponse response,
+                                         List<Object> out) {
+        final ByteBuf body = response.getBody();
+        if (response.getType() != ImapResponse.Type.TAGGED) {
+            out.add(body);
+            return;
+        }
+        final CharSequence tag = response.getTag();
+        if (tag == null) {
+            throw new IllegalArgumentException(format("Tagged response without a tag: %s", response));
+        }
+        final ByteBuf tagBuf = ctx.alloc().ioBuffer(tag.length());
+        ByteBufUtil.writeAscii(tagBuf, tag);
+        final CompositeByteBuf composite = ctx.alloc().compositeBuffer(2);
+        composite.addComponents(tagBuf, body);
+        composite.writerIndex(tag.length() + body.readableBytes());
+        out.add(composite);
+    }
+
+    /**
+     * Writes "*", the number if there is one, the name and the data, then CRLF.
+     */
+    private static void encodeData(ChannelHandlerContext ctx, ImapDataResponse response, List<Object> out) {
+        final ByteBuf data = response.content();
+        final CharSequence name = response.getName();
+        final long number = response.getNumber();
+        final int dataLength = data.readableBytes();
+        final boolean gathered = dataLength >= GATHERED_DATA_THRESHOLD;
+
+        int headerLength = UNTAGGED_PREFIX.length + name.length() + (dataLength > 0 ? 1 : 0);
+        if (number >= 0) {
+            headerLength += decimalLength(number) + 1;
+        }
+        final ByteBuf buf = ctx.alloc().ioBuffer(headerLength + (gathered ? 0 : dataLength + 2));
+        buf.writeBytes(UNTAGGED_PREFIX);
+        if (number >= 0) {
+            writeDecimal(number, buf);
+            buf.writeByte(SP);
+        }
+        ByteBufUtil.writeAscii(buf, name);
+        if (dataLength > 0) {
+            buf.writeByte(SP);
+        }
+        if (!gathered) {
+            buf.writeBytes(data, data.readerIndex(), dataLength);
+            buf.writeBytes(CRLF_BUFFER, CRLF_BUFFER.readerIndex(), 2);
+            out.add(buf);
+            return;
+        }
+        // the data remains the response's to release, so the composite holds a reference of its own
+        final CompositeByteBuf composite = ctx.alloc().compositeBuffer(3);
+        composite.addComponents(buf, data.duplicate().retain(), CRLF_BUFFER.duplicate());
+        composite.writerIndex(headerLength + dataLength + 2);
+        out.add(composite);
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.command.ImapCommand;
+import com.nowucca.imp.core.message.command.LoginCommand;
+import io.netty.buffer.ByteBuf;
+import static com.nowucca.imp.core.codec.ImapCharacterConstants.CR;
+import static com.nowucca.imp.core.codec.ImapCharacterConstants.LF;
+import static com.nowucca.imp.core.codec.ImapCharacterConstants.SP;
+import static java.lang.String.format;
+
+/**
+ * <pre>
+ * login           = "LOGIN" SP userid SP password
+ * </pre>
+ */
+final class LoginCommandCodec implements CommandCodec<LoginCommand> {
+
+    @Override
+    public ImapCommand.Kind getKind() {
+        return ImapCommand.Kind.LOGIN;
+    }
+
+    @Override
+    public String getCommandName() {
+        return "LOGIN";
+    }
+
+    @Override
+    public boolean hasArguments() {
+        return true;
+    }
+
+    @Override
+    public LoginCommand decodeArguments(ArgumentDecoder decoder, ByteBuf in) {
+        for (;;) {
+            switch (decoder.getArgumentIndex()) {
+                case 0:
+                case 2:
+                    if (!decoder.readSpace(in)) {
+                        return null;
+                    }
+                    decoder.setArgumentIndex(decoder.getArgumentIndex() + 1);
+                    break;
+                case 1: {
+                    final CharSequence userId = decoder.readAString(in);
+                    if (userId == null) {
+                        return null;
+                    }
+                    decoder.setArgument(0, userId);
+                    decoder.setArgumentIndex(2);
+                    break;
+                }
+                case 3: {
+                    final CharSequence password = decoder.readAString(in);
+                    if (password == null) {
+                        return null;
+                    }
+                    return LoginCommand.newInstance((CharSequence) decoder.getArgument(0), password);
+                }
+                default:
+                    throw new IllegalStateException(format("Unexpected LOGIN argument %d",
+                            decoder.getArgumentIndex()));
+            }
+        }
+    }
+
+    @Override
+    public int argumentsLength(LoginCommand command, ArgumentEncoder encoder) {
+        return encoder.astringLength(command.getUserId()) + 1 + encoder.astringLength(command.getPassword()) + 2;
+    }
+
+    @Override
+    public void encodeArguments(LoginCommand command, ArgumentEncoder encoder, ByteBuf out) {
+        encoder.encodeAString(command.getUserId(), out);
+        out.writeByte(SP);
+        encoder.encodeAString(command.getPassword(), out);
+        out.writeByte(CR);
+        out.writeByte(LF);
+    }
+}
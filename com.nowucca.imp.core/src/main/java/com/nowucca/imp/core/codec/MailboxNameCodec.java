@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.command.DecodeError;
+import io.netty.handler.codec.AsciiString;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Converts mailbox names to and from the modified UTF-7 of RFC 3501 section 5.1.3, remembering the names it
+ * converted most recently in each direction.
+ */
+final class MailboxNameCodec {
+
+    /**
+     * How many names a codec remembers in each direction.
+     */
+    static final int DEFAULT_CACHE_SIZE = 64;
+
+    private static final byte[] BASE64 =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+,".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] BASE64_VALUES = new byte[128];
+
+    static {
+        for (int i = 0; i < BASE64_VALUES.length; i++) {
+            BASE64_VALUES[i] = -1;
+        }
+        for (int i = 0; i < BASE64.length; i++) {
+            BASE64_VALUES[BASE64[i]] = (byte) i;
+        }
+    }
+
+    private final Map<AsciiString, String> decoded;
+    private final Map<String, AsciiString> encoded;
+
+    private char[] chars = new char[32];
+    private byte[] bytes = new byte[32];
+
+    MailboxNameCodec() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    MailboxNameCodec(int cacheSize) {
+        decoded = new LeastRecentlyUsed<>(cacheSize);
+        encoded = new LeastRecentlyUsed<>(cacheSize);
+    }
+
+    /**
+     * @param name a mailbox name as it was read, in modified UTF-7
+     * @return the name in characters
+     * @throws IllegalArgumentException if the name is not valid modified UTF-7
+     */
+    String decode(AsciiString name) {
+        String result = decoded.get(name);
+        if (result == null) {
+            result = convertFromModifiedUTF7(name);
+            decoded.put(name, result);
+        }
+        return result;
+    }
+
+    /**
+     * @param name a mailbox name in characters
+     * @return the name in modified UTF-7, to be written as an astring
+     */
+    AsciiString encode(CharSequence name) {
+        final String key = name.toString();
+        AsciiString result = encoded.get(key);
+        if (result == null) {
+            result = convertToModifiedUTF7(key);
+            encoded.put(key, result);
+        }
+        return result;
+    }
+
+    private String convertFromModifiedUTF7(AsciiString name) {
+        final int length = name.length();
+        // never more characters than bytes
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        int count = 0;
+        int i = 0;
+        while (i < length) {
+            final byte b = name.byteAt(i++);
+            if (b < 0x20 || b > 0x7e) {
+                throw DecodeError.INVALID_MAILBOX_NAME.exception();
+            }
+            if (b != '&') {
+                chars[count++] = (char) b;
+                continue;
+            }
+            if (i < length && name.byteAt(i) == '-') {
+                chars[count++] = '&';
+                i++;
+                continue;
+            }
+
+            int bits = 0;
+            int bitCount = 0;
+            while (true) {
+                if (i == length) {
+                    throw DecodeError.INVALID_MAILBOX_NAME.exception();
+                }
+                final byte c = name.byteAt(i++);
+                if (c == '-') {
+                    break;
+                }
+                final int value = c < 0 ? -1 : BASE64_VALUES[c];
+                if (value < 0) {
+                    throw DecodeError.INVALID_MAILBOX_NAME.exception();
+                }
+                bits = bits << 6 | value;
+                bitCount += 6;
+                if (bitCount >= 16) {
+                    bitCount -= 16;
+                    chars[count++] = (char) (bits >>> bitCount);
+                    bits &= (1 << bitCount) - 1;
+                }
+            }
+            // more than the padding of the last character left over
+            if (bitCount >= 6 || bits != 0) {
+                throw DecodeError.INVALID_MAILBOX_NAME.exception();
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    private AsciiString convertToModifiedUTF7(String name) {
+        final int length = name.length();
+        // the worst case is a character shifted on its own, as "&", 3 bytes of base64 and "-"
+        final int worst = length * 5;
+        if (bytes.length < worst) {
+            bytes = new byte[Math.max(worst, bytes.length * 2)];
+        }
+        int count = 0;
+        int bits = 0;
+        int bitCount = 0;
+        boolean shifted = false;
+        for (int i = 0; i < length; i++) {
+            final char c = name.charAt(i);
+            if (c >= 0x20 && c <= 0x7e) {
+                if (shifted) {
+                    if (bitCount > 0) {
+                        bytes[count++] = BASE64[bits << (6 - bitCount) & 0x3f];
+                    }
+                    bytes[count++] = '-';
+                    bits = 0;
+                    bitCount = 0;
+                    shifted = false;
+                }
+                bytes[count++] = (byte) c;
+                if (c == '&') {
+                    bytes[count++] = '-';
+                }
+            } else {
+                if (!shifted) {
+                    bytes[count++] = '&';
+                    shifted = true;
+                }
+                bits = bits << 16 | c;
+                bitCount += 16;
+                while (bitCount >= 6) {
+                    bitCount -= 6;
+                    bytes[count++] = BASE64[bits >>> bitCount & 0x3f];
+                }
+                bits &= (1 << bitCount) - 1;
+            }
+        }
+        if (shifted) {
+            if (bitCount > 0) {
+                bytes[count++] = BASE64[bits << (6 - bitCount) & 0x3f];
+            }
+            bytes[count++] = '-';
+        }
+        return new AsciiString(bytes, 0, count, true);
+    }
+
+    /**
+     * A map that forgets its least recently used entry once it holds more than its capacity.
+     */
+    private static final class LeastRecentlyUsed<K, V> extends LinkedHashMap<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        LeastRecentlyUsed(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > capacity;
+        }
+    }
+}
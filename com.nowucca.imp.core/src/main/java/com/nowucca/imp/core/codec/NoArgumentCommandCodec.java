@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.command.CapabilityCommand;
+import com.nowucca.imp.core.message.command.ImapCommand;
+import com.nowucca.imp.core.message.command.LogoutCommand;
+import com.nowucca.imp.core.message.command.NoopCommand;
+import com.nowucca.imp.core.message.command.StartTlsCommand;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * A command that is its name alone, decoded as its single shared instance.
+ */
+final class NoArgumentCommandCodec<C extends ImapCommand> implements CommandCodec<C> {
+
+    static final NoArgumentCommandCodec<CapabilityCommand> CAPABILITY =
+            new NoArgumentCommandCodec<>(CapabilityCommand.INSTANCE);
+    static final NoArgumentCommandCodec<LogoutCommand> LOGOUT = new NoArgumentCommandCodec<>(LogoutCommand.INSTANCE);
+    static final NoArgumentCommandCodec<NoopCommand> NOOP = new NoArgumentCommandCodec<>(NoopCommand.INSTANCE);
+    static final NoArgumentCommandCodec<StartTlsCommand> STARTTLS =
+            new NoArgumentCommandCodec<>(StartTlsCommand.INSTANCE);
+
+    private final C instance;
+
+    private NoArgumentCommandCodec(C instance) {
+        this.instance = instance;
+    }
+
+    @Override
+    public ImapCommand.Kind getKind() {
+        return instance.getKind();
+    }
+
+    @Override
+    public String getCommandName() {
+        return instance.getCommandName();
+    }
+
+    @Override
+    public boolean hasArguments() {
+        return false;
+    }
+
+    @Override
+    public C decodeArguments(ArgumentDecoder decoder, ByteBuf in) {
+        return instance;
+    }
+
+    @Override
+    public int argumentsLength(C command, ArgumentEncoder encoder) {
+        return 0;
+    }
+
+    @Override
+    public void encodeArguments(C command, ArgumentEncoder encoder, ByteBuf out) {
+        // the command name is the whole command
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import static com.nowucca.imp.core.codec.ImapCodecConstants.LITERAL_MINUS_MAXIMUM_SIZE;
+
+/**
+ * <p>
+ *     The non-synchronizing literals a server accepts, per RFC 7888.
+ * </p>
+ * <p>
+ *     A non-synchronizing literal <code>{n+}</code> is sent without waiting for the server's continuation,
+ *     saving a round trip per literal.
+ * </p>
+ */
+public enum NonSynchronizingLiterals {
+
+    /**
+     * Every literal must wait for a continuation.
+     */
+    NONE,
+
+    /**
+     * LITERAL-: literals of at most 4096 bytes may be non-synchronizing.
+     */
+    LITERAL_MINUS,
+
+    /**
+     * LITERAL+: any literal may be non-synchronizing.
+     */
+    LITERAL_PLUS;
+
+    /**
+     * @return whether a literal of <code>size</code> bytes may be sent without waiting for a continuation
+     */
+    public boolean allows(long size) {
+        switch (this) {
+            case LITERAL_PLUS:
+                return true;
+            case LITERAL_MINUS:
+                return size <= LITERAL_MINUS_MAXIMUM_SIZE;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @param capabilities the capabilities a server advertises
+     * @return the non-synchronizing literals those capabilities allow
+     */
+    public static NonSynchronizingLiterals forCapabilities(Iterable<? extends CharSequence> capabilities) {
+        NonSynchronizingLiterals result = NONE;
+        for (CharSequence capability : capabilities) {
+            final String name = capability.toString();
+            if (ImapCodecConstants.LITERAL_PLUS.equalsIgnoreCase(name)) {
+                return LITERAL_PLUS;
+            }
+            if (ImapCodecConstants.LITERAL_MINUS.equalsIgnoreCase(name)) {
+                result = LITERAL_MINUS;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.command.ImapCommand;
+import com.nowucca.imp.core.message.command.SelectCommand;
+import io.netty.buffer.ByteBuf;
+import static com.nowucca.imp.core.codec.ImapCharacterConstants.CR;
+import static com.nowucca.imp.core.codec.ImapCharacterConstants.LF;
+
+/**
+ * <pre>
+ * select          = "SELECT" SP mailbox
+ * </pre>
+ */
+final class SelectCommandCodec implements CommandCodec<SelectCommand> {
+
+    @Override
+    public ImapCommand.Kind getKind() {
+        return ImapCommand.Kind.SELECT;
+    }
+
+    @Override
+    public String getCommandName() {
+        return "SELECT";
+    }
+
+    @Override
+    public boolean hasArguments() {
+        return true;
+    }
+
+    @Override
+    public SelectCommand decodeArguments(ArgumentDecoder decoder, ByteBuf in) {
+        if (decoder.getArgumentIndex() == 0) {
+            if (!decoder.readSpace(in)) {
+                return null;
+            }
+            decoder.setArgumentIndex(1);
+        }
+        final CharSequence mailboxName = decoder.readMailboxName(in);
+        if (mailboxName == null) {
+            return null;
+        }
+        return SelectCommand.newInstance(mailboxName);
+    }
+
+    @Override
+    public int argumentsLength(SelectCommand command, ArgumentEncoder encoder) {
+        return encoder.mailboxNameLength(command.getMailboxName()) + 2;
+    }
+
+    @Override
+    public void encodeArguments(SelectCommand command, ArgumentEncoder encoder, ByteBuf out) {
+        encoder.encodeMailboxName(command.getMailboxName(), out);
+        out.writeByte(CR);
+        out.writeByte(LF);
+    }
+}
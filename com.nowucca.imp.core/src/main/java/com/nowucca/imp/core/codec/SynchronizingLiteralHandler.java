@@ -0,0 +1,246 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.FileRegion;
+import io.netty.channel.PendingWriteQueue;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.Charset;
+import static java.lang.String.format;
+
+/**
+ * <p>
+ *     Flow control for synchronizing literals sent to a server.
+ * </p>
+ * <p>
+ *     Sits between the socket and an {@link ImapRequestEncoder}.  When the encoder writes a
+ *     {@link ContinuationBarrier}, every write that follows is held back until the server answers with a
+ *     continuation request, which is consumed here rather than passed on.  If the server instead completes the
+ *     waiting request, having rejected it, the held-back remainder of that request is discarded and its writes fail.
+ * </p>
+ * <p>
+ *     Server responses are otherwise passed through untouched.  They are only scanned for line starts, skipping any
+ *     literals they carry, so that a continuation request or tagged response can be recognized.
+ * </p>
+ */
+public class SynchronizingLiteralHandler extends ChannelDuplexHandler {
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    private enum ResponseState {
+        LINE_START,
+        TAG,
+        LINE,
+        LITERAL,
+        CONTINUATION
+    }
+
+    private PendingWriteQueue pendingWrites;
+    private ContinuationBarrier barrier;
+    private byte[] barrierTag;
+
+    private ResponseState responseState = ResponseState.LINE_START;
+    private int tagMatched;
+    private long literalSize = -1;
+    private boolean literalHeader;
+    private long literalRemaining;
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        pendingWrites = new PendingWriteQueue(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        pendingWrites.removeAndFailAll(new ClosedChannelException());
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        pendingWrites.removeAndFailAll(new ClosedChannelException());
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (barrier != null) {
+            pendingWrites.add(msg, promise);
+        } else if (msg instanceof ContinuationBarrier) {
+            waitAt((ContinuationBarrier) msg);
+            promise.setSuccess();
+        } else {
+            ctx.write(msg, promise);
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof ByteBuf)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        final ByteBuf in = (ByteBuf) msg;
+        try {
+            // pass on everything except continuation requests we are waiting for
+            int passFrom = in.readerIndex();
+            final int end = in.writerIndex();
+            for (int i = in.readerIndex(); i < end; i++) {
+                final byte b = in.getByte(i);
+                switch (responseState) {
+                    case LINE_START:
+                        if (barrier != null && b == '+') {
+                            if (i > passFrom) {
+                                ctx.fireChannelRead(in.slice(passFrom, i - passFrom).retain());
+                            }
+                            passFrom = i;
+                            responseState = ResponseState.CONTINUATION;
+                        } else if (barrier != null && b == barrierTag[0]) {
+                            tagMatched = 1;
+                            responseState = ResponseState.TAG;
+                        } else {
+                            readResponseByte(b);
+                        }
+                        break;
+                    case TAG:
+                        if (tagMatched == barrierTag.length) {
+                            if (b == ' ' && barrier != null) {
+                                rejected(ctx);
+                            }
+                            readResponseByte(b);
+                        } else if (b == barrierTag[tagMatched]) {
+                            tagMatched++;
+                        } else {
+                            readResponseByte(b);
+                        }
+                        break;
+                    case LINE:
+                        if (literalSize < 0) {
+                            // nothing before the next LF or '{' can matter
+                            final int next = DecoderUtils.indexOfEither(in, i, end, (byte) '\n', (byte) '{');
+                            if (next < 0) {
+                                i = end;
+                                break;
+                            }
+                            i = next;
+                            readResponseByte(in.getByte(i));
+                        } else {
+                            readResponseByte(b);
+                        }
+                        break;
+                    case LITERAL: {
+                        final long skip = Math.min(literalRemaining, end - i);
+                        literalRemaining -= skip;
+                        i += (int) skip - 1;
+                        if (literalRemaining == 0) {
+                            responseState = ResponseState.LINE;
+                        }
+                        break;
+                    }
+                    case CONTINUATION:
+                        if (b == '\n') {
+                            passFrom = i + 1;
+                            responseState = ResponseState.LINE_START;
+                            continued(ctx);
+                        }
+                        break;
+                    default:
+                        throw new IllegalStateException(format("Unexpected state %s", responseState));
+                }
+            }
+            if (responseState != ResponseState.CONTINUATION && end > passFrom) {
+                ctx.fireChannelRead(in.slice(passFrom, end - passFrom).retain());
+            }
+        } finally {
+            in.release();
+        }
+    }
+
+    /**
+     * Tracks line ends, and literal headers at line ends, in a response line that is not of interest.
+     */
+    private void readResponseByte(byte b) {
+        responseState = ResponseState.LINE;
+        switch (b) {
+            case '{':
+                literalSize = 0;
+                literalHeader = false;
+                break;
+            case '}':
+                literalHeader = literalSize >= 0;
+                break;
+            case '\r':
+                break;
+            case '\n':
+                if (literalHeader && literalSize > 0) {
+                    literalRemaining = literalSize;
+                    responseState = ResponseState.LITERAL;
+                } else if (!literalHeader) {
+                    responseState = ResponseState.LINE_START;
+                }
+                literalSize = -1;
+                literalHeader = false;
+                break;
+            default:
+                if (b >= '0' && b <= '9' && literalSize >= 0 && !literalHeader) {
+                    literalSize = literalSize * 10 + (b - '0');
+                } else {
+                    literalSize = -1;
+                    literalHeader = false;
+                }
+                break;
+        }
+    }
+
+    private void waitAt(ContinuationBarrier continuationBarrier) {
+        barrier = continuationBarrier;
+        barrierTag = continuationBarrier.getTag().getBytes(US_ASCII);
+    }
+
+    /**
+     * The server has asked for the literal: send what was held back, up to the next barrier.
+     */
+    private void continued(ChannelHandlerContext ctx) {
+        barrier = null;
+        writePending();
+        ctx.flush();
+    }
+
+    /**
+     * The server completed the waiting request without asking for its literal: discard the rest of the request.
+     */
+    private void rejected(ChannelHandlerContext ctx) {
+        final IllegalStateException cause = new IllegalStateException(
+                format("Server completed request %s before its literal was sent.", barrier.getTag()));
+        long remaining = barrier.getRemainingBytes();
+        barrier = null;
+        while (remaining > 0 && !pendingWrites.isEmpty()) {
+            final Object msg = pendingWrites.current();
+            if (msg instanceof ByteBuf) {
+                remaining -= ((ByteBuf) msg).readableBytes();
+            } else if (msg instanceof FileRegion) {
+                remaining -= ((FileRegion) msg).count();
+            }
+            pendingWrites.removeAndFail(cause);
+        }
+        writePending();
+        ctx.flush();
+    }
+
+    private void writePending() {
+        while (!pendingWrites.isEmpty()) {
+            final Object msg = pendingWrites.current();
+            if (msg instanceof ContinuationBarrier) {
+                final ChannelPromise promise = pendingWrites.remove();
+                waitAt((ContinuationBarrier) msg);
+                promise.setSuccess();
+                return;
+            }
+            pendingWrites.removeAndWrite();
+        }
+    }
+}
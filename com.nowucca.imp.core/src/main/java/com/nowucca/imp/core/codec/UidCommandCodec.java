@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.command.DecodeError;
+import com.nowucca.imp.core.message.command.FetchCommand;
+import com.nowucca.imp.core.message.command.ImapCommand;
+import io.netty.buffer.ByteBuf;
+import java.nio.charset.StandardCharsets;
+import static com.nowucca.imp.core.codec.ImapCharacterConstants.SP;
+
+/**
+ * <pre>
+ * uid             = "UID" SP (copy / fetch / search / store)
+ * </pre>
+ * <p>
+ *     Only UID FETCH is supported.  Once its FETCH has been read, the rest is read and written as for FETCH, the
+ *     command being told apart by {@link FetchCommand#isUid()}.
+ * </p>
+ */
+final class UidCommandCodec implements CommandCodec<FetchCommand> {
+
+    private static final byte[] FETCH = "FETCH".getBytes(StandardCharsets.US_ASCII);
+
+    private final FetchCommandCodec fetchCodec = new FetchCommandCodec();
+
+    @Override
+    public ImapCommand.Kind getKind() {
+        return ImapCommand.Kind.UID;
+    }
+
+    @Override
+    public String getCommandName() {
+        return "UID";
+    }
+
+    @Override
+    public boolean hasArguments() {
+        return true;
+    }
+
+    @Override
+    public FetchCommand decodeArguments(ArgumentDecoder decoder, ByteBuf in) {
+        if (decoder.getSubcommand() == null) {
+            if (decoder.getArgumentIndex() == 0) {
+                if (!decoder.readSpace(in)) {
+                    return null;
+                }
+                decoder.setArgumentIndex(1);
+            }
+            // FETCH, followed by something other than a letter
+            for (int i = 0; i <= FETCH.length; i++) {
+                if (!decoder.isReadable(in, i + 1)) {
+                    return null;
+                }
+                final char c = decoder.peek(in, i);
+                final boolean matched = i < FETCH.length ? (c | 0x20) == (FETCH[i] | 0x20)
+                        : !DecoderUtils.is((byte) c, DecoderUtils.ALPHA);
+                if (!matched) {
+                    throw decoder.error(DecodeError.UNSUPPORTED_COMMAND, "UID");
+                }
+            }
+            decoder.skip(FETCH.length);
+            decoder.setSubcommand(ImapCommand.Kind.FETCH);
+            decoder.setArgumentIndex(0);
+        }
+        return fetchCodec.decodeArguments(decoder, in, true);
+    }
+
+    @Override
+    public int argumentsLength(FetchCommand command, ArgumentEncoder encoder) {
+        return FETCH.length + 1 + fetchCodec.argumentsLength(command, encoder);
+    }
+
+    @Override
+    public void encodeArguments(FetchCommand command, ArgumentEncoder encoder, ByteBuf out) {
+        out.writeBytes(FETCH);
+        out.writeByte(SP);
+        fetchCodec.encodeArguments(command, encoder, out);
+    }
+}
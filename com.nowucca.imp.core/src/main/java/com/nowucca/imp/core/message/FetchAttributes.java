@@ -0,0 +1,275 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.message;
+
+import io.netty.handler.codec.AsciiString;
+import static java.lang.String.format;
+
+/**
+ * <p>
+ *     An immutable description of what a FETCH asks for: the simple attributes as bits of an int, and any body
+ *     sections as rows of a single int array, their section-specs held as offsets into one string.
+ * </p>
+ * <pre>
+ * fetch-att       = "ENVELOPE" / "FLAGS" / "INTERNALDATE" /
+ *                   "RFC822" [".HEADER" / ".SIZE" / ".TEXT"] /
+ *                   "BODY" ["STRUCTURE"] / "UID" /
+ *                   "BODY" section ["&lt;" number "." nz-number "&gt;"] /
+ *                   "BODY.PEEK" section ["&lt;" number "." nz-number "&gt;"]
+ * section         = "[" [section-spec] "]"
+ * </pre>
+ * <p>
+ *     A FETCH can be classified by testing bits, without looking at its sections one by one: whether it fetches
+ *     anything but metadata, say, or whether it sets the \Seen flag.  Attributes without sections are shared, as
+ *     {@link ImapFlags} without keywords are, so the common FETCH of flags or headers allocates nothing for them.
+ * </p>
+ */
+public final class FetchAttributes {
+
+    public static final int ENVELOPE = 1;
+    public static final int FLAGS = 1 << 1;
+    public static final int INTERNALDATE = 1 << 2;
+    public static final int RFC822 = 1 << 3;
+    public static final int RFC822_HEADER = 1 << 4;
+    public static final int RFC822_SIZE = 1 << 5;
+    public static final int RFC822_TEXT = 1 << 6;
+    public static final int BODY = 1 << 7;
+    public static final int BODYSTRUCTURE = 1 << 8;
+    public static final int UID = 1 << 9;
+
+    /**
+     * Every attribute that is not a body section; there are no other bits.
+     */
+    public static final int SIMPLE_ATTRIBUTES = (1 << 10) - 1;
+
+    public static final int FAST = FLAGS | INTERNALDATE | RFC822_SIZE;
+    public static final int ALL = FAST | ENVELOPE;
+    public static final int FULL = ALL | BODY;
+
+    /**
+     * Attributes that set the \Seen flag of the messages fetched.
+     */
+    public static final int SETS_SEEN = RFC822 | RFC822_TEXT;
+
+    /**
+     * Section types, held in the low bits of a section's flags.
+     */
+    public static final int SECTION_TYPE_MASK = 7;
+    public static final int SECTION_WHOLE = 0;
+    public static final int SECTION_HEADER = 1;
+    public static final int SECTION_HEADER_FIELDS = 2;
+    public static final int SECTION_HEADER_FIELDS_NOT = 3;
+    public static final int SECTION_TEXT = 4;
+    public static final int SECTION_MIME = 5;
+
+    /**
+     * The section has part numbers, so names a body part rather than the whole message.
+     */
+    public static final int SECTION_PART = 1 << 3;
+
+    /**
+     * The section was fetched with BODY.PEEK, so does not set the \Seen flag.
+     */
+    public static final int SECTION_PEEK = 1 << 4;
+
+    /**
+     * The section has a partial range.
+     */
+    public static final int SECTION_PARTIAL = 1 << 5;
+
+    // flags, spec start, spec end, partial offset and partial length of each section
+    private static final int SECTION_STRIDE = 5;
+
+    private static final int[] NO_SECTIONS = new int[0];
+
+    private static final FetchAttributes[] SIMPLE_ONLY = new FetchAttributes[SIMPLE_ATTRIBUTES + 1];
+
+    static {
+        for (int attributes = 0; attributes <= SIMPLE_ATTRIBUTES; attributes++) {
+            SIMPLE_ONLY[attributes] = new FetchAttributes(attributes, null, NO_SECTIONS);
+        }
+    }
+
+    private final int attributes;
+    private final AsciiString sectionSpecs;
+    private final int[] sections;
+    private final boolean sectionsSetSeen;
+
+    /**
+     * @param attributes the simple attribute bits
+     * @param sectionSpecs the section-specs of every section, one after another
+     * @param sections the flags, the start and end of the spec in <code>sectionSpecs</code>, and the partial offset
+     *                 and length, as unsigned ints, of each section, which the attributes now own
+     */
+    public FetchAttributes(int attributes, AsciiString sectionSpecs, int... sections) {
+        if ((attributes & ~SIMPLE_ATTRIBUTES) != 0) {
+            throw new IllegalArgumentException(format("Not fetch attributes: 0x%x", attributes));
+        }
+        if (sections.length % SECTION_STRIDE != 0) {
+            throw new IllegalArgumentException(format("Not whole sections: %d ints", sections.length));
+        }
+        if (sections.length > 0 && sectionSpecs == null) {
+            throw new IllegalArgumentException("Sections need their specs.");
+        }
+        this.attributes = attributes;
+        this.sectionSpecs = sectionSpecs;
+        this.sections = sections;
+        boolean sectionsSetSeen = false;
+        for (int i = 0; i < sections.length; i += SECTION_STRIDE) {
+            sectionsSetSeen |= (sections[i] & SECTION_PEEK) == 0;
+        }
+        this.sectionsSetSeen = sectionsSetSeen;
+    }
+
+    /**
+     * @return the shared attributes holding exactly these simple attributes and no sections
+     */
+    public static FetchAttributes valueOf(int attributes) {
+        if ((attributes & ~SIMPLE_ATTRIBUTES) != 0) {
+            throw new IllegalArgumentException(format("Not fetch attributes: 0x%x", attributes));
+        }
+        return SIMPLE_ONLY[attributes];
+    }
+
+    public int getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * @return whether every one of the given attributes is asked for
+     */
+    public boolean has(int attributes) {
+        return (this.attributes & attributes) == attributes;
+    }
+
+    /**
+     * @return whether any of the given attributes is asked for
+     */
+    public boolean hasAny(int attributes) {
+        return (this.attributes & attributes) != 0;
+    }
+
+    public int getSectionCount() {
+        return sections.length / SECTION_STRIDE;
+    }
+
+    /**
+     * @return the section's type and its {@link #SECTION_PART}, {@link #SECTION_PEEK} and {@link #SECTION_PARTIAL}
+     *         bits
+     */
+    public int getSectionFlags(int section) {
+        return sections[section * SECTION_STRIDE];
+    }
+
+    public int getSectionType(int section) {
+        return getSectionFlags(section) & SECTION_TYPE_MASK;
+    }
+
+    public boolean isPeek(int section) {
+        return (getSectionFlags(section) & SECTION_PEEK) != 0;
+    }
+
+    public boolean hasPartial(int section) {
+        return (getSectionFlags(section) & SECTION_PARTIAL) != 0;
+    }
+
+    /**
+     * @return the first octet of the section's partial range, if it has one
+     */
+    public long getPartialOffset(int section) {
+        return sections[section * SECTION_STRIDE + 3] & 0xffffffffL;
+    }
+
+    /**
+     * @return the number of octets in the section's partial range, if it has one
+     */
+    public long getPartialLength(int section) {
+        return sections[section * SECTION_STRIDE + 4] & 0xffffffffL;
+    }
+
+    /**
+     * @return the section-spec between the brackets, as it was received, which is empty for the whole message
+     */
+    public CharSequence getSectionSpec(int section) {
+        final int start = sections[section * SECTION_STRIDE + 1];
+        final int end = sections[section * SECTION_STRIDE + 2];
+        return start == end ? "" : sectionSpecs.subSequence(start, end);
+    }
+
+    /**
+     * @return the section-specs of every section, one after another, or null if there are no sections
+     */
+    public AsciiString getSectionSpecs() {
+        return sectionSpecs;
+    }
+
+    public int getSectionSpecStart(int section) {
+        return sections[section * SECTION_STRIDE + 1];
+    }
+
+    public int getSectionSpecEnd(int section) {
+        return sections[section * SECTION_STRIDE + 2];
+    }
+
+    /**
+     * @return whether fetching these attributes sets the \Seen flag, as any body section fetched without PEEK does
+     */
+    public boolean setsSeen() {
+        return hasAny(SETS_SEEN) || sectionsSetSeen;
+    }
+
+    /**
+     * @return whether only metadata is asked for: no message text, headers or body sections
+     */
+    public boolean isMetadataOnly() {
+        return sections.length == 0 && !hasAny(RFC822 | RFC822_HEADER | RFC822_TEXT);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FetchAttributes)) {
+            return false;
+        }
+        final FetchAttributes other = (FetchAttributes) o;
+        if (attributes != other.attributes || getSectionCount() != other.getSectionCount()) {
+            return false;
+        }
+        for (int i = 0; i < getSectionCount(); i++) {
+            if (getSectionFlags(i) != other.getSectionFlags(i)
+                    || getPartialOffset(i) != other.getPartialOffset(i)
+                    || getPartialLength(i) != other.getPartialLength(i)
+                    || !AsciiString.equalsIgnoreCase(getSectionSpec(i), other.getSectionSpec(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = attributes;
+        for (int i = 0; i < getSectionCount(); i++) {
+            result = 31 * result + getSectionFlags(i);
+            result = 31 * result + AsciiString.caseInsensitiveHashCode(getSectionSpec(i));
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("FetchAttributes{attributes=0x");
+        builder.append(Integer.toHexString(attributes));
+        for (int i = 0; i < getSectionCount(); i++) {
+            builder.append(i == 0 ? ", sections=" : " ").append(isPeek(i) ? "BODY.PEEK[" : "BODY[")
+                    .append(getSectionSpec(i)).append(']');
+            if (hasPartial(i)) {
+                builder.append('<').append(getPartialOffset(i)).append('.').append(getPartialLength(i)).append('>');
+            }
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.message;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import static java.lang.String.format;
+
+/**
+ * <p>
+ *     An IMAP date-time packed into a single long: the seconds since the epoch, and the zone offset in minutes
+ *     that the date-time was written with.
+ * </p>
+ * <p>
+ *     A date-time carried this way costs no allocation.  It becomes a {@link ZonedDateTime} only if a consumer
+ *     asks for one.
+ * </p>
+ */
+public final class ImapDateTime {
+
+    /**
+     * No date-time.
+     */
+    public static final long NONE = Long.MIN_VALUE;
+
+    /**
+     * The largest zone offset a date-time can be written with, in minutes: "+9959".
+     */
+    public static final int MAXIMUM_OFFSET_MINUTES = 99 * 60 + 59;
+
+    private static final int OFFSET_BITS = 16;
+
+    private ImapDateTime() {
+    }
+
+    /**
+     * @param epochSecond the seconds since the epoch
+     * @param offsetMinutes the zone offset east of Greenwich, in minutes
+     */
+    public static long pack(long epochSecond, int offsetMinutes) {
+        if (Math.abs(offsetMinutes) > MAXIMUM_OFFSET_MINUTES) {
+            throw new IllegalArgumentException(format("Zone offset out of range: %d minutes", offsetMinutes));
+        }
+        return (epochSecond << OFFSET_BITS) | (offsetMinutes & ((1 << OFFSET_BITS) - 1));
+    }
+
+    public static long epochSecond(long dateTime) {
+        return dateTime >> OFFSET_BITS;
+    }
+
+    public static int offsetMinutes(long dateTime) {
+        return (short) dateTime;
+    }
+
+    /**
+     * @return the packed date-time, or {@link #NONE} if <code>dateTime</code> is null.  Any seconds of the zone
+     *         offset beyond whole minutes are dropped, since IMAP cannot express them.
+     */
+    public static long valueOf(ZonedDateTime dateTime) {
+        if (dateTime == null) {
+            return NONE;
+        }
+        return pack(dateTime.toEpochSecond(), dateTime.getOffset().getTotalSeconds() / 60);
+    }
+
+    /**
+     * @return the date-time in the zone offset it was written with, or null if it is {@link #NONE}
+     */
+    public static ZonedDateTime toZonedDateTime(long dateTime) {
+        if (dateTime == NONE) {
+            return null;
+        }
+        return ZonedDateTime.ofInstant(Instant.ofEpochSecond(epochSecond(dateTime)),
+                ZoneOffset.ofTotalSeconds(offsetMinutes(dateTime) * 60));
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.message;
+
+import io.netty.handler.codec.AsciiString;
+import static java.lang.String.format;
+
+/**
+ * <p>
+ *     An immutable set of message flags: the system flags as bits of an int, and any keywords as ids interned in a
+ *     {@link KeywordDictionary}.
+ * </p>
+ * <pre>
+ * flag     = "\Answered" / "\Flagged" / "\Deleted" / "\Seen" / "\Draft" / flag-keyword / flag-extension
+ * </pre>
+ * <p>
+ *     Flag extensions, which start with a backslash but are not system flags, are held as keywords.  Keywords that
+ *     could not be interned, because the dictionary was full, are held by the flags themselves, after the interned
+ *     ones.
+ * </p>
+ */
+public final class ImapFlags {
+
+    public static final int ANSWERED = 1;
+    public static final int FLAGGED = 1 << 1;
+    public static final int DELETED = 1 << 2;
+    public static final int SEEN = 1 << 3;
+    public static final int DRAFT = 1 << 4;
+    public static final int RECENT = 1 << 5;
+
+    /**
+     * Every system flag; there are no other bits.
+     */
+    public static final int SYSTEM_FLAGS = (1 << 6) - 1;
+
+    private static final int[] NO_KEYWORDS = new int[0];
+    private static final AsciiString[] NO_UNINTERNED = new AsciiString[0];
+
+    private static final ImapFlags[] SYSTEM_ONLY = new ImapFlags[SYSTEM_FLAGS + 1];
+
+    static {
+        for (int systemFlags = 0; systemFlags <= SYSTEM_FLAGS; systemFlags++) {
+            SYSTEM_ONLY[systemFlags] = new ImapFlags(systemFlags, null, NO_KEYWORDS);
+        }
+    }
+
+    public static final ImapFlags NONE = SYSTEM_ONLY[0];
+
+    private final int systemFlags;
+    private final KeywordDictionary dictionary;
+    private final int[] keywords;
+    private final AsciiString[] uninterned;
+
+    /**
+     * @param systemFlags the system flag bits
+     * @param dictionary the dictionary the keywords are interned in
+     * @param keywords the ids of the keywords, which the flags now own
+     */
+    public ImapFlags(int systemFlags, KeywordDictionary dictionary, int... keywords) {
+        this(systemFlags, dictionary, keywords, NO_UNINTERNED);
+    }
+
+    /**
+     * @param systemFlags the system flag bits
+     * @param dictionary the dictionary the keywords are interned in
+     * @param keywords the ids of the keywords, which the flags now own
+     * @param uninterned keywords not interned in the dictionary, distinct from the others without regard to case,
+     *                   which the flags now own
+     */
+    public ImapFlags(int systemFlags, KeywordDictionary dictionary, int[] keywords, AsciiString[] uninterned) {
+        if ((systemFlags & ~SYSTEM_FLAGS) != 0) {
+            throw new IllegalArgumentException(format("Not system flags: 0x%x", systemFlags));
+        }
+        if (keywords.length > 0 && dictionary == null) {
+            throw new IllegalArgumentException("Keywords need a dictionary.");
+        }
+        this.systemFlags = systemFlags;
+        this.dictionary = dictionary;
+        this.keywords = keywords;
+        this.uninterned = uninterned;
+    }
+
+    /**
+     * @return the shared flags holding exactly these system flags and no keywords
+     */
+    public static ImapFlags valueOf(int systemFlags) {
+        if ((systemFlags & ~SYSTEM_FLAGS) != 0) {
+            throw new IllegalArgumentException(format("Not system flags: 0x%x", systemFlags));
+        }
+        return SYSTEM_ONLY[systemFlags];
+    }
+
+    public int getSystemFlags() {
+        return systemFlags;
+    }
+
+    /**
+     * @return whether every one of the given system flags is set
+     */
+    public boolean contains(int systemFlags) {
+        return (this.systemFlags & systemFlags) == systemFlags;
+    }
+
+    /**
+     * @return whether the keyword is present, matching without regard to case
+     */
+    public boolean containsKeyword(CharSequence keyword) {
+        for (int id : keywords) {
+            if (dictionary.keyword(id).equalsIgnoreCase(keyword)) {
+                return true;
+            }
+        }
+        for (AsciiString other : uninterned) {
+            if (other.equalsIgnoreCase(keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getKeywordCount() {
+        return keywords.length + uninterned.length;
+    }
+
+    /**
+     * @return the id of the keyword in the dictionary, or {@link KeywordDictionary#NOT_INTERNED} if the flags hold
+     *         the keyword themselves
+     */
+    public int getKeywordId(int index) {
+        return index < keywords.length ? keywords[index] : KeywordDictionary.NOT_INTERNED;
+    }
+
+    public AsciiString getKeyword(int index) {
+        return index < keywords.length ? dictionary.keyword(keywords[index]) : uninterned[index - keywords.length];
+    }
+
+    public KeywordDictionary getDictionary() {
+        return dictionary;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ImapFlags)) {
+            return false;
+        }
+        final ImapFlags that = (ImapFlags) o;
+        final int keywordCount = getKeywordCount();
+        if (systemFlags != that.systemFlags || keywordCount != that.getKeywordCount()) {
+            return false;
+        }
+        for (int i = 0; i < keywordCount; i++) {
+            // a keyword interned in a shared dictionary is held by id in both, unless the other could not intern it
+            final boolean contained = dictionary == that.dictionary && i < keywords.length
+                    && that.uninterned.length == 0
+                    ? that.containsKeywordId(keywords[i])
+                    : that.containsKeyword(getKeyword(i));
+            if (!contained) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean containsKeywordId(int id) {
+        for (int keyword : keywords) {
+            if (keyword == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = systemFlags;
+        for (int i = 0; i < getKeywordCount(); i++) {
+            // independent of order and dictionary, as equals is
+            result += AsciiString.caseInsensitiveHashCode(getKeyword(i));
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("ImapFlags{systemFlags=0x");
+        builder.append(Integer.toHexString(systemFlags));
+        for (int i = 0; i < getKeywordCount(); i++) {
+            builder.append(i == 0 ? ", keywords=" : " ").append(getKeyword(i));
+        }
+        return builder.append('}').toString();
+    }
+}
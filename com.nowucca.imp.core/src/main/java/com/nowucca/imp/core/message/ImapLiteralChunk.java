@@ -0,0 +1,37 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.message;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+
+/**
+ * <p>
+ *     A bounded piece of a literal too large to be decoded in one message.
+ * </p>
+ * <p>
+ *     A streamed literal is decoded as the request that introduces it, followed by a sequence of chunks,
+ *     the last of which is a {@link LastImapLiteralChunk}.
+ * </p>
+ */
+public class ImapLiteralChunk extends DefaultByteBufHolder {
+
+    public ImapLiteralChunk(ByteBuf content) {
+        super(content);
+    }
+
+    public boolean isLast() {
+        return false;
+    }
+
+    @Override
+    public ImapLiteralChunk copy() {
+        return new ImapLiteralChunk(content().copy());
+    }
+
+    @Override
+    public ImapLiteralChunk duplicate() {
+        return new ImapLiteralChunk(content().duplicate());
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.message;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.AsciiString;
+import java.util.Arrays;
+import static java.lang.String.format;
+
+/**
+ * <p>
+ *     Interns flag keywords as small integer ids, so that {@link ImapFlags} can hold them as ints.
+ * </p>
+ * <p>
+ *     Keywords are matched without regard to case, and keep the spelling they were first interned with.  A keyword
+ *     can be looked up directly in received bytes, so a keyword seen before costs no allocation.  A dictionary
+ *     typically lives as long as a session; since the keywords come from the peer, it holds a bounded number of them.
+ *     Once it is full, a new keyword is not interned, and is left to be held by the flags that carry it.
+ * </p>
+ */
+public final class KeywordDictionary {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+    /**
+     * What {@link #intern} returns for a new keyword once the dictionary is full.
+     */
+    public static final int NOT_INTERNED = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int maximumSize;
+    private AsciiString[] keywords = new AsciiString[INITIAL_CAPACITY];
+    // open-addressed by case-insensitive hash; each slot holds id + 1, or 0 if empty
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+    private int size;
+
+    public KeywordDictionary() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param maximumSize the most keywords the dictionary will hold
+     */
+    public KeywordDictionary(int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * @return the id of the keyword, interning it if it is new, or {@link #NOT_INTERNED} if it is new and the
+     *         dictionary is full
+     */
+    public synchronized int intern(CharSequence keyword) {
+        final int length = keyword.length();
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + fold(keyword.charAt(i));
+        }
+        final int mask = table.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            final int entry = table[slot];
+            if (entry == 0) {
+                return add(slot, new AsciiString(keyword));
+            }
+            if (matches(keywords[entry - 1], keyword)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    /**
+     * @return the id of the keyword held in <code>length</code> bytes at <code>index</code>, interning it if it
+     *         is new, or {@link #NOT_INTERNED} if it is new and the dictionary is full
+     */
+    public synchronized int intern(ByteBuf in, int index, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + fold(in.getByte(index + i));
+        }
+        final int mask = table.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            final int entry = table[slot];
+            if (entry == 0) {
+                if (size == maximumSize) {
+                    return NOT_INTERNED;
+                }
+                final byte[] bytes = new byte[length];
+                in.getBytes(index, bytes);
+                return add(slot, new AsciiString(bytes, false));
+            }
+            if (matches(keywords[entry - 1], in, index, length)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    /**
+     * @return the keyword with the given id
+     */
+    public synchronized AsciiString keyword(int id) {
+        if (id < 0 || id >= size) {
+            throw new IllegalArgumentException(format("No keyword has id %d", id));
+        }
+        return keywords[id];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private int add(int slot, AsciiString keyword) {
+        if (size == maximumSize) {
+            return NOT_INTERNED;
+        }
+        if (size == keywords.length) {
+            keywords = Arrays.copyOf(keywords, size * 2);
+        }
+        final int id = size++;
+        keywords[id] = keyword;
+        table[slot] = id + 1;
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        final int mask = table.length - 1;
+        for (int id = 0; id < size; id++) {
+            final AsciiString keyword = keywords[id];
+            int hash = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                hash = 31 * hash + fold(keyword.byteAt(i));
+            }
+            int slot = hash & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+    }
+
+    private static boolean matches(AsciiString keyword, CharSequence other) {
+        final int length = other.length();
+        if (keyword.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (fold(keyword.byteAt(i)) != fold(other.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(AsciiString keyword, ByteBuf in, int index, int length) {
+        if (keyword.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (fold(keyword.byteAt(i)) != fold(in.getByte(index + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Folds ASCII upper case letters to lower case, leaving every other character as it is.
+     */
+    private static int fold(int c) {
+        return c >= 'A' && c <= 'Z' ? c | 0x20 : c & 0xff;
+    }
+}
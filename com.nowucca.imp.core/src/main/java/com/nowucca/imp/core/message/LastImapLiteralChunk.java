@@ -0,0 +1,33 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.message;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * <p>
+ *     The final chunk of a streamed literal.  It may carry the last bytes of the literal, or none.
+ * </p>
+ */
+public class LastImapLiteralChunk extends ImapLiteralChunk {
+
+    public LastImapLiteralChunk(ByteBuf content) {
+        super(content);
+    }
+
+    @Override
+    public boolean isLast() {
+        return true;
+    }
+
+    @Override
+    public LastImapLiteralChunk copy() {
+        return new LastImapLiteralChunk(content().copy());
+    }
+
+    @Override
+    public LastImapLiteralChunk duplicate() {
+        return new LastImapLiteralChunk(content().duplicate());
+    }
+}
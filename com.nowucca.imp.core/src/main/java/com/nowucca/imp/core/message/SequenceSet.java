@@ -0,0 +1,365 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.message;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import static java.lang.String.format;
+
+/**
+ * <p>
+ *     An immutable set of message sequence numbers or UIDs.
+ * </p>
+ * <pre>
+ * sequence-set    = (seq-number / seq-range) ["," sequence-set]
+ * seq-range       = seq-number ":" seq-number
+ * seq-number      = nz-number / "*"
+ * </pre>
+ * <p>
+ *     The set is held as its ranges, in a single int array of start and end pairs, sorted, disjoint and not adjacent,
+ *     so a set covering a million messages as "1:1000000" costs two ints.  Numbers are nz-numbers, up to
+ *     {@link #MAXIMUM_NUMBER}; each is held less one as an unsigned int, and handed out as a long.  "*", the largest
+ *     number in use in the mailbox, is held as {@link #STAR}, just beyond every nz-number, so "5:*" is the range from
+ *     5 to {@link #STAR}.
+ * </p>
+ * <p>
+ *     Union and intersection are linear merges of the two sets' ranges, and membership is a binary search over them.
+ * </p>
+ */
+public final class SequenceSet {
+
+    /**
+     * The largest nz-number.
+     */
+    public static final long MAXIMUM_NUMBER = 0xffffffffL;
+
+    /**
+     * "*", the largest number in use; larger than any nz-number, so that it cannot be taken for one.
+     */
+    public static final long STAR = MAXIMUM_NUMBER + 1;
+
+    public static final SequenceSet EMPTY = new SequenceSet(new int[0]);
+
+    // start and end of each range, less one, as unsigned ints
+    private final int[] ranges;
+
+    private SequenceSet(int[] ranges) {
+        this.ranges = ranges;
+    }
+
+    /**
+     * @return the set of the numbers from <code>first</code> to <code>last</code>, in either order
+     */
+    public static SequenceSet range(long first, long last) {
+        checkNumber(first);
+        checkNumber(last);
+        return new SequenceSet(new int[]{stored(Math.min(first, last)), stored(Math.max(first, last))});
+    }
+
+    /**
+     * @return the set of the given numbers
+     */
+    public static SequenceSet of(long... numbers) {
+        final int[] ranges = new int[numbers.length * 2];
+        for (int i = 0; i < numbers.length; i++) {
+            checkNumber(numbers[i]);
+            ranges[2 * i] = stored(numbers[i]);
+            ranges[2 * i + 1] = stored(numbers[i]);
+        }
+        return valueOf(ranges, numbers.length);
+    }
+
+    /**
+     * Makes a set from ranges in any order, which may overlap or touch.  The array is sorted and merged in place.
+     *
+     * @param ranges the start and end of each range, as by {@link #stored(long)}, each start no larger than its end
+     * @param count the number of ranges
+     * @return the set of the numbers in any of the ranges
+     */
+    public static SequenceSet valueOf(int[] ranges, int count) {
+        if (count == 0) {
+            return EMPTY;
+        }
+        if (!isSorted(ranges, count)) {
+            sort(ranges, count);
+        }
+        // merge overlapping and adjacent ranges
+        int merged = 0;
+        for (int i = 1; i < count; i++) {
+            final long end = unsigned(ranges[2 * merged + 1]);
+            if (follows(ranges[2 * i], end)) {
+                if (unsigned(ranges[2 * i + 1]) > end) {
+                    ranges[2 * merged + 1] = ranges[2 * i + 1];
+                }
+            } else {
+                merged++;
+                ranges[2 * merged] = ranges[2 * i];
+                ranges[2 * merged + 1] = ranges[2 * i + 1];
+            }
+        }
+        return new SequenceSet(Arrays.copyOf(ranges, 2 * (merged + 1)));
+    }
+
+    public boolean isEmpty() {
+        return ranges.length == 0;
+    }
+
+    public int getRangeCount() {
+        return ranges.length / 2;
+    }
+
+    public long getRangeStart(int range) {
+        return unsigned(ranges[2 * range]) + 1;
+    }
+
+    public long getRangeEnd(int range) {
+        return unsigned(ranges[2 * range + 1]) + 1;
+    }
+
+    /**
+     * @return the smallest number in the set, which must not be empty
+     */
+    public long first() {
+        return getRangeStart(0);
+    }
+
+    /**
+     * @return the largest number in the set, which must not be empty
+     */
+    public long last() {
+        return getRangeEnd(getRangeCount() - 1);
+    }
+
+    public boolean contains(long number) {
+        int low = 0;
+        int high = getRangeCount() - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            if (number < getRangeStart(middle)) {
+                high = middle - 1;
+            } else if (number > getRangeEnd(middle)) {
+                low = middle + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the set of numbers in this set or the other
+     */
+    public SequenceSet union(SequenceSet other) {
+        if (other.isEmpty() || other == this) {
+            return this;
+        }
+        if (isEmpty()) {
+            return other;
+        }
+        final int[] result = new int[ranges.length + other.ranges.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < ranges.length || j < other.ranges.length) {
+            final int start;
+            final int end;
+            if (j == other.ranges.length || i < ranges.length && unsigned(ranges[i]) <= unsigned(other.ranges[j])) {
+                start = ranges[i];
+                end = ranges[i + 1];
+                i += 2;
+            } else {
+                start = other.ranges[j];
+                end = other.ranges[j + 1];
+                j += 2;
+            }
+            if (count > 0 && follows(start, unsigned(result[count - 1]))) {
+                if (unsigned(end) > unsigned(result[count - 1])) {
+                    result[count - 1] = end;
+                }
+            } else {
+                result[count++] = start;
+                result[count++] = end;
+            }
+        }
+        return new SequenceSet(count == result.length ? result : Arrays.copyOf(result, count));
+    }
+
+    /**
+     * @return the set of numbers in both this set and the other
+     */
+    public SequenceSet intersection(SequenceSet other) {
+        if (other == this) {
+            return this;
+        }
+        if (isEmpty() || other.isEmpty()) {
+            return EMPTY;
+        }
+        final int[] result = new int[ranges.length + other.ranges.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < ranges.length && j < other.ranges.length) {
+            final long start = Math.max(unsigned(ranges[i]), unsigned(other.ranges[j]));
+            final long end = Math.min(unsigned(ranges[i + 1]), unsigned(other.ranges[j + 1]));
+            if (start <= end) {
+                result[count++] = (int) start;
+                result[count++] = (int) end;
+            }
+            // move past whichever range ends first
+            if (unsigned(ranges[i + 1]) < unsigned(other.ranges[j + 1])) {
+                i += 2;
+            } else {
+                j += 2;
+            }
+        }
+        return count == 0 ? EMPTY : new SequenceSet(Arrays.copyOf(result, count));
+    }
+
+    /**
+     * Iterates over the numbers in the set in ascending order, without boxing them.
+     *
+     * @param largest the largest number in use, which stands for "*" and bounds every range
+     */
+    public PrimitiveIterator.OfLong iterator(final long largest) {
+        final SequenceSet resolved = resolve(largest);
+        return new PrimitiveIterator.OfLong() {
+            private int range;
+            private long next = resolved.isEmpty() ? 1 : resolved.first();
+
+            @Override
+            public boolean hasNext() {
+                if (range < resolved.getRangeCount() && next > resolved.getRangeEnd(range)) {
+                    range++;
+                    if (range < resolved.getRangeCount()) {
+                        next = resolved.getRangeStart(range);
+                    }
+                }
+                return range < resolved.getRangeCount() && next <= largest;
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return next++;
+            }
+        };
+    }
+
+    /**
+     * @return the set with "*" replaced by <code>largest</code>, so that "5:*" is "3:5" if 3 is the largest
+     */
+    private SequenceSet resolve(long largest) {
+        if (isEmpty() || last() != STAR || largest < 1) {
+            return this;
+        }
+        final int star = stored(STAR);
+        final int number = stored(Math.min(largest, MAXIMUM_NUMBER));
+        final int[] resolved = ranges.clone();
+        for (int i = 0; i < resolved.length; i += 2) {
+            if (resolved[i] == star) {
+                resolved[i] = number;
+            }
+            if (resolved[i + 1] == star) {
+                resolved[i + 1] = number;
+            }
+            if (unsigned(resolved[i]) > unsigned(resolved[i + 1])) {
+                final int start = resolved[i + 1];
+                resolved[i + 1] = resolved[i];
+                resolved[i] = start;
+            }
+        }
+        return valueOf(resolved, resolved.length / 2);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof SequenceSet && Arrays.equals(ranges, ((SequenceSet) o).ranges);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(ranges);
+    }
+
+    /**
+     * @return the set in its canonical form: ascending ranges, "*" for {@link #STAR}, and a single number for a range
+     *         of one
+     */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < getRangeCount(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            appendNumber(getRangeStart(i), builder);
+            if (getRangeEnd(i) != getRangeStart(i)) {
+                builder.append(':');
+                appendNumber(getRangeEnd(i), builder);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static void appendNumber(long number, StringBuilder builder) {
+        if (number == STAR) {
+            builder.append('*');
+        } else {
+            builder.append(number);
+        }
+    }
+
+    /**
+     * @return the number, or {@link #STAR}, as it is held in the ranges of a set
+     */
+    public static int stored(long number) {
+        return (int) (number - 1);
+    }
+
+    /**
+     * @return whether a range starting at <code>start</code> joins one ending at <code>end</code>, overlapping or
+     *         adjacent; "*" is not adjacent to the largest nz-number, since it need not follow it
+     */
+    private static boolean follows(int start, long end) {
+        return unsigned(start) <= (start == stored(STAR) ? end : end + 1);
+    }
+
+    private static long unsigned(int value) {
+        return value & 0xffffffffL;
+    }
+
+    private static void checkNumber(long number) {
+        if (number < 1 || number > STAR) {
+            throw new IllegalArgumentException(format("Not a sequence number: %d", number));
+        }
+    }
+
+    private static boolean isSorted(int[] ranges, int count) {
+        for (int i = 1; i < count; i++) {
+            if (unsigned(ranges[2 * i]) < unsigned(ranges[2 * i - 2])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sorts the ranges by start, each packed into a long whose signed order is the ranges' unsigned order.
+     */
+    private static void sort(int[] ranges, int count) {
+        final long[] packed = new long[count];
+        for (int i = 0; i < count; i++) {
+            packed[i] = (unsigned(ranges[2 * i]) << 32 | unsigned(ranges[2 * i + 1])) ^ Long.MIN_VALUE;
+        }
+        Arrays.sort(packed);
+        for (int i = 0; i < count; i++) {
+            final long range = packed[i] ^ Long.MIN_VALUE;
+            ranges[2 * i] = (int) (range >>> 32);
+            ranges[2 * i + 1] = (int) range;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.message;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.FileRegion;
+import io.netty.util.AbstractReferenceCounted;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>
+ *     A literal held in a temporary file rather than in memory.
+ * </p>
+ * <p>
+ *     The file is deleted when the literal is released.  It is forwarded with {@link #newFileRegion()}, which
+ *     transfers the file straight to the socket where the transport supports it.
+ * </p>
+ */
+public final class SpooledLiteral extends AbstractReferenceCounted {
+
+    private static final String PREFIX = "imp-literal-";
+    private static final String SUFFIX = ".spool";
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private long size;
+
+    private SpooledLiteral(File file) throws IOException {
+        this.file = file;
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.channel = randomAccessFile.getChannel();
+    }
+
+    /**
+     * Creates an empty literal backed by a new temporary file.
+     *
+     * @param directory the directory to hold the file, or null for the default temporary directory
+     */
+    public static SpooledLiteral create(File directory) throws IOException {
+        final File file = File.createTempFile(PREFIX, SUFFIX, directory);
+        file.deleteOnExit();
+        return new SpooledLiteral(file);
+    }
+
+    /**
+     * Appends the next <code>length</code> readable bytes of <code>buffer</code> to the file.
+     */
+    public void write(ByteBuf buffer, int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            remaining -= buffer.readBytes(channel, remaining);
+        }
+        size += length;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns a region over the whole literal.  The region holds a reference to this literal until the region
+     * itself is released.
+     */
+    public FileRegion newFileRegion() {
+        retain();
+        return new DefaultFileRegion(file, 0, size) {
+            @Override
+            protected void deallocate() {
+                super.deallocate();
+                SpooledLiteral.this.release();
+            }
+        };
+    }
+
+    @Override
+    public SpooledLiteral touch(Object hint) {
+        return this;
+    }
+
+    @Override
+    protected void deallocate() {
+        try {
+            randomAccessFile.close();
+        } catch (IOException e) {
+            // nothing more we can do; the file is removed regardless
+        }
+        file.delete();
+    }
+
+    @Override
+    public String toString() {
+        return "SpooledLiteral{" +
+                "file=" + file +
+                ", size=" + size +
+                '}';
+    }
+}
@@ -3,26 +3,149 @@
  */
 package com.nowucca.imp.core.message.command;
 
+import com.nowucca.imp.core.message.ImapDateTime;
+import com.nowucca.imp.core.message.ImapFlags;
+import com.nowucca.imp.core.message.SpooledLiteral;
 import io.netty.buffer.ByteBuf;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.Recycler;
 import java.time.ZonedDateTime;
 import java.util.Arrays;
 import java.util.List;
-import javax.mail.Flags;
 
 /**
+ * <p>
+ *     An APPEND command, which owns its message literal, whether held in memory or spooled to a file.
+ * </p>
+ * <p>
+ *     The command is reference counted.  Releasing its last reference releases the literal and, for a pooled
+ *     command, returns the command to its pool.  A consumer that keeps the literal beyond the command must retain
+ *     it.
+ * </p>
  */
-public class AppendCommand implements ImapCommand  {
+public class AppendCommand extends AbstractReferenceCounted implements ImapCommand {
 
-    private String mailboxName;
-    private Flags flags;
-    private ZonedDateTime dateTime;
+    private static final Recycler<AppendCommand> RECYCLER = new Recycler<AppendCommand>() {
+        @Override
+        protected AppendCommand newObject(Handle<AppendCommand> handle) {
+            return new AppendCommand(handle);
+        }
+    };
+
+    private final Recycler.Handle<AppendCommand> handle;
+    private CharSequence mailboxName;
+    private ImapFlags flags;
+    private long dateTime = ImapDateTime.NONE;
     private ByteBuf messageLiteral;
+    private SpooledLiteral spooledLiteral;
+    private long messageLiteralSize;
 
-    public AppendCommand(String mailboxName, Flags flags, ZonedDateTime dateTime, ByteBuf messageLiteral) {
+    /**
+     * @param messageLiteral the message literal, which the command now owns
+     */
+    public AppendCommand(CharSequence mailboxName, ImapFlags flags, ZonedDateTime dateTime, ByteBuf messageLiteral) {
+        this.handle = null;
         this.mailboxName = mailboxName;
         this.flags = flags;
-        this.dateTime = dateTime;
+        this.dateTime = ImapDateTime.valueOf(dateTime);
         this.messageLiteral = messageLiteral;
+        this.messageLiteralSize = messageLiteral.readableBytes();
+    }
+
+    /**
+     * Creates an APPEND whose message literal is streamed separately, as
+     * {@link com.nowucca.imp.core.message.ImapLiteralChunk}s following this command.
+     */
+    public AppendCommand(CharSequence mailboxName, ImapFlags flags, ZonedDateTime dateTime, long messageLiteralSize) {
+        this.handle = null;
+        this.mailboxName = mailboxName;
+        this.flags = flags;
+        this.dateTime = ImapDateTime.valueOf(dateTime);
+        this.messageLiteralSize = messageLiteralSize;
+    }
+
+    /**
+     * Creates an APPEND whose message literal has been spooled to a file, which the command now owns.
+     */
+    public AppendCommand(CharSequence mailboxName, ImapFlags flags, ZonedDateTime dateTime,
+                         SpooledLiteral spooledLiteral) {
+        this.handle = null;
+        this.mailboxName = mailboxName;
+        this.flags = flags;
+        this.dateTime = ImapDateTime.valueOf(dateTime);
+        this.spooledLiteral = spooledLiteral;
+        this.messageLiteralSize = spooledLiteral.size();
+    }
+
+    private AppendCommand(Recycler.Handle<AppendCommand> handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * @param dateTime an {@link ImapDateTime}, or {@link ImapDateTime#NONE}
+     * @param messageLiteral the message literal, which the command now owns
+     * @return a pooled command with a single reference
+     */
+    public static AppendCommand newInstance(CharSequence mailboxName, ImapFlags flags, long dateTime,
+                                            ByteBuf messageLiteral) {
+        final AppendCommand command = newInstance(mailboxName, flags, dateTime, messageLiteral.readableBytes());
+        command.messageLiteral = messageLiteral;
+        return command;
+    }
+
+    /**
+     * @return a pooled command with a single reference, whose message literal is streamed separately
+     */
+    public static AppendCommand newInstance(CharSequence mailboxName, ImapFlags flags, long dateTime,
+                                            long messageLiteralSize) {
+        final AppendCommand command = RECYCLER.get();
+        command.mailboxName = mailboxName;
+        command.flags = flags;
+        command.dateTime = dateTime;
+        command.messageLiteralSize = messageLiteralSize;
+        command.setRefCnt(1);
+        return command;
+    }
+
+    /**
+     * @param spooledLiteral the file holding the message literal, which the command now owns
+     * @return a pooled command with a single reference, whose message literal has been spooled to a file
+     */
+    public static AppendCommand newInstance(CharSequence mailboxName, ImapFlags flags, long dateTime,
+                                            SpooledLiteral spooledLiteral) {
+        final AppendCommand command = newInstance(mailboxName, flags, dateTime, spooledLiteral.size());
+        command.spooledLiteral = spooledLiteral;
+        return command;
+    }
+
+    @Override
+    public AppendCommand touch(Object hint) {
+        if (messageLiteral != null) {
+            messageLiteral.touch(hint);
+        }
+        return this;
+    }
+
+    /**
+     * Releases the message literal and returns a pooled command to its pool.
+     */
+    @Override
+    protected void deallocate() {
+        if (messageLiteral != null) {
+            messageLiteral.release();
+        }
+        if (spooledLiteral != null) {
+            spooledLiteral.release();
+        }
+        if (handle != null) {
+            mailboxName = null;
+            flags = null;
+            dateTime = ImapDateTime.NONE;
+            messageLiteral = null;
+            spooledLiteral = null;
+            messageLiteralSize = 0;
+            handle.recycle(this);
+        }
     }
 
     @Override
@@ -37,22 +160,56 @@ public class AppendCommand implements ImapCommand  {
 
     @Override
     public List<?> getArguments() {
-        return Arrays.asList(mailboxName, flags, dateTime, messageLiteral);
+        return Arrays.asList(mailboxName, flags, getDateTime(), messageLiteral);
     }
 
-    public String getMailboxName() {
+    public CharSequence getMailboxName() {
         return mailboxName;
     }
 
-    public Flags getFlags() {
+    public ImapFlags getFlags() {
         return flags;
     }
 
+    /**
+     * @return the date-time, or null if there is none
+     */
     public ZonedDateTime getDateTime() {
+        return ImapDateTime.toZonedDateTime(dateTime);
+    }
+
+    /**
+     * @return the date-time as an {@link ImapDateTime}, or {@link ImapDateTime#NONE} if there is none
+     */
+    public long getPackedDateTime() {
         return dateTime;
     }
 
+    public boolean isStreamed() {
+        return messageLiteral == null && spooledLiteral == null;
+    }
+
+    public boolean isSpooled() {
+        return spooledLiteral != null;
+    }
+
+    public long getMessageLiteralSize() {
+        return messageLiteralSize;
+    }
+
+    /**
+     * The message literal, or null if the literal is streamed or spooled.  When decoded, this is a retained slice
+     * of the received bytes rather than a copy.  It is released with the command.
+     */
     public ByteBuf getMessageLiteral() {
         return messageLiteral;
     }
+
+    /**
+     * The file holding the message literal, or null if the literal is not spooled.  It is released with the
+     * command, which deletes the file.
+     */
+    public SpooledLiteral getSpooledLiteral() {
+        return spooledLiteral;
+    }
 }
@@ -3,19 +3,50 @@
  */
 package com.nowucca.imp.core.message.command;
 
+import io.netty.util.Recycler;
 import java.util.Arrays;
 import java.util.List;
 
 /**
  */
-public class AuthenticateCommand implements ImapCommand {
+public class AuthenticateCommand implements PooledCommand {
 
+    private static final Recycler<AuthenticateCommand> RECYCLER = new Recycler<AuthenticateCommand>() {
+        @Override
+        protected AuthenticateCommand newObject(Handle<AuthenticateCommand> handle) {
+            return new AuthenticateCommand(handle);
+        }
+    };
+
+    private final Recycler.Handle<AuthenticateCommand> handle;
     private CharSequence authenticationMechanismName;
 
     public AuthenticateCommand(CharSequence authenticationMechanismName) {
+        this.handle = null;
         this.authenticationMechanismName = authenticationMechanismName;
     }
 
+    private AuthenticateCommand(Recycler.Handle<AuthenticateCommand> handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * @return a pooled command, to be {@link #recycle() recycled} once nothing refers to it
+     */
+    public static AuthenticateCommand newInstance(CharSequence authenticationMechanismName) {
+        final AuthenticateCommand command = RECYCLER.get();
+        command.authenticationMechanismName = authenticationMechanismName;
+        return command;
+    }
+
+    @Override
+    public void recycle() {
+        if (handle != null) {
+            authenticationMechanismName = null;
+            handle.recycle(this);
+        }
+    }
+
     @Override
     public Kind getKind() {
         return Kind.AUTHENTICATE;
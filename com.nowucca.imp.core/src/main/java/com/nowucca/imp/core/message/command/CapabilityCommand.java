@@ -9,6 +9,11 @@ import java.util.List;
  */
 public class CapabilityCommand implements ImapCommand {
 
+    /**
+     * The command holds no state, so one instance serves every request.
+     */
+    public static final CapabilityCommand INSTANCE = new CapabilityCommand();
+
     @Override
     public Kind getKind() {
         return Kind.CAPABILITY;
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.message.command;
+
+import io.netty.handler.codec.DecoderResult;
+import io.netty.handler.codec.TooLongFrameException;
+
+/**
+ * <p>
+ *     Why a request could not be decoded.
+ * </p>
+ * <p>
+ *     Each error has a single, preallocated exception without a stack trace, which is what the decoder throws and
+ *     what the {@link DecoderResult} of an {@link InvalidImapRequest} holds as its cause.  A client sending nothing
+ *     but malformed requests therefore costs neither a stack trace nor a formatted message per request.  Any detail
+ *     of a particular failure, such as the unexpected character, is kept by the {@link InvalidImapRequest} and only
+ *     formatted if someone asks for its message.
+ * </p>
+ * <p>
+ *     The exceptions keep the types the decoder has always thrown: {@link IllegalArgumentException} for malformed
+ *     syntax, {@link UnsupportedOperationException} for valid syntax this codec does not support, and
+ *     {@link TooLongFrameException} for a token that exceeds its limit.
+ * </p>
+ */
+public enum DecodeError {
+
+    EXPECTED_TAG(invalid("Expected a tag")),
+    INVALID_TAG_CHARACTER(invalid("Invalid character in tag")),
+    UNRECOGNIZED_COMMAND(invalid("Unrecognized command")),
+    EXPECTED_SPACE(invalid("Expected a space")),
+    EXPECTED_CRLF(invalid("Expected CRLF")),
+    EXPECTED_ASTRING(invalid("Expected an astring")),
+    EXPECTED_LITERAL(invalid("Expected a literal")),
+    EXPECTED_LITERAL_SIZE(invalid("Expected a literal size")),
+    EXPECTED_LITERAL_HEADER_END(invalid("Expected }CRLF after literal size")),
+    INVALID_CHAR8(invalid("Expected a CHAR8 character")),
+    INVALID_QUOTED_CHARACTER(invalid("Illegal character in quoted string")),
+    INVALID_QUOTED_ESCAPE(invalid("Illegal escaped character in quoted string")),
+    EXPECTED_AUTHENTICATION_MECHANISM(invalid("Expected an authentication mechanism name")),
+    AUTHENTICATION_MECHANISM_TOO_LONG(invalid("Authentication mechanism name exceeds its maximum length")),
+    EXPECTED_FLAG(invalid("Expected a flag")),
+    INVALID_FLAG_CHARACTER(invalid("Illegal character in flag list")),
+    INVALID_DATE_TIME(invalid("Invalid date-time")),
+    INVALID_MAILBOX_NAME(invalid("Invalid modified UTF-7 mailbox name")),
+    INVALID_SEQUENCE_SET(invalid("Invalid sequence set")),
+    INVALID_FETCH_ATTRIBUTE(invalid("Invalid fetch attribute")),
+    INVALID_SECTION(invalid("Invalid body section")),
+    INVALID_RESPONSE(invalid("Invalid response")),
+    INVALID_FETCH_RESPONSE(invalid("Invalid FETCH response")),
+    EXTENSION_COMMAND(unsupported("No extension commands are supported")),
+    UNSUPPORTED_COMMAND(unsupported("Command not supported")),
+    RECENT_FLAG(unsupported("Cannot set the \\Recent flag per RFC 3501")),
+    LITERAL_TOO_LARGE(unsupported("Large literals not supported")),
+    TOKEN_TOO_LONG(tooLong("Token exceeds its maximum size")),
+    LITERAL_SIZE_TOO_LONG(tooLong("Literal size exceeds its maximum number of digits")),
+    RESPONSE_LINE_TOO_LONG(tooLong("Response line exceeds its maximum length"));
+
+    private static final DecodeError[] VALUES = values();
+
+    private final RuntimeException exception;
+    private final DecoderResult decoderResult;
+
+    DecodeError(RuntimeException exception) {
+        this.exception = exception;
+        this.decoderResult = DecoderResult.failure(exception);
+    }
+
+    /**
+     * @return the exception to throw for this error, which is shared and has no stack trace
+     */
+    public RuntimeException exception() {
+        return exception;
+    }
+
+    /**
+     * @return the failed result holding this error's exception
+     */
+    public DecoderResult decoderResult() {
+        return decoderResult;
+    }
+
+    public String getDescription() {
+        return exception.getMessage();
+    }
+
+    /**
+     * @return the error whose exception this is, or null if it is any other exception
+     */
+    public static DecodeError of(Throwable cause) {
+        for (DecodeError error : VALUES) {
+            if (error.exception == cause) {
+                return error;
+            }
+        }
+        return null;
+    }
+
+    private static RuntimeException invalid(String description) {
+        return new IllegalArgumentException(description) {
+            @Override
+            public synchronized Throwable fillInStackTrace() {
+                return this;
+            }
+        };
+    }
+
+    private static RuntimeException unsupported(String description) {
+        return new UnsupportedOperationException(description) {
+            @Override
+            public synchronized Throwable fillInStackTrace() {
+                return this;
+            }
+        };
+    }
+
+    private static RuntimeException tooLong(String description) {
+        return new TooLongFrameException(description) {
+            @Override
+            public synchronized Throwable fillInStackTrace() {
+                return this;
+            }
+        };
+    }
+}
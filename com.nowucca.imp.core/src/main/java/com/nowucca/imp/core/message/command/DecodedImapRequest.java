@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.message.command;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.Recycler;
+import io.netty.util.ReferenceCounted;
+
+/**
+ * <p>
+ *     A request as read from the wire, optionally keeping the bytes it was decoded from.
+ * </p>
+ * <p>
+ *     The raw bytes are a retained slice of the received buffer: the tag, command and arguments up to the final
+ *     CRLF.  For an APPEND whose message literal is streamed or spooled, they end with the literal header, and the
+ *     literal follows separately as it would if the request were re-encoded.  Forwarding an unmodified request can
+ *     then write these bytes as they are, rather than encoding the command again.
+ * </p>
+ * <p>
+ *     Commands are not modified in place, so a handler that changes a request builds a new one.  A handler that
+ *     does change a decoded command in place, such as the bytes of its message literal, must call
+ *     {@link #discardRawBytes()} first.
+ * </p>
+ * <p>
+ *     A decoded request is reference counted, and owns its command and any raw bytes.  Releasing its last reference
+ *     releases both, which releases an APPEND's message literal, and returns the request and its command to their
+ *     pools.  Each handler that receives a request either passes it on, writes it, or releases it: writing it hands
+ *     the reference to {@link com.nowucca.imp.core.codec.ImapRequestEncoder}, which releases it once encoded.
+ *     Nothing may refer to a request, its command or its literal after its last release.
+ * </p>
+ */
+public class DecodedImapRequest extends AbstractReferenceCounted implements ImapRequest {
+
+    private static final int[] NO_CONTINUATION_POINTS = new int[0];
+
+    private static final Recycler<DecodedImapRequest> RECYCLER = new Recycler<DecodedImapRequest>() {
+        @Override
+        protected DecodedImapRequest newObject(Handle<DecodedImapRequest> handle) {
+            return new DecodedImapRequest(handle);
+        }
+    };
+
+    private final Recycler.Handle<DecodedImapRequest> handle;
+    private CharSequence tag;
+    private ImapCommand command;
+    private ByteBuf rawBytes;
+    private int[] continuationPoints;
+    private long largestNonSynchronizingLiteral;
+
+    public DecodedImapRequest(CharSequence tag, ImapCommand command) {
+        this(tag, command, null, NO_CONTINUATION_POINTS, -1);
+    }
+
+    /**
+     * @param command the command, which the request now owns
+     * @param rawBytes the bytes the request was decoded from, which the request now owns
+     * @param continuationPoints the offset in the raw bytes of the data of each synchronizing literal
+     * @param largestNonSynchronizingLiteral the size of the largest non-synchronizing literal in the raw bytes,
+     *                                       or -1 if there is none
+     */
+    public DecodedImapRequest(CharSequence tag, ImapCommand command, ByteBuf rawBytes, int[] continuationPoints,
+                              long largestNonSynchronizingLiteral) {
+        this.handle = null;
+        this.tag = tag;
+        this.command = command;
+        this.rawBytes = rawBytes;
+        this.continuationPoints = continuationPoints;
+        this.largestNonSynchronizingLiteral = largestNonSynchronizingLiteral;
+    }
+
+    private DecodedImapRequest(Recycler.Handle<DecodedImapRequest> handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * @return a pooled request with a single reference, without raw bytes
+     */
+    public static DecodedImapRequest newInstance(CharSequence tag, ImapCommand command) {
+        return newInstance(tag, command, null, NO_CONTINUATION_POINTS, -1);
+    }
+
+    /**
+     * @return a pooled request with a single reference
+     * @see #DecodedImapRequest(CharSequence, ImapCommand, ByteBuf, int[], long)
+     */
+    public static DecodedImapRequest newInstance(CharSequence tag, ImapCommand command, ByteBuf rawBytes,
+                                                 int[] continuationPoints, long largestNonSynchronizingLiteral) {
+        final DecodedImapRequest request = RECYCLER.get();
+        request.tag = tag;
+        request.command = command;
+        request.rawBytes = rawBytes;
+        request.continuationPoints = continuationPoints;
+        request.largestNonSynchronizingLiteral = largestNonSynchronizingLiteral;
+        request.setRefCnt(1);
+        return request;
+    }
+
+    @Override
+    public DecodedImapRequest touch(Object hint) {
+        if (rawBytes != null) {
+            rawBytes.touch(hint);
+        }
+        if (command instanceof ReferenceCounted) {
+            ((ReferenceCounted) command).touch(hint);
+        }
+        return this;
+    }
+
+    /**
+     * Releases the raw bytes and the command, and returns the request to its pool.
+     */
+    @Override
+    protected void deallocate() {
+        discardRawBytes();
+        if (command instanceof ReferenceCounted) {
+            ((ReferenceCounted) command).release();
+        } else if (command instanceof PooledCommand) {
+            ((PooledCommand) command).recycle();
+        }
+        if (handle != null) {
+            tag = null;
+            command = null;
+            continuationPoints = NO_CONTINUATION_POINTS;
+            largestNonSynchronizingLiteral = -1;
+            handle.recycle(this);
+        }
+    }
+
+    @Override
+    public ImapCommand getCommand() {
+        return command;
+    }
+
+    @Override
+    public CharSequence getTag() {
+        return tag;
+    }
+
+    /**
+     * The bytes the request was decoded from, or null if they were not kept or have been taken.
+     */
+    public ByteBuf getRawBytes() {
+        return rawBytes;
+    }
+
+    /**
+     * Hands the raw bytes, and the responsibility for releasing them, to the caller.  They can be taken only
+     * once; the request is encoded afresh if written again.
+     *
+     * @return the raw bytes, or null if they were not kept or have been taken
+     */
+    public ByteBuf takeRawBytes() {
+        final ByteBuf result = rawBytes;
+        rawBytes = null;
+        return result;
+    }
+
+    /**
+     * Releases the raw bytes, so that the request is encoded afresh when written.
+     */
+    public void discardRawBytes() {
+        if (rawBytes != null) {
+            rawBytes.release();
+            rawBytes = null;
+        }
+    }
+
+    public int[] getContinuationPoints() {
+        return continuationPoints;
+    }
+
+    public long getLargestNonSynchronizingLiteral() {
+        return largestNonSynchronizingLiteral;
+    }
+
+    @Override
+    public String toString() {
+        return "DecodedImapRequest{" +
+                "tag='" + tag + '\'' +
+                ", command=" + command +
+                ", rawBytes=" + (rawBytes == null ? null : rawBytes.readableBytes()) +
+                '}';
+    }
+}
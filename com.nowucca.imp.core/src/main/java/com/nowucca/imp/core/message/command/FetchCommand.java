@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.message.command;
+
+import com.nowucca.imp.core.message.FetchAttributes;
+import com.nowucca.imp.core.message.SequenceSet;
+import io.netty.util.Recycler;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A FETCH, or a UID FETCH if its sequence set holds UIDs.
+ */
+public class FetchCommand implements PooledCommand {
+
+    private static final Recycler<FetchCommand> RECYCLER = new Recycler<FetchCommand>() {
+        @Override
+        protected FetchCommand newObject(Handle<FetchCommand> handle) {
+            return new FetchCommand(handle);
+        }
+    };
+
+    private final Recycler.Handle<FetchCommand> handle;
+    private boolean uid;
+    private SequenceSet sequenceSet;
+    private FetchAttributes attributes;
+
+    public FetchCommand(boolean uid, SequenceSet sequenceSet, FetchAttributes attributes) {
+        this.handle = null;
+        this.uid = uid;
+        this.sequenceSet = sequenceSet;
+        this.attributes = attributes;
+    }
+
+    private FetchCommand(Recycler.Handle<FetchCommand> handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * @return a pooled command, to be {@link #recycle() recycled} once nothing refers to it
+     */
+    public static FetchCommand newInstance(boolean uid, SequenceSet sequenceSet, FetchAttributes attributes) {
+        final FetchCommand command = RECYCLER.get();
+        command.uid = uid;
+        command.sequenceSet = sequenceSet;
+        command.attributes = attributes;
+        return command;
+    }
+
+    @Override
+    public void recycle() {
+        if (handle != null) {
+            sequenceSet = null;
+            attributes = null;
+            handle.recycle(this);
+        }
+    }
+
+    @Override
+    public Kind getKind() {
+        return uid ? Kind.UID : Kind.FETCH;
+    }
+
+    @Override
+    public String getCommandName() {
+        return uid ? "UID FETCH" : "FETCH";
+    }
+
+    @Override
+    public List<?> getArguments() {
+        return Arrays.asList(sequenceSet, attributes);
+    }
+
+    /**
+     * @return whether the sequence set holds UIDs rather than message sequence numbers
+     */
+    public boolean isUid() {
+        return uid;
+    }
+
+    public SequenceSet getSequenceSet() {
+        return sequenceSet;
+    }
+
+    public FetchAttributes getAttributes() {
+        return attributes;
+    }
+}
@@ -19,10 +19,12 @@ public interface ImapCommand {
         APPEND,
         AUTHENTICATE,
         CAPABILITY,
+        FETCH,
         LOGIN,
         LOGOUT,
         NOOP,
         SELECT,
+        UID,
         INVALID, STARTTLS
     }
 }
@@ -10,6 +10,6 @@ public interface ImapRequest {
 
     ImapCommand getCommand();
 
-    String getTag();
+    CharSequence getTag();
 
 }
@@ -6,14 +6,25 @@ package com.nowucca.imp.core.message.command;
 import io.netty.handler.codec.DecoderResult;
 
 /**
+ * <p>
+ *     A request that could not be decoded.  Its tag is the one the client sent, if the decoder got as far as
+ *     reading it, so that the client can be answered with a tagged BAD.
+ * </p>
+ * <p>
+ *     When the decoder knows why, the request carries the {@link DecodeError} and whatever detail the decoder noted
+ *     about it; the two are only formatted into a message if {@link #getErrorMessage()} is called.
+ * </p>
  */
 public class InvalidImapRequest implements ImapRequest {
 
     public static final String INVALID_TAG = "INVALID_TAG";
 
-    private String tag;
+    private CharSequence tag;
     private ImapCommand command;
     private DecoderResult decoderResult;
+    private DecodeError error;
+    private Object errorDetail;
+    private String errorMessage;
 
     public InvalidImapRequest() {
         this.tag = INVALID_TAG;
@@ -25,7 +36,18 @@ public class InvalidImapRequest implements ImapRequest {
         this.command = new InvalidImapCommand();
     }
 
-    public InvalidImapRequest(String tag, Exception cause) {
+    public InvalidImapRequest(DecodeError error, Object errorDetail) {
+        this(INVALID_TAG, error, errorDetail);
+    }
+
+    public InvalidImapRequest(CharSequence tag, DecodeError error, Object errorDetail) {
+        this.tag = tag;
+        this.command = new InvalidImapCommand(error.exception());
+        this.error = error;
+        this.errorDetail = errorDetail;
+    }
+
+    public InvalidImapRequest(CharSequence tag, Exception cause) {
         this.tag = tag;
         this.command = new InvalidImapCommand(cause);
     }
@@ -36,7 +58,7 @@ public class InvalidImapRequest implements ImapRequest {
     }
 
     @Override
-    public String getTag() {
+    public CharSequence getTag() {
         return tag;
     }
 
@@ -48,12 +70,42 @@ public class InvalidImapRequest implements ImapRequest {
         return decoderResult;
     }
 
+    /**
+     * @return why the request could not be decoded, or null if the decoder failed for some other reason
+     */
+    public DecodeError getError() {
+        return error;
+    }
+
+    /**
+     * @return the decoder's detail of the error, such as the unexpected character, or null if there is none
+     */
+    public Object getErrorDetail() {
+        return errorDetail;
+    }
+
+    /**
+     * @return a description of why the request could not be decoded, formatted the first time it is asked for
+     */
+    public String getErrorMessage() {
+        if (errorMessage == null) {
+            if (error != null) {
+                errorMessage = errorDetail == null ? error.getDescription()
+                        : error.getDescription() + ": " + errorDetail;
+            } else if (decoderResult != null && decoderResult.cause() != null) {
+                errorMessage = String.valueOf(decoderResult.cause().getMessage());
+            }
+        }
+        return errorMessage;
+    }
+
     @Override
     public String toString() {
         return "InvalidImapRequest{" +
                 "tag='" + tag + '\'' +
                 ", command=" + command +
                 ", decoderResult=" + decoderResult +
+                ", error=" + error +
                 '}';
     }
 }
@@ -3,21 +3,54 @@
  */
 package com.nowucca.imp.core.message.command;
 
+import io.netty.util.Recycler;
 import java.util.Arrays;
 import java.util.List;
 
 /**
  */
-public class LoginCommand implements ImapCommand {
+public class LoginCommand implements PooledCommand {
 
+    private static final Recycler<LoginCommand> RECYCLER = new Recycler<LoginCommand>() {
+        @Override
+        protected LoginCommand newObject(Handle<LoginCommand> handle) {
+            return new LoginCommand(handle);
+        }
+    };
+
+    private final Recycler.Handle<LoginCommand> handle;
     private CharSequence userId;
     private CharSequence password;
 
     public LoginCommand(CharSequence userId, CharSequence password) {
+        this.handle = null;
         this.userId = userId;
         this.password = password;
     }
 
+    private LoginCommand(Recycler.Handle<LoginCommand> handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * @return a pooled command, to be {@link #recycle() recycled} once nothing refers to it
+     */
+    public static LoginCommand newInstance(CharSequence userId, CharSequence password) {
+        final LoginCommand command = RECYCLER.get();
+        command.userId = userId;
+        command.password = password;
+        return command;
+    }
+
+    @Override
+    public void recycle() {
+        if (handle != null) {
+            userId = null;
+            password = null;
+            handle.recycle(this);
+        }
+    }
+
     @Override
     public Kind getKind() {
         return Kind.LOGIN;
@@ -9,6 +9,11 @@ import java.util.List;
  */
 public class LogoutCommand implements ImapCommand {
 
+    /**
+     * The command holds no state, so one instance serves every request.
+     */
+    public static final LogoutCommand INSTANCE = new LogoutCommand();
+
     @Override
     public Kind getKind() {
         return Kind.LOGOUT;
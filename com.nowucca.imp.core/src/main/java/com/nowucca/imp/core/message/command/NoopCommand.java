@@ -9,6 +9,11 @@ import java.util.List;
  */
 public class NoopCommand implements ImapCommand {
 
+    /**
+     * The command holds no state, so one instance serves every request.
+     */
+    public static final NoopCommand INSTANCE = new NoopCommand();
+
     @Override
     public Kind getKind() {
         return Kind.NOOP;
@@ -0,0 +1,17 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.message.command;
+
+/**
+ * A command that may have come from a pool, to which the last release of its {@link DecodedImapRequest} returns it.
+ * A command that owns buffers is reference counted instead.
+ */
+interface PooledCommand extends ImapCommand {
+
+    /**
+     * Returns the command to its pool once nothing refers to it.  A command that was constructed rather than taken
+     * from the pool ignores this.
+     */
+    void recycle();
+}
@@ -3,18 +3,50 @@
  */
 package com.nowucca.imp.core.message.command;
 
+import io.netty.util.Recycler;
 import java.util.Arrays;
 import java.util.List;
 
 /**
  */
-public class SelectCommand implements ImapCommand {
-    private String mailboxName;
+public class SelectCommand implements PooledCommand {
 
-    public SelectCommand(String mailboxName) {
+    private static final Recycler<SelectCommand> RECYCLER = new Recycler<SelectCommand>() {
+        @Override
+        protected SelectCommand newObject(Handle<SelectCommand> handle) {
+            return new SelectCommand(handle);
+        }
+    };
+
+    private final Recycler.Handle<SelectCommand> handle;
+    private CharSequence mailboxName;
+
+    public SelectCommand(CharSequence mailboxName) {
+        this.handle = null;
         this.mailboxName = mailboxName;
     }
 
+    private SelectCommand(Recycler.Handle<SelectCommand> handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * @return a pooled command, to be {@link #recycle() recycled} once nothing refers to it
+     */
+    public static SelectCommand newInstance(CharSequence mailboxName) {
+        final SelectCommand command = RECYCLER.get();
+        command.mailboxName = mailboxName;
+        return command;
+    }
+
+    @Override
+    public void recycle() {
+        if (handle != null) {
+            mailboxName = null;
+            handle.recycle(this);
+        }
+    }
+
     @Override
     public Kind getKind() {
         return Kind.SELECT;
@@ -30,7 +62,7 @@ public class SelectCommand implements ImapCommand {
         return Arrays.asList(mailboxName);
     }
 
-    public String getMailboxName() {
+    public CharSequence getMailboxName() {
         return mailboxName;
     }
 }
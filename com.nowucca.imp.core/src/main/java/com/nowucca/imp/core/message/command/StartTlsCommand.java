@@ -9,6 +9,11 @@ import java.util.List;
  */
 public class StartTlsCommand implements ImapCommand {
 
+    /**
+     * The command holds no state, so one instance serves every request.
+     */
+    public static final StartTlsCommand INSTANCE = new StartTlsCommand();
+
     @Override
     public Kind getKind() {
         return Kind.STARTTLS;
@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.message.response;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.Recycler;
+
+/**
+ * <p>
+ *     A response as read from the wire: what identifies it, and the bytes it was decoded from.
+ * </p>
+ * <p>
+ *     The raw bytes are a retained slice of the received buffers, from the start of the response up to and including
+ *     its final CRLF, along with any literals that were not streamed.  A response whose literal is streamed is not
+ *     complete: its raw bytes end with the literal header, and the literal and the rest of the response follow
+ *     separately, as {@link ImapResponseSegment} describes.  Forwarding a response writes the bytes as they are.
+ * </p>
+ * <p>
+ *     A decoded response is reference counted, and owns its raw bytes.  Releasing its last reference releases them
+ *     and returns the response to its pool.
+ * </p>
+ */
+public final class DecodedImapResponse extends AbstractReferenceCounted implements ImapResponse {
+
+    private static final Recycler<DecodedImapResponse> RECYCLER = new Recycler<DecodedImapResponse>() {
+        @Override
+        protected DecodedImapResponse newObject(Handle<DecodedImapResponse> handle) {
+            return new DecodedImapResponse(handle);
+        }
+    };
+
+    private final Recycler.Handle<DecodedImapResponse> handle;
+    private Type type;
+    private CharSequence tag;
+    private Status status;
+    private long number;
+    private CharSequence name;
+    private ByteBuf rawBytes;
+    private int textOffset;
+    private boolean complete;
+
+    private DecodedImapResponse(Recycler.Handle<DecodedImapResponse> handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * @param tag the tag of a tagged response, or null
+     * @param status the condition of a status response, or null
+     * @param number the number before the name, or -1
+     * @param name the name of the response, or null for a continuation request
+     * @param rawBytes the bytes the response was decoded from, which the response now owns
+     * @param textOffset the offset in the raw bytes of what follows the name and the space after it
+     * @param complete whether the raw bytes hold the whole response, rather than ending with a streamed literal's
+     *                 header
+     * @return a pooled response with a single reference
+     */
+    public static DecodedImapResponse newInstance(Type type, CharSequence tag, Status status, long number,
+                                                  CharSequence name, ByteBuf rawBytes, int textOffset,
+                                                  boolean complete) {
+        final DecodedImapResponse response = RECYCLER.get();
+        response.type = type;
+        response.tag = tag;
+        response.status = status;
+        response.number = number;
+        response.name = name;
+        response.rawBytes = rawBytes;
+        response.textOffset = textOffset;
+        response.complete = complete;
+        response.setRefCnt(1);
+        return response;
+    }
+
+    @Override
+    public DecodedImapResponse touch(Object hint) {
+        if (rawBytes != null) {
+            rawBytes.touch(hint);
+        }
+        return this;
+    }
+
+    /**
+     * Releases the raw bytes, and returns the response to its pool.
+     */
+    @Override
+    protected void deallocate() {
+        if (rawBytes != null) {
+            rawBytes.release();
+            rawBytes = null;
+        }
+        type = null;
+        tag = null;
+        status = null;
+        name = null;
+        handle.recycle(this);
+    }
+
+    @Override
+    public Type getType() {
+        return type;
+    }
+
+    @Override
+    public CharSequence getTag() {
+        return tag;
+    }
+
+    @Override
+    public Status getStatus() {
+        return status;
+    }
+
+    @Override
+    public long getNumber() {
+        return number;
+    }
+
+    @Override
+    public CharSequence getName() {
+        return name;
+    }
+
+    /**
+     * The bytes the response was decoded from, or null if they have been taken.
+     */
+    public ByteBuf getRawBytes() {
+        return rawBytes;
+    }
+
+    /**
+     * Hands the raw bytes, and the responsibility for releasing them, to the caller.
+     *
+     * @return the raw bytes, or null if they have been taken
+     */
+    public ByteBuf takeRawBytes() {
+        final ByteBuf result = rawBytes;
+        rawBytes = null;
+        return result;
+    }
+
+    /**
+     * @return the offset in the raw bytes of what follows the name and the space after it: the resp-text of a status
+     *         response or continuation request, or the data of any other response
+     */
+    public int getTextOffset() {
+        return textOffset;
+    }
+
+    /**
+     * @return whether the raw bytes hold the whole response, or end with the header of a streamed literal
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    @Override
+    public String toString() {
+        return "DecodedImapResponse{" +
+                "type=" + type +
+                ", tag='" + tag + '\'' +
+                ", status=" + status +
+                ", number=" + number +
+                ", name=" + name +
+                ", rawBytes=" + (rawBytes == null ? null : rawBytes.readableBytes()) +
+                ", complete=" + complete +
+                '}';
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.message.response;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+
+/**
+ * <p>
+ *     An untagged data response put together rather than decoded, such as "* 23 EXISTS" or a FETCH whose data holds
+ *     a message body.
+ * </p>
+ * <pre>
+ * response-data   = "*" SP (mailbox-data / message-data / capability-data) CRLF
+ * </pre>
+ * <p>
+ *     The data is what follows the name, without the final CRLF, already encoded: it may be a composite of
+ *     buffers gathered from elsewhere, literals and all, and is written without being copied if it is large.  The
+ *     response owns its data, and releases it once written.
+ * </p>
+ */
+public class ImapDataResponse extends DefaultByteBufHolder implements ImapResponse {
+
+    private final long number;
+    private final CharSequence name;
+
+    /**
+     * @param number the number before the name, or -1 if there is none
+     * @param name the name of the response, such as EXISTS or FETCH
+     * @param data what follows the name and a space, or an empty buffer if nothing does
+     */
+    public ImapDataResponse(long number, CharSequence name, ByteBuf data) {
+        super(data);
+        this.number = number;
+        this.name = name;
+    }
+
+    @Override
+    public Type getType() {
+        return Type.UNTAGGED;
+    }
+
+    @Override
+    public CharSequence getTag() {
+        return null;
+    }
+
+    @Override
+    public Status getStatus() {
+        return null;
+    }
+
+    @Override
+    public long getNumber() {
+        return number;
+    }
+
+    @Override
+    public CharSequence getName() {
+        return name;
+    }
+
+    @Override
+    public ImapDataResponse copy() {
+        return new ImapDataResponse(number, name, content().copy());
+    }
+
+    @Override
+    public ImapDataResponse duplicate() {
+        return new ImapDataResponse(number, name, content().duplicate());
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.message.response;
+
+/**
+ * A server response: tagged, untagged, or a continuation request.
+ */
+public interface ImapResponse {
+
+    Type getType();
+
+    /**
+     * @return the tag of a tagged response, or null
+     */
+    CharSequence getTag();
+
+    /**
+     * @return the condition of a status response, such as a tagged OK or an untagged BYE, or null for data
+     */
+    Status getStatus();
+
+    /**
+     * @return the number before the name of a response such as "* 23 EXISTS" or "* 5 FETCH", or -1 if there is none
+     */
+    long getNumber();
+
+    /**
+     * @return the name of the response, such as OK, CAPABILITY or FETCH, or null for a continuation request
+     */
+    CharSequence getName();
+
+    public enum Type {
+        TAGGED,
+        UNTAGGED,
+        CONTINUATION
+    }
+
+    public enum Status {
+        OK,
+        NO,
+        BAD,
+        PREAUTH,
+        BYE
+    }
+}
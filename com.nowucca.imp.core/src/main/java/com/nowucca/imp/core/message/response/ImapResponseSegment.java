@@ -0,0 +1,45 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.message.response;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+
+/**
+ * <p>
+ *     The bytes of a response that follow a streamed literal, up to the header of the next streamed literal or the
+ *     CRLF that ends the response.
+ * </p>
+ * <p>
+ *     A response with streamed literals is decoded as a {@link DecodedImapResponse} that is not complete, then for
+ *     each literal its {@link com.nowucca.imp.core.message.ImapLiteralChunk}s followed by a segment.  The last segment
+ *     ends the response.  Writing each part's bytes in turn reproduces the response exactly.
+ * </p>
+ */
+public class ImapResponseSegment extends DefaultByteBufHolder {
+
+    private final boolean last;
+
+    public ImapResponseSegment(ByteBuf content, boolean last) {
+        super(content);
+        this.last = last;
+    }
+
+    /**
+     * @return whether the segment ends the response, rather than introducing another streamed literal
+     */
+    public boolean isLast() {
+        return last;
+    }
+
+    @Override
+    public ImapResponseSegment copy() {
+        return new ImapResponseSegment(content().copy(), last);
+    }
+
+    @Override
+    public ImapResponseSegment duplicate() {
+        return new ImapResponseSegment(content().duplicate(), last);
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.message.response;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import static java.lang.String.format;
+
+/**
+ * <p>
+ *     A response whose bytes never change, encoded once when it is created: a greeting, a CAPABILITY listing, a BYE,
+ *     or the OK, NO or BAD that completes a command.
+ * </p>
+ * <p>
+ *     The encoded body is held in a single direct buffer that cannot be modified or released, shared by every
+ *     write of the response.  An untagged response or continuation request is its body, so writing it copies
+ *     nothing.  A tagged response is created without a tag, as a template, and {@link #withTag} gives the response
+ *     for a particular command; the body of a tagged response starts with the space after the tag, so writing one
+ *     only has to put the tag in front.
+ * </p>
+ * <p>
+ *     Responses are immutable, so may be held in constants and written from any thread.
+ * </p>
+ */
+public final class PreEncodedImapResponse implements ImapResponse {
+
+    public static final PreEncodedImapResponse GREETING = untagged(Status.OK, "IMAP4rev1 Service Ready");
+    public static final PreEncodedImapResponse BYE = untagged(Status.BYE, "IMAP4rev1 Server logging out");
+    public static final PreEncodedImapResponse CAPABILITY = untagged("CAPABILITY", "IMAP4rev1");
+    public static final PreEncodedImapResponse BAD = untagged(Status.BAD, "Command unrecognized");
+
+    public static final PreEncodedImapResponse OK_CAPABILITY = tagged(Status.OK, "CAPABILITY completed");
+    public static final PreEncodedImapResponse OK_NOOP = tagged(Status.OK, "NOOP completed");
+    public static final PreEncodedImapResponse OK_LOGOUT = tagged(Status.OK, "LOGOUT completed");
+    public static final PreEncodedImapResponse BAD_COMMAND = tagged(Status.BAD, "Command unrecognized");
+
+    private final Type type;
+    private final CharSequence tag;
+    private final Status status;
+    private final CharSequence name;
+    private final ByteBuf body;
+
+    private PreEncodedImapResponse(Type type, CharSequence tag, Status status, CharSequence name, ByteBuf body) {
+        this.type = type;
+        this.tag = tag;
+        this.status = status;
+        this.name = name;
+        this.body = body;
+    }
+
+    /**
+     * @return a template for a tagged status response, to be given a tag by {@link #withTag}
+     */
+    public static PreEncodedImapResponse tagged(Status status, CharSequence text) {
+        if (status != Status.OK && status != Status.NO && status != Status.BAD) {
+            throw new IllegalArgumentException(format("Not the status of a tagged response: %s", status));
+        }
+        return new PreEncodedImapResponse(Type.TAGGED, null, status, status.name(),
+                encode(" " + status.name(), text));
+    }
+
+    /**
+     * @return an untagged status response, such as a greeting or a BYE
+     */
+    public static PreEncodedImapResponse untagged(Status status, CharSequence text) {
+        return new PreEncodedImapResponse(Type.UNTAGGED, null, status, status.name(),
+                encode("* " + status.name(), text));
+    }
+
+    /**
+     * @param name the name of the response, such as CAPABILITY
+     * @param data what follows the name, or an empty string
+     * @return an untagged data response
+     */
+    public static PreEncodedImapResponse untagged(CharSequence name, CharSequence data) {
+        return new PreEncodedImapResponse(Type.UNTAGGED, null, null, name, encode("* " + name, data));
+    }
+
+    public static PreEncodedImapResponse continuation(CharSequence text) {
+        return new PreEncodedImapResponse(Type.CONTINUATION, null, null, null, encode("+", text));
+    }
+
+    /**
+     * @return the tagged response for the command with the tag, sharing this template's body
+     */
+    public PreEncodedImapResponse withTag(CharSequence tag) {
+        if (type != Type.TAGGED) {
+            throw new IllegalStateException(format("Not a tagged response: %s", this));
+        }
+        return new PreEncodedImapResponse(type, tag, status, name, body);
+    }
+
+    /**
+     * The text may hold no CR, LF or 8-bit characters, so that it cannot end the response early.
+     */
+    private static ByteBuf encode(String start, CharSequence text) {
+        final StringBuilder builder = new StringBuilder(start);
+        if (text.length() > 0) {
+            builder.append(' ').append(text);
+        }
+        for (int i = 0; i < builder.length(); i++) {
+            final char c = builder.charAt(i);
+            if (c == '\r' || c == '\n' || c == 0 || c > 0x7f) {
+                throw new IllegalArgumentException(format("Invalid character in response text: 0x%x", (int) c));
+            }
+        }
+        final byte[] bytes = builder.append("\r\n").toString().getBytes(StandardCharsets.US_ASCII);
+        // never released, so its memory is left to the garbage collector rather than taken from an allocator
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return Unpooled.unreleasableBuffer(Unpooled.unmodifiableBuffer(Unpooled.wrappedBuffer(buffer)));
+    }
+
+    @Override
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the tag, or null for an untagged response, a continuation request or a template
+     */
+    @Override
+    public CharSequence getTag() {
+        return tag;
+    }
+
+    @Override
+    public Status getStatus() {
+        return status;
+    }
+
+    @Override
+    public long getNumber() {
+        return -1;
+    }
+
+    @Override
+    public CharSequence getName() {
+        return name;
+    }
+
+    /**
+     * @return the encoded response, after the tag of a tagged response, as a duplicate of the shared buffer; it
+     *         cannot be modified, and releasing it does nothing
+     */
+    public ByteBuf getBody() {
+        return body.duplicate();
+    }
+
+    @Override
+    public String toString() {
+        return "PreEncodedImapResponse{" +
+                "type=" + type +
+                ", tag='" + tag + '\'' +
+                ", body='" + body.toString(StandardCharsets.US_ASCII).trim() + '\'' +
+                '}';
+    }
+}
@@ -3,15 +3,27 @@
  */
 package com.nowucca.imp.core.codec;
 
+import com.nowucca.imp.core.message.ImapFlags;
+import com.nowucca.imp.core.message.ImapLiteralChunk;
+import com.nowucca.imp.core.message.LastImapLiteralChunk;
+import com.nowucca.imp.core.message.SpooledLiteral;
+import com.nowucca.imp.core.message.command.AppendCommand;
+import com.nowucca.imp.core.message.command.DecodeError;
 import com.nowucca.imp.core.message.command.ImapRequest;
+import com.nowucca.imp.core.message.command.InvalidImapRequest;
+import com.nowucca.imp.util.UTF8;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.ReferenceCountUtil;
+import java.io.File;
+import java.nio.file.Files;
 import java.time.Month;
 import java.time.MonthDay;
 import java.time.Year;
 import java.time.ZonedDateTime;
 import java.util.List;
-import javax.mail.Flags;
 import org.junit.Test;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.instanceOf;
@@ -44,14 +56,13 @@ public class AppendCommandDecoderTest extends BaseDecoderTest {
         assertEquals(4, arguments.size());
 
 
-        assertThat(arguments.get(0), instanceOf(String.class));
-        assertThat("saved-messages", equalTo(arguments.get(0)));
+        assertThat(arguments.get(0), instanceOf(CharSequence.class));
+        assertThat("saved-messages", equalTo(arguments.get(0).toString()));
 
-        assertThat(arguments.get(1), instanceOf(Flags.class));
-        final Flags flags = (Flags) arguments.get(1);
-        assertTrue(flags.contains(Flags.Flag.SEEN));
-        assertEquals(1, flags.getSystemFlags().length);
-        assertEquals(0, flags.getUserFlags().length);
+        assertThat(arguments.get(1), instanceOf(ImapFlags.class));
+        final ImapFlags flags = (ImapFlags) arguments.get(1);
+        assertEquals(ImapFlags.SEEN, flags.getSystemFlags());
+        assertEquals(0, flags.getKeywordCount());
 
         // no date-time
         assertNull(arguments.get(2));
@@ -76,15 +87,13 @@ public class AppendCommandDecoderTest extends BaseDecoderTest {
         assertEquals(4, arguments.size());
 
 
-        assertThat(arguments.get(0), instanceOf(String.class));
-        assertThat("saved-messages", equalTo(arguments.get(0)));
+        assertThat(arguments.get(0), instanceOf(CharSequence.class));
+        assertThat("saved-messages", equalTo(arguments.get(0).toString()));
 
-        assertThat(arguments.get(1), instanceOf(Flags.class));
-        final Flags flags = (Flags) arguments.get(1);
-        assertTrue(flags.contains(Flags.Flag.SEEN));
-        assertTrue(flags.contains(Flags.Flag.ANSWERED));
-        assertEquals(2, flags.getSystemFlags().length);
-        assertEquals(0, flags.getUserFlags().length);
+        assertThat(arguments.get(1), instanceOf(ImapFlags.class));
+        final ImapFlags flags = (ImapFlags) arguments.get(1);
+        assertEquals(ImapFlags.SEEN | ImapFlags.ANSWERED, flags.getSystemFlags());
+        assertEquals(0, flags.getKeywordCount());
 
         assertThat(arguments.get(2), instanceOf(ZonedDateTime.class));
         final ZonedDateTime dateTime = (ZonedDateTime) arguments.get(2);
@@ -97,5 +106,170 @@ public class AppendCommandDecoderTest extends BaseDecoderTest {
         assertEquals(44, ((ByteBuf) arguments.get(3)).readableBytes());
     }
 
+    @Test
+    public void shouldInternKeywordsOncePerSession() throws Exception {
+        writeToChannel("A010 APPEND saved-messages (\\sEEN $Forwarded \\Deleted $forwarded \\Extension) {0+}\r\n\r\n");
+        writeToChannel("A011 APPEND saved-messages ($FORWARDED) {0+}\r\n\r\n");
+
+        final ImapFlags first = ((AppendCommand) expectSuccessfulRequest("A010", "APPEND").getCommand()).getFlags();
+        assertEquals(ImapFlags.SEEN | ImapFlags.DELETED, first.getSystemFlags());
+        assertEquals(2, first.getKeywordCount());
+        assertEquals("$Forwarded", first.getKeyword(0).toString());
+        assertEquals("\\Extension", first.getKeyword(1).toString());
+
+        final ImapFlags second = ((AppendCommand) expectSuccessfulRequest("A011", "APPEND").getCommand()).getFlags();
+        assertEquals(0, second.getSystemFlags());
+        assertEquals(first.getKeywordId(0), second.getKeywordId(0));
+        assertEquals(2, decoder.getKeywordDictionary().size());
+    }
+
+    @Test
+    public void shouldRejectRecentFlag() throws Exception {
+        writeToChannel("A010 APPEND saved-messages (\\Recent) {0+}\r\n\r\n");
+        expectInvalidRequest(UnsupportedOperationException.class);
+    }
+
+    @Test
+    public void shouldExposeMessageLiteralAsSliceOfReceivedBytes() throws Exception {
+        writeToChannel("A011 APPEND saved-messages {11}\r\nHello world\r\n");
+
+        final ImapRequest appendRequest = expectSuccessfulRequest("A011", "APPEND");
+        final ByteBuf literal = (ByteBuf) appendRequest.getCommand().getArguments().get(3);
+        assertNotNull(literal.unwrap());
+        assertEquals("Hello world", literal.toString(UTF8.charset()));
+
+        // the request owns the command, and the command the literal
+        assertTrue(ReferenceCountUtil.release(appendRequest));
+        assertEquals(0, literal.refCnt());
+    }
+
+    @Test
+    public void shouldReleaseLiteralOfRequestMissingItsCRLF() throws Exception {
+        final ByteBuf input = Unpooled.copiedBuffer("A011 APPEND saved-messages {5+}\r\nHelloXX", UTF8.charset());
+        channel.writeInbound(input);
+
+        expectInvalidRequest(IllegalArgumentException.class);
+        assertEquals(0, input.refCnt());
+    }
+
+    @Test
+    public void shouldParseLargeLiteralReceivedInManyReads() throws Exception {
+        final int size = ImapCodecConstants.LITERAL_COMPOSITE_THRESHOLD * 2;
+        writeToChannel("A012 APPEND saved-messages {" + size + "}\r\n");
+
+        final StringBuilder chunk = new StringBuilder();
+        for (int i = 0; i < 1024; i++) {
+            chunk.append((char) ('a' + i % 26));
+        }
+        for (int written = 0; written < size; written += chunk.length()) {
+            writeToChannel(chunk.toString());
+        }
+        writeToChannel("\r\n");
+
+        final ImapRequest appendRequest = expectSuccessfulRequest("A012", "APPEND");
+        final ByteBuf literal = (ByteBuf) appendRequest.getCommand().getArguments().get(3);
+        assertEquals(size, literal.readableBytes());
+        for (int i = 0; i < size; i += chunk.length()) {
+            assertEquals(chunk.toString(), literal.toString(i, chunk.length(), UTF8.charset()));
+        }
+    }
+
+    @Test
+    public void shouldStreamLiteralAtStreamingThresholdAsChunks() throws Exception {
+        channel = new EmbeddedChannel(decoder = new ImapRequestDecoder(16, 8));
+        writeToChannel("A013 APPEND saved-messages (\\Seen) {20}\r\n");
+
+        final ImapRequest appendRequest = expectSuccessfulRequest("A013", "APPEND");
+        final AppendCommand appendCommand = (AppendCommand) appendRequest.getCommand();
+        assertTrue(appendCommand.isStreamed());
+        assertNull(appendCommand.getMessageLiteral());
+        assertEquals(20, appendCommand.getMessageLiteralSize());
+
+        writeToChannel("0123456789");
+        writeToChannel("abcdefghij\r\n");
+
+        final StringBuilder literal = new StringBuilder();
+        ImapLiteralChunk chunk;
+        do {
+            chunk = (ImapLiteralChunk) channel.readInbound();
+            assertNotNull(chunk);
+            assertTrue(chunk.content().readableBytes() <= 8);
+            literal.append(chunk.content().toString(UTF8.charset()));
+            chunk.release();
+        } while (!chunk.isLast());
+        assertThat(chunk, instanceOf(LastImapLiteralChunk.class));
+        assertEquals("0123456789abcdefghij", literal.toString());
+
+        writeToChannel("A014 NOOP\r\n");
+        expectSuccessfulRequest("A014", "NOOP");
+    }
+
+    @Test
+    public void shouldStreamLiteralWithInvalidBytesToItsLastChunk() throws Exception {
+        channel = new EmbeddedChannel(decoder = new ImapRequestDecoder(8, 4));
+        writeToChannel("A1 APPEND INBOX {12+}\r\nabcdef");
+        writeToChannel("\u0000hijkl\r\nA2 NOOP\r\n");
+
+        final AppendCommand appendCommand = (AppendCommand) expectSuccessfulRequest("A1", "APPEND").getCommand();
+        assertTrue(appendCommand.isStreamed());
+        final StringBuilder literal = new StringBuilder();
+        ImapLiteralChunk chunk;
+        do {
+            chunk = (ImapLiteralChunk) channel.readInbound();
+            assertNotNull(chunk);
+            literal.append(chunk.content().toString(UTF8.charset()));
+            chunk.release();
+        } while (!chunk.isLast());
+        assertEquals("abcdef\u0000hijkl", literal.toString());
+
+        expectSuccessfulRequest("A2", "NOOP");
+        assertNull(channel.readInbound());
+    }
+
+    @Test
+    public void shouldSpoolLiteralAtSpoolThresholdToFile() throws Exception {
+        decoder = new ImapRequestDecoder(16, 8);
+        decoder.setLiteralSpooling(16, null);
+        channel = new EmbeddedChannel(decoder);
+        writeToChannel("A015 APPEND saved-messages {20}\r\n");
+        assertNull(channel.readInbound());
+
+        writeToChannel("0123456789");
+        writeToChannel("abcdefghij");
+        assertNull(channel.readInbound());
+        writeToChannel("\r\n");
+
+        final ImapRequest appendRequest = expectSuccessfulRequest("A015", "APPEND");
+        final AppendCommand appendCommand = (AppendCommand) appendRequest.getCommand();
+        assertTrue(appendCommand.isSpooled());
+        assertFalse(appendCommand.isStreamed());
+        assertNull(appendCommand.getMessageLiteral());
+        assertEquals(20, appendCommand.getMessageLiteralSize());
+
+        final SpooledLiteral spooledLiteral = appendCommand.getSpooledLiteral();
+        final File file = spooledLiteral.getFile();
+        assertEquals("0123456789abcdefghij", new String(Files.readAllBytes(file.toPath()), UTF8.charset()));
+        ReferenceCountUtil.release(appendRequest);
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void shouldStreamLiteralTooLargeForOneBuffer() throws Exception {
+        writeToChannel("A015 APPEND saved-messages {4294967296}\r\n");
+
+        final ImapRequest appendRequest = expectSuccessfulRequest("A015", "APPEND");
+        final AppendCommand appendCommand = (AppendCommand) appendRequest.getCommand();
+        assertTrue(appendCommand.isStreamed());
+        assertEquals(4294967296L, appendCommand.getMessageLiteralSize());
+    }
+
+    @Test
+    public void shouldRejectLiteralSizeThatOverflows() throws Exception {
+        writeToChannel("A016 APPEND saved-messages {9999999999999999999}\r\n");
+
+        final InvalidImapRequest invalidRequest = expectInvalidRequest(TooLongFrameException.class);
+        assertSame(DecodeError.LITERAL_SIZE_TOO_LONG, invalidRequest.getError());
+        assertEquals(0, invalidRequest.getDecoderResult().cause().getStackTrace().length);
+    }
 
 }
@@ -3,17 +3,28 @@
  */
 package com.nowucca.imp.core.codec;
 
+import com.nowucca.imp.core.message.ImapFlags;
+import com.nowucca.imp.core.message.ImapLiteralChunk;
+import com.nowucca.imp.core.message.KeywordDictionary;
+import com.nowucca.imp.core.message.LastImapLiteralChunk;
+import com.nowucca.imp.core.message.SpooledLiteral;
 import com.nowucca.imp.core.message.command.AppendCommand;
 import com.nowucca.imp.core.message.command.ImapCommand;
 import com.nowucca.imp.core.message.command.ImapRequest;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
-import javax.mail.Flags;
+import java.util.Arrays;
 import org.apache.logging.log4j.core.util.Charsets;
 import org.junit.Test;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 
 /**
  */
@@ -22,7 +33,8 @@ public class AppendCommandEncoderTest extends BaseEncoderTest {
     @Test
     public void shouldEncodeCommand() throws Exception {
         final String mailboxName = "trash";
-        final Flags flags = new Flags("SENT");
+        final KeywordDictionary keywords = new KeywordDictionary();
+        final ImapFlags flags = new ImapFlags(0, keywords, keywords.intern("SENT"));
         final ZonedDateTime zonedDateTime = ZonedDateTime.of(1972, 5, 11, 0, 50, 3, 0,
                 ZoneId.ofOffset("GMT", ZoneOffset.ofHours(10)));
         final ByteBuf literal = Unpooled.wrappedBuffer("Hello world".getBytes(Charsets.US_ASCII));
@@ -41,13 +53,175 @@ public class AppendCommandEncoderTest extends BaseEncoderTest {
 
         };
         channel.writeOutbound(imapRequest);
-        final ByteBuf buffer =  (ByteBuf) readFromChannel();
+        final ByteBuf buffer = readExactlySizedBuffer();
 
         final ByteBuf expected = Unpooled.wrappedBuffer(("A001 APPEND trash (SENT) \"11-May-1972 00:50:03 +1000\" " +
-                "{11}\r\nHello world\r\n").getBytes(Charsets.US_ASCII));
+                "{11}\r\n").getBytes(Charsets.US_ASCII));
 
         assertEquals(expected, buffer);
+        expectContinuationBarrier("A001", 13);
+        assertEquals(Unpooled.wrappedBuffer("Hello world\r\n".getBytes(Charsets.US_ASCII)), (ByteBuf) readFromChannel());
 
     }
 
+    @Test
+    public void shouldEncodeSameLiteralTwice() throws Exception {
+        encoder.setNonSynchronizingLiterals(NonSynchronizingLiterals.LITERAL_PLUS);
+        final ByteBuf literal = Unpooled.wrappedBuffer("Hello world".getBytes(Charsets.US_ASCII));
+        final AppendCommand appendCommand = new AppendCommand("trash", null, null, literal);
+        final ImapRequest imapRequest = new ImapRequest() {
+            @Override
+            public ImapCommand getCommand() {
+                return appendCommand;
+            }
+
+            @Override
+            public String getTag() {
+                return "A001";
+            }
+        };
+
+        for (int i = 0; i < 2; i++) {
+            channel.writeOutbound(imapRequest);
+            assertEquals(Unpooled.wrappedBuffer("A001 APPEND trash {11+}\r\nHello world\r\n"
+                    .getBytes(Charsets.US_ASCII)), (ByteBuf) readFromChannel());
+            org.junit.Assert.assertEquals(0, literal.readerIndex());
+        }
+    }
+
+    @Test
+    public void shouldGatherLargeLiteralWithoutCopyingIt() throws Exception {
+        encoder.setNonSynchronizingLiterals(NonSynchronizingLiterals.LITERAL_PLUS);
+        final byte[] message = new byte[ImapRequestEncoder.GATHERED_LITERAL_THRESHOLD];
+        Arrays.fill(message, (byte) 'x');
+        final ByteBuf literal = Unpooled.wrappedBuffer(message);
+        final AppendCommand appendCommand = new AppendCommand("trash", null, null, literal);
+
+        channel.writeOutbound(new ImapRequest() {
+            @Override
+            public ImapCommand getCommand() {
+                return appendCommand;
+            }
+
+            @Override
+            public String getTag() {
+                return "A001";
+            }
+        });
+
+        final CompositeByteBuf buffer = (CompositeByteBuf) readFromChannel();
+        assertSame(literal, buffer.component(1).unwrap());
+        org.junit.Assert.assertEquals(2, literal.refCnt());
+        assertEquals(Unpooled.copiedBuffer("A001 APPEND trash {1024+}\r\n".getBytes(), message, "\r\n".getBytes()),
+                buffer);
+
+        buffer.release();
+        org.junit.Assert.assertEquals(1, literal.refCnt());
+        org.junit.Assert.assertEquals(0, literal.readerIndex());
+    }
+
+    @Test
+    public void shouldEncodeSystemFlagsBeforeKeywords() throws Exception {
+        final KeywordDictionary keywords = new KeywordDictionary();
+        final ImapFlags flags = new ImapFlags(ImapFlags.SEEN | ImapFlags.ANSWERED | ImapFlags.DRAFT, keywords,
+                keywords.intern("$Forwarded"), keywords.intern("Work"));
+        final AppendCommand appendCommand = new AppendCommand("trash", flags, null, 0);
+
+        channel.writeOutbound(new ImapRequest() {
+            @Override
+            public ImapCommand getCommand() {
+                return appendCommand;
+            }
+
+            @Override
+            public String getTag() {
+                return "A001";
+            }
+        });
+
+        assertEquals(Unpooled.wrappedBuffer("A001 APPEND trash (\\ANSWERED \\SEEN \\DRAFT $Forwarded Work) {0}\r\n"
+                .getBytes(Charsets.US_ASCII)), (ByteBuf) readFromChannel());
+    }
+
+    @Test
+    public void shouldEncodeStreamedCommand() throws Exception {
+        final AppendCommand appendCommand = new AppendCommand("trash", null, null, 11);
+
+        channel.writeOutbound(new ImapRequest() {
+            @Override
+            public ImapCommand getCommand() {
+                return appendCommand;
+            }
+
+            @Override
+            public String getTag() {
+                return "A001";
+            }
+        });
+        channel.writeOutbound(new ImapLiteralChunk(Unpooled.wrappedBuffer("Hello ".getBytes(Charsets.US_ASCII))));
+        channel.writeOutbound(new LastImapLiteralChunk(Unpooled.wrappedBuffer("world".getBytes(Charsets.US_ASCII))));
+
+        assertEquals(Unpooled.wrappedBuffer("A001 APPEND trash {11}\r\n".getBytes(Charsets.US_ASCII)),
+                (ByteBuf) readFromChannel());
+        expectContinuationBarrier("A001", 13);
+        assertEquals(Unpooled.wrappedBuffer("Hello ".getBytes(Charsets.US_ASCII)), (ByteBuf) readFromChannel());
+        assertEquals(Unpooled.wrappedBuffer("world".getBytes(Charsets.US_ASCII)), (ByteBuf) readFromChannel());
+        assertEquals(Unpooled.wrappedBuffer("\r\n".getBytes(Charsets.US_ASCII)), (ByteBuf) readFromChannel());
+    }
+
+    @Test
+    public void shouldEncodeSpooledCommandAsFileRegion() throws Exception {
+        final SpooledLiteral spooledLiteral = SpooledLiteral.create(null);
+        spooledLiteral.write(Unpooled.wrappedBuffer("Hello world".getBytes(Charsets.US_ASCII)), 11);
+        final AppendCommand appendCommand = new AppendCommand("trash", null, null, spooledLiteral);
+
+        channel.writeOutbound(new ImapRequest() {
+            @Override
+            public ImapCommand getCommand() {
+                return appendCommand;
+            }
+
+            @Override
+            public String getTag() {
+                return "A001";
+            }
+        });
+
+        assertEquals(Unpooled.wrappedBuffer("A001 APPEND trash {11}\r\n".getBytes(Charsets.US_ASCII)),
+                (ByteBuf) readFromChannel());
+        expectContinuationBarrier("A001", 13);
+        final FileRegion region = (FileRegion) readFromChannel();
+        final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        region.transferTo(Channels.newChannel(written), 0);
+        assertEquals(Unpooled.wrappedBuffer("Hello world".getBytes(Charsets.US_ASCII)),
+                Unpooled.wrappedBuffer(written.toByteArray()));
+        assertEquals(Unpooled.wrappedBuffer("\r\n".getBytes(Charsets.US_ASCII)), (ByteBuf) readFromChannel());
+
+        region.release();
+        spooledLiteral.release();
+        assertFalse(spooledLiteral.getFile().exists());
+    }
+
+    @Test
+    public void shouldEncodeSynchronizingLiteralTooLargeForLiteralMinus() throws Exception {
+        encoder.setNonSynchronizingLiterals(NonSynchronizingLiterals.LITERAL_MINUS);
+        final AppendCommand appendCommand = new AppendCommand("trash", null, null, 4097);
+
+        channel.writeOutbound(new ImapRequest() {
+            @Override
+            public ImapCommand getCommand() {
+                return appendCommand;
+            }
+
+            @Override
+            public String getTag() {
+                return "A001";
+            }
+        });
+
+        assertEquals(Unpooled.wrappedBuffer("A001 APPEND trash {4097}\r\n".getBytes(Charsets.US_ASCII)),
+                (ByteBuf) readFromChannel());
+        expectContinuationBarrier("A001", 4099);
+    }
+
 }
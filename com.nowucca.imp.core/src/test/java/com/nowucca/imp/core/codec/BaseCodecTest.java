@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCounted;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+
+/**
+ */
+public class BaseCodecTest {
+
+    EmbeddedChannel channel;
+
+    // what the channel handed the test, which the test owns
+    private final List<Object> held = new ArrayList<>();
+
+    @After
+    public void releaseHeld() throws Exception {
+        if (channel != null) {
+            channel.finish();
+            for (Object msg = channel.readInbound(); msg != null; msg = channel.readInbound()) {
+                held.add(msg);
+            }
+            for (Object msg = channel.readOutbound(); msg != null; msg = channel.readOutbound()) {
+                held.add(msg);
+            }
+        }
+        for (Object msg : held) {
+            // unless the test released it already
+            if (msg instanceof ReferenceCounted && ((ReferenceCounted) msg).refCnt() > 0) {
+                ((ReferenceCounted) msg).release();
+            }
+        }
+    }
+
+    /**
+     * Keeps a message for release once the test is over.
+     */
+    protected <T> T hold(T msg) {
+        held.add(msg);
+        return msg;
+    }
+
+    protected static ByteBuf ascii(String value) {
+        return Unpooled.wrappedBuffer(value.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    protected static String ascii(ByteBuf buffer) {
+        return buffer.toString(StandardCharsets.US_ASCII);
+    }
+}
@@ -10,7 +10,6 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.handler.codec.DecoderResult;
-import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import static io.netty.buffer.Unpooled.directBuffer;
@@ -23,21 +22,15 @@ import static org.junit.Assert.assertThat;
 
 /**
  */
-public class BaseDecoderTest {
+public class BaseDecoderTest extends BaseCodecTest {
 
     ImapRequestDecoder decoder;
-    EmbeddedChannel channel;
 
     @Before
     public void setUp() throws Exception {
         channel = new EmbeddedChannel(decoder = new ImapRequestDecoder());
     }
 
-    @After
-    public void tearDown() throws Exception {
-        channel.finish();
-    }
-
     protected void assertByteBufsEqual(ByteBuf expected, ByteBuf buffer) {
         Assert.assertTrue(format("Expected bytes '%s'\nreceived:\n               '%s'",
                         ByteBufUtil.hexDump(expected), ByteBufUtil.hexDump(buffer)),
@@ -53,13 +46,14 @@ public class BaseDecoderTest {
     protected ImapRequest expectSuccessfulRequest(String tag, String commandName) {
         final ImapRequest imapRequest = (ImapRequest) channel.readInbound();
         assertNotNull(imapRequest);
-        assertEquals(tag, imapRequest.getTag());
+        hold(imapRequest);
+        assertEquals(tag, imapRequest.getTag().toString());
         assertNotNull(imapRequest.getCommand());
         assertEquals(commandName.toUpperCase(), imapRequest.getCommand().getCommandName());
         return imapRequest;
     }
 
-    protected void expectInvalidRequest(Class<?> exceptionClass) {
+    protected InvalidImapRequest expectInvalidRequest(Class<?> exceptionClass) {
         final ImapRequest imapRequest = (ImapRequest) channel.readInbound();
         assertNotNull(imapRequest);
         assertThat(imapRequest, instanceOf(InvalidImapRequest.class));
@@ -67,5 +61,6 @@ public class BaseDecoderTest {
         final DecoderResult result = invalidRequest.getDecoderResult();
         assertThat(result, notNullValue());
         assertThat(result.cause(), instanceOf(exceptionClass));
+        return invalidRequest;
     }
 }
@@ -6,28 +6,24 @@ package com.nowucca.imp.core.codec;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.embedded.EmbeddedChannel;
-import org.junit.After;
 import org.junit.Before;
 import static java.lang.String.format;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 /**
  */
-public class BaseEncoderTest {
+public class BaseEncoderTest extends BaseCodecTest {
 
     ImapRequestEncoder encoder;
-    EmbeddedChannel channel;
 
     @Before
     public void setUp() throws Exception {
         channel = new EmbeddedChannel(encoder = new ImapRequestEncoder());
     }
 
-    @After
-    public void tearDown() throws Exception { channel.finish(); }
-
     protected Object readFromChannel() {
-        return channel.readOutbound();
+        return hold(channel.readOutbound());
     }
 
     protected void assertEquals(ByteBuf expected, ByteBuf actual) {
@@ -35,4 +31,21 @@ public class BaseEncoderTest {
                         ByteBufUtil.hexDump(expected), ByteBufUtil.hexDump(actual)),
                 ByteBufUtil.equals(expected, actual));
     }
+
+    /**
+     * Reads an encoded request, which must have been written to a buffer allocated at exactly its size.
+     */
+    protected ByteBuf readExactlySizedBuffer() {
+        final ByteBuf buffer = (ByteBuf) readFromChannel();
+        assertNotNull(buffer);
+        org.junit.Assert.assertEquals(buffer.writerIndex(), buffer.capacity());
+        return buffer;
+    }
+
+    protected void expectContinuationBarrier(String tag, long remainingBytes) {
+        final ContinuationBarrier barrier = (ContinuationBarrier) readFromChannel();
+        assertNotNull(barrier);
+        org.junit.Assert.assertEquals(tag, barrier.getTag());
+        org.junit.Assert.assertEquals(remainingBytes, barrier.getRemainingBytes());
+    }
 }
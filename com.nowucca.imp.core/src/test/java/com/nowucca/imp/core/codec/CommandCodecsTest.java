@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.command.DecodedImapRequest;
+import com.nowucca.imp.core.message.command.ImapCommand;
+import com.nowucca.imp.core.message.command.NoopCommand;
+import com.nowucca.imp.util.UTF8;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class CommandCodecsTest extends BaseDecoderTest {
+
+    /**
+     * Reads and writes NOOP under another name.
+     */
+    private static final CommandCodec<NoopCommand> CHECK = new CommandCodec<NoopCommand>() {
+        @Override
+        public ImapCommand.Kind getKind() {
+            return ImapCommand.Kind.NOOP;
+        }
+
+        @Override
+        public String getCommandName() {
+            return "CHECK";
+        }
+
+        @Override
+        public boolean hasArguments() {
+            return false;
+        }
+
+        @Override
+        public NoopCommand decodeArguments(ArgumentDecoder decoder, ByteBuf in) {
+            return NoopCommand.INSTANCE;
+        }
+
+        @Override
+        public int argumentsLength(NoopCommand command, ArgumentEncoder encoder) {
+            return 0;
+        }
+
+        @Override
+        public void encodeArguments(NoopCommand command, ArgumentEncoder encoder, ByteBuf out) {
+        }
+    };
+
+    @Test
+    public void shouldHoldACodecForEverySupportedKind() throws Exception {
+        final CommandCodecs codecs = CommandCodecs.standard();
+        for (ImapCommand.Kind kind : ImapCommand.Kind.values()) {
+            if (kind == ImapCommand.Kind.INVALID) {
+                assertNull(codecs.get(kind));
+            } else {
+                assertSame(kind, codecs.get(kind).getKind());
+                assertEquals(kind.name(), codecs.get(kind).getCommandName());
+            }
+        }
+    }
+
+    @Test
+    public void shouldNotRecognizeCommandWithoutCodec() throws Exception {
+        useCodecs(new CommandCodecs().register(NoArgumentCommandCodec.NOOP));
+        writeToChannel("A001 LOGIN user password\r\nA002 NOOP\r\n");
+        expectInvalidRequest(IllegalArgumentException.class);
+        expectSuccessfulRequest("A002", "NOOP");
+    }
+
+    @Test
+    public void shouldDecodeAndEncodeWithRegisteredCodec() throws Exception {
+        final CommandCodecs codecs = CommandCodecs.standard().register(CHECK);
+        useCodecs(codecs);
+        writeToChannel("A001 check\r\nA002 NOOP\r\n");
+        assertSame(ImapCommand.Kind.NOOP, expectSuccessfulRequest("A001", "NOOP").getCommand().getKind());
+        expectInvalidRequest(IllegalArgumentException.class);
+
+        final EmbeddedChannel encoding = new EmbeddedChannel(
+                new ImapRequestEncoder(NonSynchronizingLiterals.NONE, codecs));
+        encoding.writeOutbound(DecodedImapRequest.newInstance("A003", NoopCommand.INSTANCE));
+        final ByteBuf encoded = (ByteBuf) encoding.readOutbound();
+        assertByteBufsEqual(Unpooled.copiedBuffer("A003 CHECK\r\n", UTF8.charset()), encoded);
+        encoded.release();
+        encoding.finish();
+    }
+
+    private void useCodecs(CommandCodecs codecs) {
+        channel.finish();
+        decoder = new ImapRequestDecoder();
+        decoder.setCommandCodecs(codecs);
+        channel = new EmbeddedChannel(decoder);
+    }
+}
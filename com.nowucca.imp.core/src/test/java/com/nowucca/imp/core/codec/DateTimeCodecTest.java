@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.ImapDateTime;
+import com.nowucca.imp.core.message.command.DecodeError;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class DateTimeCodecTest {
+
+    private static final DateTimeFormatter RFC_3501_DATE_TIME =
+            DateTimeFormatter.ofPattern("\"dd-MMM-yyyy HH:mm:ss xxxx\"", Locale.US);
+
+    @Test
+    public void shouldDecodeDateTimeInItsOwnOffset() throws Exception {
+        final long dateTime = decode("\"11-MAY-1972 01:50:01 +0800\"");
+        assertEquals(ZonedDateTime.of(1972, 5, 11, 1, 50, 1, 0, ZoneOffset.ofHours(8)),
+                ImapDateTime.toZonedDateTime(dateTime));
+        assertEquals(8 * 60, ImapDateTime.offsetMinutes(dateTime));
+    }
+
+    @Test
+    public void shouldDecodeSpacePaddedDayAndNegativeOffset() throws Exception {
+        assertEquals(ZonedDateTime.of(2000, 2, 9, 23, 59, 59, 0, ZoneOffset.ofHoursMinutes(-3, -30)),
+                ImapDateTime.toZonedDateTime(decode("\" 9-Feb-2000 23:59:59 -0330\"")));
+    }
+
+    @Test
+    public void shouldDecodeLeapDay() throws Exception {
+        assertEquals(ZonedDateTime.of(2000, 2, 29, 0, 0, 0, 0, ZoneOffset.UTC),
+                ImapDateTime.toZonedDateTime(decode("\"29-Feb-2000 00:00:00 +0000\"")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectDayBeyondEndOfMonth() throws Exception {
+        decode("\"29-Feb-1900 00:00:00 +0000\"");
+    }
+
+    @Test
+    public void shouldRejectZoneBeyondZoneOffset() throws Exception {
+        final long farthest = decode("\"01-Jan-2000 00:00:00 -1800\"");
+        assertEquals(ZoneOffset.ofHours(-18), ImapDateTime.toZonedDateTime(farthest).getOffset());
+        for (String zone : new String[] {"+1900", "-1801", "+0060", "-0099"}) {
+            try {
+                decode("\"17-Jul-1996 02:44:25 " + zone + "\"");
+                fail("Expected zone " + zone + " to be rejected");
+            } catch (IllegalArgumentException e) {
+                assertSame(DecodeError.INVALID_DATE_TIME.exception(), e);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMissingSeparator() throws Exception {
+        decode("\"11-May-1972 01:50:01/+0800\"");
+    }
+
+    @Test
+    public void shouldRoundTripAgreeingWithJavaTime() throws Exception {
+        final DateTimeCodec codec = new DateTimeCodec();
+        final int[] offsets = {0, 60, -300, 330, 545, -720, 840};
+        ZonedDateTime expected = ZonedDateTime.of(1899, 12, 31, 23, 0, 0, 0, ZoneOffset.UTC);
+        for (int i = 0; i < 2000; i++) {
+            final ZoneOffset offset = ZoneOffset.ofTotalSeconds(offsets[i % offsets.length] * 60);
+            final ZonedDateTime dateTime = expected.withZoneSameInstant(offset);
+            final String formatted = dateTime.format(RFC_3501_DATE_TIME);
+
+            final ByteBuf out = Unpooled.buffer();
+            codec.encode(ImapDateTime.valueOf(dateTime), out);
+            assertEquals(formatted, out.toString(StandardCharsets.US_ASCII));
+            assertEquals(ImapDateTime.valueOf(dateTime), decode(formatted));
+
+            // about a month and a bit, so every month, day and time of day comes up
+            expected = expected.plusSeconds(3155693L + i * 7919L);
+        }
+    }
+
+    @Test
+    public void shouldEncodeFromCacheRepeatedly() throws Exception {
+        final DateTimeCodec codec = new DateTimeCodec();
+        final long first = decode("\"01-Jan-2015 10:00:00 +0000\"");
+        final long second = decode("\"01-Jan-2015 10:00:01 +0000\"");
+        final ByteBuf out = Unpooled.buffer();
+        codec.encode(first, out);
+        codec.encode(second, out);
+        codec.encode(first, out);
+        assertEquals("\"01-Jan-2015 10:00:00 +0000\"\"01-Jan-2015 10:00:01 +0000\"\"01-Jan-2015 10:00:00 +0000\"",
+                out.toString(StandardCharsets.US_ASCII));
+    }
+
+    private static long decode(String dateTime) {
+        return DateTimeCodec.decode(Unpooled.copiedBuffer(dateTime, StandardCharsets.US_ASCII), 0);
+    }
+}
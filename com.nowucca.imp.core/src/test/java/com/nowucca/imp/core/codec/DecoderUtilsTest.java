@@ -25,4 +25,43 @@ public class DecoderUtilsTest {
         assertEquals("aGVsbG8=", base64Encoded.toString());
         assertEquals("hello", new String(Base64.getDecoder().decode(base64Encoded.toString())));
     }
+
+    @Test
+    public void shouldFindAtomEndAtEveryOffset() throws Exception {
+        for (int offset = 0; offset < 20; offset++) {
+            final ByteBuf in = Unpooled.buffer();
+            for (int i = 0; i < offset; i++) {
+                in.writeByte('a');
+            }
+            in.writeBytes("+(bbbbbbbbbbbbbbbb".getBytes(UTF8.charset()));
+            assertEquals(offset + 1, DecoderUtils.indexOfAtomEnd(in, 0, in.writerIndex(), false));
+            assertEquals(offset, DecoderUtils.indexOfAtomEnd(in, 0, in.writerIndex(), true));
+        }
+    }
+
+    @Test
+    public void shouldScanWordsConsistentlyWithCharacterClasses() throws Exception {
+        for (int b = 0; b < 256; b++) {
+            final ByteBuf in = Unpooled.buffer();
+            in.writeBytes("abcdefg".getBytes(UTF8.charset()));
+            in.writeByte(b);
+            final int expectedAtomEnd = DecoderUtils.is((byte) b, DecoderUtils.ASTRING_CHAR) ? -1 : 7;
+            assertEquals(expectedAtomEnd, DecoderUtils.indexOfAtomEnd(in, 0, 8, false));
+            final int expectedTagEnd = DecoderUtils.is((byte) b, DecoderUtils.TAG_CHAR) ? -1 : 7;
+            assertEquals(expectedTagEnd, DecoderUtils.indexOfAtomEnd(in, 0, 8, true));
+            final int expectedNonChar8 = DecoderUtils.is((byte) b, DecoderUtils.CHAR8) ? -1 : 7;
+            assertEquals(expectedNonChar8, DecoderUtils.indexOfNonChar8(in, 0, 8));
+        }
+    }
+
+    @Test
+    public void shouldFindNulAtEveryOffset() throws Exception {
+        for (int offset = 0; offset < 20; offset++) {
+            final ByteBuf in = Unpooled.buffer();
+            for (int i = 0; i < 20; i++) {
+                in.writeByte(i == offset ? 0 : 0xff);
+            }
+            assertEquals(offset, DecoderUtils.indexOfNonChar8(in, 0, in.writerIndex()));
+        }
+    }
 }
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.FetchAttributes;
+import com.nowucca.imp.core.message.command.FetchCommand;
+import com.nowucca.imp.core.message.command.ImapCommand;
+import io.netty.handler.codec.TooLongFrameException;
+import org.junit.Test;
+import static com.nowucca.imp.core.message.FetchAttributes.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FetchCommandDecoderTest extends BaseDecoderTest {
+
+    @Test
+    public void shouldDecodeMacro() throws Exception {
+        writeToChannel("A001 FETCH 1:* fast\r\nA002 FETCH 2 ALL\r\nA003 FETCH 3 FULL\r\n");
+        assertSame(FetchAttributes.valueOf(FAST), expectFetch("A001", "FETCH").getAttributes());
+        assertSame(FetchAttributes.valueOf(ALL), expectFetch("A002", "FETCH").getAttributes());
+        assertSame(FetchAttributes.valueOf(FULL), expectFetch("A003", "FETCH").getAttributes());
+    }
+
+    @Test
+    public void shouldDecodeSimpleAttributes() throws Exception {
+        writeToChannel("A001 FETCH 1:5,7 (FLAGS UID rfc822.size BODYSTRUCTURE ENVELOPE)\r\n");
+        final FetchCommand command = expectFetch("A001", "FETCH");
+        assertFalse(command.isUid());
+        assertEquals("1:5,7", command.getSequenceSet().toString());
+        final FetchAttributes attributes = command.getAttributes();
+        assertSame(FetchAttributes.valueOf(FLAGS | UID | RFC822_SIZE | BODYSTRUCTURE | ENVELOPE), attributes);
+        assertTrue(attributes.isMetadataOnly());
+        assertFalse(attributes.setsSeen());
+    }
+
+    @Test
+    public void shouldDecodeSingleAttribute() throws Exception {
+        writeToChannel("A001 FETCH * RFC822\r\n");
+        final FetchAttributes attributes = expectFetch("A001", "FETCH").getAttributes();
+        assertEquals(RFC822, attributes.getAttributes());
+        assertTrue(attributes.setsSeen());
+    }
+
+    @Test
+    public void shouldDecodeBodySections() throws Exception {
+        writeToChannel("A001 UID FETCH 100:200 (UID BODY.PEEK[HEADER.FIELDS (From \"Subject\")] BODY[1.2.MIME]"
+                + " body[]<0.2048> BODY.PEEK[3])\r\n");
+        final FetchCommand command = expectFetch("A001", "UID FETCH");
+        assertTrue(command.isUid());
+        assertSame(ImapCommand.Kind.UID, command.getKind());
+        final FetchAttributes attributes = command.getAttributes();
+        assertEquals(UID, attributes.getAttributes());
+        assertEquals(4, attributes.getSectionCount());
+
+        assertEquals(SECTION_HEADER_FIELDS | SECTION_PEEK, attributes.getSectionFlags(0));
+        assertEquals("HEADER.FIELDS (From \"Subject\")", attributes.getSectionSpec(0).toString());
+
+        assertEquals(SECTION_MIME | SECTION_PART, attributes.getSectionFlags(1));
+        assertEquals("1.2.MIME", attributes.getSectionSpec(1).toString());
+
+        assertEquals(SECTION_WHOLE | SECTION_PARTIAL, attributes.getSectionFlags(2));
+        assertEquals("", attributes.getSectionSpec(2).toString());
+        assertEquals(0, attributes.getPartialOffset(2));
+        assertEquals(2048, attributes.getPartialLength(2));
+
+        assertEquals(SECTION_WHOLE | SECTION_PART | SECTION_PEEK, attributes.getSectionFlags(3));
+        assertEquals("3", attributes.getSectionSpec(3).toString());
+
+        assertTrue(attributes.setsSeen());
+        assertFalse(attributes.isMetadataOnly());
+    }
+
+    @Test
+    public void shouldDecodeFragmentedCommand() throws Exception {
+        writeToChannel("A001 UID FE");
+        writeToChannel("TCH 1:");
+        writeToChannel("4 (FLAGS BODY.PEEK[HEA");
+        assertNull(channel.readInbound());
+        writeToChannel("DER])\r\n");
+        final FetchAttributes attributes = expectFetch("A001", "UID FETCH").getAttributes();
+        assertEquals(FLAGS, attributes.getAttributes());
+        assertEquals(SECTION_HEADER | SECTION_PEEK, attributes.getSectionFlags(0));
+        assertFalse(attributes.setsSeen());
+    }
+
+    @Test
+    public void shouldRejectInvalidAttributes() throws Exception {
+        writeToChannel("A001 FETCH 1 (FLAGS\r\n"
+                + "A002 FETCH 1 BODY.PEEK\r\n"
+                + "A003 FETCH 1 (ALL)\r\n"
+                + "A004 FETCH 1 BODY[MIME]\r\n"
+                + "A005 FETCH 1 BODY[1.]\r\n"
+                + "A006 FETCH 1 BODY[HEADER.FIELDS ()]\r\n"
+                + "A007 FETCH 1 BODY[]<1.0>\r\n"
+                + "A008 FETCH 0 FLAGS\r\n"
+                + "A009 FETCH 1 ()\r\n"
+                + "A010 NOOP\r\n");
+        for (int i = 1; i <= 9; i++) {
+            assertEquals("A00" + i, expectInvalidRequest(IllegalArgumentException.class).getTag().toString());
+        }
+        expectSuccessfulRequest("A010", "NOOP");
+    }
+
+    @Test
+    public void shouldNotSupportOtherUidCommands() throws Exception {
+        writeToChannel("A001 UID STORE 1 +FLAGS (\\Seen)\r\nA002 UID FETCHX 1 FLAGS\r\n");
+        expectInvalidRequest(UnsupportedOperationException.class);
+        expectInvalidRequest(UnsupportedOperationException.class);
+    }
+
+    @Test
+    public void shouldLimitAttributesLength() throws Exception {
+        final StringBuilder request = new StringBuilder("A001 FETCH 1 (FLAGS");
+        while (request.length() < ImapCodecConstants.DEFAULT_MAXIMUM_SIZE + 20) {
+            request.append(" UID");
+        }
+        writeToChannel(request.toString());
+        expectInvalidRequest(TooLongFrameException.class);
+    }
+
+    private FetchCommand expectFetch(String tag, String commandName) {
+        return (FetchCommand) expectSuccessfulRequest(tag, commandName).getCommand();
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.FetchAttributes;
+import com.nowucca.imp.core.message.SequenceSet;
+import com.nowucca.imp.core.message.command.DecodedImapRequest;
+import com.nowucca.imp.core.message.command.FetchCommand;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.AsciiString;
+import org.junit.Test;
+import static com.nowucca.imp.core.message.FetchAttributes.*;
+
+/**
+ */
+public class FetchCommandEncoderTest extends BaseEncoderTest {
+
+    @Test
+    public void shouldEncodeMacro() throws Exception {
+        writeFetch(false, SequenceSet.range(1, SequenceSet.STAR), FetchAttributes.valueOf(FAST));
+        assertEquals(ascii("A001 FETCH 1:* FAST\r\n"), readExactlySizedBuffer());
+    }
+
+    @Test
+    public void shouldEncodeSingleAttributeWithoutParentheses() throws Exception {
+        writeFetch(true, SequenceSet.of(3, 1, 2, 7), FetchAttributes.valueOf(FLAGS));
+        assertEquals(ascii("A001 UID FETCH 1:3,7 FLAGS\r\n"), readExactlySizedBuffer());
+    }
+
+    @Test
+    public void shouldEncodeSections() throws Exception {
+        final FetchAttributes attributes = new FetchAttributes(UID | RFC822_SIZE,
+                new AsciiString("HEADER.FIELDS (From)1.TEXT"),
+                SECTION_HEADER_FIELDS | SECTION_PEEK, 0, 20, 0, 0,
+                SECTION_TEXT | SECTION_PART | SECTION_PARTIAL, 20, 26, 100, 4096);
+        writeFetch(false, SequenceSet.of(5), attributes);
+        assertEquals(ascii("A001 FETCH 5 (RFC822.SIZE UID BODY.PEEK[HEADER.FIELDS (From)] BODY[1.TEXT]<100.4096>)"
+                + "\r\n"), readExactlySizedBuffer());
+    }
+
+    @Test
+    public void shouldEncodeWhatWasDecoded() throws Exception {
+        final String request = "A001 UID FETCH 1,3:* (FLAGS BODY.PEEK[1.2.HEADER.FIELDS.NOT (\"X-Spam\" Received)]"
+                + " BODY[]<0.1024> BODY[2])\r\n";
+        final EmbeddedChannel decoding = new EmbeddedChannel(new ImapRequestDecoder());
+        decoding.writeInbound(ascii(request));
+        final DecodedImapRequest decoded = decoding.readInbound();
+        channel.writeOutbound(decoded);
+        assertEquals(ascii(request), readExactlySizedBuffer());
+        decoding.finish();
+    }
+
+    private void writeFetch(boolean uid, SequenceSet sequenceSet, FetchAttributes attributes) {
+        channel.writeOutbound(DecodedImapRequest.newInstance(new AsciiString("A001"),
+                FetchCommand.newInstance(uid, sequenceSet, attributes)));
+    }
+}
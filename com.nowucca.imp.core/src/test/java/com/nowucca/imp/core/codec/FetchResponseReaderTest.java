@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.FetchAttributes;
+import com.nowucca.imp.core.message.ImapDateTime;
+import com.nowucca.imp.core.message.ImapFlags;
+import com.nowucca.imp.core.message.KeywordDictionary;
+import com.nowucca.imp.core.message.response.DecodedImapResponse;
+import com.nowucca.imp.core.message.response.ImapResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.time.ZonedDateTime;
+import org.apache.logging.log4j.core.util.Charsets;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FetchResponseReaderTest extends BaseCodecTest {
+
+    private final FetchResponseReader reader = new FetchResponseReader();
+
+    private DecodedImapResponse response;
+
+    @After
+    public void tearDown() throws Exception {
+        if (response != null) {
+            response.release();
+        }
+    }
+
+    @Test
+    public void shouldIndexAttributesWithoutParsingThem() throws Exception {
+        final String envelope = "(\"Wed, 17 Jul 1996 02:23:25 -0700 (PDT)\" \"IMAP4rev1 WG mtg summary\" "
+                + "((\"Terry Gray\" NIL \"gray\" \"cac.washington.edu\")) NIL NIL NIL NIL NIL "
+                + "\"<B27397-0100000@cac.washington.edu>\")";
+        final String bodyStructure = "(\"TEXT\" \"PLAIN\" (\"CHARSET\" \"US-ASCII\") NIL NIL \"7BIT\" 3028 92)";
+        read("* 12 FETCH (UID 4827313 ENVELOPE " + envelope + " BODYSTRUCTURE " + bodyStructure
+                + " X-GM-LABELS (\\Inbox \"a \\\"label\\\"\"))\r\n", true);
+
+        assertEquals(4, reader.getAttributeCount());
+        assertTrue(reader.has(FetchAttributes.UID | FetchAttributes.ENVELOPE | FetchAttributes.BODYSTRUCTURE));
+        assertFalse(reader.has(FetchAttributes.FLAGS));
+        assertEquals(FetchAttributes.ENVELOPE, reader.getAttribute(1));
+        assertEquals(envelope, ascii(reader.getValue(1)));
+        assertEquals("BODYSTRUCTURE", ascii(reader.getName(2)));
+        assertEquals(bodyStructure, ascii(reader.getValue(2)));
+        assertEquals(0, reader.getAttribute(3));
+        assertEquals("X-GM-LABELS", ascii(reader.getName(3)));
+        assertEquals("(\\Inbox \"a \\\"label\\\"\")", ascii(reader.getValue(3)));
+        assertEquals(4827313, reader.getUid());
+        assertEquals(-1, reader.getRfc822Size());
+        assertNull(reader.getFlags());
+        assertEquals(ImapDateTime.NONE, reader.getInternalDate());
+    }
+
+    @Test
+    public void shouldStepOverLiteralsAndSections() throws Exception {
+        final String header = "Subject: (not a list\r\n\r\n";
+        read("* 3 FETCH (BODY[HEADER.FIELDS (SUBJECT \"X-]\")]<0> {" + header.length() + "}\r\n" + header
+                + " RFC822.SIZE 44827 BODY (\"TEXT\" \"PLAIN\" NIL NIL NIL \"7BIT\" {3}\r\n)\") 2))\r\n", true);
+
+        assertEquals(3, reader.getAttributeCount());
+        assertEquals(0, reader.getAttribute(0));
+        assertEquals("BODY[HEADER.FIELDS (SUBJECT \"X-]\")]<0>", ascii(reader.getName(0)));
+        assertEquals("{" + header.length() + "}\r\n" + header, ascii(reader.getValue(0)));
+        assertEquals(FetchAttributes.BODY, reader.getAttribute(2));
+        assertEquals(2, reader.indexOf(FetchAttributes.BODY));
+        assertEquals(44827, reader.getRfc822Size());
+    }
+
+    @Test
+    public void shouldParseFlagsAndInternalDateOnDemand() throws Exception {
+        read("* 1 FETCH (FLAGS (\\Seen \\Recent $Forwarded \\Seen $forwarded) "
+                + "INTERNALDATE \"17-Jul-1996 02:44:25 -0700\")\r\n", true);
+
+        final ImapFlags flags = reader.getFlags();
+        assertTrue(flags.contains(ImapFlags.SEEN | ImapFlags.RECENT));
+        assertEquals(1, flags.getKeywordCount());
+        assertEquals("$Forwarded", flags.getKeyword(0).toString());
+        assertSame(flags, reader.getFlags());
+
+        final long internalDate = reader.getInternalDate();
+        assertEquals(ZonedDateTime.parse("1996-07-17T02:44:25-07:00").toEpochSecond(),
+                ImapDateTime.epochSecond(internalDate));
+        assertEquals(-7 * 60, ImapDateTime.offsetMinutes(internalDate));
+    }
+
+    @Test
+    public void shouldKeepKeywordsBeyondFullDictionary() throws Exception {
+        final KeywordDictionary dictionary = new KeywordDictionary(1);
+        final FetchResponseReader full = new FetchResponseReader(dictionary);
+        read("* 1 FETCH (FLAGS ($Forwarded \\Seen $Junk Work $junk))\r\n", true);
+        full.read(response);
+
+        final ImapFlags flags = full.getFlags();
+        assertEquals(1, dictionary.size());
+        assertTrue(flags.contains(ImapFlags.SEEN));
+        assertEquals(3, flags.getKeywordCount());
+        assertEquals("$Forwarded", flags.getKeyword(0).toString());
+        assertEquals(KeywordDictionary.NOT_INTERNED, flags.getKeywordId(1));
+        assertEquals("$Junk", flags.getKeyword(1).toString());
+        assertEquals("Work", flags.getKeyword(2).toString());
+        assertTrue(flags.containsKeyword("work"));
+
+        read("* 2 FETCH (FLAGS (work $forwarded $JUNK \\Seen))\r\n", true);
+        full.read(response);
+        assertEquals(flags, full.getFlags());
+        assertEquals(flags.hashCode(), full.getFlags().hashCode());
+    }
+
+    @Test
+    public void shouldShareSystemOnlyFlags() throws Exception {
+        read("* 1 FETCH (FLAGS ())\r\n", true);
+        assertSame(ImapFlags.NONE, reader.getFlags());
+        read("* 2 FETCH (FLAGS (\\Deleted \\Flagged))\r\n", true);
+        assertSame(ImapFlags.valueOf(ImapFlags.DELETED | ImapFlags.FLAGGED), reader.getFlags());
+    }
+
+    @Test
+    public void shouldReadAsFarAsStreamedLiteral() throws Exception {
+        read("* 9 FETCH (UID 21 BODY[] {52000}\r\n", false);
+
+        assertEquals(2, reader.getAttributeCount());
+        assertEquals(21, reader.getUid());
+        assertFalse(reader.isStreamed(0));
+        assertTrue(reader.isStreamed(1));
+        assertEquals("BODY[]", ascii(reader.getName(1)));
+        assertEquals("{52000}\r\n", ascii(reader.getValue(1)));
+    }
+
+    @Test
+    public void shouldRejectMalformedAttributes() throws Exception {
+        for (String fetch : new String[] {
+            "* 1 FETCH UID 1\r\n", "* 1 FETCH (UID 1\r\n", "* 1 FETCH (UID)\r\n", "* 1 FETCH (UID 1 )\r\n",
+            "* 1 FETCH (BODY[] {10}\r\nshort)\r\n", "* 1 FETCH (ENVELOPE (\"unterminated))\r\n",
+            "* 1 FETCH (FLAGS (\\Seen) UID 1))\r\n"
+        }) {
+            try {
+                read(fetch, true);
+                fail("Expected " + fetch + " to be rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void shouldRejectMalformedValueOnlyWhenParsed() throws Exception {
+        read("* 1 FETCH (UID 12x RFC822.SIZE 7)\r\n", true);
+        assertEquals(7, reader.getRfc822Size());
+        try {
+            reader.getUid();
+            fail("Expected an invalid UID to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldOnlyReadFetchResponses() throws Exception {
+        response = DecodedImapResponse.newInstance(ImapResponse.Type.UNTAGGED, null, null, 3, "EXISTS",
+                Unpooled.copiedBuffer("* 3 EXISTS\r\n", Charsets.US_ASCII), 11, true);
+        reader.read(response);
+    }
+
+    private void read(String fetch, boolean complete) {
+        if (response != null) {
+            response.release();
+        }
+        final ByteBuf raw = Unpooled.copiedBuffer(fetch, Charsets.US_ASCII);
+        response = DecodedImapResponse.newInstance(ImapResponse.Type.UNTAGGED, null, null, 1, "FETCH", raw,
+                fetch.indexOf("FETCH") + 6, complete);
+        reader.read(response);
+    }
+}
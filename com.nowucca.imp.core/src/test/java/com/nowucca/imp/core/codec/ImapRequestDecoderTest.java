@@ -3,8 +3,20 @@
  */
 package com.nowucca.imp.core.codec;
 
+import com.nowucca.imp.core.message.command.DecodeError;
+import com.nowucca.imp.core.message.command.DecodedImapRequest;
+import com.nowucca.imp.core.message.command.ImapRequest;
+import com.nowucca.imp.core.message.command.InvalidImapRequest;
+import com.nowucca.imp.util.UTF8;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.handler.codec.TooLongFrameException;
 import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 public class ImapRequestDecoderTest extends BaseDecoderTest {
 
@@ -38,5 +50,139 @@ public class ImapRequestDecoderTest extends BaseDecoderTest {
         expectInvalidRequest(IllegalArgumentException.class);
     }
 
+    @Test
+    public void shouldShareOneStacklessExceptionPerError() throws Exception {
+        writeToChannel("A006 NOOPZZ");
+        final InvalidImapRequest first = (InvalidImapRequest) channel.readInbound();
+        final EmbeddedChannel other = new EmbeddedChannel(new ImapRequestDecoder());
+        other.writeInbound(Unpooled.copiedBuffer("A007 NOOP!!", UTF8.charset()));
+        final InvalidImapRequest second = (InvalidImapRequest) other.readInbound();
+        other.finish();
+
+        assertSame(DecodeError.EXPECTED_CRLF, first.getError());
+        assertSame(DecodeError.EXPECTED_CRLF, second.getError());
+        assertSame(first.getDecoderResult().cause(), second.getDecoderResult().cause());
+        assertEquals(0, first.getDecoderResult().cause().getStackTrace().length);
+        assertEquals("Expected CRLF: Z", first.getErrorMessage());
+        assertEquals("Expected CRLF: !", second.getErrorMessage());
+    }
+
+    @Test
+    public void shouldCarryOnWithTheNextRequestAfterAnInvalidOne() throws Exception {
+        writeToChannel("A006 NOOPZZ\r\nA007 NOOP\r\n");
+        assertEquals("A006", expectInvalidRequest(IllegalArgumentException.class).getTag().toString());
+        expectSuccessfulRequest("A007", "NOOP");
+        assertNull(channel.readInbound());
+    }
+
+    @Test
+    public void shouldSkipNonSynchronizingLiteralOfInvalidRequest() throws Exception {
+        writeToChannel("A001 BOGUS {11+}\r\nA002 N");
+        writeToChannel("OOP\r\n\r\nA003 NOOP\r\n");
+        assertEquals("A001", expectInvalidRequest(IllegalArgumentException.class).getTag().toString());
+        expectSuccessfulRequest("A003", "NOOP");
+        assertNull(channel.readInbound());
+    }
+
+    @Test
+    public void shouldNotExpectSynchronizingLiteralOfInvalidRequest() throws Exception {
+        writeToChannel("A001 BOGUS {5}\r\nA002 NOOP\r\n");
+        assertEquals("A001", expectInvalidRequest(IllegalArgumentException.class).getTag().toString());
+        expectSuccessfulRequest("A002", "NOOP");
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void shouldSkipRestOfLiteralWithInvalidBytes() throws Exception {
+        writeToChannel("A001 LOGIN {6}\r\nUS\u0000");
+        assertEquals("A001", expectInvalidRequest(IllegalArgumentException.class).getTag().toString());
+        writeToChannel("ER PASSWORD\r\nA002 NOOP\r\n");
+        expectSuccessfulRequest("A002", "NOOP");
+        assertNull(channel.readInbound());
+    }
+
+    @Test
+    public void shouldParseFragmentedTag() throws Exception {
+        writeToChannel("A0");
+        writeToChannel("06 NOOP\r\n");
+        expectSuccessfulRequest("A006", "NOOP");
+    }
+
+    @Test
+    public void shouldParsePipelinedRequestsInOneBuffer() throws Exception {
+        writeToChannel("A001 NOOP\r\nA002 CAPABILITY\r\nA003 LOGOUT\r\n");
+        expectSuccessfulRequest("A001", "NOOP");
+        expectSuccessfulRequest("A002", "CAPABILITY");
+        expectSuccessfulRequest("A003", "LOGOUT");
+        assertNull(channel.readInbound());
+    }
 
+    @Test
+    public void shouldSendOneContinuationPerLiteralWhenReadOneByteAtATime() throws Exception {
+        for (char c : "A001 LOGIN {6}\r\nUSERID PASSWORD\r\n".toCharArray()) {
+            writeToChannel(String.valueOf(c));
+        }
+        final ImapRequest request = expectSuccessfulRequest("A001", "LOGIN");
+        assertEquals("USERID", request.getCommand().getArguments().get(0).toString());
+        assertEquals("PASSWORD", request.getCommand().getArguments().get(1).toString());
+
+        final ByteBuf expected = Unpooled.wrappedBuffer(DecoderUtils.CONTINUATION_BYTES);
+        assertByteBufsEqual(expected, (ByteBuf) channel.readOutbound());
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void shouldNotSendContinuationForNonSynchronizingLiterals() throws Exception {
+        writeToChannel("A001 LOGIN {6");
+        writeToChannel("+}\r\nUSERID {8+}\r\nPASSWORD\r\n");
+        final ImapRequest request = expectSuccessfulRequest("A001", "LOGIN");
+        assertEquals("USERID", request.getCommand().getArguments().get(0).toString());
+        assertEquals("PASSWORD", request.getCommand().getArguments().get(1).toString());
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void shouldParseCommandNameInAnyCase() throws Exception {
+        writeToChannel("A001 nOoP\r\nA002 capability\r\nA003 LoGoUt\r\n");
+        expectSuccessfulRequest("A001", "NOOP");
+        expectSuccessfulRequest("A002", "CAPABILITY");
+        expectSuccessfulRequest("A003", "LOGOUT");
+    }
+
+    @Test
+    public void shouldParseCommandNameFragmentedAtSharedPrefix() throws Exception {
+        writeToChannel("A001 LOG");
+        assertNull(channel.readInbound());
+        writeToChannel("OUT\r\n");
+        expectSuccessfulRequest("A001", "LOGOUT");
+    }
+
+    @Test
+    public void shouldRetainRawBytesWhenAsked() throws Exception {
+        channel.finish();
+        decoder = new ImapRequestDecoder();
+        decoder.setRetainRawBytes(true);
+        channel = new EmbeddedChannel(decoder);
+        writeToChannel("A001 select inbox\r\nA002 LOGIN {6}\r\nUSE");
+        writeToChannel("RID {8+}\r\nPASSWORD\r\n");
+
+        final DecodedImapRequest select = (DecodedImapRequest) expectSuccessfulRequest("A001", "SELECT");
+        assertByteBufsEqual(Unpooled.copiedBuffer("A001 select inbox\r\n", UTF8.charset()), select.getRawBytes());
+        assertEquals(0, select.getContinuationPoints().length);
+        assertEquals(-1, select.getLargestNonSynchronizingLiteral());
+        select.discardRawBytes();
+
+        final DecodedImapRequest login = (DecodedImapRequest) expectSuccessfulRequest("A002", "LOGIN");
+        assertByteBufsEqual(Unpooled.copiedBuffer("A002 LOGIN {6}\r\nUSERID {8+}\r\nPASSWORD\r\n", UTF8.charset()),
+                login.getRawBytes());
+        assertArrayEquals(new int[]{16}, login.getContinuationPoints());
+        assertEquals(8, login.getLargestNonSynchronizingLiteral());
+        login.discardRawBytes();
+    }
+
+    @Test
+    public void shouldNotRetainRawBytesByDefault() throws Exception {
+        writeToChannel("A001 NOOP\r\n");
+        assertNull(((DecodedImapRequest) expectSuccessfulRequest("A001", "NOOP")).getRawBytes());
+    }
 }
@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.ImapLiteralChunk;
+import com.nowucca.imp.core.message.LastImapLiteralChunk;
+import com.nowucca.imp.core.message.response.DecodedImapResponse;
+import com.nowucca.imp.core.message.response.ImapResponse;
+import com.nowucca.imp.core.message.response.ImapResponseSegment;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.TooLongFrameException;
+import org.apache.logging.log4j.core.util.Charsets;
+import org.junit.Before;
+import org.junit.Test;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ImapResponseDecoderTest extends BaseCodecTest {
+
+    @Before
+    public void setUp() throws Exception {
+        channel = new EmbeddedChannel(new ImapResponseDecoder(64, 16, 1024));
+    }
+
+    @Test
+    public void shouldDecodeTaggedResponse() throws Exception {
+        write("a001 OK [READ-WRITE] SELECT completed\r\n");
+        final DecodedImapResponse response = expectResponse(ImapResponse.Type.TAGGED, "OK", true);
+        assertEquals("a001", response.getTag().toString());
+        assertSame(ImapResponse.Status.OK, response.getStatus());
+        assertEquals(-1, response.getNumber());
+        assertEquals("[READ-WRITE] SELECT completed\r\n", text(response));
+        assertEquals("a001 OK [READ-WRITE] SELECT completed\r\n", ascii(response.getRawBytes()));
+    }
+
+    @Test
+    public void shouldDecodeUntaggedResponses() throws Exception {
+        write("* 23 EXISTS\r\n* CAPABILITY IMAP4rev1 STARTTLS\r\n* bye Server going down {5}\r\n* XYZZY\r\n");
+        final DecodedImapResponse exists = expectResponse(ImapResponse.Type.UNTAGGED, "EXISTS", true);
+        assertEquals(23, exists.getNumber());
+        assertNull(exists.getStatus());
+        final DecodedImapResponse capability = expectResponse(ImapResponse.Type.UNTAGGED, "CAPABILITY", true);
+        assertEquals("IMAP4rev1 STARTTLS\r\n", text(capability));
+        final DecodedImapResponse bye = expectResponse(ImapResponse.Type.UNTAGGED, "BYE", true);
+        assertSame(ImapResponse.Status.BYE, bye.getStatus());
+        assertEquals("Server going down {5}\r\n", text(bye));
+        expectResponse(ImapResponse.Type.UNTAGGED, "XYZZY", true);
+    }
+
+    @Test
+    public void shouldDecodeContinuationRequests() throws Exception {
+        write("+ Ready for literal data\r\n+\r\n");
+        final DecodedImapResponse ready = expectResponse(ImapResponse.Type.CONTINUATION, null, true);
+        assertNull(ready.getTag());
+        assertEquals("Ready for literal data\r\n", text(ready));
+        assertEquals("\r\n", text(expectResponse(ImapResponse.Type.CONTINUATION, null, true)));
+    }
+
+    @Test
+    public void shouldKeepSmallLiteralsWithinResponse() throws Exception {
+        final String fetch = "* 12 FETCH (FLAGS (\\Seen) BODY[HEADER] {12}\r\nSubject: x\r\n UID 7)\r\n";
+        write(fetch.substring(0, 30));
+        write(fetch.substring(30, 50));
+        assertNull(channel.readInbound());
+        write(fetch.substring(50) + "* 13 EXPUNGE\r\n");
+        final DecodedImapResponse response = expectResponse(ImapResponse.Type.UNTAGGED, "FETCH", true);
+        assertEquals(12, response.getNumber());
+        assertEquals(fetch, ascii(response.getRawBytes()));
+        assertEquals(13, expectResponse(ImapResponse.Type.UNTAGGED, "EXPUNGE", true).getNumber());
+    }
+
+    @Test
+    public void shouldStreamLargeLiteral() throws Exception {
+        final StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            body.append("Line ").append(i).append(" of the message\r\n");
+        }
+        final String fetch = "* 3 FETCH (UID 9 BODY[] {" + body.length() + "}\r\n" + body + " FLAGS ())\r\n";
+        for (int i = 0; i < fetch.length(); i += 7) {
+            write(fetch.substring(i, Math.min(i + 7, fetch.length())));
+        }
+
+        final DecodedImapResponse response = expectResponse(ImapResponse.Type.UNTAGGED, "FETCH", false);
+        final StringBuilder decoded = new StringBuilder(ascii(response.getRawBytes()));
+        assertTrue(decoded.toString().endsWith("{" + body.length() + "}\r\n"));
+        final StringBuilder literal = new StringBuilder();
+        for (;;) {
+            final ImapLiteralChunk chunk = (ImapLiteralChunk) read();
+            assertTrue(chunk.content().readableBytes() <= 16);
+            literal.append(ascii(chunk.content()));
+            if (chunk.isLast()) {
+                break;
+            }
+        }
+        assertEquals(body.toString(), literal.toString());
+        decoded.append(literal);
+
+        final ImapResponseSegment segment = (ImapResponseSegment) read();
+        assertTrue(segment.isLast());
+        decoded.append(ascii(segment.content()));
+        assertEquals(fetch, decoded.toString());
+        assertNull(channel.readInbound());
+    }
+
+    @Test
+    public void shouldStreamEmptyLiteralOfLargeResponse() throws Exception {
+        final String padding = "(X-PADDING \"0123456789012345678901234567890123456789012345678901234567\" ";
+        write("* 1 FETCH " + padding + "BODY[] {0}\r\n)\r\n");
+        expectResponse(ImapResponse.Type.UNTAGGED, "FETCH", false);
+        final ImapLiteralChunk chunk = (ImapLiteralChunk) read();
+        assertThat(chunk, instanceOf(LastImapLiteralChunk.class));
+        assertEquals(0, chunk.content().readableBytes());
+        assertEquals(")\r\n", ascii(((ByteBufHolder) read()).content()));
+    }
+
+    @Test
+    public void shouldFailOnInvalidResponseAndDiscardTheRest() throws Exception {
+        try {
+            write("A001 FETCH 1 (FLAGS)\r\n");
+            fail("Expected a tagged FETCH to fail");
+        } catch (DecoderException e) {
+            assertThat(e.getCause(), instanceOf(IllegalArgumentException.class));
+        }
+        write("* OK fine\r\n");
+        assertNull(channel.readInbound());
+    }
+
+    @Test
+    public void shouldLimitLineLength() throws Exception {
+        final StringBuilder line = new StringBuilder("* SEARCH");
+        while (line.length() <= 1024) {
+            line.append(" 1");
+        }
+        try {
+            write(line.toString());
+            fail("Expected a long line to fail");
+        } catch (TooLongFrameException e) {
+            // a decoder exception already, so not wrapped in another
+        }
+    }
+
+    @Test
+    public void shouldRejectLiteralSizeThatOverflows() throws Exception {
+        try {
+            write("* 1 FETCH (BODY[] {9999999999999999999}\r\nnot a response\r\n");
+            fail("Expected a literal size beyond a long to fail");
+        } catch (TooLongFrameException e) {
+            // a decoder exception already, so not wrapped in another
+        }
+        assertNull(channel.readInbound());
+    }
+
+    @Test
+    public void shouldRequireCRLF() throws Exception {
+        try {
+            write("* OK no carriage return\n");
+            fail("Expected a bare LF to fail");
+        } catch (DecoderException e) {
+            assertThat(e.getCause(), instanceOf(IllegalArgumentException.class));
+        }
+    }
+
+    private void write(String input) {
+        channel.writeInbound(ascii(input));
+    }
+
+    private Object read() {
+        return hold(channel.readInbound());
+    }
+
+    private DecodedImapResponse expectResponse(ImapResponse.Type type, String name, boolean complete) {
+        final DecodedImapResponse response = (DecodedImapResponse) read();
+        assertSame(type, response.getType());
+        assertEquals(name, response.getName() == null ? null : response.getName().toString());
+        assertEquals(complete, response.isComplete());
+        if (type != ImapResponse.Type.TAGGED) {
+            assertNull(response.getTag());
+        }
+        assertFalse(response.getRawBytes().readableBytes() == 0);
+        return response;
+    }
+
+    private static String text(DecodedImapResponse response) {
+        final ByteBuf raw = response.getRawBytes();
+        return raw.toString(raw.readerIndex() + response.getTextOffset(),
+                raw.readableBytes() - response.getTextOffset(), Charsets.US_ASCII);
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.ImapLiteralChunk;
+import com.nowucca.imp.core.message.LastImapLiteralChunk;
+import com.nowucca.imp.core.message.response.DecodedImapResponse;
+import com.nowucca.imp.core.message.response.ImapDataResponse;
+import com.nowucca.imp.core.message.response.ImapResponse;
+import com.nowucca.imp.core.message.response.ImapResponseSegment;
+import com.nowucca.imp.core.message.response.PreEncodedImapResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Before;
+import org.junit.Test;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ImapResponseEncoderTest extends BaseCodecTest {
+
+    @Before
+    public void setUp() throws Exception {
+        channel = new EmbeddedChannel(new ImapResponseEncoder());
+    }
+
+    @Test
+    public void shouldWriteUntaggedResponsesFromSharedBuffers() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            channel.writeOutbound(PreEncodedImapResponse.GREETING, PreEncodedImapResponse.BYE);
+            final ByteBuf greeting = read();
+            assertEquals("* OK IMAP4rev1 Service Ready\r\n", ascii(greeting));
+            assertTrue(greeting.isDirect());
+            greeting.release();
+            assertEquals(1, greeting.refCnt());
+            assertEquals("* BYE IMAP4rev1 Server logging out\r\n", ascii(read()));
+        }
+        channel.writeOutbound(PreEncodedImapResponse.untagged("CAPABILITY", "IMAP4rev1 STARTTLS LOGINDISABLED"),
+                PreEncodedImapResponse.continuation(""));
+        assertEquals("* CAPABILITY IMAP4rev1 STARTTLS LOGINDISABLED\r\n", ascii(read()));
+        assertEquals("+\r\n", ascii(read()));
+    }
+
+    @Test
+    public void shouldSpliceTagBeforeSharedBody() throws Exception {
+        channel.writeOutbound(PreEncodedImapResponse.OK_NOOP.withTag("a047"),
+                PreEncodedImapResponse.BAD_COMMAND.withTag("*x"));
+        final CompositeByteBuf noop = (CompositeByteBuf) read();
+        assertEquals("a047 OK NOOP completed\r\n", ascii(noop));
+        assertEquals("a047", ascii(noop.component(0)));
+        assertTrue(noop.component(1).isDirect());
+        assertEquals("*x BAD Command unrecognized\r\n", ascii(read()));
+        // releasing the reply leaves the shared body as it was
+        noop.release();
+        assertEquals(" OK NOOP completed\r\n", ascii(PreEncodedImapResponse.OK_NOOP.getBody()));
+    }
+
+    @Test
+    public void shouldRejectTemplateWithoutTag() throws Exception {
+        try {
+            channel.writeOutbound(PreEncodedImapResponse.OK_LOGOUT);
+            fail("Expected a tagged response without a tag to be rejected");
+        } catch (Exception e) {
+            assertThat(e.getCause(), instanceOf(IllegalArgumentException.class));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectTextThatEndsTheLine() throws Exception {
+        PreEncodedImapResponse.tagged(ImapResponse.Status.NO, "oops\r\n* BYE");
+    }
+
+    @Test
+    public void shouldCopySmallData() throws Exception {
+        final ImapDataResponse exists = new ImapDataResponse(23, "EXISTS", Unpooled.EMPTY_BUFFER);
+        final ImapDataResponse search = new ImapDataResponse(-1, "SEARCH", ascii("2 84 882"));
+        channel.writeOutbound(exists, search);
+        final ByteBuf buf = read();
+        assertEquals("* 23 EXISTS\r\n", ascii(buf));
+        assertEquals(buf.capacity(), buf.writerIndex());
+        assertEquals("* SEARCH 2 84 882\r\n", ascii(read()));
+        assertEquals(0, search.refCnt());
+    }
+
+    @Test
+    public void shouldGatherLargeDataWithoutCopying() throws Exception {
+        final StringBuilder body = new StringBuilder();
+        while (body.length() < ImapResponseEncoder.GATHERED_DATA_THRESHOLD) {
+            body.append("Line of the message body\r\n");
+        }
+        final CompositeByteBuf data = Unpooled.compositeBuffer();
+        data.addComponents(ascii("(UID 9 BODY[] {" + body.length() + "}\r\n"), ascii(body.toString()), ascii(")"));
+        data.writerIndex(data.capacity());
+        final ByteBuf literal = data.component(1);
+
+        channel.writeOutbound(new ImapDataResponse(5, "FETCH", data));
+        final CompositeByteBuf composite = (CompositeByteBuf) read();
+        assertEquals("* 5 FETCH (UID 9 BODY[] {" + body.length() + "}\r\n" + body + ")\r\n", ascii(composite));
+        assertEquals(1, literal.refCnt());
+        composite.release();
+        assertEquals(0, literal.refCnt());
+    }
+
+    @Test
+    public void shouldForwardDecodedResponseWithStreamedLiteral() throws Exception {
+        final ByteBuf raw = ascii("* 3 FETCH (BODY[] {8}\r\n");
+        channel.writeOutbound(DecodedImapResponse.newInstance(ImapResponse.Type.UNTAGGED, null, null, 3, "FETCH",
+                raw, 10, false), new ImapLiteralChunk(ascii("12345")), new LastImapLiteralChunk(ascii("678")),
+                new ImapResponseSegment(ascii(" UID 4)\r\n"), true));
+        final ByteBuf forwarded = read();
+        assertTrue(forwarded == raw || forwarded.unwrap() == raw);
+        final StringBuilder decoded = new StringBuilder(ascii(forwarded));
+        for (Object msg = read(); msg != null; msg = read()) {
+            decoded.append(ascii((ByteBuf) msg));
+        }
+        assertEquals("* 3 FETCH (BODY[] {8}\r\n12345678 UID 4)\r\n", decoded.toString());
+        assertNull(channel.readOutbound());
+    }
+
+    private ByteBuf read() {
+        return hold((ByteBuf) channel.readOutbound());
+    }
+}
@@ -66,5 +66,12 @@ public class LoginCommandDecoderTest extends BaseDecoderTest {
         expectSuccessfulRequest("A006", "LOGIN");
     }
 
+    @Test
+    public void shouldUnescapeQuotedArguments() throws Exception {
+        writeToChannel("A001 LOGIN \"US\\\"ER\" \"PASS\\\\WORD\"\r\n");
+        final ImapRequest request = expectSuccessfulRequest("A001", "LOGIN");
+        assertEquals("US\"ER", request.getCommand().getArguments().get(0).toString());
+        assertEquals("PASS\\WORD", request.getCommand().getArguments().get(1).toString());
+    }
 
 }
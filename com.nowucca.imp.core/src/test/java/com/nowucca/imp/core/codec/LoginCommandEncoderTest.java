@@ -3,6 +3,7 @@
  */
 package com.nowucca.imp.core.codec;
 
+import com.nowucca.imp.core.message.command.DecodedImapRequest;
 import com.nowucca.imp.core.message.command.ImapCommand;
 import com.nowucca.imp.core.message.command.ImapRequest;
 import com.nowucca.imp.core.message.command.LoginCommand;
@@ -17,11 +18,87 @@ public class LoginCommandEncoderTest extends BaseEncoderTest {
 
     @Test
     public void shouldEncodeCommand() throws Exception {
+        writeLogin("nowucca", "password");
 
+        final ByteBuf expected = Unpooled.wrappedBuffer("A001 LOGIN nowucca password\r\n".getBytes(Charsets
+                .US_ASCII));
+
+        assertEquals(expected, (ByteBuf) readFromChannel());
+
+    }
+
+    @Test
+    public void shouldEncodeQuotedStringsWhenNotAtoms() throws Exception {
+        writeLogin("now ucca", "pass\"word");
+
+        final ByteBuf expected = Unpooled.wrappedBuffer("A001 LOGIN \"now ucca\" \"pass\\\"word\"\r\n"
+                .getBytes(Charsets.US_ASCII));
+
+        assertEquals(expected, (ByteBuf) readFromChannel());
+    }
+
+    @Test
+    public void shouldEncodeSynchronizingLiteralWhenNotQuotable() throws Exception {
+        writeLogin("nowucca", "p\u00e4ssword");
+
+        assertEquals(Unpooled.wrappedBuffer("A001 LOGIN nowucca {9}\r\n".getBytes(Charsets.US_ASCII)),
+                (ByteBuf) readFromChannel());
+        expectContinuationBarrier("A001", 11);
+        assertEquals(Unpooled.wrappedBuffer("p\u00e4ssword\r\n".getBytes(Charsets.UTF_8)), (ByteBuf) readFromChannel());
+    }
+
+    @Test
+    public void shouldEncodeNonSynchronizingLiteralWhenServerAllows() throws Exception {
+        encoder.setNonSynchronizingLiterals(NonSynchronizingLiterals.LITERAL_PLUS);
+        writeLogin("nowucca", "p\u00e4ssword");
+
+        assertEquals(Unpooled.wrappedBuffer("A001 LOGIN nowucca {9+}\r\np\u00e4ssword\r\n".getBytes(Charsets.UTF_8)),
+                (ByteBuf) readFromChannel());
+    }
+
+    @Test
+    public void shouldAllocateExactlyTheEncodedLength() throws Exception {
+        encoder.setNonSynchronizingLiterals(NonSynchronizingLiterals.LITERAL_PLUS);
+        final String password = "\u20ac\ud83d\ude00\ud83d\u00e4\"";
+        writeLogin("now\\ucca", password);
+
+        final ByteBuf expected = Unpooled.buffer();
+        expected.writeBytes("A001 LOGIN \"now\\\\ucca\" {11+}\r\n".getBytes(Charsets.US_ASCII));
+        expected.writeBytes(password.getBytes(Charsets.UTF_8));
+        expected.writeBytes("\r\n".getBytes(Charsets.US_ASCII));
+        assertEquals(expected, readExactlySizedBuffer());
+    }
+
+    @Test
+    public void shouldWriteRawBytesOfDecodedRequest() throws Exception {
+        final ByteBuf raw = Unpooled.copiedBuffer("A001 login {6}\r\nUSERID {8}\r\nPASSWORD\r\n", Charsets.US_ASCII);
+        channel.writeOutbound(new DecodedImapRequest("A001", new LoginCommand("USERID", "PASSWORD"), raw,
+                new int[]{16, 28}, -1));
+
+        assertEquals(Unpooled.wrappedBuffer("A001 login {6}\r\n".getBytes(Charsets.US_ASCII)),
+                (ByteBuf) readFromChannel());
+        expectContinuationBarrier("A001", 22);
+        assertEquals(Unpooled.wrappedBuffer("USERID {8}\r\n".getBytes(Charsets.US_ASCII)), (ByteBuf) readFromChannel());
+        expectContinuationBarrier("A001", 10);
+        assertEquals(Unpooled.wrappedBuffer("PASSWORD\r\n".getBytes(Charsets.US_ASCII)), (ByteBuf) readFromChannel());
+    }
+
+    @Test
+    public void shouldEncodeDecodedRequestWhenServerRejectsItsNonSynchronizingLiterals() throws Exception {
+        final ByteBuf raw = Unpooled.copiedBuffer("A001 login USERID {8+}\r\nPASSWORD\r\n", Charsets.US_ASCII);
+        channel.writeOutbound(new DecodedImapRequest("A001", new LoginCommand("USERID", "PASSWORD"), raw,
+                new int[0], 8));
+
+        assertEquals(Unpooled.wrappedBuffer("A001 LOGIN USERID PASSWORD\r\n".getBytes(Charsets.US_ASCII)),
+                (ByteBuf) readFromChannel());
+        org.junit.Assert.assertEquals(0, raw.refCnt());
+    }
+
+    private void writeLogin(final String userId, final String password) {
         channel.writeOutbound(new ImapRequest() {
             @Override
             public ImapCommand getCommand() {
-                return new LoginCommand("nowucca", "password");
+                return new LoginCommand(userId, password);
             }
 
             @Override
@@ -29,13 +106,6 @@ public class LoginCommandEncoderTest extends BaseEncoderTest {
                 return "A001";
             }
         });
-
-        final ByteBuf expected = Unpooled.wrappedBuffer("A001 LOGIN {7}\r\nnowucca {8}\r\npassword\r\n".getBytes(Charsets
-                .US_ASCII));
-
-        assertEquals(expected, (ByteBuf) readFromChannel());
-
     }
 
 }
-
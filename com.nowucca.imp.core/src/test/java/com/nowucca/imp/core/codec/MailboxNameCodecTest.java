@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.util.ModifiedUTF7;
+import io.netty.handler.codec.AsciiString;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class MailboxNameCodecTest {
+
+    private final MailboxNameCodec codec = new MailboxNameCodec();
+
+    @Test
+    public void shouldDecodeExampleFromRfc3501() throws Exception {
+        assertEquals("~peter/mail/\u53f0\u5317/\u65e5\u672c\u8a9e",
+                codec.decode(new AsciiString("~peter/mail/&U,BTFw-/&ZeVnLIqe-")));
+    }
+
+    @Test
+    public void shouldEncodeAmpersandAndShiftedRuns() throws Exception {
+        assertEquals("Tom &- Jerry &AOk-t&AOk-", codec.encode("Tom & Jerry \u00e9t\u00e9").toString());
+        assertEquals("Tom & Jerry \u00e9t\u00e9", codec.decode(new AsciiString("Tom &- Jerry &AOk-t&AOk-")));
+    }
+
+    @Test
+    public void shouldEncodeLongNameOfSingleShiftedCharacters() throws Exception {
+        final StringBuilder name = new StringBuilder();
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            name.append("\u00e9&");
+            expected.append("&AOk-&-");
+        }
+        name.append('\u00e9');
+        expected.append("&AOk-");
+        assertEquals(expected.toString(), new MailboxNameCodec().encode(name.toString()).toString());
+    }
+
+    @Test
+    public void shouldAgreeWithCharsetBasedCodec() throws Exception {
+        final Random random = new Random(3501);
+        final String[] alphabet = {"a", "Z", "&", "-", "/", " ", "~", "\u00e9", "\u53f0", "\u0001", "\ud83d\ude00"};
+        for (int i = 0; i < 2000; i++) {
+            final StringBuilder name = new StringBuilder();
+            for (int j = random.nextInt(12); j >= 0; j--) {
+                name.append(alphabet[random.nextInt(alphabet.length)]);
+            }
+            final String expected = name.toString();
+            // the charset shifts a '&' that follows other shifted characters, rather than writing "&-" as
+            // RFC 3501 asks, so only its output is compared, by decoding it
+            assertEquals(expected, new MailboxNameCodec().decode(new AsciiString(ModifiedUTF7.encode(expected))));
+            final AsciiString encoded = codec.encode(expected);
+            assertEquals(expected, new MailboxNameCodec().decode(new AsciiString(encoded.toString())));
+        }
+    }
+
+    @Test
+    public void shouldReuseRecentlyConvertedNames() throws Exception {
+        final MailboxNameCodec small = new MailboxNameCodec(2);
+        final String first = small.decode(new AsciiString("&AOk-1"));
+        assertSame(first, small.decode(new AsciiString("&AOk-1")));
+        assertSame(small.encode("\u00e92"), small.encode(new StringBuilder("\u00e92")));
+
+        small.decode(new AsciiString("&AOk-2"));
+        small.decode(new AsciiString("&AOk-3"));
+        assertNotSame(first, small.decode(new AsciiString("&AOk-1")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnterminatedShift() throws Exception {
+        codec.decode(new AsciiString("&AOk"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectControlCharacter() throws Exception {
+        codec.decode(new AsciiString("a\tb&AOk-"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectStandardBase64Slash() throws Exception {
+        codec.decode(new AsciiString("&U/BTFw-"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectLeftOverBits() throws Exception {
+        codec.decode(new AsciiString("&AOl-"));
+    }
+}
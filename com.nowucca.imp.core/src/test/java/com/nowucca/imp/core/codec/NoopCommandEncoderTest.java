@@ -34,7 +34,7 @@ public class NoopCommandEncoderTest extends BaseEncoderTest {
         final ByteBuf expected = Unpooled.wrappedBuffer("A001 NOOP\r\n".getBytes(Charsets
                 .US_ASCII));
 
-        assertEquals(expected, (ByteBuf) readFromChannel());
+        assertEquals(expected, readExactlySizedBuffer());
 
     }
 
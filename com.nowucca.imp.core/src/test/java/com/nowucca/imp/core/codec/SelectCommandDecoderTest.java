@@ -54,5 +54,12 @@ public class SelectCommandDecoderTest extends BaseDecoderTest {
         expectSuccessfulRequest("A006", "SELECT");
     }
 
+    @Test
+    public void shouldDecodeModifiedUTF7MailboxName() throws Exception {
+        writeToChannel("A001 SELECT \"~peter/mail/&U,BTFw-/&ZeVnLIqe-\"\r\n");
+        final ImapRequest request = expectSuccessfulRequest("A001", "SELECT");
+        assertEquals("~peter/mail/\u53f0\u5317/\u65e5\u672c\u8a9e",
+                request.getCommand().getArguments().get(0).toString());
+    }
 
 }
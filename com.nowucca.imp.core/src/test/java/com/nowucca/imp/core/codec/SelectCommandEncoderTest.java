@@ -3,6 +3,7 @@
  */
 package com.nowucca.imp.core.codec;
 
+import com.nowucca.imp.core.message.command.DecodedImapRequest;
 import com.nowucca.imp.core.message.command.ImapCommand;
 import com.nowucca.imp.core.message.command.ImapRequest;
 import com.nowucca.imp.core.message.command.NoopCommand;
@@ -10,8 +11,11 @@ import com.nowucca.imp.core.message.command.SelectCommand;
 import com.nowucca.imp.util.ModifiedUTF7;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.AsciiString;
 import org.apache.logging.log4j.core.util.Charsets;
 import org.junit.Test;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 /**
  */
@@ -39,5 +43,17 @@ public class SelectCommandEncoderTest extends BaseEncoderTest {
 
     }
 
-}
+    @Test
+    public void shouldRecycleDecodedRequestOnceEncoded() throws Exception {
+        final SelectCommand command = SelectCommand.newInstance("trash");
+        final DecodedImapRequest request = DecodedImapRequest.newInstance(new AsciiString("A001"), command);
+        channel.writeOutbound(request);
+
+        assertEquals(Unpooled.wrappedBuffer("A001 SELECT trash\r\n".getBytes(Charsets.US_ASCII)),
+                (ByteBuf) readFromChannel());
+        assertNull(request.getCommand());
+        assertSame(command, SelectCommand.newInstance("drafts"));
+        assertSame(request, DecodedImapRequest.newInstance(new AsciiString("A002"), command));
+    }
 
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.SequenceSet;
+import com.nowucca.imp.core.message.command.DecodeError;
+import com.nowucca.imp.util.UTF8;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.PrimitiveIterator;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SequenceSetTest extends BaseCodecTest {
+
+    @Test
+    public void shouldMergeRangesIntoCanonicalForm() throws Exception {
+        assertEquals("1:7,9,12:*", parse("12:*,5:3,1,9,2,6:7,4").toString());
+        assertEquals("2:5", parse("5:2").toString());
+        assertEquals("5:*", parse("*:5").toString());
+        assertEquals("*", parse("*,*:*").toString());
+        assertEquals(3, parse("1:7,9,12:*").getRangeCount());
+        assertEquals(SequenceSet.range(1, 4), SequenceSet.of(3, 1, 4, 2));
+    }
+
+    @Test
+    public void shouldParseLargestNumber() throws Exception {
+        final SequenceSet sequenceSet = parse("4294967294:4294967295");
+        assertEquals(4294967294L, sequenceSet.first());
+        assertEquals(SequenceSet.MAXIMUM_NUMBER, sequenceSet.last());
+        assertFalse(sequenceSet.contains(SequenceSet.STAR));
+        assertEquals("4294967294:*", parse("4294967294:*").toString());
+        assertEquals(2, parse("4294967295,*").getRangeCount());
+    }
+
+    @Test
+    public void shouldRejectInvalidSequenceSets() throws Exception {
+        for (String invalid : new String[]{"0", "01", "1:", ":1", "1,", ",1", "1,,2", "1::2", "4294967296", "1*"}) {
+            try {
+                parse(invalid);
+                fail("Expected " + invalid + " to be rejected");
+            } catch (IllegalArgumentException e) {
+                assertSame(invalid, e, DecodeError.INVALID_SEQUENCE_SET.exception());
+            }
+        }
+    }
+
+    @Test
+    public void shouldFindSequenceSetEnd() throws Exception {
+        final ByteBuf in = ascii("1:5,7:* (FLAGS)");
+        assertEquals(7, DecoderUtils.indexOfSequenceSetEnd(in, 0, in.writerIndex()));
+        assertEquals(-1, DecoderUtils.indexOfSequenceSetEnd(in, 0, 7));
+        in.release();
+    }
+
+    @Test
+    public void shouldUniteAndIntersect() throws Exception {
+        final SequenceSet a = parse("1:5,10:20,30");
+        final SequenceSet b = parse("4:11,19:25,31:*");
+        assertEquals("1:25,30:*", a.union(b).toString());
+        assertEquals("4:5,10:11,19:20", a.intersection(b).toString());
+        assertEquals("", a.intersection(parse("6:9,21:29")).toString());
+        assertSame(a, a.union(SequenceSet.EMPTY));
+        assertTrue(a.intersection(SequenceSet.EMPTY).isEmpty());
+    }
+
+    @Test
+    public void shouldFindMembers() throws Exception {
+        final SequenceSet sequenceSet = parse("2:4,8,10:*");
+        assertFalse(sequenceSet.contains(1));
+        assertTrue(sequenceSet.contains(3));
+        assertFalse(sequenceSet.contains(5));
+        assertTrue(sequenceSet.contains(8));
+        assertFalse(sequenceSet.contains(9));
+        assertTrue(sequenceSet.contains(4000000000L));
+    }
+
+    @Test
+    public void shouldIterateUpToLargestNumber() throws Exception {
+        assertEquals("2 3 5 7 8 ", iterate(parse("2:3,5,7:*"), 8));
+        assertFalse(SequenceSet.EMPTY.iterator(8).hasNext());
+    }
+
+    @Test
+    public void shouldIterateStarAsLargestNumber() throws Exception {
+        assertEquals("100 ", iterate(SequenceSet.of(SequenceSet.STAR), 100));
+        assertEquals("1 3 ", iterate(parse("1,*"), 3));
+        // 3:5, of which only 3 is in use
+        assertEquals("3 ", iterate(parse("5:*"), 3));
+        assertEquals("2 3 ", iterate(parse("2,5:*"), 3));
+        assertEquals("", iterate(parse("*"), 0));
+    }
+
+    @Test
+    public void shouldEncodeCanonicalForm() throws Exception {
+        for (String form : new String[]{"1", "*", "1:7,9,12:*", "4294967295", "100:200,300"}) {
+            final SequenceSet sequenceSet = parse(form);
+            final ByteBuf out = Unpooled.buffer();
+            ImapRequestEncoder.encodeSequenceSet(sequenceSet, out);
+            assertEquals(form, out.toString(UTF8.charset()));
+            assertEquals(out.readableBytes(), ImapRequestEncoder.sequenceSetLength(sequenceSet));
+            out.release();
+        }
+    }
+
+    private static String iterate(SequenceSet sequenceSet, long largest) {
+        final PrimitiveIterator.OfLong numbers = sequenceSet.iterator(largest);
+        final StringBuilder iterated = new StringBuilder();
+        while (numbers.hasNext()) {
+            iterated.append(numbers.nextLong()).append(' ');
+        }
+        return iterated.toString();
+    }
+
+    private static SequenceSet parse(String sequenceSet) {
+        final ByteBuf in = ascii(sequenceSet);
+        try {
+            return DecoderUtils.parseSequenceSet(in, 0, in.writerIndex());
+        } finally {
+            in.release();
+        }
+    }
+}
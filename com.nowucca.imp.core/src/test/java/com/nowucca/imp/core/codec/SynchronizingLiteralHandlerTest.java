@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2012-2014, Steven Atkinson. All rights reserved.
+ */
+package com.nowucca.imp.core.codec;
+
+import com.nowucca.imp.core.message.command.ImapCommand;
+import com.nowucca.imp.core.message.command.ImapRequest;
+import com.nowucca.imp.core.message.command.LoginCommand;
+import com.nowucca.imp.core.message.command.NoopCommand;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.apache.logging.log4j.core.util.Charsets;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ */
+public class SynchronizingLiteralHandlerTest {
+
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp() throws Exception {
+        channel = new EmbeddedChannel(new SynchronizingLiteralHandler(), new ImapRequestEncoder());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        channel.finish();
+    }
+
+    @Test
+    public void shouldHoldLiteralUntilContinuation() throws Exception {
+        writeRequest("A001", new LoginCommand("nowucca", "p\u00e4ssword"));
+        assertEquals("A001 LOGIN nowucca {9}\r\n", readOutbound());
+        assertNull(channel.readOutbound());
+
+        writeInbound("* OK still here\r\n+ Ready\r\n");
+        assertEquals("* OK still here\r\n", readInbound());
+        assertEquals("p\u00e4ssword\r\n", readOutbound());
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void shouldRecognizeContinuationSplitAcrossReads() throws Exception {
+        writeRequest("A001", new LoginCommand("nowucca", "p\u00e4ssword"));
+        assertEquals("A001 LOGIN nowucca {9}\r\n", readOutbound());
+
+        writeInbound("+ Rea");
+        assertNull(channel.readOutbound());
+        writeInbound("dy\r\n* OK");
+        assertEquals("p\u00e4ssword\r\n", readOutbound());
+        assertEquals("* OK", readInbound());
+    }
+
+    @Test
+    public void shouldDiscardLiteralWhenServerRejectsRequest() throws Exception {
+        writeRequest("A001", new LoginCommand("nowucca", "p\u00e4ssword"));
+        writeRequest("A002", new NoopCommand());
+        assertEquals("A001 LOGIN nowucca {9}\r\n", readOutbound());
+        assertNull(channel.readOutbound());
+
+        writeInbound("A001 NO Go away\r\n");
+        assertEquals("A001 NO Go away\r\n", readInbound());
+        assertEquals("A002 NOOP\r\n", readOutbound());
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void shouldNotMistakeLiteralInResponseForContinuation() throws Exception {
+        writeRequest("A001", new LoginCommand("nowucca", "p\u00e4ssword"));
+        assertEquals("A001 LOGIN nowucca {9}\r\n", readOutbound());
+
+        writeInbound("* 1 FETCH (BODY[] {7}\r\n+ A001 )\r\n");
+        assertNull(channel.readOutbound());
+        assertEquals("* 1 FETCH (BODY[] {7}\r\n+ A001 )\r\n", readInbound());
+
+        writeInbound("+ go\r\n");
+        assertEquals("p\u00e4ssword\r\n", readOutbound());
+    }
+
+    private void writeRequest(final String tag, final ImapCommand command) {
+        channel.writeOutbound(new ImapRequest() {
+            @Override
+            public ImapCommand getCommand() {
+                return command;
+            }
+
+            @Override
+            public String getTag() {
+                return tag;
+            }
+        });
+    }
+
+    private void writeInbound(String input) {
+        channel.writeInbound(Unpooled.wrappedBuffer(input.getBytes(Charsets.UTF_8)));
+    }
+
+    private String readOutbound() {
+        final ByteBuf buf = (ByteBuf) channel.readOutbound();
+        try {
+            return buf.toString(Charsets.UTF_8);
+        } finally {
+            buf.release();
+        }
+    }
+
+    private String readInbound() {
+        final ByteBuf buf = (ByteBuf) channel.readInbound();
+        try {
+            return buf.toString(Charsets.UTF_8);
+        } finally {
+            buf.release();
+        }
+    }
+}